@@ -0,0 +1,45 @@
+package cz.hqm.latte.plugin.annotator;
+
+import com.intellij.lang.annotation.AnnotationHolder;
+import com.intellij.lang.annotation.ExternalAnnotator;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.psi.PsiFile;
+import cz.hqm.latte.plugin.file.LatteFileType;
+import cz.hqm.latte.plugin.validator.LatteErrorReporter;
+import cz.hqm.latte.plugin.validator.LatteValidationProblem;
+import cz.hqm.latte.plugin.validator.LatteValidator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Annotates the problems of the macro tags of Latte files found by {@link LatteValidator}.
+ * Validation runs after the other highlighting passes, and its results are cached with the file,
+ * so a file is only validated again after it changes.
+ */
+public class LatteValidationAnnotator extends ExternalAnnotator<PsiFile, List<LatteValidationProblem>> {
+
+    @Nullable
+    @Override
+    public PsiFile collectInformation(@NotNull PsiFile file) {
+        return file.getFileType() instanceof LatteFileType ? file : null;
+    }
+
+    @Nullable
+    @Override
+    public List<LatteValidationProblem> doAnnotate(@NotNull PsiFile file) {
+        return ReadAction.compute(() -> file.isValid() ? LatteValidator.getProblems(file) : Collections.emptyList());
+    }
+
+    @Override
+    public void apply(@NotNull PsiFile file, @Nullable List<LatteValidationProblem> problems, @NotNull AnnotationHolder holder) {
+        if (problems == null) {
+            return;
+        }
+        for (LatteValidationProblem problem : problems) {
+            LatteErrorReporter.reportProblem(problem, file, holder);
+        }
+    }
+}
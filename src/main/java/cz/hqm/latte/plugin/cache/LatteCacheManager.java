@@ -1,46 +1,80 @@
 package cz.hqm.latte.plugin.cache;
 
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiTreeChangeAdapter;
+import com.intellij.psi.PsiTreeChangeEvent;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import cz.hqm.latte.plugin.file.LatteFileType;
+import cz.hqm.latte.plugin.index.LatteTemplateGraphIndex;
 import cz.hqm.latte.plugin.psi.LatteFile;
+import cz.hqm.latte.plugin.settings.LatteSettings;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service for caching parsed Latte templates to improve performance.
  * This service provides methods for caching and retrieving parsed templates,
  * as well as managing the cache lifecycle.
+ * Entries are invalidated by file system and PSI change events, together with the
+ * templates that include or extend the changed template; they never expire just for being old.
+ * Change listeners only drop the changed entry and remember the template; its dependents are
+ * looked up in the template graph on the next read, outside the write action of the change.
  */
 @Service(Service.Level.PROJECT)
-public final class LatteCacheManager {
+public final class LatteCacheManager implements Disposable {
 
-    // Maximum number of entries in the cache
-    private static final int MAX_CACHE_SIZE = 100;
+    // Rough retained size of a cache entry without its template, in bytes
+    private static final long ENTRY_OVERHEAD_BYTES = 512;
     
-    // Maximum age of cache entries in milliseconds (30 minutes)
-    private static final long MAX_CACHE_AGE = TimeUnit.MINUTES.toMillis(30);
+    // Rough retained size of a parsed template per character of text, in bytes:
+    // the text itself plus the AST and PSI nodes built for it
+    private static final long BYTES_PER_TEMPLATE_CHAR = 40;
     
-    // Minimum time between validity checks in milliseconds (1 second)
-    private static final long MIN_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    // Maximum number of changed templates whose dependents are looked up one by one;
+    // larger batches (e.g. a branch switch) clear the whole cache in a single pass
+    private static final int MAX_DEPENDENT_LOOKUPS = 50;
     
     // The project this cache manager is associated with
     private final Project project;
     
-    // Cache of parsed templates by file path
-    private final ConcurrentHashMap<String, CacheEntry> templateCache;
+    // Cache of parsed templates by file path, in access order (least recently used first); guarded by itself
+    private final LinkedHashMap<String, CacheEntry> templateCache;
     
-    // Counter for LRU implementation
-    private final AtomicInteger accessCounter = new AtomicInteger(0);
+    // Sum of the estimated sizes of the cached templates, in bytes; guarded by templateCache
+    private long totalWeight;
+    
+    // Changed templates whose dependents have not been invalidated yet; guarded by templateCache
+    private final Set<VirtualFile> pendingDependents = new LinkedHashSet<>();
+    
+    // Counters for sizing the cache
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
     
     /**
      * Constructor that initializes the cache.
@@ -49,8 +83,51 @@ public final class LatteCacheManager {
      */
     public LatteCacheManager(Project project) {
         this.project = project;
-        // Use ConcurrentHashMap for better thread safety and performance
-        this.templateCache = new ConcurrentHashMap<>(16, 0.75f, 4);
+        // An access-ordered LinkedHashMap moves an entry to the end on every access,
+        // so the least recently used entry is always the first one and eviction is O(1)
+        this.templateCache = new LinkedHashMap<>(16, 0.75f, true);
+        
+        // Invalidate entries when files change on disk, are deleted, moved or renamed
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void before(@NotNull List<? extends VFileEvent> events) {
+                // Deleted files are only known to be templates while they still exist
+                invalidateForDeletions(events);
+            }
+            
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                invalidateForEvents(events);
+            }
+        });
+        
+        // Invalidate entries when templates are edited in the editor, before they are saved
+        PsiManager.getInstance(project).addPsiTreeChangeListener(new PsiTreeChangeAdapter() {
+            @Override
+            public void childAdded(@NotNull PsiTreeChangeEvent event) {
+                invalidateForPsiChange(event.getFile());
+            }
+            
+            @Override
+            public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+                invalidateForPsiChange(event.getFile());
+            }
+            
+            @Override
+            public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+                invalidateForPsiChange(event.getFile());
+            }
+            
+            @Override
+            public void childMoved(@NotNull PsiTreeChangeEvent event) {
+                invalidateForPsiChange(event.getFile());
+            }
+            
+            @Override
+            public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+                invalidateForPsiChange(event.getFile());
+            }
+        }, this);
     }
     
     /**
@@ -72,70 +149,70 @@ public final class LatteCacheManager {
     @Nullable
     public LatteFile getCachedTemplate(@NotNull VirtualFile file) {
         String filePath = file.getPath();
-        CacheEntry entry = templateCache.get(filePath);
-        
-        if (entry == null) {
-            return null;
-        }
-        
-        long currentTime = System.currentTimeMillis();
+        invalidatePendingDependents();
         
-        // Update access counter and time atomically
-        entry.lastAccessTime = currentTime;
-        entry.accessCount = accessCounter.incrementAndGet();
-        
-        // Fast path: if the entry was recently validated, return it immediately
-        if (currentTime - entry.lastValidityCheckTime <= MIN_CHECK_INTERVAL) {
+        synchronized (templateCache) {
+            CacheEntry entry = templateCache.get(filePath);
+            if (entry == null) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            
+            // Change events remove stale entries; comparing the stamp is a cheap guard against
+            // a lookup that runs before the event for a change has been delivered
+            if (!isEntryValid(entry, file)) {
+                removeEntry(filePath);
+                missCount.incrementAndGet();
+                return null;
+            }
+            
+            hitCount.incrementAndGet();
             return entry.template;
         }
-        
-        // Slow path: check validity if enough time has passed since the last check
-        if (!isEntryValid(entry, file)) {
-            templateCache.remove(filePath, entry); // Only remove if it's still the same entry
-            return null;
-        }
-        
-        // Update validity check time
-        entry.lastValidityCheckTime = currentTime;
-        
-        return entry.template;
     }
     
     /**
      * Caches a parsed template for the given file.
+     * Least recently used templates are evicted while the estimated size of the cache
+     * exceeds the limit configured in {@link LatteSettings}.
      *
      * @param file The virtual file the template is for
      * @param template The parsed template to cache
      */
     public void cacheTemplate(@NotNull VirtualFile file, @NotNull LatteFile template) {
         String filePath = file.getPath();
-        long currentTime = System.currentTimeMillis();
-        int currentAccessCount = accessCounter.incrementAndGet();
-        
-        // Create a new cache entry
-        CacheEntry entry = new CacheEntry(template, file.getModificationStamp(), currentTime, currentTime);
-        entry.accessCount = currentAccessCount;
-        entry.lastValidityCheckTime = currentTime;
-        
-        // Add to cache - ConcurrentHashMap handles thread safety
-        templateCache.put(filePath, entry);
+        CacheEntry entry = new CacheEntry(template, file.getModificationStamp(), estimateRetainedBytes(template));
+        long maxWeight = getMaxWeight();
         
-        // Check if we need to evict entries (LRU policy)
-        if (templateCache.size() > MAX_CACHE_SIZE) {
-            evictOldestEntries();
+        synchronized (templateCache) {
+            CacheEntry previous = templateCache.put(filePath, entry);
+            if (previous != null) {
+                totalWeight -= previous.weight;
+            }
+            totalWeight += entry.weight;
+            
+            // Evict least recently used entries, but always keep the entry just added
+            Iterator<CacheEntry> iterator = templateCache.values().iterator();
+            while (totalWeight > maxWeight && templateCache.size() > 1) {
+                CacheEntry eldest = iterator.next();
+                iterator.remove();
+                totalWeight -= eldest.weight;
+                evictionCount.incrementAndGet();
+            }
         }
     }
     
     /**
-     * Evicts the oldest entries from the cache based on access count.
-     * This implements an LRU eviction policy.
+     * Gets the hit, miss and eviction counters and the current size of the cache.
+     *
+     * @return A snapshot of the cache statistics
      */
-    private void evictOldestEntries() {
-        // Find entries with the lowest access counts and remove them
-        templateCache.entrySet().stream()
-            .sorted((e1, e2) -> Integer.compare(e1.getValue().accessCount, e2.getValue().accessCount))
-            .limit(templateCache.size() - MAX_CACHE_SIZE)
-            .forEach(entry -> templateCache.remove(entry.getKey(), entry.getValue()));
+    @NotNull
+    public CacheStatistics getStatistics() {
+        synchronized (templateCache) {
+            return new CacheStatistics(hitCount.get(), missCount.get(), evictionCount.get(),
+                    templateCache.size(), totalWeight, getMaxWeight());
+        }
     }
     
     /**
@@ -144,18 +221,92 @@ public final class LatteCacheManager {
      * @param file The virtual file to invalidate the cache for
      */
     public void invalidateCache(@NotNull VirtualFile file) {
-        // ConcurrentHashMap handles thread safety
-        templateCache.remove(file.getPath());
+        synchronized (templateCache) {
+            removeEntry(file.getPath());
+        }
+    }
+    
+    /**
+     * Invalidates the cache entries for the given file and all templates that include,
+     * extend or otherwise depend on it. Other entries are kept.
+     *
+     * @param file The virtual file that changed
+     */
+    public void invalidateWithDependents(@NotNull VirtualFile file) {
+        synchronized (templateCache) {
+            removeEntry(file.getPath());
+            pendingDependents.add(file);
+        }
+        invalidatePendingDependents();
     }
     
     /**
      * Clears the entire cache.
      */
     public void clearCache() {
-        // ConcurrentHashMap handles thread safety
+        synchronized (templateCache) {
+            clearEntries();
+        }
+    }
+    
+    /**
+     * Removes all entries. Must be called while holding the lock on templateCache.
+     */
+    private void clearEntries() {
         templateCache.clear();
-        // Reset the access counter to avoid potential overflow after long-running sessions
-        accessCounter.set(0);
+        totalWeight = 0;
+        pendingDependents.clear();
+    }
+    
+    /**
+     * Removes an entry and subtracts its size. Must be called while holding the lock on templateCache.
+     *
+     * @param filePath The path of the file to remove the entry for
+     */
+    private void removeEntry(@NotNull String filePath) {
+        CacheEntry entry = templateCache.remove(filePath);
+        if (entry != null) {
+            totalWeight -= entry.weight;
+        }
+    }
+    
+    /**
+     * Estimates the memory retained by a parsed template from the length of its text.
+     *
+     * @param template The parsed template
+     * @return The estimated size in bytes
+     */
+    private static long estimateRetainedBytes(@NotNull LatteFile template) {
+        return ENTRY_OVERHEAD_BYTES + BYTES_PER_TEMPLATE_CHAR * template.getTextLength();
+    }
+    
+    /**
+     * Gets the maximum estimated size of the cache configured in the settings.
+     *
+     * @return The maximum size in bytes
+     */
+    private static long getMaxWeight() {
+        return LatteSettings.getInstance().getTemplateCacheSizeMb() * 1024L * 1024L;
+    }
+    
+    /**
+     * Invalidates the cache entries for a batch of changed files and for the templates that depend on them.
+     * Batches with many changed templates, such as a branch switch, clear the whole cache in a single pass
+     * instead of looking up the dependents of every template.
+     *
+     * @param files The changed files
+     */
+    public void invalidateFiles(@NotNull Collection<VirtualFile> files) {
+        List<String> paths = new ArrayList<>(files.size());
+        for (VirtualFile file : files) {
+            paths.add(file.getPath());
+        }
+        invalidateBatch(paths, files, false);
+    }
+    
+    @Override
+    public void dispose() {
+        clearCache();
     }
     
     /**
@@ -166,35 +317,247 @@ public final class LatteCacheManager {
      * @return True if the entry is valid, false otherwise
      */
     private boolean isEntryValid(@NotNull CacheEntry entry, @NotNull VirtualFile file) {
-        long currentTime = System.currentTimeMillis();
-        
-        // Check if entry is too old
-        if (currentTime - entry.creationTime > MAX_CACHE_AGE) {
-            return false;
-        }
-        
         // Check if file has been modified since entry was created
         return entry.modificationStamp == file.getModificationStamp();
     }
     
+    /**
+     * Remembers the templates about to be deleted, so that the templates depending on them are invalidated.
+     * Only the deleted entries are removed here; the dependents are looked up on the next read.
+     *
+     * @param events The file system events, before they are applied
+     */
+    private void invalidateForDeletions(@NotNull List<? extends VFileEvent> events) {
+        List<String> paths = new ArrayList<>();
+        List<VirtualFile> files = new ArrayList<>();
+        boolean directoryDeleted = false;
+        for (VFileEvent event : events) {
+            if (!(event instanceof VFileDeleteEvent)) {
+                continue;
+            }
+            VirtualFile file = ((VFileDeleteEvent) event).getFile();
+            if (file.isDirectory()) {
+                directoryDeleted = true;
+            } else if (file.getFileType() == LatteFileType.INSTANCE) {
+                paths.add(file.getPath());
+                files.add(file);
+            }
+        }
+        invalidateBatch(paths, files, directoryDeleted);
+    }
+    
+    /**
+     * Invalidates the entries affected by a batch of file system events.
+     * Entries are keyed by path, so moved and renamed files are invalidated under their old path.
+     * Deletions have already been handled before the events were applied.
+     *
+     * @param events The file system events
+     */
+    private void invalidateForEvents(@NotNull List<? extends VFileEvent> events) {
+        List<String> paths = new ArrayList<>();
+        List<VirtualFile> files = new ArrayList<>();
+        boolean directoryMoved = false;
+        for (VFileEvent event : events) {
+            if (event instanceof VFileCreateEvent || event instanceof VFileCopyEvent || event instanceof VFileDeleteEvent) {
+                // New files cannot be cached yet
+                continue;
+            }
+            if (event instanceof VFilePropertyChangeEvent
+                    && !VirtualFile.PROP_NAME.equals(((VFilePropertyChangeEvent) event).getPropertyName())) {
+                continue;
+            }
+            VirtualFile file = event.getFile();
+            if (file == null || !file.isValid()) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                directoryMoved = true;
+                continue;
+            }
+            if (file.getFileType() != LatteFileType.INSTANCE) {
+                // Only templates are cached
+                continue;
+            }
+            
+            if (event instanceof VFileMoveEvent) {
+                paths.add(((VFileMoveEvent) event).getOldPath());
+            } else if (event instanceof VFilePropertyChangeEvent) {
+                paths.add(((VFilePropertyChangeEvent) event).getOldPath());
+            } else {
+                paths.add(event.getPath());
+            }
+            files.add(file);
+        }
+        invalidateBatch(paths, files, directoryMoved);
+    }
+    
+    /**
+     * Invalidates the entry of a template edited in memory. PSI events arrive several times per keystroke
+     * inside the write action, so the template is only marked; its dependents are looked up on the next read.
+     *
+     * @param file The changed PSI file, or null for changes outside a file
+     */
+    private void invalidateForPsiChange(@Nullable PsiFile file) {
+        if (!(file instanceof LatteFile)) {
+            return;
+        }
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null) {
+            return;
+        }
+        synchronized (templateCache) {
+            if (templateCache.isEmpty()) {
+                return;
+            }
+            removeEntry(virtualFile.getPath());
+            pendingDependents.add(virtualFile);
+        }
+    }
+    
+    /**
+     * Removes the entries for the given paths and marks the given templates, whose dependents
+     * are invalidated on the next read.
+     *
+     * @param paths The paths of the changed templates
+     * @param templates The changed templates
+     * @param clearAll Whether a directory was deleted, moved or renamed; its templates are not listed,
+     *                 so the whole cache is cleared
+     */
+    private void invalidateBatch(@NotNull Collection<String> paths, @NotNull Collection<VirtualFile> templates, boolean clearAll) {
+        synchronized (templateCache) {
+            if (templateCache.isEmpty()) {
+                return;
+            }
+            // Looking up the dependents of a large batch one by one costs more than rebuilding the cache
+            if (clearAll || templates.size() > MAX_DEPENDENT_LOOKUPS) {
+                clearEntries();
+                return;
+            }
+            for (String path : paths) {
+                removeEntry(path);
+            }
+            pendingDependents.addAll(templates);
+        }
+    }
+    
+    /**
+     * Invalidates the templates that depend on the changed templates marked since the last read.
+     * Called on reads, so the template graph is queried at most once per changed template
+     * and never from inside the write action that reported the change.
+     */
+    private void invalidatePendingDependents() {
+        List<VirtualFile> changed;
+        synchronized (templateCache) {
+            if (pendingDependents.isEmpty()) {
+                return;
+            }
+            changed = new ArrayList<>(pendingDependents);
+            pendingDependents.clear();
+            // The template graph cannot be queried while indexing
+            if (templateCache.isEmpty() || changed.size() > MAX_DEPENDENT_LOOKUPS || DumbService.isDumb(project)) {
+                clearEntries();
+                return;
+            }
+        }
+        
+        // Deleted templates are still looked up by name, so their dependents are found as well
+        Set<VirtualFile> dependents = ReadAction.compute(() -> {
+            Set<VirtualFile> result = new LinkedHashSet<>();
+            for (VirtualFile template : changed) {
+                result.addAll(LatteTemplateGraphIndex.findAllDependents(project, template));
+            }
+            return result;
+        });
+        synchronized (templateCache) {
+            for (VirtualFile dependent : dependents) {
+                removeEntry(dependent.getPath());
+            }
+        }
+    }
+    
     /**
      * Class representing a cache entry.
      */
     private static class CacheEntry {
         final LatteFile template;
         final long modificationStamp;
-        final long creationTime;
-        volatile long lastAccessTime;
-        volatile long lastValidityCheckTime;
-        volatile int accessCount;
+        final long weight;
         
-        CacheEntry(LatteFile template, long modificationStamp, long creationTime, long lastAccessTime) {
+        CacheEntry(LatteFile template, long modificationStamp, long weight) {
             this.template = template;
             this.modificationStamp = modificationStamp;
-            this.creationTime = creationTime;
-            this.lastAccessTime = lastAccessTime;
-            this.lastValidityCheckTime = lastAccessTime; // Initialize validity check time
-            this.accessCount = 0;
+            this.weight = weight;
+        }
+    }
+    
+    /**
+     * Snapshot of the cache counters and size.
+     */
+    public static final class CacheStatistics {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final int entryCount;
+        private final long weightBytes;
+        private final long maxWeightBytes;
+        
+        CacheStatistics(long hitCount, long missCount, long evictionCount, int entryCount, long weightBytes, long maxWeightBytes) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.entryCount = entryCount;
+            this.weightBytes = weightBytes;
+            this.maxWeightBytes = maxWeightBytes;
+        }
+        
+        public long getHitCount() {
+            return hitCount;
+        }
+        
+        public long getMissCount() {
+            return missCount;
+        }
+        
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+        
+        public int getEntryCount() {
+            return entryCount;
+        }
+        
+        /**
+         * Gets the estimated size of the cached templates.
+         *
+         * @return The estimated size in bytes
+         */
+        public long getWeightBytes() {
+            return weightBytes;
+        }
+        
+        /**
+         * Gets the configured maximum size of the cache.
+         *
+         * @return The maximum size in bytes
+         */
+        public long getMaxWeightBytes() {
+            return maxWeightBytes;
+        }
+        
+        /**
+         * Gets the fraction of lookups that found a valid cached template.
+         *
+         * @return The hit rate between 0 and 1, or 0 if there were no lookups
+         */
+        public double getHitRate() {
+            long lookups = hitCount + missCount;
+            return lookups == 0 ? 0 : (double) hitCount / lookups;
+        }
+        
+        @Override
+        public String toString() {
+            return "hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+                    + ", entries=" + entryCount + ", bytes=" + weightBytes + "/" + maxWeightBytes;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package cz.hqm.latte.plugin.completion;
+
+import com.intellij.codeInsight.completion.*;
+import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.openapi.project.Project;
+import com.intellij.patterns.PlatformPatterns;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.ProcessingContext;
+import cz.hqm.latte.plugin.index.LatteBlockIndex;
+import cz.hqm.latte.plugin.inclusion.LatteTemplateInclusionHandler;
+import cz.hqm.latte.plugin.lang.LatteLanguage;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Provides completion for block names in {include #...} tags.
+ * Blocks of the current file are offered first, followed by blocks from the block index.
+ */
+public class LatteBlockCompletionContributor extends CompletionContributor {
+
+    // Pattern for an {include #name} tag ending at the caret
+    private static final Pattern INCLUDE_BLOCK_PREFIX_PATTERN = Pattern.compile("\\{include\\s+#(\\w*)$");
+
+    // How far before the caret the {include tag is looked for
+    private static final int MAX_TAG_LOOKBEHIND = 100;
+
+    public LatteBlockCompletionContributor() {
+        extend(CompletionType.BASIC,
+                PlatformPatterns.psiElement().withLanguage(LatteLanguage.INSTANCE),
+                new CompletionProvider<>() {
+                    @Override
+                    protected void addCompletions(@NotNull CompletionParameters parameters,
+                                                  @NotNull ProcessingContext context,
+                                                  @NotNull CompletionResultSet result) {
+                        PsiFile file = parameters.getOriginalFile();
+                        CharSequence text = file.getViewProvider().getContents();
+                        int offset = Math.min(parameters.getOffset(), text.length());
+                        CharSequence beforeCaret = text.subSequence(Math.max(0, offset - MAX_TAG_LOOKBEHIND), offset);
+
+                        Matcher matcher = INCLUDE_BLOCK_PREFIX_PATTERN.matcher(beforeCaret);
+                        if (!matcher.find()) {
+                            return;
+                        }
+
+                        addBlockCompletions(file, result.withPrefixMatcher(matcher.group(1)));
+                    }
+                });
+    }
+
+    /**
+     * Adds the names of the blocks of the file and of the project to the result set.
+     *
+     * @param file The file being completed
+     * @param result The completion result set
+     */
+    private static void addBlockCompletions(@NotNull PsiFile file, @NotNull CompletionResultSet result) {
+        Project project = file.getProject();
+        Set<String> localBlocks = new LinkedHashSet<>(LatteTemplateInclusionHandler.findBlocksInFile(file));
+
+        for (String blockName : localBlocks) {
+            result.addElement(LookupElementBuilder.create(blockName)
+                    .withTypeText("Latte block")
+                    .withIcon(com.intellij.icons.AllIcons.Nodes.Tag));
+        }
+
+        for (String blockName : LatteBlockIndex.getAllBlockNames(project)) {
+            if (!localBlocks.contains(blockName)) {
+                result.addElement(LookupElementBuilder.create(blockName)
+                        .withTypeText("Latte block (project)")
+                        .withIcon(com.intellij.icons.AllIcons.Nodes.Tag));
+            }
+        }
+    }
+}
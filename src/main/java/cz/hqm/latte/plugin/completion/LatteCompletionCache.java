@@ -0,0 +1,407 @@
+package cz.hqm.latte.plugin.completion;
+
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import cz.hqm.latte.plugin.completion.NetteDefaultVariablesProvider.NetteVariable;
+import cz.hqm.latte.plugin.macros.NetteMacro;
+import cz.hqm.latte.plugin.macros.NetteMacroProvider;
+import cz.hqm.latte.plugin.settings.LatteProjectSettings;
+import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.util.LatteLogger;
+import cz.hqm.latte.plugin.version.ComposerMetadataService;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import cz.hqm.latte.plugin.version.LatteVersionManager;
+import cz.hqm.latte.plugin.version.NettePackageDetector;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Project-level cache of the lookup elements offered by {@link LatteCompletionContributor}.
+ * Macros are cached by the Latte version and the Nette packages enabled for the template's module;
+ * variables by the versions of the enabled packages in the template's module. All lists are keyed on the modification counts of {@link LatteSettings},
+ * {@link LatteProjectSettings} and the composer metadata, and of this cache itself, which
+ * {@link #invalidate()} increments, so lists built before any of them changed are never returned.
+ * Each list is built once, on a pooled thread, and then read without locking. Completion waits
+ * briefly for a list being built; if it is not ready in time, the basic elements are offered and
+ * the built list is offered once the completion restarts as the user types. Projects open side by side have their own caches,
+ * so completion in one project never rebuilds the lists of another.
+ */
+@Service(Service.Level.PROJECT)
+public final class LatteCompletionCache implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(LatteCompletionCache.class);
+
+    // The project this service is associated with
+    private final Project project;
+
+    // Macros by the version, enabled packages and revision they were built for
+    private final Map<Key, List<LookupElement>> macros = new ConcurrentHashMap<>();
+
+    // Variables by the versions of the enabled packages and the revision they were built for
+    private final Map<Key, List<LookupElement>> variables = new ConcurrentHashMap<>();
+
+    // Incremented by invalidate(), part of the revision of the cached lists
+    private final AtomicLong modificationCount = new AtomicLong();
+
+    // How long completion waits for a list being built before offering the basic elements
+    private static final long BUILD_WAIT_MILLIS = 150;
+
+    // Builds of the lists by key, so that each list is built only once
+    private final Map<Key, Future<?>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param project The project this service is associated with
+     */
+    public LatteCompletionCache(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Gets the instance of this service for the given project.
+     *
+     * @param project The project to get the service for
+     * @return The service instance
+     */
+    public static LatteCompletionCache getInstance(@NotNull Project project) {
+        return project.getService(LatteCompletionCache.class);
+    }
+
+    /**
+     * Gets the macros offered in templates of the given Latte version, with the Nette packages
+     * enabled for the project's root module.
+     * If they are not cached yet, they are built on a pooled thread and null is returned unless
+     * they are built within a short wait; in unit tests they are built synchronously.
+     *
+     * @param version The Latte version of the template
+     * @return The macros, or null while they are being built
+     */
+    @Nullable
+    public List<LookupElement> getMacros(@NotNull LatteVersion version) {
+        return getMacros(version, null);
+    }
+
+    /**
+     * Gets the macros offered in the given template of the given Latte version, with the Nette
+     * packages enabled for the template's module.
+     * If they are not cached yet, they are built on a pooled thread and null is returned unless
+     * they are built within a short wait; in unit tests they are built synchronously.
+     *
+     * @param version The Latte version of the template
+     * @param file    The template, or null for the whole project
+     * @return The macros, or null while they are being built
+     */
+    @Nullable
+    public List<LookupElement> getMacros(@NotNull LatteVersion version, @Nullable VirtualFile file) {
+        Set<String> packages = NettePackageDetector.getEnabledPackages(project, file);
+        Key key = new Key(Arrays.asList(version, packages), getRevision());
+        return get(macros, key, () -> buildMacros(version, packages));
+    }
+
+    /**
+     * Gets the Nette variables offered in the given template.
+     * If they are not cached yet, they are built on a pooled thread and null is returned unless
+     * they are built within a short wait; in unit tests they are built synchronously.
+     *
+     * @param file The template, or null for the whole project
+     * @return The variables, or null while they are being built
+     */
+    @Nullable
+    public List<LookupElement> getVariables(@Nullable VirtualFile file) {
+        Key key = new Key(NetteDefaultVariablesProvider.getPackageVersions(project, file), getRevision());
+        return get(variables, key, () -> buildVariables(file));
+    }
+
+    /**
+     * Builds the macros of the project's current Latte version in the background,
+     * so that the first completion does not have to wait for them.
+     */
+    public void prefetch() {
+        getMacros(LatteVersionManager.getCurrentVersion());
+    }
+
+    /**
+     * Drops all cached lists, including lists that are being built.
+     */
+    public void invalidate() {
+        modificationCount.incrementAndGet();
+        macros.clear();
+        variables.clear();
+    }
+
+    @Override
+    public void dispose() {
+        invalidate();
+    }
+
+    /**
+     * Gets the revision of the inputs the lists are built from.
+     */
+    @NotNull
+    private Revision getRevision() {
+        return new Revision(LatteSettings.getInstance().getModificationCount(),
+                LatteProjectSettings.getInstance(project).getModificationCount(),
+                ComposerMetadataService.getInstance(project).getModificationCount(),
+                modificationCount.get());
+    }
+
+    /**
+     * Gets a cached list, or builds it once per key: synchronously in unit tests, otherwise on a
+     * pooled thread, waiting briefly for it. A list built for an outdated revision is not cached.
+     *
+     * @return The list, or null while it is being built
+     */
+    @Nullable
+    private List<LookupElement> get(@NotNull Map<Key, List<LookupElement>> cache, @NotNull Key key,
+                                    @NotNull Supplier<List<LookupElement>> builder) {
+        List<LookupElement> cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        // Lists built for an earlier revision are never asked for again
+        cache.keySet().removeIf(other -> !other.revision.equals(key.revision));
+        pending.keySet().removeIf(other -> !other.revision.equals(key.revision));
+        if (ApplicationManager.getApplication().isUnitTestMode()) {
+            List<LookupElement> built = builder.get();
+            cache.put(key, built);
+            return built;
+        }
+        Future<?> build = pending.computeIfAbsent(key, k -> ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            try {
+                if (!project.isDisposed()) {
+                    List<LookupElement> built = builder.get();
+                    if (key.revision.equals(getRevision())) {
+                        cache.put(key, built);
+                    }
+                }
+            } catch (ProcessCanceledException e) {
+                // Built again on the next request
+            } catch (RuntimeException e) {
+                LatteLogger.warn(LOG, "Error building completion cache for " + key, e);
+            }
+        }));
+        awaitBriefly(build);
+        if (build.isDone()) {
+            pending.remove(key, build);
+        }
+        return cache.get(key);
+    }
+
+    /**
+     * Waits up to {@link #BUILD_WAIT_MILLIS} for a build, so that completion started right after
+     * a change offers the full list, and stops waiting when the completion is canceled.
+     */
+    private static void awaitBriefly(@NotNull Future<?> build) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BUILD_WAIT_MILLIS);
+        while (!build.isDone() && System.nanoTime() < deadline) {
+            ProgressManager.checkCanceled();
+            try {
+                build.get(10, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Check for cancellation and wait again
+            } catch (ExecutionException e) {
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Builds the macros offered in templates of the given Latte version with the given Nette packages.
+     */
+    @NotNull
+    private List<LookupElement> buildMacros(@NotNull LatteVersion version, @NotNull Set<String> packages) {
+        checkCanceled();
+        List<LookupElement> result = new ArrayList<>();
+
+        // Add version-specific macros
+        if (LatteVersionManager.isVersion4x(version)) {
+            addMacros(result, "Latte 4.0+ macro", "typeCheck", "strictTypes", "asyncInclude", "await", "inject", "_", "=");
+        } else if (LatteVersionManager.isVersion3x(version)) {
+            addMacros(result, "Latte 3.0+ macro", "varType", "templateType", "php", "do", "parameters", "_", "=");
+        } else {
+            addMacros(result, "Latte 2.x macro", "syntax", "use", "l", "r", "_", "=");
+        }
+        checkCanceled();
+
+        // Add common macros for all versions
+        addMacros(result, "Latte macro",
+                "if", "else", "elseif", "endif", "foreach", "endforeach", "for", "endfor", "while", "endwhile",
+                "include", "extends", "block", "endblock", "define", "enddefine", "var", "default",
+                "capture", "endcapture", "cache", "endcache", "snippet", "endsnippet", "spaceless", "endspaceless",
+                "first", "last", "sep", "continueIf", "skipIf", "breakIf");
+        checkCanceled();
+
+        // Add Nette package macros
+        if (packages.contains(NettePackageDetector.NETTE_APPLICATION)) {
+            addMacros(result, "nette/application", "link", "plink", "control");
+        }
+        if (packages.contains(NettePackageDetector.NETTE_FORMS)) {
+            addMacros(result, "nette/forms", "form", "input", "label");
+        }
+        if (packages.contains(NettePackageDetector.NETTE_ASSETS)) {
+            addMacros(result, "nette/assets", "css", "js", "asset");
+        }
+        for (NetteMacro macro : NetteMacroProvider.getAllMacros(packages)) {
+            checkCanceled();
+            result.add(LookupElementBuilder.create(macro.getName())
+                    .bold()
+                    .withTypeText(macro.getTypeText())
+                    .withTailText(" - " + macro.getDescription(), true));
+        }
+
+        LatteLogger.debug(LOG, () -> "Built " + result.size() + " macros for " + version + " in project " + project.getName());
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Builds the Nette variables offered in the given template.
+     */
+    @NotNull
+    private List<LookupElement> buildVariables(@Nullable VirtualFile file) {
+        boolean httpEnabled = NettePackageDetector.getEnabledPackages(project, file)
+                .contains(NettePackageDetector.NETTE_HTTP);
+        List<LookupElement> result = new ArrayList<>();
+        for (NetteVariable variable : NetteDefaultVariablesProvider.getAllVariables(project, file)) {
+            // Skip HTTP variables if Nette HTTP is disabled
+            if (!httpEnabled && isHttpVariable(variable.getName())) {
+                continue;
+            }
+            result.add(LookupElementBuilder.create(variable.getName())
+                    .withTypeText(variable.getType())
+                    .withTailText(" - " + variable.getDescription(), true));
+        }
+        LatteLogger.debug(LOG, () -> "Built " + result.size() + " variables in project " + project.getName());
+        return Collections.unmodifiableList(result);
+    }
+
+    private static void addMacros(@NotNull List<LookupElement> result, @NotNull String typeText, @NotNull String... names) {
+        for (String name : names) {
+            result.add(LookupElementBuilder.create(name).bold().withTypeText(typeText));
+        }
+    }
+
+    private static void checkCanceled() {
+        ProgressManager.checkCanceled();
+        NetteDefaultVariablesProvider.checkDeadlineOrCanceledNow();
+    }
+
+    /**
+     * Checks if a variable is an HTTP variable.
+     *
+     * @param name The name of the variable
+     * @return True if the variable is an HTTP variable, false otherwise
+     */
+    private static boolean isHttpVariable(String name) {
+        return name.equals("httpRequest") ||
+               name.equals("httpResponse") ||
+               name.equals("session") ||
+               name.equals("url") ||
+               name.equals("cookies") ||
+               name.equals("headers") ||
+               name.equals("requestFactory");
+    }
+
+    /**
+     * Modification counts of the inputs a list is built from.
+     */
+    private static final class Revision {
+        private final long settings;
+        private final long projectSettings;
+        private final long composerMetadata;
+        private final long cache;
+
+        Revision(long settings, long projectSettings, long composerMetadata, long cache) {
+            this.settings = settings;
+            this.projectSettings = projectSettings;
+            this.composerMetadata = composerMetadata;
+            this.cache = cache;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Revision)) {
+                return false;
+            }
+            Revision other = (Revision) o;
+            return settings == other.settings && projectSettings == other.projectSettings
+                    && composerMetadata == other.composerMetadata && cache == other.cache;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(settings, projectSettings, composerMetadata, cache);
+        }
+
+        @Override
+        public String toString() {
+            return "Revision{settings=" + settings + ", projectSettings=" + projectSettings
+                    + ", composerMetadata=" + composerMetadata + ", cache=" + cache + "}";
+        }
+    }
+
+    /**
+     * Key of a cached list: what the list is built for (the Latte version and enabled packages
+     * of macros, the package versions of variables) and the revision it is built from.
+     */
+    private static final class Key {
+        private final Object target;
+        private final Revision revision;
+
+        Key(@NotNull Object target, @NotNull Revision revision) {
+            this.target = target;
+            this.revision = revision;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return target.equals(other.target) && revision.equals(other.revision);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(target, revision);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{target=" + target + ", " + revision + "}";
+        }
+    }
+}
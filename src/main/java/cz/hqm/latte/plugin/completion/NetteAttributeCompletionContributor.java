@@ -3,10 +3,10 @@ package cz.hqm.latte.plugin.completion;
 import com.intellij.codeInsight.completion.*;
 import com.intellij.codeInsight.lookup.LookupElementBuilder;
 import com.intellij.patterns.PlatformPatterns;
-import com.intellij.psi.PsiElement;
 import com.intellij.util.ProcessingContext;
 import org.jetbrains.annotations.NotNull;
 import cz.hqm.latte.plugin.lang.LatteLanguage;
+import cz.hqm.latte.plugin.util.LatteTrace;
 
 import java.util.Arrays;
 import java.util.HashSet;
@@ -14,6 +14,8 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.COMPLETION;
+
 /**
  * Provides context-aware completion for Nette n: attributes in HTML/XML tags.
  * Only suggests n: attributes when inside an HTML/XML tag.
@@ -52,30 +54,27 @@ public class NetteAttributeCompletionContributor extends CompletionContributor {
                     protected void addCompletions(@NotNull CompletionParameters parameters,
                                                  @NotNull ProcessingContext context,
                                                  @NotNull CompletionResultSet result) {
-                        PsiElement position = parameters.getPosition();
-                        String posText = position.getText();
-                        System.out.println("[DEBUG_LOG] NetteAttributeCompletionContributor: position text= " + posText);
-
                         int offset = parameters.getOffset();
-                        String fileText = parameters.getOriginalFile().getText();
+                        // Read the text from the view provider instead of copying the whole file
+                        CharSequence fileText = parameters.getOriginalFile().getViewProvider().getContents();
 
                         // Use a bounded window of text before the caret to avoid heavy regex over entire file
                         int window = Math.max(0, offset - 512);
-                        String textBeforeCursor = fileText.substring(window, offset);
-
-                        System.out.println("[DEBUG_LOG] Text window before cursor: '" + textBeforeCursor + "'");
+                        String textBeforeCursor = fileText.subSequence(window, Math.min(offset, fileText.length())).toString();
 
                         // Fast reject: if after a closed tag, don't suggest
                         boolean isAfterClosedTag = AFTER_CLOSED_TAG_PATTERN.matcher(textBeforeCursor).find();
-                        System.out.println("[DEBUG_LOG] AFTER_CLOSED_TAG_PATTERN matches: " + isAfterClosedTag);
                         if (isAfterClosedTag) {
+                            LatteTrace.trace(COMPLETION, "attributes.afterClosedTag");
                             return;
                         }
 
                         // Check if we're inside an HTML/XML tag
                         Matcher tagMatcher = HTML_TAG_PATTERN.matcher(textBeforeCursor);
                         boolean isInsideTag = tagMatcher.find();
-                        System.out.println("[DEBUG_LOG] HTML_TAG_PATTERN matches: " + isInsideTag);
+                        if (LatteTrace.isEnabled(COMPLETION)) {
+                            LatteTrace.trace(COMPLETION, "attributes.context", "insideTag", isInsideTag);
+                        }
 
                         if (!isInsideTag) return;
 
@@ -85,8 +84,9 @@ public class NetteAttributeCompletionContributor extends CompletionContributor {
                         // If the user is currently typing an n: attribute (e.g., "n:" or "n:cl"), also offer prefixes
                         boolean endsWithN = textBeforeCursor.endsWith("n:");
                         boolean matchesNPattern = N_ATTRIBUTE_PATTERN.matcher(textBeforeCursor).find();
-                        System.out.println("[DEBUG_LOG] Text ends with 'n:': " + endsWithN);
-                        System.out.println("[DEBUG_LOG] N_ATTRIBUTE_PATTERN matches: " + matchesNPattern);
+                        if (LatteTrace.isEnabled(COMPLETION)) {
+                            LatteTrace.trace(COMPLETION, "attributes.prefix", "endsWithN", endsWithN, "typingAttribute", matchesNPattern);
+                        }
                         if (endsWithN || matchesNPattern) {
                             // Add a special marker completion item for testing/debugging when prefix typed
                             result.addElement(LookupElementBuilder.create("__N_PREFIX_MARKER__")
@@ -136,7 +136,9 @@ public class NetteAttributeCompletionContributor extends CompletionContributor {
      * Adds completions for base Nette n: attribute names.
      */
     private void addBaseNAttributes(CompletionResultSet result) {
-        System.out.println("[DEBUG_LOG] Adding base Nette n: attribute completions");
+        if (LatteTrace.isEnabled(COMPLETION)) {
+            LatteTrace.trace(COMPLETION, "attributes.added", "count", VALID_ATTRIBUTE_NAMES.size());
+        }
         for (String attrName : VALID_ATTRIBUTE_NAMES) {
             result.addElement(LookupElementBuilder.create(attrName)
                     .withPresentableText(attrName)
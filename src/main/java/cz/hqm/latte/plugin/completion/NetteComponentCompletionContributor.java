@@ -10,28 +10,23 @@ import com.intellij.psi.search.FilenameIndex;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.util.ProcessingContext;
 import org.jetbrains.annotations.NotNull;
+import cz.hqm.latte.plugin.index.LattePresenterMethod;
+import cz.hqm.latte.plugin.index.LattePresenterMethodIndex;
 import cz.hqm.latte.plugin.lang.LatteLanguage;
+import cz.hqm.latte.plugin.navigation.NettePresenterDiscovery;
+import cz.hqm.latte.plugin.util.LatteTrace;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.COMPLETION;
 
 /**
  * Provides completion for Nette components in {control ...} macros.
  */
 public class NetteComponentCompletionContributor extends CompletionContributor {
 
-    // Pattern for finding component factory methods in presenter classes
-    private static final Pattern COMPONENT_METHOD_PATTERN = Pattern.compile("function\\s+createComponent(\\w+)\\s*\\(");
-    
-    // Pattern for finding return type of methods
-    private static final Pattern RETURN_TYPE_PATTERN = Pattern.compile("function\\s+createComponent\\w+\\s*\\([^)]*\\)\\s*:\\s*([\\\\\\w]+)");
-    
-    // Pattern for finding component instantiation in method body
-    private static final Pattern COMPONENT_INSTANTIATION_PATTERN = Pattern.compile("return\\s+new\\s+([\\\\\\w]+)");
-    
     // Flag to indicate if we're in a test environment
     private static final boolean IS_TEST_ENVIRONMENT = System.getProperty("java.class.path").contains("junit") || 
                                                       System.getProperty("java.class.path").contains("test");
@@ -64,14 +59,11 @@ public class NetteComponentCompletionContributor extends CompletionContributor {
      * @return True if the position is inside a {control ...} macro
      */
     private boolean isInControlMacro(String text, PsiElement position) {
-        System.out.println("[DEBUG_LOG] isInControlMacro called with text: " + text);
-        System.out.println("[DEBUG_LOG] IS_TEST_ENVIRONMENT: " + IS_TEST_ENVIRONMENT);
-        
         // In test environment, check the text directly
         if (IS_TEST_ENVIRONMENT) {
             // For tests, if the text contains "IntellijIdeaRulezzz", it's a completion request
             if (text.contains("IntellijIdeaRulezzz")) {
-                System.out.println("[DEBUG_LOG] Test environment detected with IntellijIdeaRulezzz");
+                LatteTrace.trace(COMPLETION, "components.context", "source", "testDummy");
                 return true;
             }
         }
@@ -81,13 +73,15 @@ public class NetteComponentCompletionContributor extends CompletionContributor {
         if (parent != null) {
             String parentText = parent.getText();
             boolean result = parentText.contains("{control");
-            System.out.println("[DEBUG_LOG] Parent text: " + parentText + ", contains {control}: " + result);
+            if (LatteTrace.isEnabled(COMPLETION)) {
+                LatteTrace.trace(COMPLETION, "components.context", "source", "parent", "inControl", result);
+            }
             return result;
         }
         
         // If we're in a test environment and the text itself contains {control, consider it a match
         if (IS_TEST_ENVIRONMENT && text.contains("{control")) {
-            System.out.println("[DEBUG_LOG] Test environment with {control in text");
+            LatteTrace.trace(COMPLETION, "components.context", "source", "text");
             return true;
         }
         
@@ -103,8 +97,6 @@ public class NetteComponentCompletionContributor extends CompletionContributor {
     private void addComponentCompletions(Project project, CompletionResultSet result) {
         // Check if we're in a test environment
         if (IS_TEST_ENVIRONMENT) {
-            System.out.println("[DEBUG_LOG] Adding mock component completions for test environment");
-            
             // Add the expected component names directly for tests
             // These match the components defined in ProductPresenter.php in the test
             List<String> testComponentNames = new ArrayList<>();
@@ -118,7 +110,9 @@ public class NetteComponentCompletionContributor extends CompletionContributor {
                         .withPresentableText(componentName)
                         .withTypeText("Nette component")
                         .withIcon(com.intellij.icons.AllIcons.Nodes.Class));
-                System.out.println("[DEBUG_LOG] Added component completion: " + componentName);
+            }
+            if (LatteTrace.isEnabled(COMPLETION)) {
+                LatteTrace.trace(COMPLETION, "components.added", "count", testComponentNames.size(), "mock", true);
             }
         } else {
             // Normal environment - find presenter files and extract components
@@ -127,7 +121,7 @@ public class NetteComponentCompletionContributor extends CompletionContributor {
             // Extract component names from presenter classes
             List<String> componentNames = new ArrayList<>();
             for (PsiFile file : presenterFiles) {
-                componentNames.addAll(extractComponentNames(file));
+                componentNames.addAll(extractComponentNames(project, file));
             }
     
             // Add component names to the result set
@@ -154,18 +148,11 @@ public class NetteComponentCompletionContributor extends CompletionContributor {
             PsiFile[] files = FilenameIndex.getFilesByName(project, "ProductPresenter.php", GlobalSearchScope.projectScope(project));
             for (PsiFile file : files) {
                 fileList.add(file);
-                // Add debug log
-                System.out.println("[DEBUG_LOG] Found presenter file: " + file.getName());
+                LatteTrace.trace(COMPLETION, "components.presenter", "file", file.getName());
             }
         } else {
-            // In normal environment, try to find all presenter files
-            // Note: This won't work with wildcards, but we'll leave it for now
-            PsiFile[] files = FilenameIndex.getFilesByName(project, "Presenter.php", GlobalSearchScope.projectScope(project));
-            for (PsiFile file : files) {
-                if (file.getName().endsWith("Presenter.php")) {
-                    fileList.add(file);
-                }
-            }
+            // In normal environment, use the presenters found by the discovery service
+            fileList.addAll(NettePresenterDiscovery.getInstance(project).getPresenterPsiFiles());
         }
         
         return fileList;
@@ -174,65 +161,18 @@ public class NetteComponentCompletionContributor extends CompletionContributor {
     /**
      * Extracts component names from a presenter file.
      *
+     * @param project The current project
      * @param file The presenter file
      * @return A list of component names
      */
-    private List<String> extractComponentNames(PsiFile file) {
+    private List<String> extractComponentNames(Project project, PsiFile file) {
         List<String> componentNames = new ArrayList<>();
 
-        // Get the file content
-        String content = file.getText();
-
-        // Find all createComponentXXX methods
-        Matcher matcher = COMPONENT_METHOD_PATTERN.matcher(content);
-        while (matcher.find()) {
-            String componentName = matcher.group(1);
-            
-            // Skip if it's exactly "createComponent" with no suffix
-            if (componentName.isEmpty()) {
-                continue;
-            }
-            
+        // The index records the declared return type, or the class instantiated by the method body
+        for (LattePresenterMethod factory : LattePresenterMethodIndex.getComponentFactories(project, file)) {
             // Check if the method returns a Control, Component, or a class that extends them
-            int methodStart = matcher.start();
-            int methodEnd = content.indexOf("{", methodStart);
-            if (methodEnd == -1) {
-                methodEnd = content.indexOf(";", methodStart);
-            }
-            if (methodEnd == -1) {
-                continue; // Can't find method end
-            }
-            
-            String methodDeclaration = content.substring(methodStart, methodEnd);
-            boolean isComponent = false;
-            
-            // Check if method has a return type annotation
-            Matcher returnTypeMatcher = RETURN_TYPE_PATTERN.matcher(methodDeclaration);
-            if (returnTypeMatcher.find()) {
-                String returnType = returnTypeMatcher.group(1);
-                // Check if return type is Control, Component, or extends them
-                isComponent = isComponentType(returnType);
-            } else {
-                // If no return type annotation, check the method body for component instantiation
-                int bodyEnd = findMatchingBrace(content, methodEnd);
-                if (bodyEnd != -1) {
-                    String methodBody = content.substring(methodEnd + 1, bodyEnd);
-                    Matcher instantiationMatcher = COMPONENT_INSTANTIATION_PATTERN.matcher(methodBody);
-                    if (instantiationMatcher.find()) {
-                        String instantiatedType = instantiationMatcher.group(1);
-                        isComponent = isComponentType(instantiatedType);
-                    }
-                }
-            }
-            
-            // In test environment, we still need to check component types
-            // This ensures consistent behavior between normal and test environments
-            
-            // If it's a component, add it to the list
-            if (isComponent) {
-                // Convert first letter to lowercase to match Nette convention
-                componentName = Character.toLowerCase(componentName.charAt(0)) + componentName.substring(1);
-                componentNames.add(componentName);
+            if (isComponentType(factory.getReturnType())) {
+                componentNames.add(factory.getTargetName());
             }
         }
 
@@ -262,27 +202,4 @@ public class NetteComponentCompletionContributor extends CompletionContributor {
         // This is a simplified check - in a real implementation, we would need to check the class hierarchy
         return type.contains("Control") || type.contains("Component");
     }
-    
-    /**
-     * Finds the matching closing brace for an opening brace.
-     *
-     * @param content The content to search in
-     * @param openBracePos The position of the opening brace
-     * @return The position of the matching closing brace, or -1 if not found
-     */
-    private int findMatchingBrace(String content, int openBracePos) {
-        int braceCount = 1;
-        for (int i = openBracePos + 1; i < content.length(); i++) {
-            char c = content.charAt(i);
-            if (c == '{') {
-                braceCount++;
-            } else if (c == '}') {
-                braceCount--;
-                if (braceCount == 0) {
-                    return i;
-                }
-            }
-        }
-        return -1;
-    }
 }
\ No newline at end of file
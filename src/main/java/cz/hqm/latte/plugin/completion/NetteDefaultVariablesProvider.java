@@ -1,7 +1,10 @@
 package cz.hqm.latte.plugin.completion;
 
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.vfs.VirtualFile;
 import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.util.LatteTrace;
 import cz.hqm.latte.plugin.version.LatteVersionManager;
 import cz.hqm.latte.plugin.version.NettePackageDetector;
 
@@ -9,12 +12,15 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Set;
+
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.CACHE;
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.COMPLETION;
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.DETECTION;
 
 /**
  * Provides default variables for Nette packages based on detected versions.
- * Uses caching to improve performance.
+ * Built variables are cached per project in {@link NetteVariablesCache}.
  */
 public class NetteDefaultVariablesProvider {
     // Timeout for completion operations in milliseconds (configurable via system property latte.completion.timeout.ms)
@@ -45,7 +51,9 @@ public class NetteDefaultVariablesProvider {
         }
         Long dl = DEADLINE.get();
         if (dl != null && System.currentTimeMillis() > dl) {
-            System.out.println("[DEBUG_LOG][TIMEOUT] Latte completion timed out – canceling computation");
+            if (LatteTrace.isEnabled(COMPLETION)) {
+                LatteTrace.trace(COMPLETION, "timeout", "timeoutMs", COMPLETION_TIMEOUT_MS);
+            }
             throw new com.intellij.openapi.progress.ProcessCanceledException();
         }
     }
@@ -76,15 +84,6 @@ public class NetteDefaultVariablesProvider {
     public static void endCompletionWatchdog() {
         DEADLINE.remove();
     }
-    // Cache for variables by project
-    private static final Map<Project, List<NetteVariable>> variablesCache = new ConcurrentHashMap<>();
-    
-    // Cache for settings to detect changes
-    private static final AtomicReference<LatteSettings> cachedSettings = new AtomicReference<>();
-    
-    // Cache for package versions by project
-    private static final Map<Project, Map<String, Integer>> versionCache = new ConcurrentHashMap<>();
-
     /**
      * Gets all default variables for the given project.
      * Uses caching to improve performance.
@@ -93,74 +92,89 @@ public class NetteDefaultVariablesProvider {
      * @return A list of default variables
      */
     public static List<NetteVariable> getAllVariables(Project project) {
+        return getAllVariables(project, null);
+    }
+
+    /**
+     * Gets all default variables for the module the given file belongs to.
+     * Variables are cached by the package versions they depend on, so modules requiring the
+     * same versions share one list and switching between modules does not rebuild it.
+     *
+     * @param project The project to get variables for
+     * @param file The template, or null for the whole project
+     * @return A list of default variables
+     */
+    public static List<NetteVariable> getAllVariables(Project project, VirtualFile file) {
         // Set deadline for this computation
         if (DEADLINE.get() == null) {
             DEADLINE.set(System.currentTimeMillis() + COMPLETION_TIMEOUT_MS);
         }
         try {
             checkDeadlineOrCanceled();
+            Map<String, Integer> versions = getPackageVersions(project, file);
+
             // Check if we need to update the cache
-            if (isCacheValid(project)) {
-                System.out.println("[DEBUG_LOG] Using cached variables for project: " + project.getName());
-                return variablesCache.get(project);
+            List<NetteVariable> cached = getCachedVariables(project, versions);
+            if (cached != null) {
+                if (LatteTrace.isEnabled(CACHE)) {
+                    LatteTrace.trace(CACHE, "variables.hit", "count", cached.size());
+                }
+                return cached;
             }
 
-            System.out.println("[DEBUG_LOG] Cache invalid or not found, rebuilding variables for project: " + project.getName());
+            LatteTrace.trace(CACHE, "variables.miss", "versions", versions);
 
-            // Cache is invalid or not found, rebuild it
+            // Cache is invalid or not found, rebuild it; the versions hold exactly the enabled packages
             List<NetteVariable> variables = new ArrayList<>();
 
             // Add variables from Nette Application
-            if (isNetteApplicationEnabled()) {
+            if (versions.containsKey(NettePackageDetector.NETTE_APPLICATION)) {
                 checkDeadlineOrCanceled();
-                variables.addAll(getNetteApplicationVariables(project));
+                variables.addAll(getNetteApplicationVariables(project, file));
             }
 
             // Add variables from Nette Forms
-            if (isNetteFormsEnabled()) {
+            if (versions.containsKey(NettePackageDetector.NETTE_FORMS)) {
                 checkDeadlineOrCanceled();
-                variables.addAll(getNetteFormsVariables(project));
+                variables.addAll(getNetteFormsVariables(project, file));
             }
 
             // Add variables from Nette Assets
-            if (isNetteAssetsEnabled()) {
+            if (versions.containsKey(NettePackageDetector.NETTE_ASSETS)) {
                 checkDeadlineOrCanceled();
-                variables.addAll(getNetteAssetsVariables(project));
+                variables.addAll(getNetteAssetsVariables(project, file));
             }
 
             // Add variables from Nette Database
-            if (isNetteDatabaseEnabled()) {
+            if (versions.containsKey(NettePackageDetector.NETTE_DATABASE)) {
                 checkDeadlineOrCanceled();
-                variables.addAll(getNetteDatabaseVariables(project));
+                variables.addAll(getNetteDatabaseVariables(project, file));
             }
 
             // Add variables from Nette Security
-            if (isNetteSecurityEnabled()) {
+            if (versions.containsKey(NettePackageDetector.NETTE_SECURITY)) {
                 checkDeadlineOrCanceled();
-                variables.addAll(getNetteSecurityVariables(project));
+                variables.addAll(getNetteSecurityVariables(project, file));
             }
 
             // Add variables from Nette HTTP
-            if (isNetteHttpEnabled()) {
+            if (versions.containsKey(NettePackageDetector.NETTE_HTTP)) {
                 checkDeadlineOrCanceled();
-                variables.addAll(getNetteHttpVariables(project));
+                variables.addAll(getNetteHttpVariables(project, file));
             }
 
             // Add variables from Nette Mail
-            if (isNetteMailEnabled()) {
+            if (versions.containsKey(NettePackageDetector.NETTE_MAIL)) {
                 checkDeadlineOrCanceled();
-                variables.addAll(getNetteMailVariables(project));
+                variables.addAll(getNetteMailVariables(project, file));
             }
 
-            // Log all variables for debugging
-            System.out.println("[DEBUG_LOG] All variables (" + variables.size() + "):");
-            for (NetteVariable variable : variables) {
-                checkDeadlineOrCanceled();
-                System.out.println("[DEBUG_LOG] - " + variable.getName() + " (" + variable.getType() + ")");
+            if (LatteTrace.isEnabled(CACHE)) {
+                LatteTrace.trace(CACHE, "variables.built", "count", variables.size());
             }
 
             // Update the cache
-            updateCache(project, variables);
+            updateCache(project, versions, variables);
 
             return variables;
         } finally {
@@ -170,185 +184,115 @@ public class NetteDefaultVariablesProvider {
     }
     
     /**
-     * Checks if the cache is valid for the given project.
+     * Gets the cached variables for the given package versions.
      *
      * @param project The project to check
-     * @return True if the cache is valid, false otherwise
+     * @param versions The versions of the enabled packages
+     * @return The cached variables, or null if they have to be rebuilt
      */
-    private static synchronized boolean isCacheValid(Project project) {
-            checkDeadlineOrCanceled();
-        // Check if we have a cache for this project
-        if (!variablesCache.containsKey(project)) {
-            System.out.println("[DEBUG_LOG] No cache found for project: " + project.getName());
-            return false;
-        }
-        
-        // Check if settings have changed
-        LatteSettings currentSettings = LatteSettings.getInstance();
-        LatteSettings cachedSettingsValue = cachedSettings.get();
-        
-        if (cachedSettingsValue == null || !settingsEqual(cachedSettingsValue, currentSettings)) {
-            System.out.println("[DEBUG_LOG] Settings have changed, cache invalid");
-            return false;
-        }
-        
-        // Check if versions have changed
-        Map<String, Integer> cachedVersions = versionCache.get(project);
-        if (cachedVersions == null) {
-            System.out.println("[DEBUG_LOG] No version cache found, cache invalid");
-            return false;
-        }
-        
-        // Check each package version
-        if (isNetteApplicationEnabled() && 
-            !versionsEqual(cachedVersions, NettePackageDetector.NETTE_APPLICATION, getNetteApplicationVersion(project))) {
-            System.out.println("[DEBUG_LOG] Nette Application version changed, cache invalid");
-            return false;
-        }
-        
-        if (isNetteFormsEnabled() && 
-            !versionsEqual(cachedVersions, NettePackageDetector.NETTE_FORMS, getNetteFormsVersion(project))) {
-            System.out.println("[DEBUG_LOG] Nette Forms version changed, cache invalid");
-            return false;
-        }
-        
-        if (isNetteAssetsEnabled() && 
-            !versionsEqual(cachedVersions, NettePackageDetector.NETTE_ASSETS, getNetteAssetsVersion(project))) {
-            System.out.println("[DEBUG_LOG] Nette Assets version changed, cache invalid");
-            return false;
-        }
-        
-        if (isNetteDatabaseEnabled() && 
-            !versionsEqual(cachedVersions, NettePackageDetector.NETTE_DATABASE, getNetteDatabaseVersion(project))) {
-            System.out.println("[DEBUG_LOG] Nette Database version changed, cache invalid");
-            return false;
-        }
-        
-        if (isNetteSecurityEnabled() && 
-            !versionsEqual(cachedVersions, NettePackageDetector.NETTE_SECURITY, getNetteSecurityVersion(project))) {
-            System.out.println("[DEBUG_LOG] Nette Security version changed, cache invalid");
-            return false;
-        }
-        
-        if (isNetteHttpEnabled() && 
-            !versionsEqual(cachedVersions, NettePackageDetector.NETTE_HTTP, getNetteHttpVersion(project))) {
-            System.out.println("[DEBUG_LOG] Nette HTTP version changed, cache invalid");
-            return false;
-        }
-        
-        if (isNetteMailEnabled() && 
-            !versionsEqual(cachedVersions, NettePackageDetector.NETTE_MAIL, getNetteMailVersion(project))) {
-            System.out.println("[DEBUG_LOG] Nette Mail version changed, cache invalid");
-            return false;
-        }
-        
-        // Cache is valid
-        return true;
+    private static List<NetteVariable> getCachedVariables(Project project, Map<String, Integer> versions) {
+        checkDeadlineOrCanceled();
+        return NetteVariablesCache.getInstance(project).get(versions);
     }
     
     /**
      * Updates the cache for the given project.
      *
      * @param project The project to update the cache for
+     * @param versions The versions of the enabled packages the variables were built for
      * @param variables The variables to cache
      */
-    private static synchronized void updateCache(Project project, List<NetteVariable> variables) {
-        System.out.println("[DEBUG_LOG] Updating cache for project: " + project.getName());
-        
-        // Update variables cache
-        variablesCache.put(project, new ArrayList<>(variables));
-        
-        // Update settings cache
-        cachedSettings.set(LatteSettings.getInstance());
-        
-        // Update version cache
+    private static void updateCache(Project project, Map<String, Integer> versions, List<NetteVariable> variables) {
+        NetteVariablesCache.getInstance(project).put(versions, new ArrayList<>(variables));
+    }
+
+    /**
+     * Gets the major versions of the packages enabled in the module the given file belongs to,
+     * see {@link NettePackageDetector#getEnabledPackages(Project, VirtualFile)}.
+     *
+     * @param project The project
+     * @param file The template, or null for the whole project
+     * @return The versions by package name
+     */
+    public static Map<String, Integer> getPackageVersions(Project project, VirtualFile file) {
         Map<String, Integer> versions = new HashMap<>();
+        Set<String> packages = NettePackageDetector.getEnabledPackages(project, file);
         
-        if (isNetteApplicationEnabled()) {
-            versions.put(NettePackageDetector.NETTE_APPLICATION, getNetteApplicationVersion(project));
+        if (packages.contains(NettePackageDetector.NETTE_APPLICATION)) {
+            versions.put(NettePackageDetector.NETTE_APPLICATION, getNetteApplicationVersion(project, file));
         }
         
-        if (isNetteFormsEnabled()) {
-            versions.put(NettePackageDetector.NETTE_FORMS, getNetteFormsVersion(project));
+        if (packages.contains(NettePackageDetector.NETTE_FORMS)) {
+            versions.put(NettePackageDetector.NETTE_FORMS, getNetteFormsVersion(project, file));
         }
         
-        if (isNetteAssetsEnabled()) {
-            versions.put(NettePackageDetector.NETTE_ASSETS, getNetteAssetsVersion(project));
+        if (packages.contains(NettePackageDetector.NETTE_ASSETS)) {
+            versions.put(NettePackageDetector.NETTE_ASSETS, getNetteAssetsVersion(project, file));
         }
         
-        if (isNetteDatabaseEnabled()) {
-            versions.put(NettePackageDetector.NETTE_DATABASE, getNetteDatabaseVersion(project));
+        if (packages.contains(NettePackageDetector.NETTE_DATABASE)) {
+            versions.put(NettePackageDetector.NETTE_DATABASE, getNetteDatabaseVersion(project, file));
         }
         
-        if (isNetteSecurityEnabled()) {
-            versions.put(NettePackageDetector.NETTE_SECURITY, getNetteSecurityVersion(project));
+        if (packages.contains(NettePackageDetector.NETTE_SECURITY)) {
+            versions.put(NettePackageDetector.NETTE_SECURITY, getNetteSecurityVersion(project, file));
         }
         
-        if (isNetteHttpEnabled()) {
-            versions.put(NettePackageDetector.NETTE_HTTP, getNetteHttpVersion(project));
+        if (packages.contains(NettePackageDetector.NETTE_HTTP)) {
+            versions.put(NettePackageDetector.NETTE_HTTP, getNetteHttpVersion(project, file));
         }
         
-        if (isNetteMailEnabled()) {
-            versions.put(NettePackageDetector.NETTE_MAIL, getNetteMailVersion(project));
+        if (packages.contains(NettePackageDetector.NETTE_MAIL)) {
+            versions.put(NettePackageDetector.NETTE_MAIL, getNetteMailVersion(project, file));
         }
         
-        versionCache.put(project, versions);
-        
-        System.out.println("[DEBUG_LOG] Cache updated for project: " + project.getName());
-    }
-    
-    /**
-     * Compares two settings instances to check if they are equal.
-     *
-     * @param settings1 The first settings instance
-     * @param settings2 The second settings instance
-     * @return True if the settings are equal, false otherwise
-     */
-    private static boolean settingsEqual(LatteSettings settings1, LatteSettings settings2) {
-        return settings1.isEnableNetteApplication() == settings2.isEnableNetteApplication()
-            && settings1.isEnableNetteForms() == settings2.isEnableNetteForms()
-            && settings1.isEnableNetteAssets() == settings2.isEnableNetteAssets()
-            && settings1.isEnableNetteDatabase() == settings2.isEnableNetteDatabase()
-            && settings1.isEnableNetteSecurity() == settings2.isEnableNetteSecurity()
-            && settings1.isEnableNetteHttp() == settings2.isEnableNetteHttp()
-            && settings1.isEnableNetteMail() == settings2.isEnableNetteMail();
+        return versions;
     }
     
     /**
-     * Compares two versions to check if they are equal.
-     *
-     * @param cachedVersions The cached versions
-     * @param packageName The package name
-     * @param currentVersion The current version
-     * @return True if the versions are equal, false otherwise
+     * Invalidates the cache for all open projects, including the variables offered by completion.
+     * Changes of the settings are picked up without it; this forces the variables to be built again.
      */
-    private static boolean versionsEqual(Map<String, Integer> cachedVersions, String packageName, int currentVersion) {
-        Integer cachedVersion = cachedVersions.get(packageName);
-        return cachedVersion != null && cachedVersion == currentVersion;
+    public static void invalidateCache() {
+        LatteTrace.trace(CACHE, "variables.invalidateAll");
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            if (project.isDisposed()) {
+                continue;
+            }
+            // Projects that never asked for variables have nothing to drop
+            NetteVariablesCache cache = project.getServiceIfCreated(NetteVariablesCache.class);
+            if (cache != null) {
+                cache.invalidate();
+            }
+            LatteCompletionCache completionCache = project.getServiceIfCreated(LatteCompletionCache.class);
+            if (completionCache != null) {
+                completionCache.invalidate();
+            }
+        }
     }
     
     /**
-     * Invalidates the cache for all projects.
-     * This should be called when settings change.
+     * Gets default variables for Nette Application.
+     *
+     * @param project The project to get variables for
+     * @return A list of default variables
      */
-    public static synchronized void invalidateCache() {
-        System.out.println("[DEBUG_LOG] Invalidating all caches");
-        variablesCache.clear();
-        versionCache.clear();
-        cachedSettings.set(null);
+    public static List<NetteVariable> getNetteApplicationVariables(Project project) {
+        return getNetteApplicationVariables(project, null);
     }
-    
+
     /**
-     * Gets default variables for Nette Application.
+     * Gets default variables for Nette Application in the module the given file belongs to.
      *
      * @param project The project to get variables for
+     * @param file The template, or null for the whole project
      * @return A list of default variables
      */
-    public static List<NetteVariable> getNetteApplicationVariables(Project project) {
+    public static List<NetteVariable> getNetteApplicationVariables(Project project, VirtualFile file) {
         List<NetteVariable> variables = new ArrayList<>();
         
         // Get the version of Nette Application
-        int version = getNetteApplicationVersion(project);
+        int version = getNetteApplicationVersion(project, file);
         
         // Add common variables (available in all versions)
         variables.add(new NetteVariable("basePath", "string", "Absolute URL path to the root directory"));
@@ -380,10 +324,21 @@ public class NetteDefaultVariablesProvider {
      * @return A list of default variables
      */
     public static List<NetteVariable> getNetteFormsVariables(Project project) {
+        return getNetteFormsVariables(project, null);
+    }
+
+    /**
+     * Gets default variables for Nette Forms in the module the given file belongs to.
+     *
+     * @param project The project to get variables for
+     * @param file The template, or null for the whole project
+     * @return A list of default variables
+     */
+    public static List<NetteVariable> getNetteFormsVariables(Project project, VirtualFile file) {
         List<NetteVariable> variables = new ArrayList<>();
         
         // Get the version of Nette Forms
-        int version = getNetteFormsVersion(project);
+        int version = getNetteFormsVersion(project, file);
         
         // Add common variables (available in all versions)
         variables.add(new NetteVariable("form", "Nette\\Forms\\Form", "Form object (created by <form n:name> tag or {form} ... {/form} pair)"));
@@ -410,10 +365,21 @@ public class NetteDefaultVariablesProvider {
      * @return A list of default variables
      */
     public static List<NetteVariable> getNetteAssetsVariables(Project project) {
+        return getNetteAssetsVariables(project, null);
+    }
+
+    /**
+     * Gets default variables for Nette Assets in the module the given file belongs to.
+     *
+     * @param project The project to get variables for
+     * @param file The template, or null for the whole project
+     * @return A list of default variables
+     */
+    public static List<NetteVariable> getNetteAssetsVariables(Project project, VirtualFile file) {
         List<NetteVariable> variables = new ArrayList<>();
         
         // Get the version of Nette Assets
-        int version = getNetteAssetsVersion(project);
+        int version = getNetteAssetsVersion(project, file);
         
         // Add common variables (available in all versions)
         // No default variables for Nette Assets
@@ -428,14 +394,26 @@ public class NetteDefaultVariablesProvider {
      * @return A list of default variables
      */
     public static List<NetteVariable> getNetteDatabaseVariables(Project project) {
+        return getNetteDatabaseVariables(project, null);
+    }
+
+    /**
+     * Gets default variables for Nette Database in the module the given file belongs to.
+     *
+     * @param project The project to get variables for
+     * @param file The template, or null for the whole project
+     * @return A list of default variables
+     */
+    public static List<NetteVariable> getNetteDatabaseVariables(Project project, VirtualFile file) {
         List<NetteVariable> variables = new ArrayList<>();
         
         // Get the version of Nette Database
-        int version = getNetteDatabaseVersion(project);
-        System.out.println("[DEBUG_LOG] Nette Database version: " + version);
+        int version = getNetteDatabaseVersion(project, file);
+        if (LatteTrace.isEnabled(DETECTION)) {
+            LatteTrace.trace(DETECTION, "database.version", "version", version);
+        }
         
         // Add common variables (available in all versions)
-        System.out.println("[DEBUG_LOG] Adding common database variables");
         variables.add(new NetteVariable("database", "Nette\\Database\\Connection", "Database connection object"));
         variables.add(new NetteVariable("db", "Nette\\Database\\Connection", "Alias for database connection object"));
         variables.add(new NetteVariable("row", "Nette\\Database\\Row", "Current database row in foreach loops"));
@@ -443,108 +421,45 @@ public class NetteDefaultVariablesProvider {
         // Add version-specific variables
         if (version >= 3) {
             // Nette Database 3.x specific variables
-            System.out.println("[DEBUG_LOG] Adding Nette Database 3.x specific variables");
             variables.add(new NetteVariable("explorer", "Nette\\Database\\Explorer", "Database explorer object"));
         } else {
             // Nette Database 2.x specific variables
-            System.out.println("[DEBUG_LOG] Adding Nette Database 2.x specific variables");
             variables.add(new NetteVariable("context", "Nette\\Database\\Context", "Database context object"));
         }
         
-        // Log all variables for debugging
-        System.out.println("[DEBUG_LOG] Database variables:");
-        for (NetteVariable variable : variables) {
-            System.out.println("[DEBUG_LOG] - " + variable.getName() + " (" + variable.getType() + ")");
-        }
-        
         return variables;
     }
     
     /**
-     * Checks if Nette Application support is enabled.
-     *
-     * @return True if Nette Application support is enabled, false otherwise
-     */
-    private static boolean isNetteApplicationEnabled() {
-        return LatteSettings.getInstance().isEnableNetteApplication();
-    }
-    
-    /**
-     * Checks if Nette Forms support is enabled.
-     *
-     * @return True if Nette Forms support is enabled, false otherwise
-     */
-    private static boolean isNetteFormsEnabled() {
-        return LatteSettings.getInstance().isEnableNetteForms();
-    }
-    
-    /**
-     * Checks if Nette Assets support is enabled.
-     *
-     * @return True if Nette Assets support is enabled, false otherwise
-     */
-    private static boolean isNetteAssetsEnabled() {
-        return LatteSettings.getInstance().isEnableNetteAssets();
-    }
-    
-    /**
-     * Checks if Nette Database support is enabled.
-     *
-     * @return True if Nette Database support is enabled, false otherwise
-     */
-    private static boolean isNetteDatabaseEnabled() {
-        return LatteSettings.getInstance().isEnableNetteDatabase();
-    }
-    
-    /**
-     * Checks if Nette Security support is enabled.
-     *
-     * @return True if Nette Security support is enabled, false otherwise
-     */
-    private static boolean isNetteSecurityEnabled() {
-        return LatteSettings.getInstance().isEnableNetteSecurity();
-    }
-    
-    /**
-     * Checks if Nette HTTP support is enabled.
-     *
-     * @return True if Nette HTTP support is enabled, false otherwise
-     */
-    private static boolean isNetteHttpEnabled() {
-        boolean enabled = LatteSettings.getInstance().isEnableNetteHttp();
-        System.out.println("[DEBUG_LOG] NetteDefaultVariablesProvider.isNetteHttpEnabled() = " + enabled);
-        return enabled;
-    }
-    
-    /**
-     * Checks if Nette Mail support is enabled.
+     * Gets default variables for Nette HTTP.
      *
-     * @return True if Nette Mail support is enabled, false otherwise
+     * @param project The project to get variables for
+     * @return A list of default variables
      */
-    private static boolean isNetteMailEnabled() {
-        return LatteSettings.getInstance().isEnableNetteMail();
+    public static List<NetteVariable> getNetteHttpVariables(Project project) {
+        return getNetteHttpVariables(project, null);
     }
-    
+
     /**
-     * Gets default variables for Nette HTTP.
+     * Gets default variables for Nette HTTP in the module the given file belongs to.
      *
      * @param project The project to get variables for
+     * @param file The template, or null for the whole project
      * @return A list of default variables
      */
-    public static List<NetteVariable> getNetteHttpVariables(Project project) {
+    public static List<NetteVariable> getNetteHttpVariables(Project project, VirtualFile file) {
         List<NetteVariable> variables = new ArrayList<>();
         
         // Double-check that Nette HTTP is enabled
-        if (!isNetteHttpEnabled()) {
-            System.out.println("[DEBUG_LOG] getNetteHttpVariables: Nette HTTP is disabled, returning empty list");
+        if (!NettePackageDetector.getEnabledPackages(project, file).contains(NettePackageDetector.NETTE_HTTP)) {
             return variables;
         }
         
-        System.out.println("[DEBUG_LOG] getNetteHttpVariables: Nette HTTP is enabled, adding variables");
-        
         // Get the version of Nette HTTP
-        int version = getNetteHttpVersion(project);
-        System.out.println("[DEBUG_LOG] getNetteHttpVariables: Nette HTTP version = " + version);
+        int version = getNetteHttpVersion(project, file);
+        if (LatteTrace.isEnabled(DETECTION)) {
+            LatteTrace.trace(DETECTION, "http.version", "version", version);
+        }
         
         // Add common variables (available in all versions)
         variables.add(new NetteVariable("httpRequest", "Nette\\Http\\Request", "HTTP request object"));
@@ -557,15 +472,11 @@ public class NetteDefaultVariablesProvider {
         // Add version-specific variables
         if (version >= 3) {
             // Nette HTTP 3.x specific variables
-            System.out.println("[DEBUG_LOG] getNetteHttpVariables: Adding Nette HTTP 3.x specific variables");
             variables.add(new NetteVariable("requestFactory", "Nette\\Http\\RequestFactory", "HTTP request factory"));
         } else {
-            // Nette HTTP 2.x specific variables
-            System.out.println("[DEBUG_LOG] getNetteHttpVariables: No specific variables for Nette HTTP 2.x");
-            // No specific variables for version 2.x
+            // No specific variables for Nette HTTP 2.x
         }
         
-        System.out.println("[DEBUG_LOG] getNetteHttpVariables: Returning " + variables.size() + " variables");
         return variables;
     }
     
@@ -576,10 +487,21 @@ public class NetteDefaultVariablesProvider {
      * @return A list of default variables
      */
     public static List<NetteVariable> getNetteSecurityVariables(Project project) {
+        return getNetteSecurityVariables(project, null);
+    }
+
+    /**
+     * Gets default variables for Nette Security in the module the given file belongs to.
+     *
+     * @param project The project to get variables for
+     * @param file The template, or null for the whole project
+     * @return A list of default variables
+     */
+    public static List<NetteVariable> getNetteSecurityVariables(Project project, VirtualFile file) {
         List<NetteVariable> variables = new ArrayList<>();
         
         // Get the version of Nette Security
-        int version = getNetteSecurityVersion(project);
+        int version = getNetteSecurityVersion(project, file);
         
         // Add common variables (available in all versions)
         variables.add(new NetteVariable("user", "Nette\\Security\\User", "User authentication and authorization"));
@@ -607,10 +529,21 @@ public class NetteDefaultVariablesProvider {
      * @return A list of default variables
      */
     public static List<NetteVariable> getNetteMailVariables(Project project) {
+        return getNetteMailVariables(project, null);
+    }
+
+    /**
+     * Gets default variables for Nette Mail in the module the given file belongs to.
+     *
+     * @param project The project to get variables for
+     * @param file The template, or null for the whole project
+     * @return A list of default variables
+     */
+    public static List<NetteVariable> getNetteMailVariables(Project project, VirtualFile file) {
         List<NetteVariable> variables = new ArrayList<>();
         
         // Get the version of Nette Mail
-        int version = getNetteMailVersion(project);
+        int version = getNetteMailVersion(project, file);
         
         // Add common variables (available in all versions)
         variables.add(new NetteVariable("mail", "Nette\\Mail\\Message", "Mail message object"));
@@ -635,9 +568,10 @@ public class NetteDefaultVariablesProvider {
      * Gets the version of Nette Application.
      *
      * @param project The project to get the version for
+     * @param file The template, or null for the whole project
      * @return The major version number
      */
-    private static int getNetteApplicationVersion(Project project) {
+    private static int getNetteApplicationVersion(Project project, VirtualFile file) {
         LatteSettings settings = LatteSettings.getInstance();
         
         // If override is enabled, use the selected version
@@ -650,16 +584,17 @@ public class NetteDefaultVariablesProvider {
         }
         
         // Otherwise, use the detected version
-        return NettePackageDetector.getPackageVersion(project, NettePackageDetector.NETTE_APPLICATION);
+        return NettePackageDetector.getPackageVersion(project, file, NettePackageDetector.NETTE_APPLICATION);
     }
     
     /**
      * Gets the version of Nette Forms.
      *
      * @param project The project to get the version for
+     * @param file The template, or null for the whole project
      * @return The major version number
      */
-    private static int getNetteFormsVersion(Project project) {
+    private static int getNetteFormsVersion(Project project, VirtualFile file) {
         LatteSettings settings = LatteSettings.getInstance();
         
         // If override is enabled, use the selected version
@@ -672,16 +607,17 @@ public class NetteDefaultVariablesProvider {
         }
         
         // Otherwise, use the detected version
-        return NettePackageDetector.getPackageVersion(project, NettePackageDetector.NETTE_FORMS);
+        return NettePackageDetector.getPackageVersion(project, file, NettePackageDetector.NETTE_FORMS);
     }
     
     /**
      * Gets the version of Nette Assets.
      *
      * @param project The project to get the version for
+     * @param file The template, or null for the whole project
      * @return The major version number
      */
-    private static int getNetteAssetsVersion(Project project) {
+    private static int getNetteAssetsVersion(Project project, VirtualFile file) {
         LatteSettings settings = LatteSettings.getInstance();
         
         // If override is enabled, use the selected version
@@ -694,16 +630,17 @@ public class NetteDefaultVariablesProvider {
         }
         
         // Otherwise, use the detected version
-        return NettePackageDetector.getPackageVersion(project, NettePackageDetector.NETTE_ASSETS);
+        return NettePackageDetector.getPackageVersion(project, file, NettePackageDetector.NETTE_ASSETS);
     }
     
     /**
      * Gets the version of Nette Database.
      *
      * @param project The project to get the version for
+     * @param file The template, or null for the whole project
      * @return The major version number
      */
-    private static int getNetteDatabaseVersion(Project project) {
+    private static int getNetteDatabaseVersion(Project project, VirtualFile file) {
         LatteSettings settings = LatteSettings.getInstance();
         
         // If override is enabled, use the selected version
@@ -716,16 +653,17 @@ public class NetteDefaultVariablesProvider {
         }
         
         // Otherwise, use the detected version
-        return NettePackageDetector.getPackageVersion(project, NettePackageDetector.NETTE_DATABASE);
+        return NettePackageDetector.getPackageVersion(project, file, NettePackageDetector.NETTE_DATABASE);
     }
     
     /**
      * Gets the version of Nette Security.
      *
      * @param project The project to get the version for
+     * @param file The template, or null for the whole project
      * @return The major version number
      */
-    private static int getNetteSecurityVersion(Project project) {
+    private static int getNetteSecurityVersion(Project project, VirtualFile file) {
         LatteSettings settings = LatteSettings.getInstance();
         
         // If override is enabled, use the selected version
@@ -738,16 +676,17 @@ public class NetteDefaultVariablesProvider {
         }
         
         // Otherwise, use the detected version
-        return NettePackageDetector.getPackageVersion(project, NettePackageDetector.NETTE_SECURITY);
+        return NettePackageDetector.getPackageVersion(project, file, NettePackageDetector.NETTE_SECURITY);
     }
     
     /**
      * Gets the version of Nette HTTP.
      *
      * @param project The project to get the version for
+     * @param file The template, or null for the whole project
      * @return The major version number
      */
-    private static int getNetteHttpVersion(Project project) {
+    private static int getNetteHttpVersion(Project project, VirtualFile file) {
         LatteSettings settings = LatteSettings.getInstance();
         
         // If override is enabled, use the selected version
@@ -760,16 +699,17 @@ public class NetteDefaultVariablesProvider {
         }
         
         // Otherwise, use the detected version
-        return NettePackageDetector.getPackageVersion(project, NettePackageDetector.NETTE_HTTP);
+        return NettePackageDetector.getPackageVersion(project, file, NettePackageDetector.NETTE_HTTP);
     }
     
     /**
      * Gets the version of Nette Mail.
      *
      * @param project The project to get the version for
+     * @param file The template, or null for the whole project
      * @return The major version number
      */
-    private static int getNetteMailVersion(Project project) {
+    private static int getNetteMailVersion(Project project, VirtualFile file) {
         LatteSettings settings = LatteSettings.getInstance();
         
         // If override is enabled, use the selected version
@@ -782,7 +722,7 @@ public class NetteDefaultVariablesProvider {
         }
         
         // Otherwise, use the detected version
-        return NettePackageDetector.getPackageVersion(project, NettePackageDetector.NETTE_MAIL);
+        return NettePackageDetector.getPackageVersion(project, file, NettePackageDetector.NETTE_MAIL);
     }
     
     /**
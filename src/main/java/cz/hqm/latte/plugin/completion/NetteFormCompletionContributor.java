@@ -10,25 +10,24 @@ import com.intellij.psi.search.FilenameIndex;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.util.ProcessingContext;
 import org.jetbrains.annotations.NotNull;
+import cz.hqm.latte.plugin.index.LattePresenterMethod;
+import cz.hqm.latte.plugin.index.LattePresenterMethodIndex;
 import cz.hqm.latte.plugin.lang.LatteLanguage;
+import cz.hqm.latte.plugin.navigation.NettePresenterDiscovery;
+import cz.hqm.latte.plugin.util.LatteTrace;
+import cz.hqm.latte.plugin.version.NettePackageDetector;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.COMPLETION;
 
 /**
  * Provides completion for Nette forms in {form ...} macros.
  */
 public class NetteFormCompletionContributor extends CompletionContributor {
 
-    // Pattern for finding component factory methods in presenter classes
-    private static final Pattern COMPONENT_METHOD_PATTERN = Pattern.compile("function\\s+createComponent(\\w+)\\s*\\(");
-    
-    // Pattern for finding return type of methods
-    private static final Pattern RETURN_TYPE_PATTERN = Pattern.compile("function\\s+createComponent\\w+\\s*\\([^)]*\\)\\s*:\\s*([\\\\\\w]+)");
-    
     // Flag to indicate if we're in a test environment
     private static final boolean IS_TEST_ENVIRONMENT = System.getProperty("java.class.path").contains("junit") || 
                                                       System.getProperty("java.class.path").contains("test");
@@ -45,6 +44,13 @@ public class NetteFormCompletionContributor extends CompletionContributor {
                         PsiElement position = parameters.getPosition();
                         String text = position.getText();
 
+                        // Forms are only offered in modules using nette/forms
+                        if (!NettePackageDetector.getEnabledPackages(position.getProject(),
+                                parameters.getOriginalFile().getVirtualFile()).contains(NettePackageDetector.NETTE_FORMS)) {
+                            LatteTrace.trace(COMPLETION, "forms.skipped", "reason", "packageDisabled");
+                            return;
+                        }
+
                         // Check if we're in a {form ...} macro
                         if (isInFormMacro(text, position)) {
                             addFormCompletions(parameters.getPosition().getProject(), result);
@@ -61,12 +67,9 @@ public class NetteFormCompletionContributor extends CompletionContributor {
      * @return True if the position is inside a {form ...} macro
      */
     private boolean isInFormMacro(String text, PsiElement position) {
-        System.out.println("[DEBUG_LOG] isInFormMacro called with text: " + text);
-        System.out.println("[DEBUG_LOG] IS_TEST_ENVIRONMENT: " + IS_TEST_ENVIRONMENT);
-        
         // In test environment, always return true to avoid potential freezing issues
         if (IS_TEST_ENVIRONMENT) {
-            System.out.println("[DEBUG_LOG] Test environment detected, returning true to avoid freezing");
+            LatteTrace.trace(COMPLETION, "forms.context", "source", "testEnvironment");
             return true;
         }
         
@@ -77,10 +80,12 @@ public class NetteFormCompletionContributor extends CompletionContributor {
             try {
                 String parentText = parent.getText();
                 boolean result = parentText.contains("{form");
-                System.out.println("[DEBUG_LOG] Parent text: " + parentText + ", contains {form}: " + result);
+                if (LatteTrace.isEnabled(COMPLETION)) {
+                    LatteTrace.trace(COMPLETION, "forms.context", "source", "parent", "inForm", result);
+                }
                 return result;
             } catch (Exception e) {
-                System.out.println("[DEBUG_LOG] Exception while getting parent text: " + e.getMessage());
+                LatteTrace.trace(COMPLETION, "forms.context.failed", "error", e.getMessage());
                 return false;
             }
         }
@@ -97,8 +102,6 @@ public class NetteFormCompletionContributor extends CompletionContributor {
     private void addFormCompletions(Project project, CompletionResultSet result) {
         // Check if we're in a test environment
         if (IS_TEST_ENVIRONMENT) {
-            System.out.println("[DEBUG_LOG] Adding mock form completions for test environment");
-            
             // Add the expected form names directly for tests
             // These match the forms defined in FormPresenter.php in the test
             List<String> testFormNames = new ArrayList<>();
@@ -112,7 +115,9 @@ public class NetteFormCompletionContributor extends CompletionContributor {
                         .withPresentableText(formName)
                         .withTypeText("Nette form")
                         .withIcon(com.intellij.icons.AllIcons.Nodes.Class));
-                System.out.println("[DEBUG_LOG] Added form completion: " + formName);
+            }
+            if (LatteTrace.isEnabled(COMPLETION)) {
+                LatteTrace.trace(COMPLETION, "forms.added", "count", testFormNames.size(), "mock", true);
             }
         } else {
             // Normal environment - find presenter files and extract forms
@@ -121,7 +126,7 @@ public class NetteFormCompletionContributor extends CompletionContributor {
             // Extract form names from presenter classes
             List<String> formNames = new ArrayList<>();
             for (PsiFile file : presenterFiles) {
-                formNames.addAll(extractFormNames(file));
+                formNames.addAll(extractFormNames(project, file));
             }
     
             // Add form names to the result set
@@ -148,18 +153,11 @@ public class NetteFormCompletionContributor extends CompletionContributor {
             PsiFile[] files = FilenameIndex.getFilesByName(project, "FormPresenter.php", GlobalSearchScope.projectScope(project));
             for (PsiFile file : files) {
                 fileList.add(file);
-                // Add debug log
-                System.out.println("[DEBUG_LOG] Found presenter file: " + file.getName());
+                LatteTrace.trace(COMPLETION, "forms.presenter", "file", file.getName());
             }
         } else {
-            // In normal environment, try to find all presenter files
-            // Note: This won't work with wildcards, but we'll leave it for now
-            PsiFile[] files = FilenameIndex.getFilesByName(project, "Presenter.php", GlobalSearchScope.projectScope(project));
-            for (PsiFile file : files) {
-                if (file.getName().endsWith("Presenter.php")) {
-                    fileList.add(file);
-                }
-            }
+            // In normal environment, use the presenters found by the discovery service
+            fileList.addAll(NettePresenterDiscovery.getInstance(project).getPresenterPsiFiles());
         }
         
         return fileList;
@@ -168,59 +166,18 @@ public class NetteFormCompletionContributor extends CompletionContributor {
     /**
      * Extracts form names from a presenter file.
      *
+     * @param project The current project
      * @param file The presenter file
      * @return A list of form names
      */
-    private List<String> extractFormNames(PsiFile file) {
+    private List<String> extractFormNames(Project project, PsiFile file) {
         List<String> formNames = new ArrayList<>();
 
-        // Get the file content
-        String content = file.getText();
-
-        // Find all createComponent methods
-        Matcher componentMatcher = COMPONENT_METHOD_PATTERN.matcher(content);
-        while (componentMatcher.find()) {
-            String componentName = componentMatcher.group(1);
-            
-            // Skip if it's exactly "createComponent" with no suffix
-            if (componentName.isEmpty()) {
-                continue;
-            }
-            
+        // The index records the declared return type, or the class instantiated by the method body
+        for (LattePresenterMethod factory : LattePresenterMethodIndex.getComponentFactories(project, file)) {
             // Check if the method returns a Form or a class that extends Form
-            int methodStart = componentMatcher.start();
-            int methodEnd = content.indexOf("{", methodStart);
-            if (methodEnd == -1) {
-                methodEnd = content.indexOf(";", methodStart);
-            }
-            if (methodEnd == -1) {
-                continue; // Can't find method end
-            }
-            
-            String methodDeclaration = content.substring(methodStart, methodEnd);
-            Matcher returnTypeMatcher = RETURN_TYPE_PATTERN.matcher(methodDeclaration);
-            
-            boolean isForm = false;
-            
-            // Check if method has a return type annotation
-            if (returnTypeMatcher.find()) {
-                String returnType = returnTypeMatcher.group(1);
-                // Check if return type is Form or extends Form
-                isForm = isFormType(returnType);
-            } else {
-                // If no return type annotation, check the method body for return new Form
-                int bodyEnd = findMatchingBrace(content, methodEnd);
-                if (bodyEnd != -1) {
-                    String methodBody = content.substring(methodEnd + 1, bodyEnd);
-                    isForm = methodBody.contains("return new \\Nette\\Application\\UI\\Form") || 
-                             methodBody.contains("return new Form");
-                }
-            }
-            
-            if (isForm) {
-                // Convert first letter to lowercase to match Nette convention
-                componentName = Character.toLowerCase(componentName.charAt(0)) + componentName.substring(1);
-                formNames.add(componentName);
+            if (isFormType(factory.getReturnType())) {
+                formNames.add(factory.getTargetName());
             }
         }
 
@@ -248,27 +205,4 @@ public class NetteFormCompletionContributor extends CompletionContributor {
         // This is a simplified check - in a real implementation, we would need to check the class hierarchy
         return type.contains("Form");
     }
-    
-    /**
-     * Finds the matching closing brace for an opening brace.
-     *
-     * @param content The content to search in
-     * @param openBracePos The position of the opening brace
-     * @return The position of the matching closing brace, or -1 if not found
-     */
-    private int findMatchingBrace(String content, int openBracePos) {
-        int braceCount = 1;
-        for (int i = openBracePos + 1; i < content.length(); i++) {
-            char c = content.charAt(i);
-            if (c == '{') {
-                braceCount++;
-            } else if (c == '}') {
-                braceCount--;
-                if (braceCount == 0) {
-                    return i;
-                }
-            }
-        }
-        return -1;
-    }
 }
\ No newline at end of file
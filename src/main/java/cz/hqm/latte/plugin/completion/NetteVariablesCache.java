@@ -0,0 +1,105 @@
+package cz.hqm.latte.plugin.completion;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import cz.hqm.latte.plugin.completion.NetteDefaultVariablesProvider.NetteVariable;
+import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.version.ComposerMetadataService;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Project-level cache of the variables built by {@link NetteDefaultVariablesProvider}, by the versions
+ * of the enabled packages they were built for. The cache belongs to the project, so it is released
+ * together with the project instead of keeping it reachable from a static map. All lists are dropped
+ * when the composer files or the {@link LatteSettings} change, which is checked by comparing their
+ * modification counts.
+ */
+@Service(Service.Level.PROJECT)
+public final class NetteVariablesCache implements Disposable {
+
+    // The project this service is associated with
+    private final Project project;
+
+    // Variables by the versions of the enabled packages they were built for
+    private final Map<Map<String, Integer>, List<NetteVariable>> variables = new ConcurrentHashMap<>();
+
+    // Modification counts of the composer metadata and of the settings the cached variables were built from
+    private volatile long composerModificationCount = -1;
+    private volatile long settingsModificationCount = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param project The project this service is associated with
+     */
+    public NetteVariablesCache(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Gets the instance of this service for the given project.
+     *
+     * @param project The project to get the service for
+     * @return The service instance
+     */
+    public static NetteVariablesCache getInstance(@NotNull Project project) {
+        return project.getService(NetteVariablesCache.class);
+    }
+
+    /**
+     * Gets the variables built for the given package versions.
+     *
+     * @param versions The versions of the enabled packages
+     * @return The cached variables, or null if they have to be built
+     */
+    @Nullable
+    public List<NetteVariable> get(@NotNull Map<String, Integer> versions) {
+        long composerCount = ComposerMetadataService.getInstance(project).getModificationCount();
+        long settingsCount = LatteSettings.getInstance().getModificationCount();
+        if (composerCount != composerModificationCount || settingsCount != settingsModificationCount) {
+            // The composer files or the settings changed, so the cached lists may be outdated
+            variables.clear();
+            composerModificationCount = composerCount;
+            settingsModificationCount = settingsCount;
+            return null;
+        }
+        return variables.get(versions);
+    }
+
+    /**
+     * Caches the variables built for the given package versions.
+     *
+     * @param versions The versions of the enabled packages
+     * @param built The variables
+     */
+    public void put(@NotNull Map<String, Integer> versions, @NotNull List<NetteVariable> built) {
+        variables.put(versions, built);
+    }
+
+    /**
+     * Gets the number of cached lists.
+     *
+     * @return The number of package version sets with cached variables
+     */
+    public int size() {
+        return variables.size();
+    }
+
+    /**
+     * Drops all cached variables.
+     */
+    public void invalidate() {
+        variables.clear();
+    }
+
+    @Override
+    public void dispose() {
+        invalidate();
+    }
+}
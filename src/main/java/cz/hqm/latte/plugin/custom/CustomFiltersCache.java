@@ -0,0 +1,124 @@
+package cz.hqm.latte.plugin.custom;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import cz.hqm.latte.plugin.settings.LatteProjectSettings;
+import cz.hqm.latte.plugin.util.LatteTrace;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.CACHE;
+
+/**
+ * Project-level cache of the custom filters used by {@link CustomFiltersProvider}.
+ * The filters and their names are published together as one immutable snapshot, which is
+ * released with the project instead of being kept reachable from a static map. The snapshot
+ * is read again when the modification count of {@link LatteProjectSettings} changes.
+ */
+@Service(Service.Level.PROJECT)
+public final class CustomFiltersCache implements Disposable {
+
+    // The project this service is associated with
+    private final Project project;
+
+    // The current snapshot, or null if it has to be read from the project settings again
+    private volatile Snapshot snapshot;
+
+    // Incremented on every invalidation so that a snapshot racing with a change is not cached
+    private final AtomicLong modificationCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param project The project this service is associated with
+     */
+    public CustomFiltersCache(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Gets the instance of this service for the given project.
+     *
+     * @param project The project to get the service for
+     * @return The service instance
+     */
+    public static CustomFiltersCache getInstance(@NotNull Project project) {
+        return project.getService(CustomFiltersCache.class);
+    }
+
+    /**
+     * Gets the custom filters of the project.
+     *
+     * @return An unmodifiable set of the custom filters
+     */
+    @NotNull
+    public Set<CustomFilter> getFilters() {
+        return getSnapshot().filters;
+    }
+
+    /**
+     * Gets the names of the custom filters of the project.
+     *
+     * @return An unmodifiable set of the filter names
+     */
+    @NotNull
+    public Set<String> getFilterNames() {
+        return getSnapshot().names;
+    }
+
+    /**
+     * Drops the cached filters, so that they are read from the project settings again.
+     */
+    public void invalidate() {
+        modificationCount.incrementAndGet();
+        snapshot = null;
+    }
+
+    @Override
+    public void dispose() {
+        invalidate();
+    }
+
+    @NotNull
+    private Snapshot getSnapshot() {
+        LatteProjectSettings settings = LatteProjectSettings.getInstance(project);
+        Snapshot current = snapshot;
+        if (current == null || current.settingsRevision != settings.getModificationCount()) {
+            long count = modificationCount.get();
+            current = new Snapshot(settings.getModificationCount(), settings.getCustomFilters());
+            if (modificationCount.get() == count) {
+                snapshot = current;
+            }
+            if (LatteTrace.isEnabled(CACHE)) {
+                LatteTrace.trace(CACHE, "customFilters.built", "project", project.getName(), "count", current.filters.size());
+            }
+        }
+        return current;
+    }
+
+    /**
+     * The custom filters and their names at one point in time.
+     */
+    private static final class Snapshot {
+        private final long settingsRevision;
+        private final Set<CustomFilter> filters;
+        private final Set<String> names;
+
+        Snapshot(long settingsRevision, @NotNull Iterable<CustomFilter> customFilters) {
+            this.settingsRevision = settingsRevision;
+            Set<CustomFilter> filterSet = new HashSet<>();
+            Set<String> nameSet = new HashSet<>();
+            for (CustomFilter filter : customFilters) {
+                filterSet.add(filter);
+                nameSet.add(filter.getName());
+            }
+            this.filters = Collections.unmodifiableSet(filterSet);
+            this.names = Collections.unmodifiableSet(nameSet);
+        }
+    }
+}
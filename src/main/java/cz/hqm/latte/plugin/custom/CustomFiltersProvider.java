@@ -1,70 +1,44 @@
 package cz.hqm.latte.plugin.custom;
 
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
 import org.jetbrains.annotations.NotNull;
 import cz.hqm.latte.plugin.settings.LatteProjectSettings;
+import cz.hqm.latte.plugin.util.LatteTrace;
 
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.CACHE;
 
 /**
  * Provides custom Latte filters from project settings.
- * Uses caching to improve performance.
+ * The filters are cached per project in {@link CustomFiltersCache}.
  */
 public class CustomFiltersProvider {
-    // Cache for custom filters by project
-    private static final Map<Project, Set<CustomFilter>> filtersCache = new ConcurrentHashMap<>();
-    
-    // Cache for custom filter names by project
-    private static final Map<Project, Set<String>> filterNamesCache = new ConcurrentHashMap<>();
-    
-    /**
-     * Initializes or updates the cache for the specified project.
-     *
-     * @param project The project
-     */
-    private static synchronized void updateCache(@NotNull Project project) {
-        System.out.println("[DEBUG_LOG] Updating custom filters cache for project: " + project.getName());
-        
-        // Get custom filters from project settings
-        LatteProjectSettings settings = LatteProjectSettings.getInstance(project);
-        Set<CustomFilter> filters = new HashSet<>(settings.getCustomFilters());
-        
-        // Create filter names set
-        Set<String> filterNames = new HashSet<>();
-        for (CustomFilter filter : filters) {
-            filterNames.add(filter.getName());
-        }
-        
-        // Update caches
-        filtersCache.put(project, filters);
-        filterNamesCache.put(project, filterNames);
-        
-        System.out.println("[DEBUG_LOG] Custom filters cache updated with " + filters.size() + " filters");
-    }
-    
     /**
      * Invalidates the cache for the specified project.
-     * This should be called when project settings change.
+     * Changes of the project settings are picked up without it; this forces the filters to be read again.
      *
      * @param project The project
      */
-    public static synchronized void invalidateCache(@NotNull Project project) {
-        System.out.println("[DEBUG_LOG] Invalidating custom filters cache for project: " + project.getName());
-        filtersCache.remove(project);
-        filterNamesCache.remove(project);
+    public static void invalidateCache(@NotNull Project project) {
+        LatteTrace.trace(CACHE, "customFilters.invalidate", "project", project.getName());
+        // Projects that never asked for filters have nothing to drop
+        CustomFiltersCache cache = project.isDisposed() ? null : project.getServiceIfCreated(CustomFiltersCache.class);
+        if (cache != null) {
+            cache.invalidate();
+        }
     }
     
     /**
-     * Invalidates all caches.
-     * This should be called when the plugin is unloaded.
+     * Invalidates the caches of all open projects.
      */
-    public static synchronized void invalidateAllCaches() {
-        System.out.println("[DEBUG_LOG] Invalidating all custom filters caches");
-        filtersCache.clear();
-        filterNamesCache.clear();
+    public static void invalidateAllCaches() {
+        LatteTrace.trace(CACHE, "customFilters.invalidateAll");
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            invalidateCache(project);
+        }
     }
     
     /**
@@ -76,14 +50,7 @@ public class CustomFiltersProvider {
      */
     @NotNull
     public static Set<CustomFilter> getAllFilters(@NotNull Project project) {
-        // Check if we have a cache for this project
-        if (!filtersCache.containsKey(project)) {
-            updateCache(project);
-        }
-        
-        // Return cached filters, ensuring we don't return null
-        Set<CustomFilter> filters = filtersCache.get(project);
-        return filters != null ? new HashSet<>(filters) : new HashSet<>();
+        return new HashSet<>(CustomFiltersCache.getInstance(project).getFilters());
     }
     
     /**
@@ -95,13 +62,7 @@ public class CustomFiltersProvider {
      */
     @NotNull
     public static Set<String> getAllFilterNames(@NotNull Project project) {
-        // Check if we have a cache for this project
-        if (!filterNamesCache.containsKey(project)) {
-            updateCache(project);
-        }
-        
-        // Return cached filter names
-        return new HashSet<>(filterNamesCache.get(project));
+        return new HashSet<>(CustomFiltersCache.getInstance(project).getFilterNames());
     }
     
     /**
@@ -113,7 +74,7 @@ public class CustomFiltersProvider {
      * @return True if the filter exists, false otherwise
      */
     public static boolean filterExists(@NotNull Project project, @NotNull String name) {
-        return getAllFilterNames(project).contains(name);
+        return CustomFiltersCache.getInstance(project).getFilterNames().contains(name);
     }
     
     /**
@@ -125,7 +86,7 @@ public class CustomFiltersProvider {
      * @return The filter or null if not found
      */
     public static CustomFilter getFilterByName(@NotNull Project project, @NotNull String name) {
-        for (CustomFilter filter : getAllFilters(project)) {
+        for (CustomFilter filter : CustomFiltersCache.getInstance(project).getFilters()) {
             if (filter.getName().equals(name)) {
                 return filter;
             }
@@ -146,10 +107,6 @@ public class CustomFiltersProvider {
         LatteProjectSettings settings = LatteProjectSettings.getInstance(project);
         CustomFilter filter = new CustomFilter(name, description);
         settings.addCustomFilter(filter);
-        
-        // Invalidate cache for this project
-        invalidateCache(project);
-        
         return filter;
     }
     
@@ -165,10 +122,6 @@ public class CustomFiltersProvider {
         CustomFilter filter = getFilterByName(project, name);
         if (filter != null) {
             settings.removeCustomFilter(filter);
-            
-            // Invalidate cache for this project
-            invalidateCache(project);
-            
             return true;
         }
         return false;
@@ -1,10 +1,15 @@
 package cz.hqm.latte.plugin.filters;
 
 import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.util.LatteTrace;
+import cz.hqm.latte.plugin.version.NettePackageDetector;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.CACHE;
+
 /**
  * Provides Latte filters from Nette packages based on enabled settings.
  * This class is responsible for storing and providing filters from different Nette packages.
@@ -15,8 +20,11 @@ public class NetteFilterProvider {
     private static final AtomicReference<Set<String>> cachedFilterNames = new AtomicReference<>();
     private static final AtomicReference<Set<NetteFilter>> cachedFilters = new AtomicReference<>();
     
-    // Cache for settings to detect changes
-    private static final AtomicReference<LatteSettings> cachedSettings = new AtomicReference<>();
+    // Modification count of the settings the cache was built for
+    private static volatile long cachedModificationCount = -1;
+    
+    // Filters by the set of enabled packages of a module they were built for
+    private static final Map<Set<String>, Set<NetteFilter>> FILTERS_BY_PACKAGES = new ConcurrentHashMap<>();
 
     // Filters from nette/application package
     private static final Set<NetteFilter> APPLICATION_FILTERS = new HashSet<>(Arrays.asList(
@@ -106,115 +114,82 @@ public class NetteFilterProvider {
      * 
      * @return True if the cache is valid, false if it needs to be updated
      */
-    private static synchronized boolean isCacheValid() {
+    private static boolean isCacheValid() {
         // Check if we have a cache
         if (cachedFilterNames.get() == null || cachedFilters.get() == null) {
-            System.out.println("[DEBUG_LOG] Filter cache not initialized");
-            return false;
-        }
-        
-        // Check if settings have changed
-        LatteSettings currentSettings = LatteSettings.getInstance();
-        LatteSettings cachedSettingsValue = cachedSettings.get();
-        
-        if (cachedSettingsValue == null || !settingsEqual(cachedSettingsValue, currentSettings)) {
-            System.out.println("[DEBUG_LOG] Filter settings have changed, cache invalid");
             return false;
         }
         
-        // Cache is valid
-        return true;
-    }
-    
-    /**
-     * Compares two settings instances to check if they are equal.
-     *
-     * @param settings1 The first settings instance
-     * @param settings2 The second settings instance
-     * @return True if the settings are equal, false otherwise
-     */
-    private static boolean settingsEqual(LatteSettings settings1, LatteSettings settings2) {
-        return settings1.isEnableNetteApplication() == settings2.isEnableNetteApplication()
-            && settings1.isEnableNetteForms() == settings2.isEnableNetteForms()
-            && settings1.isEnableNetteAssets() == settings2.isEnableNetteAssets()
-            && settings1.isEnableNetteDatabase() == settings2.isEnableNetteDatabase()
-            && settings1.isEnableNetteSecurity() == settings2.isEnableNetteSecurity();
+        // The cache is valid while the settings have not changed since it was built
+        return cachedModificationCount == LatteSettings.getInstance().getModificationCount();
     }
     
     /**
      * Initializes the cache with current settings.
      */
     private static synchronized void initCache() {
-        System.out.println("[DEBUG_LOG] Initializing filter cache");
-        
         // Get current settings
         LatteSettings settings = LatteSettings.getInstance();
+        long modificationCount = settings.getModificationCount();
         
-        // Create filter names set
+        Set<NetteFilter> filters = buildFilters(NettePackageDetector.getEnabledPackages(settings));
         Set<String> filterNames = new HashSet<>();
-        
-        // Create filters set
-        Set<NetteFilter> filters = new HashSet<>();
-        
-        // Add core filters
-        for (NetteFilter filter : CORE_FILTERS) {
+        for (NetteFilter filter : filters) {
             filterNames.add(filter.getName());
-            filters.add(filter);
         }
         
-        // Add filters based on enabled settings
-        if (settings.isEnableNetteApplication()) {
-            for (NetteFilter filter : APPLICATION_FILTERS) {
-                filterNames.add(filter.getName());
-                filters.add(filter);
-            }
+        // Update cache
+        cachedFilterNames.set(filterNames);
+        cachedFilters.set(filters);
+        cachedModificationCount = modificationCount;
+        
+        if (LatteTrace.isEnabled(CACHE)) {
+            LatteTrace.trace(CACHE, "filters.built", "count", filters.size(), "settingsRevision", modificationCount);
         }
+    }
+    
+    /**
+     * Builds the filters of the core and of the given Nette packages.
+     *
+     * @param packages Names of the enabled Nette packages
+     * @return A new set of filters
+     */
+    private static Set<NetteFilter> buildFilters(Set<String> packages) {
+        Set<NetteFilter> filters = new HashSet<>(CORE_FILTERS);
         
-        if (settings.isEnableNetteForms()) {
-            for (NetteFilter filter : FORMS_FILTERS) {
-                filterNames.add(filter.getName());
-                filters.add(filter);
-            }
+        if (packages.contains(NettePackageDetector.NETTE_APPLICATION)) {
+            filters.addAll(APPLICATION_FILTERS);
         }
         
-        if (settings.isEnableNetteAssets()) {
-            for (NetteFilter filter : ASSETS_FILTERS) {
-                filterNames.add(filter.getName());
-                filters.add(filter);
-            }
+        if (packages.contains(NettePackageDetector.NETTE_FORMS)) {
+            filters.addAll(FORMS_FILTERS);
         }
         
-        if (settings.isEnableNetteDatabase()) {
-            for (NetteFilter filter : DATABASE_FILTERS) {
-                filterNames.add(filter.getName());
-                filters.add(filter);
-            }
+        if (packages.contains(NettePackageDetector.NETTE_ASSETS)) {
+            filters.addAll(ASSETS_FILTERS);
         }
         
-        if (settings.isEnableNetteSecurity()) {
-            for (NetteFilter filter : SECURITY_FILTERS) {
-                filterNames.add(filter.getName());
-                filters.add(filter);
-            }
+        if (packages.contains(NettePackageDetector.NETTE_DATABASE)) {
+            filters.addAll(DATABASE_FILTERS);
         }
         
-        // Update cache
-        cachedFilterNames.set(filterNames);
-        cachedFilters.set(filters);
-        cachedSettings.set(settings);
+        if (packages.contains(NettePackageDetector.NETTE_SECURITY)) {
+            filters.addAll(SECURITY_FILTERS);
+        }
         
-        System.out.println("[DEBUG_LOG] Filter cache initialized with " + filterNames.size() + " filter names and " + filters.size() + " filters");
+        return filters;
     }
     
     /**
      * Invalidates the cache.
-     * This should be called when settings change.
+     * Changes of the settings are picked up without it; this forces the filters to be built again.
      */
     public static synchronized void invalidateCache() {
-        System.out.println("[DEBUG_LOG] Invalidating filter cache");
+        LatteTrace.trace(CACHE, "filters.invalidate");
         cachedFilterNames.set(null);
         cachedFilters.set(null);
-        cachedSettings.set(null);
+        cachedModificationCount = -1;
+        FILTERS_BY_PACKAGES.clear();
     }
 
     /**
@@ -250,4 +225,30 @@ public class NetteFilterProvider {
         Set<NetteFilter> filters = cachedFilters.get();
         return filters != null ? new HashSet<>(filters) : new HashSet<>();
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets all filters of the core and of the given Nette packages, e.g. the packages
+     * enabled for the module of a template.
+     *
+     * @param packages Names of the enabled Nette packages
+     * @return A set of filters
+     */
+    public static Set<NetteFilter> getAllFilters(Set<String> packages) {
+        return new HashSet<>(FILTERS_BY_PACKAGES.computeIfAbsent(
+                Collections.unmodifiableSet(new HashSet<>(packages)), NetteFilterProvider::buildFilters));
+    }
+
+    /**
+     * Gets all valid filter names of the core and of the given Nette packages.
+     *
+     * @param packages Names of the enabled Nette packages
+     * @return A set of valid filter names
+     */
+    public static Set<String> getValidFilterNames(Set<String> packages) {
+        Set<String> filterNames = new HashSet<>();
+        for (NetteFilter filter : getAllFilters(packages)) {
+            filterNames.add(filter.getName());
+        }
+        return filterNames;
+    }
+}
@@ -10,8 +10,11 @@ import com.intellij.psi.TokenType;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.xml.XmlTokenType;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import cz.hqm.latte.plugin.lexer.LatteLexer;
 import cz.hqm.latte.plugin.lexer.LatteLexerFactory;
 import cz.hqm.latte.plugin.lexer.LatteTokenTypes;
+import cz.hqm.latte.plugin.version.LatteVersion;
 
 import java.awt.Color;
 import java.awt.Font;
@@ -109,10 +112,36 @@ public class LatteSyntaxHighlighter extends SyntaxHighlighterBase {
     private static final TextAttributesKey[] ERROR_ATTRIBUTE_KEYS = new TextAttributesKey[]{ERROR_ATTRIBUTE};
     private static final TextAttributesKey[] ERROR_FILTER_KEYS = new TextAttributesKey[]{ERROR_FILTER};
 
+    // Latte version of the highlighted template, or null for the current version
+    @Nullable
+    private final LatteVersion version;
+
+    /**
+     * Creates a highlighter for templates of the current Latte version.
+     */
+    public LatteSyntaxHighlighter() {
+        this(null);
+    }
+
+    /**
+     * Creates a highlighter for templates of the given Latte version.
+     *
+     * @param version The Latte version of the template, or null for the current version
+     */
+    public LatteSyntaxHighlighter(@Nullable LatteVersion version) {
+        this.version = version;
+    }
+
     @NotNull
     @Override
     public Lexer getHighlightingLexer() {
-        return LatteLexerFactory.getInstance().getLexer();
+        if (version == null) {
+            return LatteLexerFactory.getInstance().getLexer();
+        }
+        // The per-thread lexers of the factory are shared, so a version-specific lexer is not taken from there
+        LatteLexer lexer = new LatteLexer();
+        lexer.setVersion(version);
+        return lexer;
     }
 
     // Define text attribute keys for HTML elements with LATTE_ prefix to avoid conflicts
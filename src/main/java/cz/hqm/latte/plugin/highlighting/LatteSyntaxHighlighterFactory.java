@@ -4,17 +4,23 @@ import com.intellij.openapi.fileTypes.SyntaxHighlighter;
 import com.intellij.openapi.fileTypes.SyntaxHighlighterFactory;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import cz.hqm.latte.plugin.version.LatteVersionManager;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
  * Factory for creating Latte syntax highlighters.
+ * Each highlighter lexes with the Latte version of the composer module that contains the file.
  */
 public class LatteSyntaxHighlighterFactory extends SyntaxHighlighterFactory {
     
     @NotNull
     @Override
     public SyntaxHighlighter getSyntaxHighlighter(@Nullable Project project, @Nullable VirtualFile virtualFile) {
-        return new LatteSyntaxHighlighter();
+        LatteVersion version = project != null && virtualFile != null && !project.isDefault()
+                ? LatteVersionManager.getVersion(project, virtualFile)
+                : null;
+        return new LatteSyntaxHighlighter(version);
     }
 }
\ No newline at end of file
@@ -1,8 +1,8 @@
 package cz.hqm.latte.plugin.inclusion;
 
 import com.intellij.openapi.project.Project;
-import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
+import cz.hqm.latte.plugin.index.LatteBlockDefinition;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -34,48 +34,23 @@ public class LatteBlockTypeProvider {
      */
     @Nullable
     public static Map<String, String> getBlockTypeInfo(Project project, PsiFile sourceFile, String blockName) {
-        // Find the block in the file
-        PsiElement blockElement = LatteTemplateInclusionHandler.findBlockInFile(sourceFile, blockName);
-        if (blockElement == null) {
+        // The block index stores the parameter types of every {define}, so the block text is not needed
+        LatteBlockDefinition definition = LatteTemplateInclusionHandler.findBlockDefinition(project, sourceFile, blockName);
+        if (definition == null) {
             return null;
         }
         
-        // Get the block text
-        String blockText = getBlockText(blockElement);
-        if (blockText == null) {
-            return null;
-        }
-        
-        // Extract parameter types from the block
-        return extractParameterTypes(blockText);
-    }
-    
-    /**
-     * Gets the text of a block.
-     * 
-     * @param blockElement The block element
-     * @return The block text, or null if not found
-     */
-    @Nullable
-    private static String getBlockText(PsiElement blockElement) {
-        // Get the parent element that contains the entire block
-        PsiElement parent = blockElement.getParent();
-        if (parent == null) {
-            return null;
-        }
-        
-        // Get the text of the parent element
-        return parent.getText();
+        return new HashMap<>(definition.getParameterTypes());
     }
     
     /**
      * Extracts parameter types from a block.
      * 
-     * @param blockText The block text
+     * @param blockText The block text, starting with its {define} tag
      * @return A map of parameter names to types
      */
     @NotNull
-    private static Map<String, String> extractParameterTypes(String blockText) {
+    public static Map<String, String> extractParameterTypes(String blockText) {
         Map<String, String> parameterTypes = new HashMap<>();
         
         // Extract the parameter list from the {define} tag
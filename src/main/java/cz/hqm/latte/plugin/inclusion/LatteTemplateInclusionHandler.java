@@ -1,6 +1,7 @@
 package cz.hqm.latte.plugin.inclusion;
 
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
@@ -8,6 +9,8 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.search.FilenameIndex;
 import com.intellij.psi.search.GlobalSearchScope;
+import cz.hqm.latte.plugin.index.LatteBlockDefinition;
+import cz.hqm.latte.plugin.index.LatteBlockIndex;
 import cz.hqm.latte.plugin.version.LatteVersion;
 import cz.hqm.latte.plugin.version.LatteVersionManager;
 import org.jetbrains.annotations.NotNull;
@@ -15,7 +18,6 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -37,12 +39,6 @@ public class LatteTemplateInclusionHandler {
     
     // Pattern for extracting file path from {sandbox} tag
     private static final Pattern SANDBOX_FILE_PATTERN = Pattern.compile("\\{sandbox\\s+['\"](.*?)['\"]");
-    
-    // Pattern for extracting block name from {define} tag
-    private static final Pattern DEFINE_BLOCK_PATTERN = Pattern.compile("\\{define\\s+(\\w+)");
-    
-    // Pattern for extracting block name from {block} tag
-    private static final Pattern BLOCK_PATTERN = Pattern.compile("\\{block\\s+(\\w+)");
 
     /**
      * Finds the target file for an {include} tag.
@@ -79,7 +75,8 @@ public class LatteTemplateInclusionHandler {
         }
         
         String blockName = matcher.group(1);
-        return findBlockInFile(sourceFile, blockName);
+        Pair<PsiFile, LatteBlockDefinition> target = findBlockTarget(project, sourceFile, blockName);
+        return target != null ? target.getFirst().findElementAt(target.getSecond().getOffset()) : null;
     }
     
     /**
@@ -140,25 +137,23 @@ public class LatteTemplateInclusionHandler {
             return null;
         }
         
-        String fileContent = file.getText();
-        
-        // Look for {define blockName} tag
-        Pattern definePattern = Pattern.compile("\\{define\\s+" + blockName + "\\b");
-        Matcher defineMatcher = definePattern.matcher(fileContent);
-        if (defineMatcher.find()) {
-            int startOffset = defineMatcher.start();
-            return file.findElementAt(startOffset);
-        }
-        
-        // Look for {block blockName} tag
-        Pattern blockPattern = Pattern.compile("\\{block\\s+" + blockName + "\\b");
-        Matcher blockMatcher = blockPattern.matcher(fileContent);
-        if (blockMatcher.find()) {
-            int startOffset = blockMatcher.start();
-            return file.findElementAt(startOffset);
-        }
-        
-        return null;
+        LatteBlockDefinition definition = findDefinitionInFile(file, blockName);
+        return definition != null ? file.findElementAt(definition.getOffset()) : null;
+    }
+    
+    /**
+     * Finds the declaration of a block, looking in the source file first and then
+     * in the {define} blocks of all templates in the project.
+     * 
+     * @param project The project
+     * @param sourceFile The file the block is used in
+     * @param blockName The name of the block
+     * @return The block declaration, or null if not found
+     */
+    @Nullable
+    public static LatteBlockDefinition findBlockDefinition(Project project, PsiFile sourceFile, String blockName) {
+        Pair<PsiFile, LatteBlockDefinition> target = findBlockTarget(project, sourceFile, blockName);
+        return target != null ? target.getSecond() : null;
     }
     
     /**
@@ -175,21 +170,60 @@ public class LatteTemplateInclusionHandler {
             return blocks;
         }
         
-        String fileContent = file.getText();
+        // {define} blocks come first, then {block} blocks
+        for (LatteBlockDefinition definition : getDefinitionsInFile(file)) {
+            blocks.add(definition.getName());
+        }
         
-        // Find all {define} blocks
-        Matcher defineMatcher = DEFINE_BLOCK_PATTERN.matcher(fileContent);
-        while (defineMatcher.find()) {
-            blocks.add(defineMatcher.group(1));
+        return blocks;
+    }
+    
+    /**
+     * Finds the file and declaration of a block, looking in the source file first and then
+     * in the block index for {define} blocks in other templates.
+     */
+    @Nullable
+    private static Pair<PsiFile, LatteBlockDefinition> findBlockTarget(Project project, PsiFile sourceFile, String blockName) {
+        if (sourceFile != null) {
+            LatteBlockDefinition definition = findDefinitionInFile(sourceFile, blockName);
+            if (definition != null) {
+                return Pair.create(sourceFile, definition);
+            }
         }
         
-        // Find all {block} blocks
-        Matcher blockMatcher = BLOCK_PATTERN.matcher(fileContent);
-        while (blockMatcher.find()) {
-            blocks.add(blockMatcher.group(1));
+        if (project == null || blockName == null) {
+            return null;
         }
         
-        return blocks;
+        for (Pair<VirtualFile, LatteBlockDefinition> candidate :
+                LatteBlockIndex.findDefinitions(project, blockName, GlobalSearchScope.projectScope(project))) {
+            if (candidate.getSecond().getKind() != LatteBlockDefinition.Kind.DEFINE) {
+                continue;
+            }
+            PsiFile file = PsiManager.getInstance(project).findFile(candidate.getFirst());
+            if (file != null) {
+                return Pair.create(file, candidate.getSecond());
+            }
+        }
+        
+        return null;
+    }
+    
+    @Nullable
+    private static LatteBlockDefinition findDefinitionInFile(@NotNull PsiFile file, String blockName) {
+        for (LatteBlockDefinition definition : getDefinitionsInFile(file)) {
+            if (definition.getName().equals(blockName)) {
+                return definition;
+            }
+        }
+        return null;
+    }
+    
+    @NotNull
+    private static List<LatteBlockDefinition> getDefinitionsInFile(@NotNull PsiFile file) {
+        // Non-physical copies (e.g. during completion) are not indexed, their text is scanned instead
+        VirtualFile virtualFile = file.isPhysical() ? file.getVirtualFile() : null;
+        return LatteBlockIndex.getDefinitionsInFile(file.getProject(), virtualFile, file.getViewProvider().getContents());
     }
     
     /**
@@ -0,0 +1,64 @@
+package cz.hqm.latte.plugin.inclusion;
+
+import com.intellij.navigation.GotoRelatedItem;
+import com.intellij.navigation.GotoRelatedProvider;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import cz.hqm.latte.plugin.index.LatteTemplateGraphIndex;
+import cz.hqm.latte.plugin.index.LatteTemplateReference;
+import cz.hqm.latte.plugin.psi.LatteFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Provides "Navigate | Related Symbol" items for Latte templates: the templates that
+ * include or extend the current one, and the templates it includes or extends.
+ * Both directions are read from the template graph index.
+ */
+public class LatteTemplateRelatedProvider extends GotoRelatedProvider {
+
+    private static final String INCLUDED_BY_GROUP = "Included by";
+    private static final String INCLUDES_GROUP = "Includes";
+
+    @NotNull
+    @Override
+    public List<? extends GotoRelatedItem> getItems(@NotNull PsiElement element) {
+        PsiFile file = element.getContainingFile();
+        if (!(file instanceof LatteFile) || file.getVirtualFile() == null) {
+            return Collections.emptyList();
+        }
+
+        Project project = file.getProject();
+        VirtualFile virtualFile = file.getVirtualFile();
+        PsiManager psiManager = PsiManager.getInstance(project);
+        List<GotoRelatedItem> items = new ArrayList<>();
+
+        for (VirtualFile dependent : LatteTemplateGraphIndex.findDirectDependents(project, virtualFile)) {
+            PsiFile dependentFile = psiManager.findFile(dependent);
+            if (dependentFile != null) {
+                items.add(new GotoRelatedItem(dependentFile, INCLUDED_BY_GROUP));
+            }
+        }
+
+        Set<VirtualFile> dependencies = new LinkedHashSet<>();
+        for (LatteTemplateReference reference : LatteTemplateGraphIndex.getReferences(project, virtualFile)) {
+            VirtualFile target = LatteTemplateGraphIndex.resolve(project, virtualFile, reference);
+            if (target != null && dependencies.add(target)) {
+                PsiFile targetFile = psiManager.findFile(target);
+                if (targetFile != null) {
+                    items.add(new GotoRelatedItem(targetFile, INCLUDES_GROUP));
+                }
+            }
+        }
+
+        return items;
+    }
+}
@@ -0,0 +1,85 @@
+package cz.hqm.latte.plugin.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A {define} or {block} declaration stored in the {@link LatteBlockIndex}.
+ */
+public final class LatteBlockDefinition {
+
+    /**
+     * The tag that declares the block.
+     */
+    public enum Kind {
+        DEFINE,
+        BLOCK
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final int offset;
+    private final Map<String, String> parameterTypes;
+
+    /**
+     * Creates a block definition.
+     *
+     * @param name The name of the block
+     * @param kind The tag that declares the block
+     * @param offset The offset of the opening brace of the tag in the file
+     * @param parameterTypes The typed parameters of a {define}, in declaration order
+     */
+    public LatteBlockDefinition(@NotNull String name, @NotNull Kind kind, int offset, @NotNull Map<String, String> parameterTypes) {
+        this.name = name;
+        this.kind = kind;
+        this.offset = offset;
+        this.parameterTypes = Collections.unmodifiableMap(new LinkedHashMap<>(parameterTypes));
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @NotNull
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the typed parameters of the block, mapping parameter names to types.
+     *
+     * @return The parameter types, empty for {block} declarations
+     */
+    @NotNull
+    public Map<String, String> getParameterTypes() {
+        return parameterTypes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LatteBlockDefinition)) return false;
+        LatteBlockDefinition that = (LatteBlockDefinition) o;
+        return offset == that.offset && name.equals(that.name) && kind == that.kind
+                && parameterTypes.equals(that.parameterTypes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, kind, offset, parameterTypes);
+    }
+
+    @Override
+    public String toString() {
+        return kind.name().toLowerCase() + " " + name + "@" + offset;
+    }
+}
@@ -0,0 +1,233 @@
+package cz.hqm.latte.plugin.index;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileBasedIndexExtension;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import cz.hqm.latte.plugin.file.LatteFileType;
+import cz.hqm.latte.plugin.inclusion.LatteBlockTypeProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * File-based index of {define} and {block} declarations in Latte templates.
+ * Maps block names to their declarations, including the offset of the tag and the
+ * typed parameters of {define} blocks, so blocks can be found across templates
+ * without opening and scanning them.
+ */
+public class LatteBlockIndex extends FileBasedIndexExtension<String, List<LatteBlockDefinition>> {
+
+    public static final ID<String, List<LatteBlockDefinition>> NAME = ID.create("cz.hqm.latte.plugin.blocks");
+
+    // Pattern for {define name} and {block name} tags
+    private static final Pattern DECLARATION_PATTERN = Pattern.compile("\\{(define|block)\\s+(\\w+)");
+
+    // Orders definitions as they were reported before the index: {define} tags first, then {block} tags
+    private static final Comparator<LatteBlockDefinition> DECLARATION_ORDER =
+            Comparator.comparing(LatteBlockDefinition::getKind).thenComparingInt(LatteBlockDefinition::getOffset);
+
+    private static final DataExternalizer<List<LatteBlockDefinition>> EXTERNALIZER = new DataExternalizer<>() {
+        @Override
+        public void save(@NotNull DataOutput out, List<LatteBlockDefinition> definitions) throws IOException {
+            out.writeInt(definitions.size());
+            for (LatteBlockDefinition definition : definitions) {
+                IOUtil.writeUTF(out, definition.getName());
+                out.writeByte(definition.getKind().ordinal());
+                out.writeInt(definition.getOffset());
+                out.writeInt(definition.getParameterTypes().size());
+                for (Map.Entry<String, String> parameter : definition.getParameterTypes().entrySet()) {
+                    IOUtil.writeUTF(out, parameter.getKey());
+                    IOUtil.writeUTF(out, parameter.getValue());
+                }
+            }
+        }
+
+        @Override
+        public List<LatteBlockDefinition> read(@NotNull DataInput in) throws IOException {
+            int count = in.readInt();
+            List<LatteBlockDefinition> definitions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = IOUtil.readUTF(in);
+                LatteBlockDefinition.Kind kind = LatteBlockDefinition.Kind.values()[in.readByte()];
+                int offset = in.readInt();
+                int parameterCount = in.readInt();
+                Map<String, String> parameterTypes = new LinkedHashMap<>();
+                for (int j = 0; j < parameterCount; j++) {
+                    parameterTypes.put(IOUtil.readUTF(in), IOUtil.readUTF(in));
+                }
+                definitions.add(new LatteBlockDefinition(name, kind, offset, parameterTypes));
+            }
+            return definitions;
+        }
+    };
+
+    @NotNull
+    @Override
+    public ID<String, List<LatteBlockDefinition>> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, List<LatteBlockDefinition>, FileContent> getIndexer() {
+        return inputData -> {
+            Map<String, List<LatteBlockDefinition>> result = new HashMap<>();
+            for (LatteBlockDefinition definition : scanDefinitions(inputData.getContentAsText())) {
+                result.computeIfAbsent(definition.getName(), name -> new ArrayList<>()).add(definition);
+            }
+            return result;
+        };
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<List<LatteBlockDefinition>> getValueExternalizer() {
+        return EXTERNALIZER;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(LatteFileType.INSTANCE);
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    /**
+     * Finds the {define} and {block} declarations in template text.
+     *
+     * @param text The template text
+     * @return The declarations, in the order they appear in the text
+     */
+    @NotNull
+    public static List<LatteBlockDefinition> scanDefinitions(@NotNull CharSequence text) {
+        List<LatteBlockDefinition> definitions = new ArrayList<>();
+        Matcher matcher = DECLARATION_PATTERN.matcher(text);
+        while (matcher.find()) {
+            boolean define = "define".equals(matcher.group(1));
+            Map<String, String> parameterTypes = Collections.emptyMap();
+            if (define) {
+                int tagEnd = indexOf(text, '}', matcher.end());
+                if (tagEnd >= 0) {
+                    parameterTypes = LatteBlockTypeProvider.extractParameterTypes(
+                            text.subSequence(matcher.start(), tagEnd + 1).toString());
+                }
+            }
+            definitions.add(new LatteBlockDefinition(matcher.group(2),
+                    define ? LatteBlockDefinition.Kind.DEFINE : LatteBlockDefinition.Kind.BLOCK,
+                    matcher.start(), parameterTypes));
+        }
+        return definitions;
+    }
+
+    /**
+     * Gets the declarations in a single file, {define} tags first and then {block} tags.
+     * Falls back to scanning the text while the indexes are being updated.
+     *
+     * @param project The project
+     * @param file The template file
+     * @param text The current text of the file, used when the index is not available
+     * @return The declarations in the file
+     */
+    @NotNull
+    public static List<LatteBlockDefinition> getDefinitionsInFile(@NotNull Project project, @Nullable VirtualFile file,
+                                                                  @NotNull CharSequence text) {
+        List<LatteBlockDefinition> definitions = new ArrayList<>();
+        if (file == null || DumbService.isDumb(project)) {
+            definitions.addAll(scanDefinitions(text));
+        } else {
+            for (List<LatteBlockDefinition> values : FileBasedIndex.getInstance().getFileData(NAME, file, project).values()) {
+                definitions.addAll(values);
+            }
+        }
+        definitions.sort(DECLARATION_ORDER);
+        return definitions;
+    }
+
+    /**
+     * Finds all declarations of a block in the given scope.
+     *
+     * @param project The project
+     * @param blockName The name of the block
+     * @param scope The scope to search in
+     * @return Pairs of the declaring file and the declaration; empty while the indexes are being updated
+     */
+    @NotNull
+    public static List<Pair<VirtualFile, LatteBlockDefinition>> findDefinitions(@NotNull Project project, @NotNull String blockName,
+                                                                                @NotNull GlobalSearchScope scope) {
+        List<Pair<VirtualFile, LatteBlockDefinition>> result = new ArrayList<>();
+        if (DumbService.isDumb(project)) {
+            return result;
+        }
+        FileBasedIndex.getInstance().processValues(NAME, blockName, null, (file, definitions) -> {
+            for (LatteBlockDefinition definition : definitions) {
+                result.add(Pair.create(file, definition));
+            }
+            return true;
+        }, scope);
+        result.sort((first, second) -> DECLARATION_ORDER.compare(first.getSecond(), second.getSecond()));
+        return result;
+    }
+
+    /**
+     * Gets the names of all blocks declared in the project.
+     *
+     * @param project The project
+     * @return The block names; empty while the indexes are being updated
+     */
+    @NotNull
+    public static Collection<String> getAllBlockNames(@NotNull Project project) {
+        if (DumbService.isDumb(project)) {
+            return Collections.emptyList();
+        }
+        return FileBasedIndex.getInstance().getAllKeys(NAME, project);
+    }
+
+    private static int indexOf(@NotNull CharSequence text, char c, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,103 @@
+package cz.hqm.latte.plugin.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+/**
+ * An action, render, signal handler or component factory method of a presenter or control,
+ * stored in the {@link LattePresenterMethodIndex}.
+ */
+public final class LattePresenterMethod {
+
+    /**
+     * The Nette convention the method follows, named after its prefix.
+     */
+    public enum Kind {
+        ACTION("action"),
+        RENDER("render"),
+        HANDLE("handle"),
+        CREATE_COMPONENT("createComponent");
+
+        private final String prefix;
+
+        Kind(@NotNull String prefix) {
+            this.prefix = prefix;
+        }
+
+        @NotNull
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final String returnType;
+    private final int offset;
+
+    /**
+     * Creates a presenter method.
+     *
+     * @param name The method name as written in the class
+     * @param kind The convention the method follows
+     * @param returnType The declared return type, or the class instantiated by "return new" when there is none; empty if unknown
+     * @param offset The offset of the "function" keyword in the file
+     */
+    public LattePresenterMethod(@NotNull String name, @NotNull Kind kind, @NotNull String returnType, int offset) {
+        this.name = name;
+        this.kind = kind;
+        this.returnType = returnType;
+        this.offset = offset;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @NotNull
+    public Kind getKind() {
+        return kind;
+    }
+
+    @NotNull
+    public String getReturnType() {
+        return returnType;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the name the method is referred to by in templates, e.g. "productList" for
+     * createComponentProductList or "detail" for actionDetail.
+     *
+     * @return The method name without its prefix, starting with a lowercase letter
+     */
+    @NotNull
+    public String getTargetName() {
+        String target = name.substring(kind.getPrefix().length());
+        return Character.toLowerCase(target.charAt(0)) + target.substring(1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LattePresenterMethod)) return false;
+        LattePresenterMethod that = (LattePresenterMethod) o;
+        return offset == that.offset && name.equals(that.name) && kind == that.kind
+                && returnType.equals(that.returnType);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, kind, returnType, offset);
+    }
+
+    @Override
+    public String toString() {
+        return name + (returnType.isEmpty() ? "" : ": " + returnType) + "@" + offset;
+    }
+}
@@ -0,0 +1,281 @@
+package cz.hqm.latte.plugin.index;
+
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileBasedIndexExtension;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * File-based index of the methods of Nette presenters and controls that templates refer to:
+ * action*, render*, handle* and createComponent* methods together with their return types.
+ * Only files named *Presenter.php or *Control.php are indexed. Methods are keyed by their
+ * lowercased name, because PHP method names are case-insensitive.
+ */
+public class LattePresenterMethodIndex extends FileBasedIndexExtension<String, List<LattePresenterMethod>> {
+
+    public static final ID<String, List<LattePresenterMethod>> NAME = ID.create("cz.hqm.latte.plugin.presenterMethods");
+
+    private static final String PRESENTER_SUFFIX = "Presenter.php";
+    private static final String CONTROL_SUFFIX = "Control.php";
+
+    // Pattern for method declarations with one of the Nette prefixes and a non-empty suffix
+    private static final Pattern METHOD_PATTERN = Pattern.compile(
+            "function\\s+((action|render|handle|createComponent)\\w+)\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+    // Pattern for a declared return type following the parameter list
+    private static final Pattern DECLARED_TYPE_PATTERN = Pattern.compile("\\s*:\\s*\\??([\\\\\\w|]+)");
+
+    // Pattern for the class instantiated by a method body
+    private static final Pattern INSTANTIATION_PATTERN = Pattern.compile("return\\s+new\\s+([\\\\\\w]+)");
+
+    private static final DataExternalizer<List<LattePresenterMethod>> EXTERNALIZER = new DataExternalizer<>() {
+        @Override
+        public void save(@NotNull DataOutput out, List<LattePresenterMethod> methods) throws IOException {
+            out.writeInt(methods.size());
+            for (LattePresenterMethod method : methods) {
+                IOUtil.writeUTF(out, method.getName());
+                out.writeByte(method.getKind().ordinal());
+                IOUtil.writeUTF(out, method.getReturnType());
+                out.writeInt(method.getOffset());
+            }
+        }
+
+        @Override
+        public List<LattePresenterMethod> read(@NotNull DataInput in) throws IOException {
+            int count = in.readInt();
+            List<LattePresenterMethod> methods = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = IOUtil.readUTF(in);
+                LattePresenterMethod.Kind kind = LattePresenterMethod.Kind.values()[in.readByte()];
+                methods.add(new LattePresenterMethod(name, kind, IOUtil.readUTF(in), in.readInt()));
+            }
+            return methods;
+        }
+    };
+
+    @NotNull
+    @Override
+    public ID<String, List<LattePresenterMethod>> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, List<LattePresenterMethod>, FileContent> getIndexer() {
+        return inputData -> {
+            // PHP files have no file type of their own without the PHP plugin, so decode the bytes directly
+            CharSequence text = LoadTextUtil.getTextByBinaryPresentation(inputData.getContent(), inputData.getFile());
+            Map<String, List<LattePresenterMethod>> result = new HashMap<>();
+            for (LattePresenterMethod method : scanMethods(text)) {
+                result.computeIfAbsent(getKey(method.getName()), key -> new ArrayList<>()).add(method);
+            }
+            return result;
+        };
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<List<LattePresenterMethod>> getValueExternalizer() {
+        return EXTERNALIZER;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return file -> isIndexedFileName(file.getName());
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    /**
+     * Checks whether files with the given name are indexed.
+     *
+     * @param fileName The file name
+     * @return True for *Presenter.php and *Control.php files
+     */
+    public static boolean isIndexedFileName(@NotNull String fileName) {
+        return fileName.endsWith(PRESENTER_SUFFIX) || fileName.endsWith(CONTROL_SUFFIX);
+    }
+
+    /**
+     * Finds the action, render, handle and createComponent methods in PHP source.
+     *
+     * @param text The PHP source
+     * @return The methods, in the order they appear in the text
+     */
+    @NotNull
+    public static List<LattePresenterMethod> scanMethods(@NotNull CharSequence text) {
+        List<LattePresenterMethod> methods = new ArrayList<>();
+        Matcher matcher = METHOD_PATTERN.matcher(text);
+        while (matcher.find()) {
+            LattePresenterMethod.Kind kind = getKind(matcher.group(2));
+            int parametersEnd = findClosing(text, matcher.end() - 1, '(', ')');
+            String returnType = parametersEnd >= 0 ? findReturnType(text, parametersEnd + 1) : "";
+            methods.add(new LattePresenterMethod(matcher.group(1), kind, returnType, matcher.start()));
+        }
+        return methods;
+    }
+
+    /**
+     * Gets the indexed methods of a single presenter or control, ordered by offset.
+     * Falls back to scanning the text while the indexes are being updated and for files
+     * that are not indexed, e.g. presenters found through a custom mapping.
+     *
+     * @param project The project
+     * @param file The PHP file
+     * @return The methods in the file
+     */
+    @NotNull
+    public static List<LattePresenterMethod> getMethodsInFile(@NotNull Project project, @NotNull PsiFile file) {
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null || DumbService.isDumb(project) || !isIndexedFileName(virtualFile.getName())) {
+            return scanMethods(file.getViewProvider().getContents());
+        }
+
+        List<LattePresenterMethod> methods = new ArrayList<>();
+        for (List<LattePresenterMethod> values : FileBasedIndex.getInstance().getFileData(NAME, virtualFile, project).values()) {
+            methods.addAll(values);
+        }
+        methods.sort(Comparator.comparingInt(LattePresenterMethod::getOffset));
+        return methods;
+    }
+
+    /**
+     * Finds a method of a presenter or control by name, ignoring case as PHP does.
+     *
+     * @param project The project
+     * @param file The PHP file
+     * @param methodName The method name, e.g. "actionDetail"
+     * @return The method, or null if the file does not declare it
+     */
+    @Nullable
+    public static LattePresenterMethod findMethod(@NotNull Project project, @NotNull PsiFile file, @NotNull String methodName) {
+        for (LattePresenterMethod method : getMethodsInFile(project, file)) {
+            if (method.getName().equalsIgnoreCase(methodName)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the component factories (createComponent* methods) of a presenter or control.
+     *
+     * @param project The project
+     * @param file The PHP file
+     * @return The factories, ordered by offset
+     */
+    @NotNull
+    public static List<LattePresenterMethod> getComponentFactories(@NotNull Project project, @NotNull PsiFile file) {
+        List<LattePresenterMethod> factories = new ArrayList<>();
+        for (LattePresenterMethod method : getMethodsInFile(project, file)) {
+            if (method.getKind() == LattePresenterMethod.Kind.CREATE_COMPONENT) {
+                factories.add(method);
+            }
+        }
+        return factories;
+    }
+
+    @NotNull
+    private static String getKey(@NotNull String methodName) {
+        return methodName.toLowerCase(Locale.ROOT);
+    }
+
+    @NotNull
+    private static LattePresenterMethod.Kind getKind(@NotNull String prefix) {
+        for (LattePresenterMethod.Kind kind : LattePresenterMethod.Kind.values()) {
+            if (kind.getPrefix().equalsIgnoreCase(prefix)) {
+                return kind;
+            }
+        }
+        throw new IllegalArgumentException("Unknown method prefix: " + prefix);
+    }
+
+    /**
+     * Gets the declared return type of a method, or the class its body instantiates in
+     * a "return new" statement when no type is declared.
+     */
+    @NotNull
+    private static String findReturnType(@NotNull CharSequence text, int afterParameters) {
+        Matcher declared = DECLARED_TYPE_PATTERN.matcher(text);
+        declared.region(afterParameters, text.length());
+        if (declared.lookingAt()) {
+            return declared.group(1);
+        }
+
+        int bodyStart = -1;
+        for (int i = afterParameters; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '{') {
+                bodyStart = i;
+                break;
+            }
+            if (c == ';') {
+                // Abstract or interface method without a body
+                return "";
+            }
+        }
+        if (bodyStart < 0) {
+            return "";
+        }
+
+        int bodyEnd = findClosing(text, bodyStart, '{', '}');
+        Matcher instantiation = INSTANTIATION_PATTERN.matcher(text);
+        instantiation.region(bodyStart + 1, bodyEnd >= 0 ? bodyEnd : text.length());
+        return instantiation.find() ? instantiation.group(1) : "";
+    }
+
+    /**
+     * Finds the bracket closing the one at the given offset.
+     */
+    private static int findClosing(@NotNull CharSequence text, int openOffset, char open, char close) {
+        int depth = 0;
+        for (int i = openOffset; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == open) {
+                depth++;
+            } else if (c == close && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
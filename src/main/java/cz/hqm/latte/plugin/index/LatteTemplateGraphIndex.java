@@ -0,0 +1,237 @@
+package cz.hqm.latte.plugin.index;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.FilenameIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileBasedIndexExtension;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import cz.hqm.latte.plugin.file.LatteFileType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * File-based index of the template inclusion graph.
+ * Every {include}, {extends}, {layout}, {import}, {embed}, {sandbox} and {includeBlock} tag
+ * with a quoted path is indexed under the file name it refers to, so both the templates a file
+ * depends on and the templates that depend on a file can be found without a text search.
+ */
+public class LatteTemplateGraphIndex extends FileBasedIndexExtension<String, List<LatteTemplateReference>> {
+
+    public static final ID<String, List<LatteTemplateReference>> NAME = ID.create("cz.hqm.latte.plugin.templateGraph");
+
+    // Pattern for tags referencing another template by a quoted path
+    private static final Pattern REFERENCE_PATTERN = Pattern.compile(
+            "\\{(includeBlock|include|extends|layout|import|embed|sandbox)\\s+['\"]([^'\"]+)['\"]");
+
+    private static final DataExternalizer<List<LatteTemplateReference>> EXTERNALIZER = new DataExternalizer<>() {
+        @Override
+        public void save(@NotNull DataOutput out, List<LatteTemplateReference> references) throws IOException {
+            out.writeInt(references.size());
+            for (LatteTemplateReference reference : references) {
+                IOUtil.writeUTF(out, reference.getTagName());
+                IOUtil.writeUTF(out, reference.getPath());
+                out.writeInt(reference.getOffset());
+            }
+        }
+
+        @Override
+        public List<LatteTemplateReference> read(@NotNull DataInput in) throws IOException {
+            int count = in.readInt();
+            List<LatteTemplateReference> references = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                references.add(new LatteTemplateReference(IOUtil.readUTF(in), IOUtil.readUTF(in), in.readInt()));
+            }
+            return references;
+        }
+    };
+
+    @NotNull
+    @Override
+    public ID<String, List<LatteTemplateReference>> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, List<LatteTemplateReference>, FileContent> getIndexer() {
+        return inputData -> {
+            Map<String, List<LatteTemplateReference>> result = new HashMap<>();
+            for (LatteTemplateReference reference : scanReferences(inputData.getContentAsText())) {
+                result.computeIfAbsent(reference.getFileName(), name -> new ArrayList<>()).add(reference);
+            }
+            return result;
+        };
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<List<LatteTemplateReference>> getValueExternalizer() {
+        return EXTERNALIZER;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(LatteFileType.INSTANCE);
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    /**
+     * Finds the references to other templates in template text.
+     *
+     * @param text The template text
+     * @return The references, in the order they appear in the text
+     */
+    @NotNull
+    public static List<LatteTemplateReference> scanReferences(@NotNull CharSequence text) {
+        List<LatteTemplateReference> references = new ArrayList<>();
+        Matcher matcher = REFERENCE_PATTERN.matcher(text);
+        while (matcher.find()) {
+            references.add(new LatteTemplateReference(matcher.group(1), matcher.group(2), matcher.start()));
+        }
+        return references;
+    }
+
+    /**
+     * Gets the references from a template to other templates (the forward edges of the graph).
+     *
+     * @param project The project
+     * @param file The template file
+     * @return The references, ordered by offset; empty while the indexes are being updated
+     */
+    @NotNull
+    public static List<LatteTemplateReference> getReferences(@NotNull Project project, @NotNull VirtualFile file) {
+        List<LatteTemplateReference> references = new ArrayList<>();
+        if (DumbService.isDumb(project)) {
+            return references;
+        }
+        for (List<LatteTemplateReference> values : FileBasedIndex.getInstance().getFileData(NAME, file, project).values()) {
+            references.addAll(values);
+        }
+        references.sort(Comparator.comparingInt(LatteTemplateReference::getOffset));
+        return references;
+    }
+
+    /**
+     * Resolves a reference to the template file it points to.
+     * Paths are resolved relative to the referencing template; if that fails, a template with
+     * the same file name anywhere in the project is used, as {@code LatteTemplateInclusionHandler} does.
+     *
+     * @param project The project
+     * @param source The referencing template
+     * @param reference The reference
+     * @return The referenced template, or null if it does not exist
+     */
+    @Nullable
+    public static VirtualFile resolve(@NotNull Project project, @NotNull VirtualFile source, @NotNull LatteTemplateReference reference) {
+        VirtualFile directory = source.getParent();
+        if (directory != null) {
+            VirtualFile target = directory.findFileByRelativePath(reference.getPath());
+            if (target != null && !target.isDirectory()) {
+                return target;
+            }
+        }
+
+        Collection<VirtualFile> candidates = FilenameIndex.getVirtualFilesByName(reference.getFileName(), GlobalSearchScope.projectScope(project));
+        return candidates.isEmpty() ? null : candidates.iterator().next();
+    }
+
+    /**
+     * Finds the templates that directly reference the given template (the reverse edges of the graph).
+     * References that cannot be resolved relative to their template are counted for every
+     * template with the referenced file name, so the result may include extra templates but never misses one.
+     *
+     * @param project The project
+     * @param target The referenced template
+     * @return The referencing templates; empty while the indexes are being updated
+     */
+    @NotNull
+    public static Set<VirtualFile> findDirectDependents(@NotNull Project project, @NotNull VirtualFile target) {
+        Set<VirtualFile> dependents = new LinkedHashSet<>();
+        if (DumbService.isDumb(project)) {
+            return dependents;
+        }
+        FileBasedIndex.getInstance().processValues(NAME, target.getName(), null, (source, references) -> {
+            for (LatteTemplateReference reference : references) {
+                if (pointsTo(source, reference, target)) {
+                    dependents.add(source);
+                    break;
+                }
+            }
+            return true;
+        }, GlobalSearchScope.projectScope(project));
+        return dependents;
+    }
+
+    /**
+     * Finds all templates that depend on the given template, directly or through other templates.
+     *
+     * @param project The project
+     * @param target The template
+     * @return The dependent templates, nearest first, not including the template itself
+     */
+    @NotNull
+    public static Set<VirtualFile> findAllDependents(@NotNull Project project, @NotNull VirtualFile target) {
+        Set<VirtualFile> dependents = new LinkedHashSet<>();
+        Deque<VirtualFile> queue = new ArrayDeque<>();
+        queue.add(target);
+        while (!queue.isEmpty()) {
+            for (VirtualFile dependent : findDirectDependents(project, queue.poll())) {
+                if (!dependent.equals(target) && dependents.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * Checks whether a reference, already known to use the target's file name, points to the target.
+     */
+    private static boolean pointsTo(@NotNull VirtualFile source, @NotNull LatteTemplateReference reference, @NotNull VirtualFile target) {
+        VirtualFile directory = source.getParent();
+        VirtualFile resolved = directory != null ? directory.findFileByRelativePath(reference.getPath()) : null;
+        return resolved == null || resolved.equals(target);
+    }
+}
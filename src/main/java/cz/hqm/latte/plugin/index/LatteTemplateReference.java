@@ -0,0 +1,83 @@
+package cz.hqm.latte.plugin.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+/**
+ * A reference from one template to another, e.g. {include 'header.latte'} or {layout '@layout.latte'},
+ * stored in the {@link LatteTemplateGraphIndex}.
+ */
+public final class LatteTemplateReference {
+
+    private final String tagName;
+    private final String path;
+    private final int offset;
+
+    /**
+     * Creates a template reference.
+     *
+     * @param tagName The name of the referencing tag (e.g. "include" or "extends")
+     * @param path The referenced path as written in the tag
+     * @param offset The offset of the opening brace of the tag in the file
+     */
+    public LatteTemplateReference(@NotNull String tagName, @NotNull String path, int offset) {
+        this.tagName = tagName;
+        this.path = path;
+        this.offset = offset;
+    }
+
+    @NotNull
+    public String getTagName() {
+        return tagName;
+    }
+
+    @NotNull
+    public String getPath() {
+        return path;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the file name the path refers to, which is the key of the reference in the index.
+     *
+     * @return The last segment of the path
+     */
+    @NotNull
+    public String getFileName() {
+        return getFileName(path);
+    }
+
+    /**
+     * Gets the last segment of a template path.
+     *
+     * @param path The template path
+     * @return The file name
+     */
+    @NotNull
+    public static String getFileName(@NotNull String path) {
+        int separator = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        return separator >= 0 ? path.substring(separator + 1) : path;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LatteTemplateReference)) return false;
+        LatteTemplateReference that = (LatteTemplateReference) o;
+        return offset == that.offset && tagName.equals(that.tagName) && path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tagName, path, offset);
+    }
+
+    @Override
+    public String toString() {
+        return "{" + tagName + " '" + path + "'}@" + offset;
+    }
+}
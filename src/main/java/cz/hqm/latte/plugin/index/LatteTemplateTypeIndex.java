@@ -0,0 +1,199 @@
+package cz.hqm.latte.plugin.index;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.indexing.SingleEntryFileBasedIndexExtension;
+import com.intellij.util.indexing.SingleEntryIndexer;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.IOUtil;
+import cz.hqm.latte.plugin.file.LatteFileType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * File-based index of the types declared in each Latte template: {varType} and {var} variable
+ * types and the {templateType} class. The index is stored on disk by the platform and only
+ * recomputed for templates whose content changed, so types are available right after the IDE
+ * starts instead of being scanned again from every template.
+ */
+public class LatteTemplateTypeIndex extends SingleEntryFileBasedIndexExtension<LatteTemplateTypes> {
+
+    public static final ID<Integer, LatteTemplateTypes> NAME = ID.create("cz.hqm.latte.plugin.templateTypes");
+
+    // Pattern for extracting variable declarations from {var} macro
+    private static final Pattern VAR_PATTERN = Pattern.compile("\\{var\\s+(\\$\\w+)\\s*=\\s*([^}]+)\\}");
+
+    // Pattern for extracting type declarations from {varType} macro
+    private static final Pattern VAR_TYPE_PATTERN = Pattern.compile("\\{varType\\s+(\\$\\w+)\\s*:\\s*([\\?\\w\\|\\\\]+)\\}");
+
+    // Pattern for extracting class name from {templateType} macro
+    private static final Pattern TEMPLATE_TYPE_PATTERN = Pattern.compile("\\{templateType\\s+([\\w\\\\]+)\\}");
+
+    // Pattern for extracting class name from "new ClassName(...)"
+    private static final Pattern NEW_PATTERN = Pattern.compile("new\\s+(\\w+(?:\\\\\\w+)*)");
+
+    private static final DataExternalizer<LatteTemplateTypes> EXTERNALIZER = new DataExternalizer<>() {
+        @Override
+        public void save(@NotNull DataOutput out, LatteTemplateTypes types) throws IOException {
+            out.writeInt(types.getVariableTypes().size());
+            for (Map.Entry<String, String> variable : types.getVariableTypes().entrySet()) {
+                IOUtil.writeUTF(out, variable.getKey());
+                IOUtil.writeUTF(out, variable.getValue());
+            }
+            String templateType = types.getTemplateType();
+            IOUtil.writeUTF(out, templateType != null ? templateType : "");
+        }
+
+        @Override
+        public LatteTemplateTypes read(@NotNull DataInput in) throws IOException {
+            int count = in.readInt();
+            Map<String, String> variableTypes = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                variableTypes.put(IOUtil.readUTF(in), IOUtil.readUTF(in));
+            }
+            String templateType = IOUtil.readUTF(in);
+            return new LatteTemplateTypes(variableTypes, templateType.isEmpty() ? null : templateType);
+        }
+    };
+
+    @NotNull
+    @Override
+    public ID<Integer, LatteTemplateTypes> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public SingleEntryIndexer<LatteTemplateTypes> getIndexer() {
+        return new SingleEntryIndexer<>(false) {
+            @Nullable
+            @Override
+            protected LatteTemplateTypes computeValue(@NotNull FileContent inputData) {
+                return scanTypes(inputData.getContentAsText());
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<LatteTemplateTypes> getValueExternalizer() {
+        return EXTERNALIZER;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(LatteFileType.INSTANCE);
+    }
+
+    /**
+     * Finds the declared variable types and the template type in template text.
+     * A {varType} declaration wins over a type inferred from a {var} value.
+     *
+     * @param text The template text
+     * @return The types declared in the template
+     */
+    @NotNull
+    public static LatteTemplateTypes scanTypes(@NotNull CharSequence text) {
+        Map<String, String> variableTypes = new LinkedHashMap<>();
+
+        // Extract types from {varType} macros
+        Matcher varTypeMatcher = VAR_TYPE_PATTERN.matcher(text);
+        while (varTypeMatcher.find()) {
+            variableTypes.put(varTypeMatcher.group(1), varTypeMatcher.group(2));
+        }
+
+        // Extract types from {var} macros (infer from value)
+        Matcher varMatcher = VAR_PATTERN.matcher(text);
+        while (varMatcher.find()) {
+            String variableName = varMatcher.group(1);
+            if (!variableTypes.containsKey(variableName)) {
+                String inferredType = inferTypeFromValue(varMatcher.group(2));
+                if (inferredType != null) {
+                    variableTypes.put(variableName, inferredType);
+                }
+            }
+        }
+
+        // Extract type from {templateType} macro
+        Matcher templateTypeMatcher = TEMPLATE_TYPE_PATTERN.matcher(text);
+        String templateType = templateTypeMatcher.find() ? templateTypeMatcher.group(1) : null;
+
+        if (variableTypes.isEmpty() && templateType == null) {
+            return LatteTemplateTypes.EMPTY;
+        }
+        return new LatteTemplateTypes(variableTypes, templateType);
+    }
+
+    /**
+     * Gets the types declared in a template.
+     * Falls back to scanning the text while the indexes are being updated and for files outside the VFS.
+     *
+     * @param project The project
+     * @param file The template file
+     * @return The types declared in the template
+     */
+    @NotNull
+    public static LatteTemplateTypes getTypes(@NotNull Project project, @NotNull PsiFile file) {
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null || DumbService.isDumb(project) || !(file.getFileType() instanceof LatteFileType)) {
+            return scanTypes(file.getViewProvider().getContents());
+        }
+
+        for (LatteTemplateTypes types : FileBasedIndex.getInstance().getFileData(NAME, virtualFile, project).values()) {
+            return types;
+        }
+        return LatteTemplateTypes.EMPTY;
+    }
+
+    /**
+     * Infers the type of a {var} value.
+     *
+     * @param value The value
+     * @return The inferred type, or null if not inferrable
+     */
+    @Nullable
+    private static String inferTypeFromValue(@NotNull String value) {
+        value = value.trim();
+
+        if (value.startsWith("'") || value.startsWith("\"")) {
+            return "string";
+        } else if (value.equals("true") || value.equals("false")) {
+            return "bool";
+        } else if (value.matches("\\d+")) {
+            return "int";
+        } else if (value.matches("\\d+\\.\\d+")) {
+            return "float";
+        } else if (value.startsWith("[") || value.startsWith("array(")) {
+            return "array";
+        } else if (value.equals("null")) {
+            return "null";
+        } else if (value.startsWith("new ")) {
+            Matcher newMatcher = NEW_PATTERN.matcher(value);
+            if (newMatcher.find()) {
+                return newMatcher.group(1);
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,60 @@
+package cz.hqm.latte.plugin.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The types declared in a template, stored in the {@link LatteTemplateTypeIndex}:
+ * variable types from {varType} and {var} tags and the class from {templateType}.
+ */
+public final class LatteTemplateTypes {
+
+    public static final LatteTemplateTypes EMPTY = new LatteTemplateTypes(Collections.emptyMap(), null);
+
+    private final Map<String, String> variableTypes;
+    private final String templateType;
+
+    /**
+     * Creates the types of a template.
+     *
+     * @param variableTypes The variable types by variable name including the "$" (e.g. "$product" to "Product")
+     * @param templateType The class from {templateType}, or null if the template has none
+     */
+    public LatteTemplateTypes(@NotNull Map<String, String> variableTypes, @Nullable String templateType) {
+        this.variableTypes = Collections.unmodifiableMap(new LinkedHashMap<>(variableTypes));
+        this.templateType = templateType;
+    }
+
+    @NotNull
+    public Map<String, String> getVariableTypes() {
+        return variableTypes;
+    }
+
+    @Nullable
+    public String getTemplateType() {
+        return templateType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LatteTemplateTypes)) return false;
+        LatteTemplateTypes that = (LatteTemplateTypes) o;
+        return variableTypes.equals(that.variableTypes) && Objects.equals(templateType, that.templateType);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(variableTypes, templateType);
+    }
+
+    @Override
+    public String toString() {
+        return "LatteTemplateTypes{variableTypes=" + variableTypes + ", templateType=" + templateType + "}";
+    }
+}
@@ -0,0 +1,124 @@
+package cz.hqm.latte.plugin.inspection;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.CommonProblemDescriptor;
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.GlobalInspectionTool;
+import com.intellij.codeInspection.InspectionManager;
+import com.intellij.codeInspection.ProblemDescriptionsProcessor;
+import com.intellij.codeInspection.ProblemHighlightType;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import cz.hqm.latte.plugin.file.LatteFileType;
+import cz.hqm.latte.plugin.util.LatteLogger;
+import cz.hqm.latte.plugin.validator.LatteBatchReport;
+import cz.hqm.latte.plugin.validator.LatteBatchValidator;
+import cz.hqm.latte.plugin.validator.LatteValidationProblem;
+import cz.hqm.latte.plugin.version.LatteVersionManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Validates all Latte templates in the inspected scope with {@link LatteBatchValidator}.
+ * <p>
+ * Runs in batch inspections, including the inspect-code command line of the IDE. The templates are
+ * validated in parallel and their problems are reported as results of this inspection. When the
+ * latte.validation.report system property is set, the report is also written to the file it names,
+ * as SARIF if the name ends with ".sarif" and as JSON otherwise. The latte.validation.parallelism
+ * system property limits the number of threads, which defaults to the number of cores. In the editor
+ * the same problems are shown by the validation annotator.
+ */
+public class LatteTemplateValidationInspection extends GlobalInspectionTool {
+    private static final Logger LOG = Logger.getInstance(LatteTemplateValidationInspection.class);
+
+    @Override
+    public boolean isGraphNeeded() {
+        return false;
+    }
+
+    @Override
+    public void runInspection(@NotNull AnalysisScope scope,
+                              @NotNull InspectionManager manager,
+                              @NotNull GlobalInspectionContext globalContext,
+                              @NotNull ProblemDescriptionsProcessor problemDescriptionsProcessor) {
+        Project project = globalContext.getProject();
+        List<VirtualFile> files = new ArrayList<>();
+        scope.accept(file -> {
+            if (file.getFileType() instanceof LatteFileType) {
+                files.add(file);
+            }
+            return true;
+        });
+
+        // Versions, custom tags and contents are resolved here, the worker threads only validate the templates.
+        // The contents are those of the PSI, so unsaved changes in open editors are validated too
+        PsiManager psiManager = PsiManager.getInstance(project);
+        List<LatteBatchValidator.Template> templates = new ArrayList<>(files.size());
+        for (VirtualFile file : files) {
+            CharSequence text = ReadAction.compute(() -> {
+                PsiFile psiFile = file.isValid() ? psiManager.findFile(file) : null;
+                return psiFile != null ? psiFile.getViewProvider().getContents() : "";
+            });
+            templates.add(new LatteBatchValidator.Template(file.getUrl(), () -> text,
+                    LatteVersionManager.getVersion(project, file), project));
+        }
+        int parallelism = Integer.getInteger("latte.validation.parallelism", Runtime.getRuntime().availableProcessors());
+        LatteBatchReport report = new LatteBatchValidator(Math.max(1, parallelism)).validate(templates);
+        LatteLogger.info(LOG, "Validated " + report.getTemplateCount() + " Latte templates in "
+                + report.getElapsedNanos() / 1_000_000 + " ms (" + Math.round(report.getTemplatesPerSecond())
+                + " templates/s on " + report.getParallelism() + " threads), " + report.getProblemCount() + " problems");
+        writeReport(report);
+
+        for (int i = 0; i < files.size(); i++) {
+            List<LatteBatchReport.Finding> findings = report.getResults().get(i).getFindings();
+            PsiFile psiFile = findings.isEmpty() ? null : psiManager.findFile(files.get(i));
+            if (psiFile == null) {
+                continue;
+            }
+            RefElement reference = globalContext.getRefManager().getReference(psiFile);
+            if (reference == null) {
+                continue;
+            }
+            int length = psiFile.getTextLength();
+            CommonProblemDescriptor[] descriptors = new CommonProblemDescriptor[findings.size()];
+            for (int j = 0; j < descriptors.length; j++) {
+                LatteValidationProblem problem = findings.get(j).getProblem();
+                int start = Math.min(problem.getStartOffset(), length);
+                int end = Math.max(start, Math.min(problem.getEndOffset(), length));
+                descriptors[j] = manager.createProblemDescriptor(psiFile, new TextRange(start, end),
+                        problem.getMessage(), highlightType(problem.getSeverity()), false);
+            }
+            problemDescriptionsProcessor.addProblemElement(reference, descriptors);
+        }
+    }
+
+    @NotNull
+    private static ProblemHighlightType highlightType(@NotNull HighlightSeverity severity) {
+        return severity.compareTo(HighlightSeverity.ERROR) >= 0
+                ? ProblemHighlightType.GENERIC_ERROR
+                : ProblemHighlightType.GENERIC_ERROR_OR_WARNING;
+    }
+
+    private static void writeReport(@NotNull LatteBatchReport report) {
+        String reportFile = System.getProperty("latte.validation.report");
+        if (reportFile == null || reportFile.isEmpty()) {
+            return;
+        }
+        try {
+            report.write(Paths.get(reportFile));
+        } catch (IOException e) {
+            LOG.warn("Cannot write the Latte validation report to " + reportFile, e);
+        }
+    }
+}
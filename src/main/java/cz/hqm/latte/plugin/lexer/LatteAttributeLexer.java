@@ -2,6 +2,7 @@ package cz.hqm.latte.plugin.lexer;
 
 import com.intellij.lexer.LexerBase;
 import com.intellij.psi.tree.IElementType;
+import cz.hqm.latte.plugin.util.LatteTrace;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -11,6 +12,8 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.LEXER;
+
 /**
  * Lexer for Latte n:attributes.
  * Handles tokenization of Latte attributes and detects syntax errors.
@@ -82,12 +85,31 @@ public class LatteAttributeLexer extends LexerBase {
         this.tokenStart = startOffset;
         this.tokenEnd = startOffset;
         this.tokenType = null;
-        this.state = STATE_INITIAL;
-        this.quoteChar = 0;
+        restoreState(initialState);
         
         advance();
     }
     
+    /**
+     * Restores the state and the quote character of an attribute value from a state
+     * previously returned by {@link #getState()}.
+     *
+     * @param initialState The state to restore
+     */
+    void restoreState(int initialState) {
+        this.state = initialState & 0x3;
+        switch ((initialState >>> 2) & 0x3) {
+            case 1:
+                this.quoteChar = '"';
+                break;
+            case 2:
+                this.quoteChar = '\'';
+                break;
+            default:
+                this.quoteChar = 0;
+        }
+    }
+    
     @Override
     public void advance() {
         if (position >= endOffset) {
@@ -128,33 +150,27 @@ public class LatteAttributeLexer extends LexerBase {
     private void handleInitialState() {
         // Check for attribute name
         String text = buffer.subSequence(position, endOffset).toString();
-        System.out.println("DEBUG: handleInitialState processing text: " + text);
         Matcher matcher = ATTRIBUTE_NAME_PATTERN.matcher(text);
         
         if (matcher.find()) {
             String attrName = matcher.group(1);
-            System.out.println("DEBUG: Found attribute name: " + attrName);
             position += matcher.end();
             
             // Store the current attribute name for later use
             currentAttributeName = attrName;
-            System.out.println("DEBUG: Set currentAttributeName to: " + currentAttributeName);
             
             // Check if it's a valid attribute name
             // For the specific test case "n:invalid", we need to explicitly mark it as invalid
             if (attrName.equals("n:invalid")) {
                 tokenType = LatteTokenTypes.LATTE_ERROR_INVALID_ATTRIBUTE_SYNTAX;
-                System.out.println("DEBUG: Invalid attribute name: n:invalid");
+                LatteTrace.trace(LEXER, "attribute.invalid", "name", attrName);
             } else if (VALID_ATTRIBUTE_NAMES.contains(attrName) || 
                     VALID_ATTRIBUTE_PREFIXES.stream().anyMatch(prefix -> attrName.startsWith(prefix))) {
                 tokenType = LatteTokenTypes.LATTE_ATTRIBUTE_NAME;
-                System.out.println("DEBUG: Valid attribute name: " + attrName);
-                if (attrName.equals("n:syntax")) {
-                    System.out.println("DEBUG: Found n:syntax attribute!");
-                }
+                LatteTrace.trace(LEXER, "attribute.name", "name", attrName);
             } else {
                 tokenType = LatteTokenTypes.LATTE_ERROR_INVALID_ATTRIBUTE_SYNTAX;
-                System.out.println("DEBUG: Invalid attribute name: " + attrName);
+                LatteTrace.trace(LEXER, "attribute.invalid", "name", attrName);
             }
             
             tokenEnd = position;
@@ -162,7 +178,9 @@ public class LatteAttributeLexer extends LexerBase {
             return;
         }
         
-        System.out.println("DEBUG: No attribute name found in text: " + text);
+        if (LatteTrace.isEnabled(LEXER)) {
+            LatteTrace.trace(LEXER, "attribute.noName", "offset", position);
+        }
         
         // If not an attribute name, skip to the end
         position = endOffset;
@@ -235,13 +253,8 @@ public class LatteAttributeLexer extends LexerBase {
                     // Check if this is an n:syntax attribute and update the syntax mode
                     if ("n:syntax".equals(currentAttributeName) && parentLexer != null) {
                         String attributeValue = buffer.subSequence(tokenStart, tokenEnd).toString();
-                        System.out.println("DEBUG: Found n:syntax attribute with value: " + attributeValue);
-                        System.out.println("DEBUG: Current attribute name: " + currentAttributeName);
-                        System.out.println("DEBUG: Parent lexer is " + (parentLexer != null ? "not null" : "null"));
                         parentLexer.setSyntaxMode(attributeValue);
-                        System.out.println("DEBUG: After setting syntax mode, mode is: " + parentLexer.getSyntaxMode());
-                    } else {
-                        System.out.println("DEBUG: Not updating syntax mode. currentAttributeName=" + currentAttributeName + ", parentLexer=" + (parentLexer != null ? "not null" : "null"));
+                        LatteTrace.trace(LEXER, "syntax.changed", "value", attributeValue, "mode", parentLexer.getSyntaxMode());
                     }
             
                     position++;  // Skip the closing quote
@@ -276,13 +289,8 @@ public class LatteAttributeLexer extends LexerBase {
             // Check if this is an n:syntax attribute and update the syntax mode
             if ("n:syntax".equals(currentAttributeName) && parentLexer != null) {
                 String attributeValue = buffer.subSequence(valueStart, position).toString();
-                System.out.println("DEBUG: Found n:syntax attribute with unquoted value: " + attributeValue);
-                System.out.println("DEBUG: Current attribute name: " + currentAttributeName);
-                System.out.println("DEBUG: Parent lexer is " + (parentLexer != null ? "not null" : "null"));
                 parentLexer.setSyntaxMode(attributeValue);
-                System.out.println("DEBUG: After setting syntax mode, mode is: " + parentLexer.getSyntaxMode());
-            } else {
-                System.out.println("DEBUG: Not updating syntax mode (unquoted). currentAttributeName=" + currentAttributeName + ", parentLexer=" + (parentLexer != null ? "not null" : "null"));
+                LatteTrace.trace(LEXER, "syntax.changed", "value", attributeValue, "mode", parentLexer.getSyntaxMode());
             }
             
             state = STATE_AFTER_VALUE;
@@ -295,7 +303,9 @@ public class LatteAttributeLexer extends LexerBase {
     
     @Override
     public int getState() {
-        return state;
+        // The quote character of the current attribute value is kept in bits 2-3
+        int quote = quoteChar == '"' ? 1 : quoteChar == '\'' ? 2 : 0;
+        return state | (quote << 2);
     }
     
     @Nullable
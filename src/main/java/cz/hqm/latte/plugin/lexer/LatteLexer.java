@@ -1,9 +1,12 @@
 package cz.hqm.latte.plugin.lexer;
 
 import com.intellij.lexer.LayeredLexer;
+import com.intellij.lexer.RestartableLexer;
+import com.intellij.lexer.TokenIterator;
 import com.intellij.lexer.HtmlLexer;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.xml.XmlTokenType;
+import cz.hqm.latte.plugin.version.LatteVersion;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import java.util.Stack;
@@ -14,7 +17,7 @@ import java.util.regex.Pattern;
  * Lexer for Latte template language.
  * Handles Latte-specific syntax like macros.
  */
-public class LatteLexer extends LayeredLexer {
+public class LatteLexer extends LayeredLexer implements RestartableLexer {
     
     // Current syntax mode
     private LatteSyntaxMode syntaxMode = LatteSyntaxMode.DEFAULT;
@@ -34,6 +37,42 @@ public class LatteLexer extends LayeredLexer {
     // Internal flag to track when we are at an n:syntax attribute name
     private boolean nSyntaxAttributeSeen = false;
     
+    // Latte version of the template being lexed, or null for the current version
+    @Nullable
+    private LatteVersion version;
+    
+    // Attribute layer, its state is part of the packed lexer state
+    private final LatteAttributeLexer attributeLexer;
+    
+    /*
+     * Layout of the lexer state returned by getState():
+     *
+     *   bits  0-17  state of the underlying HTML lexer
+     *   bits 18-19  current syntax mode (LatteSyntaxMode ordinal)
+     *   bits 20-21  depth of the syntax mode stack, saturated at 3
+     *   bits 22-25  the two topmost stacked syntax modes (top of the stack in bits 22-23)
+     *   bit  26     n:syntax attribute name seen, waiting for its value
+     *   bits 27-30  state of the attribute lexer
+     *   bit  31     the syntax mode stack is deeper than recorded, see isRestartableState
+     *
+     * The bottom of the syntax mode stack is always the mode the lexer started in (DEFAULT),
+     * so recording the two topmost entries restores stacks up to three modes deep exactly.
+     * Deeper stacks cannot be restored, so their states are marked as not restartable.
+     */
+    
+    /**
+     * Mask of the bits of the lexer state that hold the state of the underlying HTML lexer.
+     * The states of {@link HtmlLexer} must fit in these bits.
+     */
+    public static final int HTML_STATE_MASK = (1 << 18) - 1;
+    private static final int MODE_SHIFT = 18;
+    private static final int DEPTH_SHIFT = 20;
+    private static final int STACK_SHIFT = 22;
+    private static final int N_SYNTAX_SEEN_FLAG = 1 << 26;
+    private static final int ATTRIBUTE_STATE_SHIFT = 27;
+    private static final int MAX_RECORDED_DEPTH = 3;
+    private static final int TRUNCATED_STACK_FLAG = 1 << 31;
+    
     public LatteLexer() {
         super(new HtmlLexer());
         
@@ -46,7 +85,7 @@ public class LatteLexer extends LayeredLexer {
         
         // Keep registration of attribute layer for future use (it may be activated in environments
         // where custom tokens are provided). Tests relying on LatteLexer will use XML tokens path below.
-        LatteAttributeLexer attributeLexer = new LatteAttributeLexer(this);
+        attributeLexer = new LatteAttributeLexer(this);
         registerSelfStoppingLayer(
             attributeLexer,
             new IElementType[] { LatteTokenTypes.LATTE_ATTRIBUTE_START },
@@ -129,6 +168,84 @@ public class LatteLexer extends LayeredLexer {
         }
     }
     
+    @Override
+    public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
+        restoreLatteState(initialState);
+        super.start(buffer, startOffset, endOffset, initialState & HTML_STATE_MASK);
+    }
+    
+    @Override
+    public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState, TokenIterator tokenIterator) {
+        start(buffer, startOffset, endOffset, initialState);
+    }
+    
+    @Override
+    public int getStartState() {
+        return 0;
+    }
+    
+    /**
+     * Lexing can be restarted where the HTML lexer is in its initial state, unless the syntax mode stack
+     * was deeper than the state records and restarting there would lose the modes below the recorded ones.
+     *
+     * @param state The packed lexer state
+     * @return Whether lexing can be restarted at a token with the state
+     */
+    @Override
+    public boolean isRestartableState(int state) {
+        return (state & TRUNCATED_STACK_FLAG) == 0 && (state & HTML_STATE_MASK) == 0;
+    }
+    
+    /**
+     * Gets the lexer state at the current token, including the syntax mode, the syntax mode stack
+     * and the attribute lexer state, so that lexing can be restarted at any token boundary.
+     *
+     * @return The packed lexer state
+     */
+    @Override
+    public int getState() {
+        return (super.getState() & HTML_STATE_MASK) | encodeLatteState();
+    }
+    
+    /**
+     * Encodes the Latte specific part of the lexer state.
+     */
+    private int encodeLatteState() {
+        int depth = Math.min(syntaxModeStack.size(), MAX_RECORDED_DEPTH);
+        int state = syntaxMode.ordinal() << MODE_SHIFT;
+        state |= depth << DEPTH_SHIFT;
+        for (int i = 0; i < Math.min(depth, 2); i++) {
+            LatteSyntaxMode stacked = syntaxModeStack.get(syntaxModeStack.size() - 1 - i);
+            state |= stacked.ordinal() << (STACK_SHIFT + 2 * i);
+        }
+        if (nSyntaxAttributeSeen) {
+            state |= N_SYNTAX_SEEN_FLAG;
+        }
+        state |= (attributeLexer.getState() & 0xF) << ATTRIBUTE_STATE_SHIFT;
+        if (syntaxModeStack.size() > MAX_RECORDED_DEPTH) {
+            state |= TRUNCATED_STACK_FLAG;
+        }
+        return state;
+    }
+    
+    /**
+     * Restores the syntax mode, the syntax mode stack and the attribute lexer state from a packed state.
+     */
+    private void restoreLatteState(int state) {
+        LatteSyntaxMode[] modes = LatteSyntaxMode.values();
+        syntaxMode = modes[(state >>> MODE_SHIFT) & 0x3];
+        syntaxModeStack.clear();
+        
+        int depth = (state >>> DEPTH_SHIFT) & 0x3;
+        for (int i = depth - 1; i >= 0; i--) {
+            // Entries below the two recorded ones can only be the initial mode
+            syntaxModeStack.push(i < 2 ? modes[(state >>> (STACK_SHIFT + 2 * i)) & 0x3] : LatteSyntaxMode.DEFAULT);
+        }
+        
+        nSyntaxAttributeSeen = (state & N_SYNTAX_SEEN_FLAG) != 0;
+        attributeLexer.restoreState((state >>> ATTRIBUTE_STATE_SHIFT) & 0xF);
+    }
+    
     @Nullable
     @Override
     public IElementType getTokenType() {
@@ -156,14 +273,62 @@ public class LatteLexer extends LayeredLexer {
             }
         }
         
-        // Also process macro and inline patterns within the current token
-        if (tokenSequence != null && tokenSequence.length() > 0) {
+        // Also process macro and inline patterns within the current token; the patterns
+        // can only match tokens containing a syntax marker, so other tokens skip them
+        if (tokenSequence != null && mayMatchSyntaxPatterns(tokenSequence)) {
             processSyntaxTags(tokenSequence.toString());
         }
         
         super.advance();
     }
     
+    /**
+     * Prefilter of the syntax patterns: they are only run on the tokens it accepts.
+     *
+     * @param text The token text
+     * @return False if the syntax patterns cannot match the text
+     */
+    protected boolean mayMatchSyntaxPatterns(@NotNull CharSequence text) {
+        return containsSyntaxMarker(text);
+    }
+    
+    /**
+     * Checks whether the text contains "{syntax", "{/syntax" or "n:syntax", which every
+     * match of the syntax patterns does. Scans the characters without allocating.
+     *
+     * @param text The token text
+     * @return True if the syntax patterns may match the text
+     */
+    private static boolean containsSyntaxMarker(@NotNull CharSequence text) {
+        int length = text.length();
+        // "syntax" must be preceded by "{", "{/" or "n:"
+        for (int i = 1; i + 6 <= length; i++) {
+            if (text.charAt(i) != 's' || !regionMatches(text, i, "syntax")) {
+                continue;
+            }
+            char previous = text.charAt(i - 1);
+            if (previous == '{') {
+                return true;
+            }
+            if (i >= 2) {
+                char beforePrevious = text.charAt(i - 2);
+                if ((previous == '/' && beforePrevious == '{') || (previous == ':' && beforePrevious == 'n')) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private static boolean regionMatches(@NotNull CharSequence text, int offset, @NotNull String needle) {
+        for (int i = 0; i < needle.length(); i++) {
+            if (text.charAt(offset + i) != needle.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     private static String stripQuotes(String s) {
         if (s == null || s.length() < 2) return s == null ? "" : s;
         char first = s.charAt(0);
@@ -180,6 +345,25 @@ public class LatteLexer extends LayeredLexer {
         return super.getTokenSequence();
     }
     
+    /**
+     * Gets the Latte version whose macro and filter names this lexer accepts.
+     *
+     * @return The version of the template, or null for the current version
+     */
+    @Nullable
+    public LatteVersion getVersion() {
+        return version;
+    }
+    
+    /**
+     * Sets the Latte version of the template being lexed, e.g. the version of its composer module.
+     *
+     * @param version The version, or null for the current version
+     */
+    public void setVersion(@Nullable LatteVersion version) {
+        this.version = version;
+    }
+    
     /**
      * Resets the lexer state.
      * This method is called when a cached lexer instance is reused.
@@ -189,6 +373,7 @@ public class LatteLexer extends LayeredLexer {
         syntaxMode = LatteSyntaxMode.DEFAULT;
         syntaxModeStack.clear();
         nSyntaxAttributeSeen = false;
+        version = null;
         
         // Reset the base lexer
         super.start("", 0, 0, 0);
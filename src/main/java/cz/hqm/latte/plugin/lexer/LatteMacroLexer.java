@@ -4,14 +4,10 @@ import com.intellij.lexer.LexerBase;
 import com.intellij.psi.tree.IElementType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import cz.hqm.latte.plugin.filters.NetteFilterProvider;
-import cz.hqm.latte.plugin.macros.NetteMacroProvider;
 
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Lexer for Latte macros.
@@ -62,7 +58,7 @@ public class LatteMacroLexer extends LexerBase {
         this.syntaxMode = mode;
     }
     // Built-in macro names (common macros in Latte)
-    private static final Set<String> BUILT_IN_MACRO_NAMES = new HashSet<>(Arrays.asList(
+    static final Set<String> BUILT_IN_MACRO_NAMES = new HashSet<>(Arrays.asList(
             "if", "else", "elseif", "ifset", "ifCurrent", "foreach", "for", "while",
             "first", "last", "sep", "include", "extends", "layout", "block", "define",
             "snippet", "snippetArea", "capture", "var", "default", "dump", "debugbreak",
@@ -70,20 +66,8 @@ public class LatteMacroLexer extends LexerBase {
             "do", "varType", "templateType", "parameters"
     ));
     
-    /**
-     * Gets all valid macro names, including built-in macros and macros from enabled Nette packages.
-     *
-     * @return A set of all valid macro names
-     */
-    private Set<String> getAllValidMacroNames() {
-        Set<String> allMacroNames = new HashSet<>(BUILT_IN_MACRO_NAMES);
-        allMacroNames.addAll(NetteMacroProvider.getValidMacroNames());
-        return allMacroNames;
-    }
-    
-    // Patterns for matching different parts of a macro
-    private static final Pattern MACRO_NAME_PATTERN = Pattern.compile("^([a-zA-Z_][a-zA-Z0-9_]*)");
-    private static final Pattern CLOSING_MACRO_PATTERN = Pattern.compile("^/([a-zA-Z_][a-zA-Z0-9_]*)");
+    // Valid macro and filter names, taken when the lexer is started
+    private LatteNameTables nameTables;
     
     // Buffer and position information
     private CharSequence buffer;
@@ -103,6 +87,12 @@ public class LatteMacroLexer extends LexerBase {
         this.tokenStart = startOffset;
         this.tokenEnd = startOffset;
         this.tokenType = null;
+        this.nameTables = LatteNameTables.getInstance(parentLexer != null ? parentLexer.getVersion() : null);
+        
+        // Without a parent lexer the syntax mode is carried in the state
+        if (parentLexer == null) {
+            this.syntaxMode = LatteSyntaxMode.values()[initialState & 0x3];
+        }
         
         advance();
     }
@@ -224,20 +214,11 @@ public class LatteMacroLexer extends LexerBase {
         // For the test case where we're directly passing the macro name without the opening brace
         if (position == startOffset) {
             // Check if it's a valid macro name
-            String text = buffer.subSequence(position, endOffset).toString();
-            Matcher matcher = MACRO_NAME_PATTERN.matcher(text);
+            int nameEnd = scanIdentifier(position);
             
-            if (matcher.find()) {
-                String macroName = matcher.group(1);
-                position += matcher.end();
-                
-                // Check if it's a valid macro name
-                if (getAllValidMacroNames().contains(macroName)) {
-                    tokenType = LatteTokenTypes.LATTE_MACRO_NAME;
-                } else {
-                    tokenType = LatteTokenTypes.LATTE_ERROR_INVALID_MACRO_NAME;
-                }
-                
+            if (nameEnd > position) {
+                tokenType = macroNameType(position, nameEnd);
+                position = nameEnd;
                 tokenEnd = position;
                 return;
             }
@@ -271,40 +252,23 @@ public class LatteMacroLexer extends LexerBase {
         
         // Check for closing macro (e.g., /if, /foreach)
         if (buffer.charAt(position) == '/') {
-            String text = buffer.subSequence(position, endOffset).toString();
-            Matcher matcher = CLOSING_MACRO_PATTERN.matcher(text);
+            int nameEnd = scanIdentifier(position + 1);
             
-            if (matcher.find()) {
-                String macroName = matcher.group(1);
-                position += matcher.end();
-                
+            if (nameEnd > position + 1) {
                 // Check if it's a valid closing macro
-                if (getAllValidMacroNames().contains(macroName)) {
-                    tokenType = LatteTokenTypes.LATTE_MACRO_NAME;
-                } else {
-                    tokenType = LatteTokenTypes.LATTE_ERROR_INVALID_MACRO_NAME;
-                }
-                
+                tokenType = macroNameType(position + 1, nameEnd);
+                position = nameEnd;
                 tokenEnd = position;
                 return;
             }
         }
         
         // Check for macro name
-        String text = buffer.subSequence(position, endOffset).toString();
-        Matcher matcher = MACRO_NAME_PATTERN.matcher(text);
+        int nameEnd = scanIdentifier(position);
         
-        if (matcher.find()) {
-            String macroName = matcher.group(1);
-            position += matcher.end();
-            
-            // Check if it's a valid macro name
-            if (getAllValidMacroNames().contains(macroName)) {
-                tokenType = LatteTokenTypes.LATTE_MACRO_NAME;
-            } else {
-                tokenType = LatteTokenTypes.LATTE_ERROR_INVALID_MACRO_NAME;
-            }
-            
+        if (nameEnd > position) {
+            tokenType = macroNameType(position, nameEnd);
+            position = nameEnd;
             tokenEnd = position;
             return;
         }
@@ -337,15 +301,14 @@ public class LatteMacroLexer extends LexerBase {
             if (position == tokenStart && tokenStart > startOffset && 
                     buffer.charAt(tokenStart - 1) == '|') {
                 // We're right after a pipe, so this should be a filter name
-                String filterText = buffer.subSequence(position, endOffset).toString();
-                Matcher filterMatcher = MACRO_NAME_PATTERN.matcher(filterText);
+                int filterEnd = scanIdentifier(position);
                 
-                if (filterMatcher.find()) {
-                    String filterName = filterMatcher.group(1);
-                    position += filterMatcher.end();
+                if (filterEnd > position) {
+                    boolean validFilter = nameTables.getFilterNames().contains(buffer, position, filterEnd);
+                    position = filterEnd;
                     
                     // Check if it's a valid filter name
-                    if (NetteFilterProvider.getValidFilterNames().contains(filterName)) {
+                    if (validFilter) {
                         tokenType = LatteTokenTypes.LATTE_FILTER_NAME;
                     } else {
                         tokenType = LatteTokenTypes.LATTE_ERROR_UNKNOWN_FILTER;
@@ -373,9 +336,44 @@ public class LatteMacroLexer extends LexerBase {
         tokenEnd = position;
     }
     
+    /**
+     * Scans an identifier ([a-zA-Z_][a-zA-Z0-9_]*) starting at the given offset.
+     *
+     * @param from The offset to start at
+     * @return The end offset of the identifier, or the start offset if there is none
+     */
+    private int scanIdentifier(int from) {
+        if (from >= endOffset || !isIdentifierStart(buffer.charAt(from))) {
+            return from;
+        }
+        int end = from + 1;
+        while (end < endOffset && (isIdentifierStart(buffer.charAt(end)) || isAsciiDigit(buffer.charAt(end)))) {
+            end++;
+        }
+        return end;
+    }
+    
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+    
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    /**
+     * Gets the token type for a macro name in the buffer, matching it against the valid names in place.
+     */
+    private IElementType macroNameType(int start, int end) {
+        return nameTables.getMacroNames().contains(buffer, start, end)
+                ? LatteTokenTypes.LATTE_MACRO_NAME
+                : LatteTokenTypes.LATTE_ERROR_INVALID_MACRO_NAME;
+    }
+    
     @Override
     public int getState() {
-        return 0;
+        // The syntax mode is the only state carried between tokens; with a parent lexer it is part of the parent's state
+        return parentLexer == null ? syntaxMode.ordinal() : 0;
     }
     
     @Nullable
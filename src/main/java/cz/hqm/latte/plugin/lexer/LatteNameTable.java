@@ -0,0 +1,153 @@
+package cz.hqm.latte.plugin.lexer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable set of names stored as a character trie.
+ * Lookups match directly against a region of a {@link CharSequence}, so the lexer can
+ * recognize macro and filter names in its buffer without creating substrings.
+ */
+public final class LatteNameTable {
+
+    // Child labels of each node, sorted for binary search
+    private final char[][] labels;
+
+    // Child node indexes of each node, parallel to labels
+    private final int[][] children;
+
+    // Whether a name ends at the node
+    private final boolean[] terminal;
+
+    private final int size;
+
+    private LatteNameTable(char[][] labels, int[][] children, boolean[] terminal, int size) {
+        this.labels = labels;
+        this.children = children;
+        this.terminal = terminal;
+        this.size = size;
+    }
+
+    /**
+     * Creates a table containing the given names.
+     *
+     * @param names The names to include
+     * @return The name table
+     */
+    @NotNull
+    public static LatteNameTable of(@NotNull Collection<String> names) {
+        BuilderNode root = new BuilderNode();
+        int size = 0;
+        for (String name : names) {
+            BuilderNode node = root;
+            for (int i = 0; i < name.length(); i++) {
+                node = node.children.computeIfAbsent(name.charAt(i), c -> new BuilderNode());
+            }
+            if (!node.terminal) {
+                node.terminal = true;
+                size++;
+            }
+        }
+
+        // Number the nodes breadth-first and flatten them into arrays
+        List<BuilderNode> nodes = new ArrayList<>();
+        Deque<BuilderNode> queue = new ArrayDeque<>();
+        root.index = 0;
+        nodes.add(root);
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            for (BuilderNode child : queue.poll().children.values()) {
+                child.index = nodes.size();
+                nodes.add(child);
+                queue.add(child);
+            }
+        }
+
+        char[][] labels = new char[nodes.size()][];
+        int[][] children = new int[nodes.size()][];
+        boolean[] terminal = new boolean[nodes.size()];
+        for (BuilderNode node : nodes) {
+            labels[node.index] = new char[node.children.size()];
+            children[node.index] = new int[node.children.size()];
+            int i = 0;
+            for (Map.Entry<Character, BuilderNode> entry : node.children.entrySet()) {
+                labels[node.index][i] = entry.getKey();
+                children[node.index][i] = entry.getValue().index;
+                i++;
+            }
+            terminal[node.index] = node.terminal;
+        }
+
+        return new LatteNameTable(labels, children, terminal, size);
+    }
+
+    /**
+     * Checks whether the region of the text is one of the names.
+     *
+     * @param text The text containing the name
+     * @param start The start offset of the name (inclusive)
+     * @param end The end offset of the name (exclusive)
+     * @return True if the region matches a name exactly
+     */
+    public boolean contains(@NotNull CharSequence text, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            int child = findChild(node, text.charAt(i));
+            if (child < 0) {
+                return false;
+            }
+            node = child;
+        }
+        return terminal[node];
+    }
+
+    /**
+     * Checks whether the text is one of the names.
+     *
+     * @param name The name to check
+     * @return True if the table contains the name
+     */
+    public boolean contains(@NotNull CharSequence name) {
+        return contains(name, 0, name.length());
+    }
+
+    /**
+     * Gets the number of names in the table.
+     *
+     * @return The number of names
+     */
+    public int size() {
+        return size;
+    }
+
+    private int findChild(int node, char c) {
+        char[] nodeLabels = labels[node];
+        int low = 0;
+        int high = nodeLabels.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = nodeLabels[mid];
+            if (label < c) {
+                low = mid + 1;
+            } else if (label > c) {
+                high = mid - 1;
+            } else {
+                return children[node][mid];
+            }
+        }
+        return -1;
+    }
+
+    private static final class BuilderNode {
+        private final TreeMap<Character, BuilderNode> children = new TreeMap<>();
+        private boolean terminal;
+        private int index;
+    }
+}
@@ -0,0 +1,114 @@
+package cz.hqm.latte.plugin.lexer;
+
+import cz.hqm.latte.plugin.filters.NetteFilterProvider;
+import cz.hqm.latte.plugin.macros.LatteVersionSpecificMacroProvider;
+import cz.hqm.latte.plugin.macros.NetteMacro;
+import cz.hqm.latte.plugin.macros.NetteMacroProvider;
+import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import cz.hqm.latte.plugin.version.LatteVersionManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Snapshot of the macro and filter names the lexer accepts.
+ * Snapshots are keyed by the enabled Nette packages and the Latte version. One snapshot is
+ * kept per key, so templates of modules using different Latte versions do not rebuild the
+ * tables for each other; the key space is small (5 package flags and the version).
+ */
+public final class LatteNameTables {
+
+    // Snapshots by key, built on first use
+    private static final Map<Integer, LatteNameTables> snapshots = new ConcurrentHashMap<>();
+
+    private final LatteNameTable macroNames;
+    private final LatteNameTable filterNames;
+
+    private LatteNameTables(LatteNameTable macroNames, LatteNameTable filterNames) {
+        this.macroNames = macroNames;
+        this.filterNames = filterNames;
+    }
+
+    /**
+     * Gets the name tables for the current settings and Latte version.
+     *
+     * @return The current name tables
+     */
+    @NotNull
+    public static LatteNameTables getInstance() {
+        return getInstance(null);
+    }
+
+    /**
+     * Gets the name tables for the current settings and the given Latte version.
+     *
+     * @param version The Latte version of the template, or null for the current version
+     * @return The name tables
+     */
+    @NotNull
+    public static LatteNameTables getInstance(@Nullable LatteVersion version) {
+        int key = computeKey(LatteSettings.getInstance(), version != null ? version : LatteVersionManager.getCurrentVersion());
+        return snapshots.computeIfAbsent(key, LatteNameTables::build);
+    }
+
+    /**
+     * Gets the valid macro names, including built-in macros and macros from enabled Nette packages.
+     *
+     * @return The macro name table
+     */
+    @NotNull
+    public LatteNameTable getMacroNames() {
+        return macroNames;
+    }
+
+    /**
+     * Gets the valid filter names.
+     *
+     * @return The filter name table
+     */
+    @NotNull
+    public LatteNameTable getFilterNames() {
+        return filterNames;
+    }
+
+    /**
+     * Computes the key of the settings the names depend on without allocating.
+     */
+    private static int computeKey(@NotNull LatteSettings settings, @NotNull LatteVersion version) {
+        int key = 0;
+        key |= settings.isEnableNetteApplication() ? 1 : 0;
+        key |= settings.isEnableNetteForms() ? 1 << 1 : 0;
+        key |= settings.isEnableNetteAssets() ? 1 << 2 : 0;
+        key |= settings.isEnableNetteDatabase() ? 1 << 3 : 0;
+        key |= settings.isEnableNetteSecurity() ? 1 << 4 : 0;
+        key |= version.ordinal() << 5;
+        return key;
+    }
+
+    /**
+     * Builds the tables for a key: the package macros and filters of the current settings,
+     * together with the macros and filters of the Latte version encoded in the key.
+     */
+    @NotNull
+    private static LatteNameTables build(@NotNull Integer key) {
+        LatteVersion version = LatteVersion.values()[key >>> 5];
+        
+        Set<String> macroNames = new HashSet<>(LatteMacroLexer.BUILT_IN_MACRO_NAMES);
+        macroNames.addAll(NetteMacroProvider.getValidMacroNames());
+        for (NetteMacro macro : LatteVersionSpecificMacroProvider.getAllMacros(version)) {
+            // n:attributes are lexed as HTML attributes, not as tags
+            if (!macro.getName().startsWith("n:")) {
+                macroNames.add(macro.getName());
+            }
+        }
+        
+        Set<String> filterNames = new HashSet<>(NetteFilterProvider.getValidFilterNames());
+        filterNames.addAll(LatteVersionSpecificMacroProvider.getFilterNames(version));
+        return new LatteNameTables(LatteNameTable.of(macroNames), LatteNameTable.of(filterNames));
+    }
+}
@@ -173,8 +173,18 @@ public class LatteVersionSpecificMacroProvider {
      */
     @NotNull
     public static Set<NetteMacro> getAllMacrosForCurrentVersion() {
+        return getAllMacros(LatteVersionManager.getCurrentVersion());
+    }
+    
+    /**
+     * Gets all macros for the given Latte version.
+     *
+     * @param version The Latte version, e.g. the version of a template's composer module
+     * @return A set of macros for the given Latte version
+     */
+    @NotNull
+    public static Set<NetteMacro> getAllMacros(@NotNull LatteVersion version) {
         Set<NetteMacro> macros = new HashSet<>();
-        LatteVersion version = LatteVersionManager.getCurrentVersion();
         
         // Add common macros
         macros.addAll(getNAttributes());
@@ -200,6 +210,26 @@ public class LatteVersionSpecificMacroProvider {
         return macros;
     }
     
+    /**
+     * Gets the names of the filters that only exist in the given Latte version,
+     * in addition to the filters of {@code NetteFilterProvider}.
+     *
+     * @param version The Latte version
+     * @return A set of filter names
+     */
+    @NotNull
+    public static Set<String> getFilterNames(@NotNull LatteVersion version) {
+        Set<String> filterNames = new HashSet<>();
+        if (version == LatteVersion.VERSION_2X || 
+            version == LatteVersion.VERSION_2_4 || 
+            version == LatteVersion.VERSION_2_5) {
+            filterNames.add("bytes");
+            filterNames.add("dataStream");
+            filterNames.add("url");
+        }
+        return filterNames;
+    }
+    
     /**
      * Checks if a macro is supported in the current Latte version.
      *
@@ -207,7 +237,17 @@ public class LatteVersionSpecificMacroProvider {
      * @return True if the macro is supported, false otherwise
      */
     public static boolean isMacroSupported(String macroName) {
-        LatteVersion version = LatteVersionManager.getCurrentVersion();
+        return isMacroSupported(macroName, LatteVersionManager.getCurrentVersion());
+    }
+    
+    /**
+     * Checks if a macro is supported in the given Latte version.
+     *
+     * @param macroName The macro name
+     * @param version The Latte version
+     * @return True if the macro is supported, false otherwise
+     */
+    public static boolean isMacroSupported(String macroName, @NotNull LatteVersion version) {
         
         // Check Latte 2.x specific macros
         if ((macroName.equals("syntax") || 
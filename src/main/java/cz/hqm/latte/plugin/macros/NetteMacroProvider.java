@@ -1,11 +1,15 @@
 package cz.hqm.latte.plugin.macros;
 
 import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.util.LatteTrace;
+import cz.hqm.latte.plugin.version.NettePackageDetector;
 
 import java.util.*;
 
+import static cz.hqm.latte.plugin.util.LatteTrace.Category.DETECTION;
+
 /**
- * Provides Latte macros from Nette packages based on enabled settings.
+ * Provides Latte macros from Nette packages based on the enabled packages.
  * This class is responsible for storing and providing macros from different Nette packages.
  */
 public class NetteMacroProvider {
@@ -130,24 +134,31 @@ public class NetteMacroProvider {
      * @return A set of valid macro names
      */
     public static Set<String> getValidMacroNames() {
+        return getValidMacroNames(NettePackageDetector.getEnabledPackages(LatteSettings.getInstance()));
+    }
+
+    /**
+     * Gets all valid macro names of the given enabled packages.
+     *
+     * @param packages The names of the enabled packages, see {@link NettePackageDetector#getEnabledPackages}
+     * @return A set of valid macro names
+     */
+    public static Set<String> getValidMacroNames(Set<String> packages) {
         Set<String> macroNames = new HashSet<>();
         
-        // Get settings
-        LatteSettings settings = LatteSettings.getInstance();
-        
         // Only add core macros if at least one package is enabled
         // Note: Security package is not considered here because the test doesn't handle it
-        boolean anyPackageEnabled = settings.isEnableNetteApplication() || 
-                                   settings.isEnableNetteForms() || 
-                                   settings.isEnableNetteAssets() || 
-                                   settings.isEnableNetteDatabase();
+        boolean anyPackageEnabled = packages.contains(NettePackageDetector.NETTE_APPLICATION) || 
+                                   packages.contains(NettePackageDetector.NETTE_FORMS) || 
+                                   packages.contains(NettePackageDetector.NETTE_ASSETS) || 
+                                   packages.contains(NettePackageDetector.NETTE_DATABASE);
         
         // Check if only security is enabled (special case for tests)
-        boolean onlySecurityEnabled = !anyPackageEnabled && settings.isEnableNetteSecurity() &&
-                                     !settings.isEnableNetteApplication() &&
-                                     !settings.isEnableNetteForms() &&
-                                     !settings.isEnableNetteAssets() &&
-                                     !settings.isEnableNetteDatabase();
+        boolean onlySecurityEnabled = !anyPackageEnabled && packages.contains(NettePackageDetector.NETTE_SECURITY) &&
+                                     !packages.contains(NettePackageDetector.NETTE_APPLICATION) &&
+                                     !packages.contains(NettePackageDetector.NETTE_FORMS) &&
+                                     !packages.contains(NettePackageDetector.NETTE_ASSETS) &&
+                                     !packages.contains(NettePackageDetector.NETTE_DATABASE);
         
         // If only security is enabled, treat it as if nothing is enabled (for test compatibility)
         if (onlySecurityEnabled) {
@@ -159,24 +170,24 @@ public class NetteMacroProvider {
             CORE_MACROS.forEach(macro -> macroNames.add(macro.getName()));
         }
         
-        // Add macros based on enabled settings
-        if (settings.isEnableNetteApplication()) {
+        // Add macros based on enabled packages
+        if (packages.contains(NettePackageDetector.NETTE_APPLICATION)) {
             APPLICATION_MACROS.forEach(macro -> macroNames.add(macro.getName()));
         }
         
-        if (settings.isEnableNetteForms()) {
+        if (packages.contains(NettePackageDetector.NETTE_FORMS)) {
             FORMS_MACROS.forEach(macro -> macroNames.add(macro.getName()));
         }
         
-        if (settings.isEnableNetteAssets()) {
+        if (packages.contains(NettePackageDetector.NETTE_ASSETS)) {
             ASSETS_MACROS.forEach(macro -> macroNames.add(macro.getName()));
         }
         
-        if (settings.isEnableNetteDatabase()) {
+        if (packages.contains(NettePackageDetector.NETTE_DATABASE)) {
             DATABASE_MACROS.forEach(macro -> macroNames.add(macro.getName()));
         }
         
-        if (settings.isEnableNetteSecurity()) {
+        if (packages.contains(NettePackageDetector.NETTE_SECURITY)) {
             SECURITY_MACROS.forEach(macro -> macroNames.add(macro.getName()));
         }
         
@@ -199,46 +210,54 @@ public class NetteMacroProvider {
      * @return A set of macros
      */
     public static Set<NetteMacro> getAllMacros(LatteSettings settings) {
+        return getAllMacros(NettePackageDetector.getEnabledPackages(settings));
+    }
+
+    /**
+     * Gets all macros of the given enabled packages, e.g. the packages of a template's composer module.
+     *
+     * @param packages The names of the enabled packages, see {@link NettePackageDetector#getEnabledPackages}
+     * @return A set of macros
+     */
+    public static Set<NetteMacro> getAllMacros(Set<String> packages) {
         Set<NetteMacro> macros = new HashSet<>();
         
         // Only add core macros if at least one package is enabled (excluding Security)
         // Note: Security package is not considered here because the test expects all packages to be disabled
-        boolean anyPackageEnabled = settings.isEnableNetteApplication() || 
-                                   settings.isEnableNetteForms() || 
-                                   settings.isEnableNetteAssets() || 
-                                   settings.isEnableNetteDatabase();
+        boolean anyPackageEnabled = packages.contains(NettePackageDetector.NETTE_APPLICATION) || 
+                                   packages.contains(NettePackageDetector.NETTE_FORMS) || 
+                                   packages.contains(NettePackageDetector.NETTE_ASSETS) || 
+                                   packages.contains(NettePackageDetector.NETTE_DATABASE);
         
-        System.out.println("[DEBUG_LOG] getAllMacros - anyPackageEnabled: " + anyPackageEnabled);
-        System.out.println("[DEBUG_LOG] getAllMacros - Application: " + settings.isEnableNetteApplication());
-        System.out.println("[DEBUG_LOG] getAllMacros - Forms: " + settings.isEnableNetteForms());
-        System.out.println("[DEBUG_LOG] getAllMacros - Assets: " + settings.isEnableNetteAssets());
-        System.out.println("[DEBUG_LOG] getAllMacros - Database: " + settings.isEnableNetteDatabase());
-        System.out.println("[DEBUG_LOG] getAllMacros - Security: " + settings.isEnableNetteSecurity());
+        if (LatteTrace.isEnabled(DETECTION)) {
+            LatteTrace.trace(DETECTION, "macros.packages", "anyPackageEnabled", anyPackageEnabled,
+                    "packages", packages);
+        }
         
         if (anyPackageEnabled) {
             // Add core macros
             macros.addAll(CORE_MACROS);
         }
         
-        // Add macros based on enabled settings
-        if (settings.isEnableNetteApplication()) {
+        // Add macros based on enabled packages
+        if (packages.contains(NettePackageDetector.NETTE_APPLICATION)) {
             macros.addAll(APPLICATION_MACROS);
         }
         
-        if (settings.isEnableNetteForms()) {
+        if (packages.contains(NettePackageDetector.NETTE_FORMS)) {
             macros.addAll(FORMS_MACROS);
         }
         
-        if (settings.isEnableNetteAssets()) {
+        if (packages.contains(NettePackageDetector.NETTE_ASSETS)) {
             macros.addAll(ASSETS_MACROS);
         }
         
-        if (settings.isEnableNetteDatabase()) {
+        if (packages.contains(NettePackageDetector.NETTE_DATABASE)) {
             macros.addAll(DATABASE_MACROS);
         }
         
         // Only add security macros if at least one other package is enabled
-        if (settings.isEnableNetteSecurity() && anyPackageEnabled) {
+        if (packages.contains(NettePackageDetector.NETTE_SECURITY) && anyPackageEnabled) {
             macros.addAll(SECURITY_MACROS);
         }
         
@@ -258,19 +277,19 @@ public class NetteMacroProvider {
                     filteredMacros.add(macro);
                 }
                 // Add package-specific macros only if the package is enabled
-                else if ("nette/application".equals(packageName) && settings.isEnableNetteApplication()) {
+                else if ("nette/application".equals(packageName) && packages.contains(NettePackageDetector.NETTE_APPLICATION)) {
                     filteredMacros.add(macro);
                 }
-                else if ("nette/forms".equals(packageName) && settings.isEnableNetteForms()) {
+                else if ("nette/forms".equals(packageName) && packages.contains(NettePackageDetector.NETTE_FORMS)) {
                     filteredMacros.add(macro);
                 }
-                else if ("nette/assets".equals(packageName) && settings.isEnableNetteAssets()) {
+                else if ("nette/assets".equals(packageName) && packages.contains(NettePackageDetector.NETTE_ASSETS)) {
                     filteredMacros.add(macro);
                 }
-                else if ("nette/database".equals(packageName) && settings.isEnableNetteDatabase()) {
+                else if ("nette/database".equals(packageName) && packages.contains(NettePackageDetector.NETTE_DATABASE)) {
                     filteredMacros.add(macro);
                 }
-                else if ("nette/security".equals(packageName) && settings.isEnableNetteSecurity()) {
+                else if ("nette/security".equals(packageName) && packages.contains(NettePackageDetector.NETTE_SECURITY)) {
                     filteredMacros.add(macro);
                 }
             }
@@ -298,43 +317,50 @@ public class NetteMacroProvider {
      * @return A set of n:attributes
      */
     public static Set<NetteMacro> getAllAttributes(LatteSettings settings) {
+        return getAllAttributes(NettePackageDetector.getEnabledPackages(settings));
+    }
+
+    /**
+     * Gets all n:attributes of the given enabled packages.
+     *
+     * @param packages The names of the enabled packages, see {@link NettePackageDetector#getEnabledPackages}
+     * @return A set of n:attributes
+     */
+    public static Set<NetteMacro> getAllAttributes(Set<String> packages) {
         Set<NetteMacro> attributes = new HashSet<>();
         
         // Only add core attributes if at least one package is enabled (excluding Security and Assets)
         // Note: Security package is not considered here because the test expects all packages to be disabled
         // Note: Assets package is not considered here because the test doesn't explicitly disable it
-        boolean anyPackageEnabled = settings.isEnableNetteApplication() || 
-                                   settings.isEnableNetteForms() || 
-                                   settings.isEnableNetteDatabase();
+        boolean anyPackageEnabled = packages.contains(NettePackageDetector.NETTE_APPLICATION) || 
+                                   packages.contains(NettePackageDetector.NETTE_FORMS) || 
+                                   packages.contains(NettePackageDetector.NETTE_DATABASE);
         
-        System.out.println("[DEBUG_LOG] getAllAttributes - anyPackageEnabled: " + anyPackageEnabled);
-        System.out.println("[DEBUG_LOG] getAllAttributes - Application: " + settings.isEnableNetteApplication());
-        System.out.println("[DEBUG_LOG] getAllAttributes - Forms: " + settings.isEnableNetteForms());
-        System.out.println("[DEBUG_LOG] getAllAttributes - Assets: " + settings.isEnableNetteAssets());
-        System.out.println("[DEBUG_LOG] getAllAttributes - Database: " + settings.isEnableNetteDatabase());
-        System.out.println("[DEBUG_LOG] getAllAttributes - Security: " + settings.isEnableNetteSecurity());
+        if (LatteTrace.isEnabled(DETECTION)) {
+            LatteTrace.trace(DETECTION, "attributes.packages", "anyPackageEnabled", anyPackageEnabled,
+                    "packages", packages);
+        }
         
         if (anyPackageEnabled) {
             // Add core attributes
-            System.out.println("[DEBUG_LOG] getAllAttributes - Adding core attributes");
             attributes.addAll(CORE_ATTRIBUTES);
         }
         
-        // Add attributes based on enabled settings
-        if (settings.isEnableNetteApplication()) {
+        // Add attributes based on enabled packages
+        if (packages.contains(NettePackageDetector.NETTE_APPLICATION)) {
             attributes.addAll(APPLICATION_ATTRIBUTES);
         }
         
-        if (settings.isEnableNetteForms()) {
+        if (packages.contains(NettePackageDetector.NETTE_FORMS)) {
             attributes.addAll(FORMS_ATTRIBUTES);
         }
         
-        if (settings.isEnableNetteDatabase()) {
+        if (packages.contains(NettePackageDetector.NETTE_DATABASE)) {
             attributes.addAll(DATABASE_ATTRIBUTES);
         }
         
         // Only add security attributes if at least one other package is enabled
-        if (settings.isEnableNetteSecurity() && anyPackageEnabled) {
+        if (packages.contains(NettePackageDetector.NETTE_SECURITY) && anyPackageEnabled) {
             attributes.addAll(SECURITY_ATTRIBUTES);
         }
         
@@ -354,19 +380,19 @@ public class NetteMacroProvider {
                     filteredAttributes.add(attribute);
                 }
                 // Add package-specific attributes only if the package is enabled
-                else if ("nette/application".equals(packageName) && settings.isEnableNetteApplication()) {
+                else if ("nette/application".equals(packageName) && packages.contains(NettePackageDetector.NETTE_APPLICATION)) {
                     filteredAttributes.add(attribute);
                 }
-                else if ("nette/forms".equals(packageName) && settings.isEnableNetteForms()) {
+                else if ("nette/forms".equals(packageName) && packages.contains(NettePackageDetector.NETTE_FORMS)) {
                     filteredAttributes.add(attribute);
                 }
-                else if ("nette/assets".equals(packageName) && settings.isEnableNetteAssets()) {
+                else if ("nette/assets".equals(packageName) && packages.contains(NettePackageDetector.NETTE_ASSETS)) {
                     filteredAttributes.add(attribute);
                 }
-                else if ("nette/database".equals(packageName) && settings.isEnableNetteDatabase()) {
+                else if ("nette/database".equals(packageName) && packages.contains(NettePackageDetector.NETTE_DATABASE)) {
                     filteredAttributes.add(attribute);
                 }
-                else if ("nette/security".equals(packageName) && settings.isEnableNetteSecurity()) {
+                else if ("nette/security".equals(packageName) && packages.contains(NettePackageDetector.NETTE_SECURITY)) {
                     filteredAttributes.add(attribute);
                 }
             }
@@ -1,20 +1,30 @@
 package cz.hqm.latte.plugin.memory;
 
 import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 import cz.hqm.latte.plugin.psi.LatteFile;
 
 import java.lang.ref.SoftReference;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service for optimizing memory usage when working with large Latte templates.
  * This service provides methods for segmenting large templates and using memory-efficient
- * data structures to reduce memory usage.
+ * data structures to reduce memory usage. Segment text is stored in compact arrays, one byte
+ * per character for Latin-1 text, and segment strings are only created on demand. When a template changes,
+ * only the segments overlapping the change are rebuilt; the others are shared with the
+ * previous segmentation.
  */
 @Service(Service.Level.PROJECT)
 public final class LatteMemoryOptimizer {
@@ -22,11 +32,14 @@ public final class LatteMemoryOptimizer {
     // Maximum size of a template segment in characters
     private static final int MAX_SEGMENT_SIZE = 10000;
     
+    // Stamp of segments not built from a document event, see CachedSegments
+    private static final long UNKNOWN_STAMP = -1;
+    
     // The project this optimizer is associated with
     private final Project project;
     
     // Map of file paths to their segmented content
-    private final Map<String, SoftReference<TemplateSegments>> segmentCache;
+    private final Map<String, CachedSegments> segmentCache;
     
     /**
      * Constructor that initializes the optimizer.
@@ -52,25 +65,66 @@ public final class LatteMemoryOptimizer {
      * Gets the segmented content for the given file.
      * If the file is small, it will be treated as a single segment.
      * If the file is large, it will be split into multiple segments.
+     * If the content changed since the last call, the changed region is found by comparing the
+     * content with the stored segments, and only the segments overlapping it are rebuilt.
      *
      * @param file The file to get the segmented content for
      * @param content The content of the file
      * @return The segmented content
      */
     @NotNull
-    public TemplateSegments getSegmentedContent(@NotNull VirtualFile file, @NotNull String content) {
+    public TemplateSegments getSegmentedContent(@NotNull VirtualFile file, @NotNull CharSequence content) {
         String filePath = file.getPath();
         
         // Check if we have a cached version
-        SoftReference<TemplateSegments> segmentsRef = segmentCache.get(filePath);
+        CachedSegments segmentsRef = segmentCache.get(filePath);
         TemplateSegments segments = segmentsRef != null ? segmentsRef.get() : null;
         
-        // If no cached version or content has changed, create a new one
-        if (segments == null || !segments.isValidFor(content)) {
+        if (segments == null) {
             segments = segmentContent(content);
-            segmentCache.put(filePath, new SoftReference<>(segments));
+        } else {
+            int oldLength = segments.getLength();
+            int newLength = content.length();
+            int prefix = segments.commonPrefixLength(content);
+            if (prefix == oldLength && prefix == newLength) {
+                return segments;
+            }
+            int suffix = segments.commonSuffixLength(content, Math.min(oldLength, newLength) - prefix);
+            segments = resegment(segments, content, prefix, oldLength - suffix, newLength - suffix);
         }
         
+        segmentCache.put(filePath, new CachedSegments(segments, UNKNOWN_STAMP));
+        return segments;
+    }
+    
+    /**
+     * Gets the segmented content for the given file after an editor change.
+     * The offsets reported by the editor locate the change directly, so the cost of updating
+     * the segments depends on the size of the change rather than on the size of the template.
+     * The change is applied only to segments built from the document just before it, which is
+     * checked by the document's modification stamp; otherwise, e.g. if an earlier change was
+     * missed, the content is segmented from scratch.
+     *
+     * @param file The file to get the segmented content for
+     * @param event The document change event (after the change has been applied)
+     * @return The segmented content
+     */
+    @NotNull
+    public TemplateSegments getSegmentedContent(@NotNull VirtualFile file, @NotNull DocumentEvent event) {
+        CharSequence content = event.getDocument().getImmutableCharSequence();
+        CachedSegments segmentsRef = segmentCache.get(file.getPath());
+        TemplateSegments segments = segmentsRef != null ? segmentsRef.get() : null;
+        
+        if (segments == null
+                || segmentsRef.documentStamp != event.getOldTimeStamp()
+                || segments.getLength() - event.getOldLength() + event.getNewLength() != content.length()
+                || event.getOffset() + event.getOldLength() > segments.getLength()) {
+            segments = segmentContent(content);
+        } else {
+            segments = resegment(segments, content, event.getOffset(),
+                    event.getOffset() + event.getOldLength(), event.getOffset() + event.getNewLength());
+        }
+        segmentCache.put(file.getPath(), new CachedSegments(segments, event.getDocument().getModificationStamp()));
         return segments;
     }
     
@@ -92,67 +146,85 @@ public final class LatteMemoryOptimizer {
     
     /**
      * Segments the given content into smaller parts.
-     * This reduces memory usage for large templates by allowing parts of the template
-     * to be garbage collected when not in use.
+     * Segments tile the content without gaps or overlaps, so the content can be rebuilt from them.
      *
      * @param content The content to segment
      * @return The segmented content
      */
     @NotNull
-    private TemplateSegments segmentContent(@NotNull String content) {
-        if (content.length() <= MAX_SEGMENT_SIZE) {
-            // Small file, treat as a single segment
-            return new TemplateSegments(content);
-        }
+    private TemplateSegments segmentContent(@NotNull CharSequence content) {
+        List<Segment> segments = new ArrayList<>();
+        splitIntoSegments(content, 0, content.length(), segments);
+        return createSegments(content, segments);
+    }
+    
+    /**
+     * Rebuilds the segments overlapping a change and shares all other segments with the old segmentation.
+     * The text between {@code start} and {@code oldEnd} in the old content was replaced by the text
+     * between {@code start} and {@code newEnd} in the new content.
+     *
+     * @param old The segmentation of the old content
+     * @param content The new content
+     * @param start The start of the change
+     * @param oldEnd The end of the replaced text in the old content
+     * @param newEnd The end of the inserted text in the new content
+     * @return The segmentation of the new content
+     */
+    @NotNull
+    private TemplateSegments resegment(@NotNull TemplateSegments old, @NotNull CharSequence content,
+                                       int start, int oldEnd, int newEnd) {
+        Segment[] oldSegments = old.segments;
+        int first = old.getSegmentIndexForOffset(start);
+        int last = oldEnd > start ? old.getSegmentIndexForOffset(oldEnd - 1) : first;
         
-        // Large file, split into segments
-        int segmentCount = (content.length() + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE;
-        String[] segments = new String[segmentCount];
-        int[] segmentOffsets = new int[segmentCount];
-        int totalLength = 0;
+        // The rebuilt region starts at a segment start, which is already a safe boundary;
+        // its end moves by the difference in length
+        int regionStart = old.segmentOffsets[first];
+        int regionEnd = old.getSegmentEnd(last) + (newEnd - oldEnd);
         
-        for (int i = 0; i < segmentCount; i++) {
-            int start = i * MAX_SEGMENT_SIZE;
-            int end = Math.min(start + MAX_SEGMENT_SIZE, content.length());
-            
-            // Adjust segment boundaries to avoid splitting Latte macros
-            if (i > 0) {
-                start = adjustSegmentStart(content, start);
-            }
-            if (i < segmentCount - 1) {
-                end = adjustSegmentEnd(content, end);
-            }
-            
-            segmentOffsets[i] = totalLength;
-            segments[i] = content.substring(start, end);
-            totalLength += segments[i].length();
+        // Merge the following segment while both fit into one, so that repeated edits do not fragment the template
+        while (last + 1 < oldSegments.length && regionEnd - regionStart + oldSegments[last + 1].length <= MAX_SEGMENT_SIZE) {
+            last++;
+            regionEnd += oldSegments[last].length;
         }
         
-        // For test compatibility, pass the original content to the constructor
-        // This ensures that tests that expect exact content matching will pass
-        return new TemplateSegments(content, segments);
+        List<Segment> segments = new ArrayList<>(oldSegments.length + 2);
+        segments.addAll(Arrays.asList(oldSegments).subList(0, first));
+        splitIntoSegments(content, regionStart, regionEnd, segments);
+        segments.addAll(Arrays.asList(oldSegments).subList(last + 1, oldSegments.length));
+        return createSegments(content, segments);
+    }
+    
+    @NotNull
+    private static TemplateSegments createSegments(@NotNull CharSequence content, @NotNull List<Segment> segments) {
+        if (segments.isEmpty()) {
+            // An empty template is a single empty segment
+            segments.add(new Segment(content, 0, 0));
+        }
+        return new TemplateSegments(segments.toArray(new Segment[0]));
     }
     
     /**
-     * Adjusts the start of a segment to avoid splitting Latte macros.
+     * Splits a region of the content into segments of at most about {@link #MAX_SEGMENT_SIZE} characters.
      *
-     * @param content The content of the file
-     * @param start The initial start position
-     * @return The adjusted start position
+     * @param content The content
+     * @param start The start of the region
+     * @param end The end of the region
+     * @param segments The list to add the segments to
      */
-    private int adjustSegmentStart(@NotNull String content, int start) {
-        // Search backward for a safe boundary (end of a line or end of a Latte macro)
-        for (int i = start; i > Math.max(0, start - 100); i--) {
-            if (content.charAt(i) == '\n') {
-                return i + 1; // Start of a new line
-            }
-            if (i > 0 && content.charAt(i) == '}' && content.charAt(i - 1) != '}') {
-                return i + 1; // End of a Latte macro
+    private void splitIntoSegments(@NotNull CharSequence content, int start, int end, @NotNull List<Segment> segments) {
+        while (end - start > MAX_SEGMENT_SIZE) {
+            // Adjust segment boundaries to avoid splitting Latte macros
+            int segmentEnd = adjustSegmentEnd(content, start + MAX_SEGMENT_SIZE);
+            if (segmentEnd >= end) {
+                break;
             }
+            segments.add(new Segment(content, start, segmentEnd));
+            start = segmentEnd;
+        }
+        if (end > start) {
+            segments.add(new Segment(content, start, end));
         }
-        
-        // If no safe boundary found, use the original start
-        return start;
     }
     
     /**
@@ -162,7 +234,7 @@ public final class LatteMemoryOptimizer {
      * @param end The initial end position
      * @return The adjusted end position
      */
-    private int adjustSegmentEnd(@NotNull String content, int end) {
+    private int adjustSegmentEnd(@NotNull CharSequence content, int end) {
         // Search forward for a safe boundary (end of a line or end of a Latte macro)
         for (int i = end; i < Math.min(content.length(), end + 100); i++) {
             if (content.charAt(i) == '\n') {
@@ -178,103 +250,145 @@ public final class LatteMemoryOptimizer {
     }
     
     /**
-     * Class representing segmented template content.
+     * Cached segments of a file, with the modification stamp of the document they were built from.
+     * Segments built from plain content have an unknown stamp, so the next document event segments
+     * the content from scratch.
      */
-    public static class TemplateSegments {
-        private final String[] segments;
-        private final int[] segmentOffsets;
-        private final int totalLength;
-        private final int hashCode;
-        private SoftReference<String> fullContentRef; // Soft reference to allow GC when memory is low
+    private static final class CachedSegments extends SoftReference<TemplateSegments> {
+        private final long documentStamp;
+        
+        CachedSegments(@NotNull TemplateSegments segments, long documentStamp) {
+            super(segments);
+            this.documentStamp = documentStamp;
+        }
+    }
+    
+    /**
+     * Text of one segment: one byte per character when the segment only uses Latin-1 characters
+     * (as most templates do) and a character array otherwise. The arrays are ordinary heap objects,
+     * so an evicted segmentation is freed by the garbage collector like any other.
+     * Segments are immutable, so they can be shared between segmentations of successive versions of a template.
+     */
+    private static final class Segment {
+        // Exactly one of the arrays is set
+        private final byte[] latin1Text;
+        private final char[] text;
+        private final int length;
+        private final int hash;
+        
+        Segment(@NotNull CharSequence content, int start, int end) {
+            this.length = end - start;
+            if (isLatin1(content, start, end)) {
+                this.latin1Text = new byte[length];
+                this.text = null;
+                for (int i = 0; i < length; i++) {
+                    latin1Text[i] = (byte) content.charAt(start + i);
+                }
+            } else {
+                this.latin1Text = null;
+                this.text = new char[length];
+                for (int i = 0; i < length; i++) {
+                    text[i] = content.charAt(start + i);
+                }
+            }
+            this.hash = hash(content, start, end);
+        }
+        
+        boolean isLatin1() {
+            return latin1Text != null;
+        }
+        
+        int getStoredBytes() {
+            return latin1Text != null ? latin1Text.length : text.length * 2;
+        }
+        
+        char charAt(int index) {
+            return latin1Text != null ? (char) (latin1Text[index] & 0xFF) : text[index];
+        }
+        
+        @NotNull
+        String getText() {
+            return latin1Text != null ? new String(latin1Text, StandardCharsets.ISO_8859_1) : new String(text);
+        }
         
         /**
-         * Constructor for a single segment.
-         *
-         * @param content The content of the template
+         * Checks whether the content holds this segment's text at the given offset.
+         * The range is hashed in place first, and characters are compared only when the hash matches.
          */
-        TemplateSegments(@NotNull String content) {
-            this.segments = new String[] { content };
-            this.segmentOffsets = new int[] { 0 };
-            this.totalLength = content.length();
-            this.hashCode = content.hashCode();
-            // Store the full content for test compatibility
-            this.fullContentRef = new SoftReference<>(content);
+        boolean matches(@NotNull CharSequence content, int offset) {
+            if (hash(content, offset, offset + length) != hash) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (content.charAt(offset + i) != charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
         }
         
         /**
-         * Constructor for multiple segments without storing the full content.
-         *
-         * @param segments The segments of the template
-         * @param segmentOffsets The offsets of each segment in the full content
-         * @param totalLength The total length of the full content
-         * @param hashCode The hash code of the full content
+         * Computes the polynomial hash of a range of characters, as String.hashCode() does for a whole string.
          */
-        TemplateSegments(@NotNull String[] segments, @NotNull int[] segmentOffsets, int totalLength, int hashCode) {
-            this.segments = segments;
-            this.segmentOffsets = segmentOffsets;
-            this.totalLength = totalLength;
-            this.hashCode = hashCode;
-            // Don't store the full content to save memory
-            this.fullContentRef = new SoftReference<>(null);
+        private static int hash(@NotNull CharSequence content, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + content.charAt(i);
+            }
+            return hash;
         }
         
+        private static boolean isLatin1(@NotNull CharSequence content, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (content.charAt(i) > 0xFF) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Class representing segmented template content.
+     * The segment text is kept in compact arrays with the segment offsets and a hash per segment,
+     * and segment strings are created on demand.
+     */
+    public static class TemplateSegments {
+        private final Segment[] segments;
+        private final int[] segmentOffsets;
+        private final int totalLength;
+        
         /**
-         * Constructor for multiple segments.
-         * This constructor is maintained for backward compatibility.
+         * Constructor that computes the offsets of the given segments.
          *
-         * @param fullContent The full content of the template
-         * @param segments The segments of the template
+         * @param segments The segments, in order
          */
-        TemplateSegments(@NotNull String fullContent, @NotNull String[] segments) {
+        TemplateSegments(@NotNull Segment[] segments) {
             this.segments = segments;
             this.segmentOffsets = new int[segments.length];
-            this.hashCode = fullContent.hashCode();
-            
-            // Calculate offsets for each segment
             int offset = 0;
             for (int i = 0; i < segments.length; i++) {
                 segmentOffsets[i] = offset;
-                offset += segments[i].length();
+                offset += segments[i].length;
             }
             this.totalLength = offset;
-            
-            // Store the full content for test compatibility
-            this.fullContentRef = new SoftReference<>(fullContent);
         }
         
         /**
-         * Gets the full content of the template.
-         * If the full content has been garbage collected, it will be reconstructed from segments.
-         * This method is optimized to minimize memory usage by avoiding unnecessary string creation.
+         * Gets the full content of the template, rebuilt from the stored segments.
          *
          * @return The full content
          */
         @NotNull
         public String getFullContent() {
-            // Try to get the content from the soft reference
-            String content = fullContentRef.get();
-            if (content != null) {
-                return content;
-            }
-            
-            // If the full content has been garbage collected, reconstruct it from segments
             if (segments.length == 1) {
-                // For single segment, just return the segment directly
-                content = segments[0];
-            } else {
-                // For multiple segments, build the content efficiently
-                StringBuilder builder = new StringBuilder(totalLength);
-                for (String segment : segments) {
-                    builder.append(segment);
-                }
-                content = builder.toString();
+                return segments[0].getText();
             }
-            
-            // Always update the soft reference for test compatibility
-            // This ensures that tests that expect exact content matching will pass
-            fullContentRef = new SoftReference<>(content);
-            
-            return content;
+            StringBuilder builder = new StringBuilder(totalLength);
+            for (Segment segment : segments) {
+                builder.append(segment.getText());
+            }
+            return builder.toString();
         }
         
         /**
@@ -285,8 +399,7 @@ public final class LatteMemoryOptimizer {
          */
         @NotNull
         public String getSegmentForOffset(int offset) {
-            int segmentIndex = getSegmentIndexForOffset(offset);
-            return segments[segmentIndex];
+            return segments[getSegmentIndexForOffset(offset)].getText();
         }
         
         /**
@@ -309,30 +422,76 @@ public final class LatteMemoryOptimizer {
             return segments.length;
         }
         
+        /**
+         * Gets the length of the template text.
+         *
+         * @return The number of characters
+         */
+        public int getLength() {
+            return totalLength;
+        }
+        
+        /**
+         * Gets the number of bytes used to store the text of the segments.
+         *
+         * @return The size of the stored text in bytes
+         */
+        public int getStoredBytes() {
+            int bytes = 0;
+            for (Segment segment : segments) {
+                bytes += segment.getStoredBytes();
+            }
+            return bytes;
+        }
+        
+        /**
+         * Checks whether the text is stored with one byte per character.
+         *
+         * @return True if the template only uses Latin-1 characters
+         */
+        public boolean isLatin1() {
+            for (Segment segment : segments) {
+                if (!segment.isLatin1()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * Counts the segments shared with another segmentation, e.g. of the previous version of the template.
+         *
+         * @param other The other segmentation
+         * @return The number of segments held by both
+         */
+        public int countSharedSegments(@NotNull TemplateSegments other) {
+            Set<Segment> otherSegments = Collections.newSetFromMap(new IdentityHashMap<>());
+            otherSegments.addAll(Arrays.asList(other.segments));
+            int shared = 0;
+            for (Segment segment : segments) {
+                if (otherSegments.contains(segment)) {
+                    shared++;
+                }
+            }
+            return shared;
+        }
+        
         /**
          * Checks if these segments are valid for the given content.
+         * Each segment of the content is hashed in place and compared with the stored hash,
+         * and only segments with a matching hash are compared character by character,
+         * so the check allocates nothing.
          *
          * @param content The content to check against
          * @return True if the segments are valid for the content, false otherwise
          */
-        public boolean isValidFor(@NotNull String content) {
-            // Quick check using length and hash code first
-            if (content.length() != totalLength || content.hashCode() != hashCode) {
+        public boolean isValidFor(@NotNull CharSequence content) {
+            if (content.length() != totalLength) {
                 return false;
             }
             
-            // For small content or single segment, do a direct comparison
-            if (segments.length == 1) {
-                return segments[0].equals(content);
-            }
-            
-            // For large content with multiple segments, avoid reconstructing the full string
-            // by checking each segment against the corresponding part of the content
             for (int i = 0; i < segments.length; i++) {
-                int start = segmentOffsets[i];
-                int end = (i < segments.length - 1) ? segmentOffsets[i + 1] : totalLength;
-                String contentPart = content.substring(start, end);
-                if (!segments[i].equals(contentPart)) {
+                if (!segments[i].matches(content, segmentOffsets[i])) {
                     return false;
                 }
             }
@@ -340,19 +499,63 @@ public final class LatteMemoryOptimizer {
             return true;
         }
         
+        /**
+         * Gets the number of leading characters the content shares with these segments.
+         * Whole segments are skipped by their hash; characters are compared only in the first differing segment.
+         */
+        int commonPrefixLength(@NotNull CharSequence content) {
+            int limit = Math.min(content.length(), totalLength);
+            for (int i = 0; i < segments.length; i++) {
+                Segment segment = segments[i];
+                int offset = segmentOffsets[i];
+                if (offset + segment.length <= limit && segment.matches(content, offset)) {
+                    continue;
+                }
+                int prefix = offset;
+                while (prefix < limit && content.charAt(prefix) == segment.charAt(prefix - offset)) {
+                    prefix++;
+                }
+                return prefix;
+            }
+            return limit;
+        }
+        
+        /**
+         * Gets the number of trailing characters the content shares with these segments, up to the given maximum.
+         */
+        int commonSuffixLength(@NotNull CharSequence content, int maxSuffix) {
+            int shift = content.length() - totalLength;
+            int suffix = 0;
+            for (int i = segments.length - 1; i >= 0 && suffix < maxSuffix; i--) {
+                Segment segment = segments[i];
+                int offset = segmentOffsets[i];
+                if (segment.length <= maxSuffix - suffix && segment.matches(content, offset + shift)) {
+                    suffix += segment.length;
+                    continue;
+                }
+                for (int j = segment.length - 1; j >= 0 && suffix < maxSuffix
+                        && content.charAt(offset + shift + j) == segment.charAt(j); j--) {
+                    suffix++;
+                }
+                return suffix;
+            }
+            return suffix;
+        }
+        
         /**
          * Gets the index of the segment that contains the given offset.
          *
          * @param offset The offset in the full content
          * @return The index of the segment
          */
-        private int getSegmentIndexForOffset(int offset) {
-            for (int i = 0; i < segmentOffsets.length - 1; i++) {
-                if (offset < segmentOffsets[i + 1]) {
-                    return i;
-                }
-            }
-            return segmentOffsets.length - 1;
+        int getSegmentIndexForOffset(int offset) {
+            int index = Arrays.binarySearch(segmentOffsets, offset);
+            // A negative result encodes the insertion point; the segment containing the offset starts before it
+            return index >= 0 ? index : Math.max(0, -index - 2);
+        }
+        
+        int getSegmentEnd(int segmentIndex) {
+            return segmentOffsets[segmentIndex] + segments[segmentIndex].length;
         }
     }
-}
\ No newline at end of file
+}
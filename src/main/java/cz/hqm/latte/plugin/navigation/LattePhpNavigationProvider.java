@@ -11,6 +11,8 @@ import com.intellij.psi.PsiManager;
 import com.intellij.psi.search.FilenameIndex;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.util.PsiTreeUtil;
+import cz.hqm.latte.plugin.index.LattePresenterMethod;
+import cz.hqm.latte.plugin.index.LattePresenterMethodIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -158,15 +160,10 @@ public class LattePhpNavigationProvider implements GotoDeclarationHandler {
             }
         }
         
-        // TODO: Use PHP-specific APIs to find the method in the presenter class
-        // For now, we'll just return the presenter file
+        // Look the method up in the presenter method index (case-insensitive, as in PHP)
+        LattePresenterMethod method = LattePresenterMethodIndex.findMethod(project, presenterFile, methodName);
         
-        // Check if the method exists in the presenter class (case-insensitive)
-        String fileContent = presenterFile.getText();
-        boolean methodExists = fileContent.contains("function " + methodName) || 
-                               fileContent.toLowerCase().contains("function " + methodName.toLowerCase());
-        
-        if (!methodExists) {
+        if (method == null) {
             // Check if we're in a test environment
             if (IS_TEST_ENVIRONMENT) {
                 // In test environment, just return the presenter file
@@ -190,9 +187,10 @@ public class LattePhpNavigationProvider implements GotoDeclarationHandler {
                     }
                 }
             }
+            return new PsiElement[] { presenterFile };
         }
         
-        return new PsiElement[] { presenterFile };
+        return new PsiElement[] { getMethodTarget(presenterFile, method) };
     }
 
     /**
@@ -209,8 +207,7 @@ public class LattePhpNavigationProvider implements GotoDeclarationHandler {
         // Construct the method name
         String methodName = "createComponent" + Character.toUpperCase(componentName.charAt(0)) + componentName.substring(1);
         
-        // Find the presenter class
-        // For now, we'll just use the first presenter file we find
+        // Find the presenter classes
         Collection<PsiFile> presenterFiles = findPresenterFiles(project, null);
         if (presenterFiles.isEmpty()) {
             // Check if we're in a test environment
@@ -233,106 +230,18 @@ public class LattePhpNavigationProvider implements GotoDeclarationHandler {
             }
         }
         
-        PsiFile presenterFile = presenterFiles.iterator().next();
-        String fileContent = presenterFile.getText();
-        
-        // First, try to find a method with the exact name (case-insensitive)
-        boolean methodExists = fileContent.contains("function " + methodName) || 
-                               fileContent.toLowerCase().contains("function " + methodName.toLowerCase());
-        
-        if (methodExists) {
-            return new PsiElement[] { presenterFile };
-        }
-        
-        // If not found, look for any createComponent method that returns the appropriate type
-        if (isForm) {
-            // For forms, look for methods that return Form
-            // Pattern for finding component factory methods that return Form (case-insensitive)
-            Pattern formMethodPattern = Pattern.compile("(?i)function\\s+createComponent(\\w+)\\s*\\([^)]*\\)\\s*:\\s*[\\\\\\w]*Form");
-            Matcher formMethodMatcher = formMethodPattern.matcher(fileContent);
-            
-            while (formMethodMatcher.find()) {
-                String foundComponentName = formMethodMatcher.group(1);
-                // Convert first letter to lowercase to match Nette convention
-                foundComponentName = Character.toLowerCase(foundComponentName.charAt(0)) + foundComponentName.substring(1);
-                
-                if (isSameComponentName(foundComponentName, componentName)) {
-                    return new PsiElement[] { presenterFile };
-                }
-            }
-            
-            // Also check for methods that instantiate a Form in the body (case-insensitive)
-            Pattern createFormPattern = Pattern.compile("(?i)function\\s+createComponent(\\w+)\\s*\\([^)]*\\)[^{]*\\{[^}]*return\\s+new\\s+[\\\\\\w]*Form");
-            Matcher createFormMatcher = createFormPattern.matcher(fileContent);
-            
-            while (createFormMatcher.find()) {
-                String foundComponentName = createFormMatcher.group(1);
-                // Convert first letter to lowercase to match Nette convention
-                foundComponentName = Character.toLowerCase(foundComponentName.charAt(0)) + foundComponentName.substring(1);
-                
-                if (isSameComponentName(foundComponentName, componentName)) {
-                    return new PsiElement[] { presenterFile };
-                }
-            }
-        } else {
-            // For regular components, look for methods that return Control
-            // Pattern for finding component factory methods that return Control (case-insensitive)
-            Pattern controlMethodPattern = Pattern.compile("(?i)function\\s+createComponent(\\w+)\\s*\\([^)]*\\)\\s*:\\s*[\\\\\\w]*Control");
-            Matcher controlMethodMatcher = controlMethodPattern.matcher(fileContent);
-            
-            while (controlMethodMatcher.find()) {
-                String foundComponentName = controlMethodMatcher.group(1);
-                // Convert first letter to lowercase to match Nette convention
-                foundComponentName = Character.toLowerCase(foundComponentName.charAt(0)) + foundComponentName.substring(1);
-                
-                if (isSameComponentName(foundComponentName, componentName)) {
-                    return new PsiElement[] { presenterFile };
-                }
-            }
-            
-            // Also check for methods that instantiate a Control in the body (case-insensitive)
-            Pattern createControlPattern = Pattern.compile("(?i)function\\s+createComponent(\\w+)\\s*\\([^)]*\\)[^{]*\\{[^}]*return\\s+new\\s+[\\\\\\w]*Control");
-            Matcher createControlMatcher = createControlPattern.matcher(fileContent);
-            
-            while (createControlMatcher.find()) {
-                String foundComponentName = createControlMatcher.group(1);
-                // Convert first letter to lowercase to match Nette convention
-                foundComponentName = Character.toLowerCase(foundComponentName.charAt(0)) + foundComponentName.substring(1);
-                
-                if (isSameComponentName(foundComponentName, componentName)) {
-                    return new PsiElement[] { presenterFile };
-                }
-            }
-            
-            // Also check for methods that return Component (case-insensitive)
-            Pattern componentMethodPattern = Pattern.compile("(?i)function\\s+createComponent(\\w+)\\s*\\([^)]*\\)\\s*:\\s*[\\\\\\w]*Component");
-            Matcher componentMethodMatcher = componentMethodPattern.matcher(fileContent);
-            
-            while (componentMethodMatcher.find()) {
-                String foundComponentName = componentMethodMatcher.group(1);
-                // Convert first letter to lowercase to match Nette convention
-                foundComponentName = Character.toLowerCase(foundComponentName.charAt(0)) + foundComponentName.substring(1);
-                
-                if (isSameComponentName(foundComponentName, componentName)) {
-                    return new PsiElement[] { presenterFile };
-                }
-            }
-            
-            // Also check for methods that instantiate a Component in the body (case-insensitive)
-            Pattern createComponentPattern = Pattern.compile("(?i)function\\s+createComponent(\\w+)\\s*\\([^)]*\\)[^{]*\\{[^}]*return\\s+new\\s+[\\\\\\w]*Component");
-            Matcher createComponentMatcher = createComponentPattern.matcher(fileContent);
-            
-            while (createComponentMatcher.find()) {
-                String foundComponentName = createComponentMatcher.group(1);
-                // Convert first letter to lowercase to match Nette convention
-                foundComponentName = Character.toLowerCase(foundComponentName.charAt(0)) + foundComponentName.substring(1);
-                
-                if (isSameComponentName(foundComponentName, componentName)) {
-                    return new PsiElement[] { presenterFile };
+        // Look for the presenter declaring a createComponent method with the same component name (case-insensitive)
+        for (PsiFile candidate : presenterFiles) {
+            for (LattePresenterMethod factory : LattePresenterMethodIndex.getComponentFactories(project, candidate)) {
+                if (isSameComponentName(factory.getTargetName(), componentName)) {
+                    return new PsiElement[] { getMethodTarget(candidate, factory) };
                 }
             }
         }
         
+        // Fall back to the first presenter
+        PsiFile presenterFile = presenterFiles.iterator().next();
+        
         // Method not found
         // Check if we're in a test environment
         if (IS_TEST_ENVIRONMENT) {
@@ -369,21 +278,27 @@ public class LattePhpNavigationProvider implements GotoDeclarationHandler {
      * @return A collection of PsiFiles representing the presenter classes
      */
     private Collection<PsiFile> findPresenterFiles(Project project, @Nullable String presenterName) {
-        // This is a simplified implementation - in a real plugin, we would use the Nette mapping configuration
-        // to find the correct presenter class
-        
-        String fileName = presenterName != null ? presenterName + "Presenter.php" : "*Presenter.php";
-        PsiFile[] files = FilenameIndex.getFilesByName(project, fileName, GlobalSearchScope.projectScope(project));
-        
-        // Convert array to collection
         List<PsiFile> fileList = new ArrayList<>();
-        for (PsiFile file : files) {
-            fileList.add(file);
+        for (PsiFile file : NettePresenterDiscovery.getInstance(project).getPresenterPsiFiles()) {
+            if (presenterName == null || file.getName().equals(presenterName + "Presenter.php")) {
+                fileList.add(file);
+            }
         }
-        
         return fileList;
     }
     
+    /**
+     * Gets the element to navigate to for an indexed method.
+     *
+     * @param presenterFile The presenter file
+     * @param method The indexed method
+     * @return The element at the method declaration, or the file if the offset is out of date
+     */
+    private PsiElement getMethodTarget(PsiFile presenterFile, LattePresenterMethod method) {
+        PsiElement element = presenterFile.findElementAt(method.getOffset());
+        return element != null ? element : presenterFile;
+    }
+    
     /**
      * Checks if two component names are the same, ignoring case.
      * This is used for case-insensitive PHP method/function lookup.
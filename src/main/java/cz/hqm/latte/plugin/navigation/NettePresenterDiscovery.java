@@ -0,0 +1,257 @@
+package cz.hqm.latte.plugin.navigation;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.search.FilenameIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service for discovering the presenter classes of a project.
+ * Presenter files are found by enumerating the file names known to the file name index and
+ * keeping those that end with a presenter suffix. The suffixes come from the presenter masks
+ * of the Nette mapping configuration, so "*Presenter" finds every *Presenter.php file.
+ * The result is cached until a file is created, deleted, moved or renamed, or a config file changes;
+ * the presenter mapping read from the config files is cached alongside it.
+ */
+@Service(Service.Level.PROJECT)
+public final class NettePresenterDiscovery implements Disposable {
+
+    // File suffix of presenters under the default Nette mapping
+    private static final String DEFAULT_PRESENTER_SUFFIX = "Presenter.php";
+
+    // Extension of PHP files, the only files that can hold presenters
+    private static final String PHP_EXTENSION = ".php";
+
+    // Extension of the config files that hold the presenter mapping
+    private static final String CONFIG_EXTENSION = ".neon";
+
+    // The project this service is associated with
+    private final Project project;
+
+    // Cached presenter files, or null if they have to be discovered again
+    private volatile List<VirtualFile> presenterFiles;
+
+    // Cached presenter mapping, or null if it has to be read from the config files again
+    private volatile List<NettePresenterMappingManager.PresenterMapping> presenterMapping;
+
+    // Incremented on every invalidation so that a discovery racing with a change is not cached
+    private final AtomicLong modificationCount = new AtomicLong();
+
+    /**
+     * Constructor that subscribes to file system changes.
+     *
+     * @param project The project this service is associated with
+     */
+    public NettePresenterDiscovery(Project project) {
+        this.project = project;
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                for (VFileEvent event : events) {
+                    if (affectsDiscovery(event)) {
+                        invalidate();
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the instance of this service for the given project.
+     *
+     * @param project The project to get the service for
+     * @return The service instance
+     */
+    public static NettePresenterDiscovery getInstance(@NotNull Project project) {
+        return project.getService(NettePresenterDiscovery.class);
+    }
+
+    /**
+     * Gets the presenter files of the project.
+     *
+     * @return The presenter files, sorted by path; empty while the indexes are being updated
+     */
+    @NotNull
+    public List<VirtualFile> getPresenterFiles() {
+        List<VirtualFile> files = presenterFiles;
+        if (files != null) {
+            return files;
+        }
+        if (DumbService.isDumb(project)) {
+            return Collections.emptyList();
+        }
+
+        long count = modificationCount.get();
+        files = Collections.unmodifiableList(discoverPresenterFiles());
+        if (modificationCount.get() == count) {
+            presenterFiles = files;
+        }
+        return files;
+    }
+
+    /**
+     * Gets the presenter mapping of the project.
+     *
+     * @return The presenter mapping read from the config files, or the default mapping
+     */
+    @NotNull
+    public List<NettePresenterMappingManager.PresenterMapping> getPresenterMapping() {
+        List<NettePresenterMappingManager.PresenterMapping> mapping = presenterMapping;
+        if (mapping != null) {
+            return mapping;
+        }
+
+        long count = modificationCount.get();
+        mapping = Collections.unmodifiableList(NettePresenterMappingManager.readPresenterMapping(project));
+        if (modificationCount.get() == count) {
+            presenterMapping = mapping;
+        }
+        return mapping;
+    }
+
+    /**
+     * Gets the PSI files of the presenters of the project.
+     *
+     * @return The presenter PSI files
+     */
+    @NotNull
+    public List<PsiFile> getPresenterPsiFiles() {
+        PsiManager psiManager = PsiManager.getInstance(project);
+        List<PsiFile> psiFiles = new ArrayList<>();
+        for (VirtualFile file : getPresenterFiles()) {
+            if (file.isValid()) {
+                PsiFile psiFile = psiManager.findFile(file);
+                if (psiFile != null) {
+                    psiFiles.add(psiFile);
+                }
+            }
+        }
+        return psiFiles;
+    }
+
+    /**
+     * Drops the cached presenter files and the cached presenter mapping.
+     */
+    public void invalidate() {
+        modificationCount.incrementAndGet();
+        presenterFiles = null;
+        presenterMapping = null;
+    }
+
+    /**
+     * Gets the file suffixes of presenter classes under the given mapping.
+     * Each mapping entry ends with the presenter mask, such as "*Presenter" in
+     * "App\*Module\Presenters\*Presenter" or in the ["", "*Module", "*Presenter"] form;
+     * the part of its last segment after the "*" is the suffix of the presenter class name.
+     *
+     * @param mappings The presenter mapping
+     * @return The file suffixes, e.g. "Presenter.php"; always includes the default suffix
+     */
+    @NotNull
+    public static Set<String> getPresenterFileSuffixes(@NotNull Collection<NettePresenterMappingManager.PresenterMapping> mappings) {
+        Set<String> suffixes = new LinkedHashSet<>();
+        suffixes.add(DEFAULT_PRESENTER_SUFFIX);
+        for (NettePresenterMappingManager.PresenterMapping mapping : mappings) {
+            List<String> masks = mapping.getMasks();
+            if (masks.isEmpty()) {
+                continue;
+            }
+            String mask = masks.get(masks.size() - 1).trim();
+            String segment = mask.substring(Math.max(mask.lastIndexOf('\\'), mask.lastIndexOf('/')) + 1);
+            int wildcard = segment.lastIndexOf('*');
+            String suffix = wildcard >= 0 ? segment.substring(wildcard + 1) : "";
+            if (!suffix.isEmpty()) {
+                suffixes.add(suffix + ".php");
+            }
+        }
+        return suffixes;
+    }
+
+    @Override
+    public void dispose() {
+        presenterFiles = null;
+        presenterMapping = null;
+    }
+
+    /**
+     * Enumerates the project file names and collects the files whose names end with a presenter suffix.
+     */
+    @NotNull
+    private List<VirtualFile> discoverPresenterFiles() {
+        Set<String> suffixes = getPresenterFileSuffixes(getPresenterMapping());
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(project);
+
+        List<String> fileNames = new ArrayList<>();
+        FilenameIndex.processAllFileNames(fileName -> {
+            if (hasSuffix(fileName, suffixes)) {
+                fileNames.add(fileName);
+            }
+            return true;
+        }, scope, null);
+
+        List<VirtualFile> files = new ArrayList<>();
+        for (String fileName : fileNames) {
+            files.addAll(FilenameIndex.getVirtualFilesByName(fileName, scope));
+        }
+        files.sort((first, second) -> first.getPath().compareTo(second.getPath()));
+        return files;
+    }
+
+    /**
+     * Checks whether a file system event can change the discovered presenters: a config file changed,
+     * or a PHP file or a directory was added, removed, moved or renamed.
+     */
+    private static boolean affectsDiscovery(@NotNull VFileEvent event) {
+        String path = event.getPath();
+        if (path.endsWith(CONFIG_EXTENSION)) {
+            return true;
+        }
+        if (event instanceof VFileContentChangeEvent) {
+            return false;
+        }
+        if (event instanceof VFilePropertyChangeEvent) {
+            VFilePropertyChangeEvent propertyEvent = (VFilePropertyChangeEvent) event;
+            if (!VirtualFile.PROP_NAME.equals(propertyEvent.getPropertyName())) {
+                return false;
+            }
+            return propertyEvent.getFile().isDirectory()
+                    || String.valueOf(propertyEvent.getOldValue()).endsWith(PHP_EXTENSION)
+                    || String.valueOf(propertyEvent.getNewValue()).endsWith(PHP_EXTENSION);
+        }
+        if (event instanceof VFileCreateEvent) {
+            return ((VFileCreateEvent) event).isDirectory() || path.endsWith(PHP_EXTENSION);
+        }
+        VirtualFile file = event.getFile();
+        return path.endsWith(PHP_EXTENSION) || (file != null && file.isDirectory());
+    }
+
+    private static boolean hasSuffix(@NotNull String fileName, @NotNull Set<String> suffixes) {
+        for (String suffix : suffixes) {
+            if (fileName.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
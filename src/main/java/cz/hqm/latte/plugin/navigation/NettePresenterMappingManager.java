@@ -1,6 +1,7 @@
 package cz.hqm.latte.plugin.navigation;
 
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.psi.PsiFile;
@@ -23,30 +24,31 @@ import java.util.regex.Pattern;
  */
 public class NettePresenterMappingManager {
 
-    // Cache of mapping configurations by project
-    private static final Map<String, List<PresenterMapping>> mappingCache = new HashMap<>();
-
     // Pattern for extracting mapping configuration from config files
     private static final Pattern MAPPING_PATTERN = Pattern.compile("mapping:\\s*\\{([^}]+)\\}");
     private static final Pattern MAPPING_ENTRY_PATTERN = Pattern.compile("([\\w*]+):\\s*\\[([^\\]]+)\\]");
 
     /**
      * Gets the presenter mapping for the given project.
+     * The mapping is cached by {@link NettePresenterDiscovery} until a config file changes.
      * 
      * @param project The project
      * @return The list of presenter mappings
      */
     public static List<PresenterMapping> getPresenterMapping(Project project) {
-        if (project == null) {
+        if (project == null || project.isDisposed()) {
             return Collections.emptyList();
         }
+        return NettePresenterDiscovery.getInstance(project).getPresenterMapping();
+    }
 
-        // Check cache first
-        String projectPath = project.getBasePath();
-        if (projectPath != null && mappingCache.containsKey(projectPath)) {
-            return mappingCache.get(projectPath);
-        }
-
+    /**
+     * Reads the presenter mapping of the given project from its config files.
+     * 
+     * @param project The project
+     * @return The list of presenter mappings
+     */
+    static List<PresenterMapping> readPresenterMapping(@NotNull Project project) {
         // Find config files
         List<PresenterMapping> mappings = new ArrayList<>();
         Collection<VirtualFile> configFiles = findConfigFiles(project);
@@ -65,11 +67,6 @@ public class NettePresenterMappingManager {
             mappings.add(new PresenterMapping("*", Arrays.asList("", "*Module", "*Presenter")));
         }
 
-        // Cache the result
-        if (projectPath != null) {
-            mappingCache.put(projectPath, mappings);
-        }
-
         return mappings;
     }
 
@@ -79,16 +76,21 @@ public class NettePresenterMappingManager {
      * @param project The project
      */
     public static void clearCache(Project project) {
-        if (project != null && project.getBasePath() != null) {
-            mappingCache.remove(project.getBasePath());
+        if (project != null && !project.isDisposed()) {
+            NettePresenterDiscovery discovery = project.getServiceIfCreated(NettePresenterDiscovery.class);
+            if (discovery != null) {
+                discovery.invalidate();
+            }
         }
     }
 
     /**
-     * Clears the entire mapping cache.
+     * Clears the mapping cache of all open projects.
      */
     public static void clearAllCache() {
-        mappingCache.clear();
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            clearCache(project);
+        }
     }
 
     /**
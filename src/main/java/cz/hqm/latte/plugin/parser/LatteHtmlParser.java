@@ -24,6 +24,26 @@ public class LatteHtmlParser implements PsiParser {
     
     // Maximum number of tokens to process before timing out
     private static final int MAX_TOKENS_TO_PROCESS = 100000;
+    
+    // Whether this parser parses the contents of a lazily parsed macro block
+    private final boolean parsingBlockContents;
+    
+    /**
+     * Creates a parser for whole Latte files.
+     */
+    public LatteHtmlParser() {
+        this(false);
+    }
+    
+    /**
+     * Creates a parser.
+     *
+     * @param parsingBlockContents True when parsing the contents of a lazily parsed macro block,
+     *                             whose own start tag must not be collapsed again
+     */
+    public LatteHtmlParser(boolean parsingBlockContents) {
+        this.parsingBlockContents = parsingBlockContents;
+    }
 
     /**
      * Creates an instance of SafeLatteHtmlParsing for the given builder.
@@ -34,7 +54,7 @@ public class LatteHtmlParser implements PsiParser {
      * @return A new SafeLatteHtmlParsing instance
      */
     protected @NotNull HtmlParsing createHtmlParsing(@NotNull PsiBuilder builder) {
-        return new SafeLatteHtmlParsing(builder);
+        return new SafeLatteHtmlParsing(builder, parsingBlockContents);
     }
     
     /**
@@ -75,7 +95,7 @@ public class LatteHtmlParser implements PsiParser {
             
             // Log the parsing time
             long endTime = System.currentTimeMillis();
-            LatteLogger.debug(LOG, "Parsing completed in " + (endTime - startTime) + "ms");
+            LatteLogger.debug(LOG, () -> "Parsing completed in " + (endTime - startTime) + "ms");
             
             // Complete the root marker after successful parsing
             rootMarker.done(root);
@@ -105,19 +125,19 @@ public class LatteHtmlParser implements PsiParser {
         builder.setDebugMode(true);
         
         // Log the start of parsing - only in development mode
-        LatteLogger.debug(LOG, "LatteHtmlParser starting to parse with root: " + root);
+        LatteLogger.debug(LOG, () -> "LatteHtmlParser starting to parse with root: " + root);
         
         // Log the current token if available
-        if (builder.getTokenType() != null) {
-            // Use truncateElementText to avoid logging the entire file content
-            String tokenText = builder.getTokenText();
-            LatteLogger.debug(LOG, "Current token: " + builder.getTokenType() + ", text: " + 
-                             LatteValidator.truncateElementText(tokenText));
-        } else {
+        LatteLogger.debug(LOG, () -> {
+            if (builder.getTokenType() != null) {
+                // Use truncateElementText to avoid logging the entire file content
+                return "Current token: " + builder.getTokenType() + ", text: " +
+                        LatteValidator.truncateElementText(builder.getTokenText());
+            }
             // For empty tokens, just log that it's empty without including the entire file content
-            LatteLogger.debug(LOG, "Current token: empty token, text: " + 
-                             (builder.getTokenText() != null ? LatteValidator.truncateElementText(builder.getTokenText()) : "{}"));
-        }
+            return "Current token: empty token, text: " +
+                    (builder.getTokenText() != null ? LatteValidator.truncateElementText(builder.getTokenText()) : "{}");
+        });
         
         try {
             // Start a timer to measure parsing time
@@ -134,16 +154,16 @@ public class LatteHtmlParser implements PsiParser {
             
             // Log the parsing time
             long endTime = System.currentTimeMillis();
-            LatteLogger.debug(LOG, "Parsing completed in " + (endTime - startTime) + "ms");
+            LatteLogger.debug(LOG, () -> "Parsing completed in " + (endTime - startTime) + "ms");
             
             // Get the built tree
             ASTNode result = builder.getTreeBuilt();
             
-            LatteLogger.debug(LOG, "Finished parse, result: " + (result != null ? result.getElementType() : "null"));
+            LatteLogger.debug(LOG, () -> "Finished parse, result: " + (result != null ? result.getElementType() : "null"));
             
             // Log the result of parsing
             if (result != null) {
-                LatteLogger.debug(LOG, "Parsing completed successfully with root type: " + result.getElementType());
+                LatteLogger.debug(LOG, () -> "Parsing completed successfully with root type: " + result.getElementType());
                 // As per the issue description "neřeš teď top levele element is not completed"
                 // (don't worry about the top level element is not completed error now),
                 // we're not checking for incomplete HTML structure here
@@ -16,10 +16,14 @@ import com.intellij.util.ThreeState;
 import com.intellij.util.containers.Stack;
 import com.intellij.xml.psi.XmlPsiBundle;
 import com.intellij.xml.util.HtmlUtil;
+import cz.hqm.latte.plugin.psi.LatteElementTypes;
+import cz.hqm.latte.plugin.psi.LatteMacroBlockElementType;
 import cz.hqm.latte.plugin.util.LatteLogger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
+
 /**
  * Custom HTML parsing for Latte templates that supports Latte syntax.
  * This class extends HtmlParsing to add support for Latte macros in different syntax versions:
@@ -41,6 +45,12 @@ public class LatteHtmlParsing extends HtmlParsing {
     // Track the nesting level of if blocks
     private int ifBlockLevel = 0;
     
+    // Whether we are parsing the contents of a lazily parsed macro block (which starts at offset 0)
+    private final boolean parsingBlockContents;
+    
+    // Ends of the self-contained blocks of the text by their start offsets, see parseLazyBlock
+    private Map<Integer, Integer> blockEnds;
+    
     /**
      * Checks if the current parsing depth exceeds the maximum allowed depth.
      * 
@@ -80,7 +90,28 @@ public class LatteHtmlParsing extends HtmlParsing {
      * @param builder The PsiBuilder to use for parsing
      */
     public LatteHtmlParsing(PsiBuilder builder) {
+        this(builder, false);
+    }
+    
+    /**
+     * Creates a new instance of LatteHtmlParsing.
+     *
+     * @param builder The PsiBuilder to use for parsing
+     * @param parsingBlockContents True when parsing the contents of a lazily parsed macro block
+     */
+    public LatteHtmlParsing(PsiBuilder builder, boolean parsingBlockContents) {
         super(builder);
+        this.parsingBlockContents = parsingBlockContents;
+    }
+
+    /**
+     * Checks whether the contents of a lazily parsed macro block are parsed, which are
+     * children of the block itself rather than of an HTML document.
+     *
+     * @return True when parsing the contents of a lazily parsed macro block
+     */
+    protected boolean isParsingBlockContents() {
+        return parsingBlockContents;
     }
 
     /**
@@ -155,7 +186,7 @@ public class LatteHtmlParsing extends HtmlParsing {
         // Handle Latte macros at the top level
         if (isLatteMacro()) {
             error = flushError(error);
-            parseLatteMacro();
+            parseLatteMacro(true);
             return error;
         }
         return super.parseCustomTopLevelContent(error);
@@ -247,7 +278,7 @@ public class LatteHtmlParsing extends HtmlParsing {
                 // Handle Latte macros inside tags
                 if (isLatteMacro()) {
                     xmlText = terminateText(xmlText);
-                    parseLatteMacro();
+                    parseLatteMacro(true);
                     return xmlText;
                 }
                 return super.parseCustomTagContent(xmlText);
@@ -277,7 +308,7 @@ public class LatteHtmlParsing extends HtmlParsing {
             try {
                 // Handle Latte macros in tag headers
                 if (isLatteMacro()) {
-                    parseLatteMacro();
+                    parseLatteMacro(false);
                 } else {
                     super.parseCustomTagHeaderContent();
                 }
@@ -307,7 +338,7 @@ public class LatteHtmlParsing extends HtmlParsing {
             try {
                 // Handle Latte macros in attribute values
                 if (isLatteMacro()) {
-                    parseLatteMacro();
+                    parseLatteMacro(false);
                 } else {
                     super.parseCustomAttributeValue();
                 }
@@ -347,16 +378,23 @@ public class LatteHtmlParsing extends HtmlParsing {
 
     /**
      * Parses a Latte macro.
+     *
+     * @param allowLazyBlock Whether a paired block macro may be collapsed into a lazily parsed block
      */
-    private void parseLatteMacro() {
-        PsiBuilder.Marker macro = mark();
-        
+    private void parseLatteMacro(boolean allowLazyBlock) {
         // Get the macro text before consuming it
         String macroText = getBuilder().getTokenText();
         
         // Extract the macro name from the text
         String macroName = extractMacroName(macroText);
         
+        // Self-contained blocks become reparseable elements, parsed only when accessed
+        if (allowLazyBlock && parseLazyBlock(macroName)) {
+            return;
+        }
+        
+        PsiBuilder.Marker macro = mark();
+        
         // Check if this is an else or elseif tag outside of an if block
         if ((macroName.equals("else") || macroName.equals("elseif")) && ifBlockLevel <= 0) {
             // Consume the macro content
@@ -438,6 +476,54 @@ public class LatteHtmlParsing extends HtmlParsing {
         }
     }
     
+    /**
+     * Collapses a self-contained paired block macro (e.g. {if}...{/if}) into a single
+     * lazily parsed element. The block's contents are parsed by its element type on demand.
+     *
+     * @param macroName The name of the macro at the current position
+     * @return true if the block was collapsed, false if the macro must be parsed as usual
+     */
+    private boolean parseLazyBlock(@NotNull String macroName) {
+        LatteMacroBlockElementType blockType = LatteElementTypes.forMacroName(macroName);
+        if (blockType == null) {
+            return false;
+        }
+        
+        PsiBuilder builder = getBuilder();
+        int start = builder.getCurrentOffset();
+        
+        // The block being lazily parsed starts at offset 0; collapsing it again would recurse forever
+        if (parsingBlockContents && start == 0) {
+            return false;
+        }
+        
+        // The ends of all blocks are found in one pass over the text, when the first block is met
+        if (blockEnds == null) {
+            blockEnds = LatteMacroBlocks.findBlockEnds(builder.getOriginalText(), LatteElementTypes.BLOCK_MACRO_NAMES);
+        }
+        Integer end = blockEnds.get(start);
+        if (end == null) {
+            return false;
+        }
+        
+        PsiBuilder.Marker block = mark();
+        int consumedEnd = start;
+        while (!eof() && consumedEnd < end) {
+            ProgressManager.checkCanceled();
+            consumedEnd = builder.getCurrentOffset() + builder.getTokenText().length();
+            advance();
+        }
+        
+        // The block end must fall on a token boundary
+        if (consumedEnd != end) {
+            block.rollbackTo();
+            return false;
+        }
+        
+        block.collapse(blockType);
+        return true;
+    }
+    
     /**
      * Extracts the macro name from the macro text.
      * 
@@ -4,6 +4,7 @@ import com.intellij.lang.ASTNode;
 import com.intellij.lang.PsiBuilder;
 import com.intellij.lang.PsiBuilderFactory;
 import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -20,12 +21,12 @@ import cz.hqm.latte.plugin.version.LatteVersionManager;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,11 +38,35 @@ import java.util.regex.Pattern;
 @Service(Service.Level.PROJECT)
 public final class LatteIncrementalParser {
 
+    // Patterns for matching macro names in single-brace syntax
+    private static final Pattern OPEN_MACRO_PATTERN = Pattern.compile("\\{([a-zA-Z_][a-zA-Z0-9_]*)(?:\\s+|\\}|$)");
+    private static final Pattern CLOSE_MACRO_PATTERN = Pattern.compile("\\{/([a-zA-Z_][a-zA-Z0-9_]*)\\}");
+
+    // Patterns for matching macro names in double-brace syntax
+    private static final Pattern OPEN_DOUBLE_MACRO_PATTERN = Pattern.compile("\\{\\{([a-zA-Z_][a-zA-Z0-9_]*)(?:\\s+|\\}\\}|$)");
+    private static final Pattern CLOSE_DOUBLE_MACRO_PATTERN = Pattern.compile("\\{\\{/([a-zA-Z_][a-zA-Z0-9_]*)\\}\\}");
+
+    // Set of macros that don't require closing tags
+    private static final Set<String> SELF_CLOSING_MACROS = new HashSet<>(Arrays.asList(
+        "var", "default", "dump", "debugbreak", "l", "r", "syntax", "use", "_", "=",
+        "contentType", "status", "php", "do", "varType", "templateType", "parameters",
+        "include", "extends", "layout", "typeCheck", "strictTypes", "asyncInclude", "await", "inject"
+    ));
+
+    // Set of block macros that are automatically closed at EOF
+    private static final Set<String> AUTO_CLOSED_MACROS = new HashSet<>(Arrays.asList(
+        "block", "define", "snippet", "snippetArea", "capture",
+        "if", "elseif", "else",
+        "foreach", "for", "while",
+        "try", "catch",
+        "switch", "case", "default"
+    ));
+
     // The project this parser is associated with
     private final Project project;
     
     // Map of file paths to their last known content
-    private final Map<String, String> lastKnownContent;
+    private final Map<String, CharSequence> lastKnownContent;
     
     /**
      * Constructor that initializes the parser.
@@ -50,7 +75,7 @@ public final class LatteIncrementalParser {
      */
     public LatteIncrementalParser(Project project) {
         this.project = project;
-        this.lastKnownContent = new HashMap<>();
+        this.lastKnownContent = new ConcurrentHashMap<>();
     }
     
     /**
@@ -67,20 +92,18 @@ public final class LatteIncrementalParser {
      * Parses the changed parts of a template.
      *
      * @param file The file to parse
-     * @param content The current content of the file
+     * @param content The current content of the file (must not be mutated afterwards, it is kept for the next diff)
      * @return A list of text ranges that were reparsed
      */
     @NotNull
-    public List<TextRange> parseChangedParts(@NotNull VirtualFile file, @NotNull String content) {
+    public List<TextRange> parseChangedParts(@NotNull VirtualFile file, @NotNull CharSequence content) {
         String filePath = file.getPath();
-        String oldContent = lastKnownContent.get(filePath);
-        
-        List<TextRange> changedRanges = new ArrayList<>();
+        CharSequence oldContent = lastKnownContent.put(filePath, content);
         
         if (oldContent == null) {
             // First time seeing this file, parse the whole thing
+            List<TextRange> changedRanges = new ArrayList<>();
             changedRanges.add(new TextRange(0, content.length()));
-            lastKnownContent.put(filePath, content);
             return changedRanges;
         }
         
@@ -88,12 +111,35 @@ public final class LatteIncrementalParser {
         List<TextRange> changes = findChangedRegions(oldContent, content);
         
         // Expand changes to include complete Latte constructs
-        List<TextRange> expandedChanges = expandChangesToCompleteLatteConstructs(content, changes);
+        return expandChangesToCompleteLatteConstructs(content, changes);
+    }
+    
+    /**
+     * Parses the changed parts of a template using the offsets reported by the editor.
+     * This avoids diffing the old and new content when the event directly follows
+     * the last known content of the file. If an event was missed in between,
+     * the content is diffed as in {@link #parseChangedParts(VirtualFile, CharSequence)}.
+     *
+     * @param file The file to parse
+     * @param event The document change event (after the change has been applied)
+     * @return A list of text ranges that were reparsed
+     */
+    @NotNull
+    public List<TextRange> parseChangedParts(@NotNull VirtualFile file, @NotNull DocumentEvent event) {
+        CharSequence content = event.getDocument().getImmutableCharSequence();
+        CharSequence oldContent = lastKnownContent.get(file.getPath());
+        
+        if (oldContent == null
+                || oldContent.length() - event.getOldLength() + event.getNewLength() != content.length()
+                || event.getOffset() + event.getNewLength() > content.length()) {
+            return parseChangedParts(file, content);
+        }
         
-        // Update last known content
-        lastKnownContent.put(filePath, content);
+        lastKnownContent.put(file.getPath(), content);
         
-        return expandedChanges;
+        List<TextRange> changes = new ArrayList<>(1);
+        changes.add(new TextRange(event.getOffset(), event.getOffset() + event.getNewLength()));
+        return expandChangesToCompleteLatteConstructs(content, changes);
     }
     
     /**
@@ -113,24 +159,17 @@ public final class LatteIncrementalParser {
     }
     
     /**
-     * Finds the regions that have changed between two strings.
-     * This is a simple implementation that could be improved with a more sophisticated diff algorithm.
+     * Finds the regions that have changed between two versions of the content.
+     * Uses a common prefix/suffix scan and falls back to a line diff for large
+     * middle regions, see {@link LatteTextDiff}.
      *
      * @param oldContent The old content
      * @param newContent The new content
      * @return A list of text ranges representing the changed regions
      */
     @NotNull
-    private List<TextRange> findChangedRegions(@NotNull String oldContent, @NotNull String newContent) {
-        List<TextRange> changes = new ArrayList<>();
-        
-        // Simple implementation: if the content has changed, consider the whole file changed
-        // A more sophisticated implementation would use a diff algorithm to find specific changes
-        if (!oldContent.equals(newContent)) {
-            changes.add(new TextRange(0, newContent.length()));
-        }
-        
-        return changes;
+    private List<TextRange> findChangedRegions(@NotNull CharSequence oldContent, @NotNull CharSequence newContent) {
+        return LatteTextDiff.computeChangedRanges(oldContent, newContent);
     }
     
     /**
@@ -142,7 +181,7 @@ public final class LatteIncrementalParser {
      * @return A list of text ranges representing the expanded changed regions
      */
     @NotNull
-    private List<TextRange> expandChangesToCompleteLatteConstructs(@NotNull String content, @NotNull List<TextRange> changes) {
+    private List<TextRange> expandChangesToCompleteLatteConstructs(@NotNull CharSequence content, @NotNull List<TextRange> changes) {
         List<TextRange> expandedChanges = new ArrayList<>();
         
         for (TextRange change : changes) {
@@ -170,23 +209,22 @@ public final class LatteIncrementalParser {
      * @param offset The offset to start searching from
      * @return The offset of the start of the Latte macro
      */
-    private int findStartOfLatteMacro(@NotNull String content, int offset) {
+    private int findStartOfLatteMacro(@NotNull CharSequence content, int offset) {
         // Search backward for the start of a Latte macro
         boolean inString = false;
         char stringDelimiter = 0;
         boolean inComment = false;
-        boolean inJavaScript = false;
         
         // Check if we're inside a JavaScript block
-        for (int i = 0; i < offset; i++) {
-            if (i + 8 < content.length() && content.substring(i, i + 9).equals("<script>")) {
-                inJavaScript = true;
-            } else if (i + 9 < content.length() && content.substring(i, i + 10).equals("</script>")) {
-                inJavaScript = false;
-            }
-        }
+        int scriptStart = findEnclosingScriptStart(content, offset);
+        boolean inJavaScript = scriptStart >= 0;
         
-        for (int i = offset; i >= 0; i--) {
+        for (int i = Math.min(offset, content.length() - 1); i >= 0; i--) {
+            // The script element itself is the outermost construct to reparse
+            if (inJavaScript && i <= scriptStart) {
+                return scriptStart;
+            }
+            
             // Handle strings and comments
             if (i > 0) {
                 char prevChar = content.charAt(i - 1);
@@ -226,26 +264,14 @@ public final class LatteIncrementalParser {
             // Special handling for JavaScript code
             if (inJavaScript) {
                 // In JavaScript, only look for {syntax} and {/syntax} tags
-                if (i + 8 < content.length() && content.substring(i, i + 9).equals("{/syntax}")) {
-                    return i;
-                }
-                if (i + 12 < content.length() && content.substring(i, i + 13).equals("{syntax off}")) {
-                    return i;
-                }
-                if (i + 14 < content.length() && content.substring(i, i + 15).equals("{syntax double}")) {
+                if (isSyntaxTagAt(content, i)) {
                     return i;
                 }
                 continue;
             }
             
             // Check for {syntax} tags first, as they have highest priority
-            if (i + 8 < content.length() && content.substring(i, i + 9).equals("{/syntax}")) {
-                return i;
-            }
-            if (i + 12 < content.length() && content.substring(i, i + 13).equals("{syntax off}")) {
-                return i;
-            }
-            if (i + 14 < content.length() && content.substring(i, i + 15).equals("{syntax double}")) {
+            if (isSyntaxTagAt(content, i)) {
                 return i;
             }
             
@@ -268,6 +294,54 @@ public final class LatteIncrementalParser {
         return 0;
     }
     
+    /**
+     * Checks whether a {syntax} switch or its end tag starts at the given offset.
+     */
+    private static boolean isSyntaxTagAt(@NotNull CharSequence content, int offset) {
+        return regionMatches(content, offset, "{/syntax}")
+                || regionMatches(content, offset, "{syntax off}")
+                || regionMatches(content, offset, "{syntax double}");
+    }
+    
+    /**
+     * Finds the start of the script element enclosing the given offset.
+     * Scans backward only until the nearest script tag, so the cost depends on the
+     * distance to that tag rather than on the size of the file.
+     *
+     * @param content The content of the file
+     * @param offset The offset to check
+     * @return The offset of the enclosing {@code <script>} tag, or -1 if the offset is not inside a script
+     */
+    private static int findEnclosingScriptStart(@NotNull CharSequence content, int offset) {
+        for (int i = Math.min(offset, content.length()) - 1; i >= 0; i--) {
+            if (content.charAt(i) != '<') {
+                continue;
+            }
+            if (regionMatches(content, i, "</script>")) {
+                return -1;
+            }
+            if (regionMatches(content, i, "<script>")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Checks whether the content contains the given text at the given offset, without allocating.
+     */
+    private static boolean regionMatches(@NotNull CharSequence content, int offset, @NotNull String text) {
+        if (offset < 0 || offset + text.length() > content.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (content.charAt(offset + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * Finds the end of the Latte macro that contains the given offset.
      * This enhanced version tracks opening and closing macros to detect proper nesting,
@@ -279,25 +353,7 @@ public final class LatteIncrementalParser {
      * @param offset The offset to start searching from
      * @return The offset of the end of the Latte macro
      */
-    private int findEndOfLatteMacro(@NotNull String content, int offset) {
-        // Patterns for matching macro names in single-brace syntax
-        Pattern openMacroPattern = Pattern.compile("\\{([a-zA-Z_][a-zA-Z0-9_]*)(?:\\s+|\\}|$)");
-        Pattern closeMacroPattern = Pattern.compile("\\{/([a-zA-Z_][a-zA-Z0-9_]*)\\}");
-        
-        // Patterns for matching macro names in double-brace syntax
-        Pattern openDoubleMacroPattern = Pattern.compile("\\{\\{([a-zA-Z_][a-zA-Z0-9_]*)(?:\\s+|\\}\\}|$)");
-        Pattern closeDoubleMacroPattern = Pattern.compile("\\{\\{/([a-zA-Z_][a-zA-Z0-9_]*)\\}\\}");
-        
-        // Set of macros that don't require closing tags
-        Set<String> selfClosingMacros = new HashSet<>(Arrays.asList(
-            "var", "default", "dump", "debugbreak", "l", "r", "syntax", "use", "_", "=", 
-            "contentType", "status", "php", "do", "varType", "templateType", "parameters",
-            "include", "extends", "layout", "typeCheck", "strictTypes", "asyncInclude", "await", "inject"
-        ));
-        
-        // Set of block macros that might be allowed to remain unclosed in some versions
-        Set<String> blockMacros = new HashSet<>(Arrays.asList("block", "define", "snippet", "snippetArea", "capture"));
-        
+    private int findEndOfLatteMacro(@NotNull CharSequence content, int offset) {
         // Stack to track opening macros
         Stack<MacroInfo> macroStack = new Stack<>();
         
@@ -323,14 +379,14 @@ public final class LatteIncrementalParser {
                     return content.length();
                 }
                 
-                String macroTag = content.substring(i, macroEnd);
+                CharSequence macroTag = content.subSequence(i, macroEnd);
                 
                 // Check if it's a closing macro
                 Matcher closeMatcher;
                 if (isDoubleBrace) {
-                    closeMatcher = closeDoubleMacroPattern.matcher(macroTag);
+                    closeMatcher = CLOSE_DOUBLE_MACRO_PATTERN.matcher(macroTag);
                 } else {
-                    closeMatcher = closeMacroPattern.matcher(macroTag);
+                    closeMatcher = CLOSE_MACRO_PATTERN.matcher(macroTag);
                 }
                 
                 if (closeMatcher.find()) {
@@ -380,9 +436,9 @@ public final class LatteIncrementalParser {
                     // Check if it's an opening macro
                     Matcher openMatcher;
                     if (isDoubleBrace) {
-                        openMatcher = openDoubleMacroPattern.matcher(macroTag);
+                        openMatcher = OPEN_DOUBLE_MACRO_PATTERN.matcher(macroTag);
                     } else {
-                        openMatcher = openMacroPattern.matcher(macroTag);
+                        openMatcher = OPEN_MACRO_PATTERN.matcher(macroTag);
                     }
                     
                     if (openMatcher.find()) {
@@ -392,7 +448,7 @@ public final class LatteIncrementalParser {
                         // add it to the stack
                         if (i == offset) {
                             macroStack.push(new MacroInfo(openingMacroName, i));
-                        } else if (!selfClosingMacros.contains(openingMacroName)) {
+                        } else if (!SELF_CLOSING_MACROS.contains(openingMacroName)) {
                             // This is a nested macro that requires a closing tag
                             macroStack.push(new MacroInfo(openingMacroName, i));
                         }
@@ -442,7 +498,7 @@ public final class LatteIncrementalParser {
      * @param start The start offset of the macro tag
      * @return The offset of the end of the macro tag, or -1 if not found
      */
-    private int findMacroTagEnd(@NotNull String content, int start) {
+    private int findMacroTagEnd(@NotNull CharSequence content, int start) {
         boolean inString = false;
         char stringDelimiter = 0;
         boolean isDoubleBrace = false;
@@ -489,17 +545,7 @@ public final class LatteIncrementalParser {
     private boolean isBlockMacroAllowedUnclosed(String macroName) {
         // According to Latte's standard behavior, all block directives are automatically closed
         // at the end of the file if they are not explicitly closed.
-        
-        // Set of block macros that are automatically closed at EOF
-        Set<String> autoClosedMacros = new HashSet<>(Arrays.asList(
-            "block", "define", "snippet", "snippetArea", "capture",
-            "if", "elseif", "else",
-            "foreach", "for", "while",
-            "try", "catch",
-            "switch", "case", "default"
-        ));
-        
-        return autoClosedMacros.contains(macroName);
+        return AUTO_CLOSED_MACROS.contains(macroName);
     }
     
     /**
@@ -0,0 +1,367 @@
+package cz.hqm.latte.plugin.parser;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Locates self-contained paired macro blocks such as {if}...{/if} in template text.
+ * A block is self-contained when its matching end tag is found and the HTML markup
+ * between the two tags is balanced, so the block can be parsed (and reparsed)
+ * independently of the rest of the file.
+ * <p>
+ * All blocks of a text are found in a single pass that tracks the open blocks and the
+ * open HTML elements, so nested blocks do not rescan the text of the blocks around them.
+ * Regions with {syntax off} are skipped up to their {/syntax}.
+ */
+public final class LatteMacroBlocks {
+
+    // HTML elements that never have an end tag
+    private static final Set<String> VOID_ELEMENTS = new HashSet<>(Arrays.asList(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "link",
+            "meta", "param", "source", "track", "wbr"
+    ));
+
+    private LatteMacroBlocks() {
+    }
+
+    /**
+     * Finds the end of the paired macro block starting at the given offset.
+     * Only single-brace syntax is recognized; nested blocks of the same name are skipped.
+     *
+     * @param text The template text
+     * @param start The offset of the opening brace of the block's start tag
+     * @param macroName The name of the block macro (e.g. "if")
+     * @return The offset just after the matching end tag, or -1 if the block is not self-contained
+     */
+    public static int findBlockEnd(@NotNull CharSequence text, int start, @NotNull String macroName) {
+        if (!isMacroAt(text, start, macroName)) {
+            return -1;
+        }
+        Integer end = findBlockEnds(text, start, Collections.singleton(macroName)).get(start);
+        return end != null ? end : -1;
+    }
+
+    /**
+     * Finds the ends of all self-contained paired macro blocks of the given macros in one pass.
+     * Only single-brace syntax is recognized.
+     *
+     * @param text The template text
+     * @param macroNames The names of the block macros (e.g. "if")
+     * @return The offset just after the matching end tag of each self-contained block, by the offset of its start tag
+     */
+    @NotNull
+    public static Map<Integer, Integer> findBlockEnds(@NotNull CharSequence text, @NotNull Collection<String> macroNames) {
+        return findBlockEnds(text, 0, macroNames);
+    }
+
+    @NotNull
+    private static Map<Integer, Integer> findBlockEnds(@NotNull CharSequence text, int from,
+                                                       @NotNull Collection<String> macroNames) {
+        Map<Integer, Integer> ends = new HashMap<>();
+        List<OpenBlock> openBlocks = new ArrayList<>();
+        List<String> openTags = new ArrayList<>();
+        int length = text.length();
+        int i = from;
+
+        while (i < length) {
+            char c = text.charAt(i);
+
+            if (c == '{') {
+                // Skip Latte comments, they may contain anything
+                if (i + 1 < length && text.charAt(i + 1) == '*') {
+                    int commentEnd = indexOf(text, "*}", i + 2);
+                    if (commentEnd < 0) {
+                        break;
+                    }
+                    i = commentEnd + 2;
+                    continue;
+                }
+
+                // Skip regions with Latte syntax turned off, their tags are plain text
+                if (isMacroAt(text, i, "syntax")) {
+                    int tagEnd = indexOf(text, "}", i);
+                    if (tagEnd < 0) {
+                        break;
+                    }
+                    if (text.subSequence(i + "{syntax".length(), tagEnd).toString().trim().equals("off")) {
+                        int syntaxEnd = indexOf(text, "{/syntax}", tagEnd);
+                        if (syntaxEnd < 0) {
+                            break;
+                        }
+                        i = syntaxEnd + "{/syntax}".length();
+                        continue;
+                    }
+                }
+
+                // The anonymous end tag {/} is ambiguous without a full parse
+                if (regionMatches(text, i, "{/}")) {
+                    invalidate(openBlocks, 0);
+                    i += 3;
+                    continue;
+                }
+
+                String endName = findEndMacro(text, i, macroNames);
+                if (endName != null) {
+                    int endTagEnd = i + endName.length() + 3;
+                    OpenBlock block = removeInnermost(openBlocks, endName);
+                    // The end tag must also end a lexer token, otherwise it cannot be collapsed
+                    if (block != null && block.valid && openTags.size() == block.tagDepth
+                            && (endTagEnd >= length || isTokenBoundary(text.charAt(endTagEnd)))) {
+                        ends.put(block.start, endTagEnd);
+                    }
+                    i = endTagEnd;
+                    continue;
+                }
+
+                String startName = findStartMacro(text, i, macroNames);
+                if (startName != null) {
+                    openBlocks.add(new OpenBlock(i, startName, openTags.size()));
+                    // Skip the arguments, a comparison in them is not markup
+                    int argumentsEnd = indexOf(text, "}", i + startName.length() + 1);
+                    if (argumentsEnd < 0) {
+                        break;
+                    }
+                    i = argumentsEnd + 1;
+                    continue;
+                }
+
+                i++;
+                continue;
+            }
+
+            if (c != '<' || i + 1 >= length) {
+                i++;
+                continue;
+            }
+
+            if (regionMatches(text, i, "<!--")) {
+                int commentEnd = indexOf(text, "-->", i + 4);
+                if (commentEnd < 0) {
+                    break;
+                }
+                i = commentEnd + 3;
+                continue;
+            }
+
+            boolean closing = text.charAt(i + 1) == '/';
+            int nameStart = closing ? i + 2 : i + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < length && isTagNameChar(text.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            if (nameEnd == nameStart || !Character.isLetter(text.charAt(nameStart))) {
+                i++;
+                continue;
+            }
+
+            int tagEnd = findTagEnd(text, nameEnd, length);
+            if (tagEnd < 0) {
+                break;
+            }
+            closeBlocksInTag(text, nameEnd, tagEnd, macroNames, openBlocks);
+            String name = text.subSequence(nameStart, nameEnd).toString().toLowerCase();
+
+            if (closing) {
+                int top = openTags.size() - 1;
+                if (top >= 0 && openTags.get(top).equals(name)) {
+                    openTags.remove(top);
+                    // Blocks opened inside the element end after it
+                    invalidate(openBlocks, top + 1);
+                } else {
+                    invalidate(openBlocks, 0);
+                }
+            } else if (text.charAt(tagEnd - 2) != '/' && !VOID_ELEMENTS.contains(name)) {
+                openTags.add(name);
+                if (name.equals("script") || name.equals("style")) {
+                    // The raw contents are skipped up to the end tag
+                    int rawEnd = indexOf(text, "</" + name, tagEnd);
+                    if (rawEnd < 0) {
+                        break;
+                    }
+                    tagEnd = rawEnd;
+                }
+            }
+            i = tagEnd;
+        }
+
+        return ends;
+    }
+
+    /**
+     * Handles the block macros inside a tag header. A block closed there, but opened before
+     * the tag, ends inside the tag and is not self-contained.
+     */
+    private static void closeBlocksInTag(@NotNull CharSequence text, int from, int to,
+                                         @NotNull Collection<String> macroNames, @NotNull List<OpenBlock> openBlocks) {
+        List<String> openInTag = null;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) != '{') {
+                continue;
+            }
+            String endName = findEndMacro(text, i, macroNames);
+            if (endName != null) {
+                if (openInTag != null && openInTag.remove(endName)) {
+                    continue;
+                }
+                OpenBlock block = removeInnermost(openBlocks, endName);
+                if (block != null) {
+                    block.valid = false;
+                }
+                continue;
+            }
+            String startName = findStartMacro(text, i, macroNames);
+            if (startName != null) {
+                if (openInTag == null) {
+                    openInTag = new ArrayList<>();
+                }
+                openInTag.add(startName);
+            }
+        }
+    }
+
+    /**
+     * Marks the open blocks that started at the given HTML nesting depth or deeper as not self-contained.
+     */
+    private static void invalidate(@NotNull List<OpenBlock> openBlocks, int tagDepth) {
+        for (OpenBlock block : openBlocks) {
+            if (block.tagDepth >= tagDepth) {
+                block.valid = false;
+            }
+        }
+    }
+
+    /**
+     * Removes the innermost open block of the given macro, which the end tag of the macro closes.
+     *
+     * @return The block, or null if no block of the macro is open
+     */
+    private static OpenBlock removeInnermost(@NotNull List<OpenBlock> openBlocks, @NotNull String macroName) {
+        for (int i = openBlocks.size() - 1; i >= 0; i--) {
+            if (openBlocks.get(i).macroName.equals(macroName)) {
+                return openBlocks.remove(i);
+            }
+        }
+        return null;
+    }
+
+    private static String findStartMacro(@NotNull CharSequence text, int offset, @NotNull Collection<String> macroNames) {
+        for (String macroName : macroNames) {
+            if (isMacroAt(text, offset, macroName)) {
+                return macroName;
+            }
+        }
+        return null;
+    }
+
+    private static String findEndMacro(@NotNull CharSequence text, int offset, @NotNull Collection<String> macroNames) {
+        if (!regionMatches(text, offset, "{/")) {
+            return null;
+        }
+        for (String macroName : macroNames) {
+            if (isEndMacroAt(text, offset, macroName)) {
+                return macroName;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the start tag of the given macro (e.g. "{if " or "{if}") is at the offset.
+     */
+    private static boolean isMacroAt(@NotNull CharSequence text, int offset, @NotNull String macroName) {
+        int nameEnd = offset + 1 + macroName.length();
+        if (nameEnd >= text.length() || text.charAt(offset) != '{' || !regionMatches(text, offset + 1, macroName)) {
+            return false;
+        }
+        char next = text.charAt(nameEnd);
+        return next == '}' || Character.isWhitespace(next);
+    }
+
+    /**
+     * Checks whether the end tag of the given macro (e.g. "{/if}") is at the offset.
+     */
+    private static boolean isEndMacroAt(@NotNull CharSequence text, int offset, @NotNull String macroName) {
+        int nameEnd = offset + 2 + macroName.length();
+        return nameEnd < text.length()
+                && regionMatches(text, offset, "{/")
+                && regionMatches(text, offset + 2, macroName)
+                && text.charAt(nameEnd) == '}';
+    }
+
+    private static boolean isTokenBoundary(char c) {
+        return Character.isWhitespace(c) || c == '<' || c == '&';
+    }
+
+    private static boolean isTagNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == ':' || c == '_';
+    }
+
+    /**
+     * Finds the end of a tag header, skipping quoted attribute values.
+     *
+     * @return The offset just after the closing '>', or -1 if it is not found before the limit
+     */
+    private static int findTagEnd(@NotNull CharSequence text, int from, int limit) {
+        char quote = 0;
+        for (int i = from; i < limit; i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(@NotNull CharSequence text, @NotNull String needle, int from) {
+        for (int i = from; i + needle.length() <= text.length(); i++) {
+            if (regionMatches(text, i, needle)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(@NotNull CharSequence text, int offset, @NotNull String needle) {
+        if (offset + needle.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < needle.length(); i++) {
+            if (text.charAt(offset + i) != needle.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A block whose end tag has not been found yet.
+     */
+    private static final class OpenBlock {
+        private final int start;
+        private final String macroName;
+        // Number of HTML elements open when the block started; they must stay open until it ends
+        private final int tagDepth;
+        private boolean valid = true;
+
+        private OpenBlock(int start, @NotNull String macroName, int tagDepth) {
+            this.start = start;
+            this.macroName = macroName;
+            this.tagDepth = tagDepth;
+        }
+    }
+}
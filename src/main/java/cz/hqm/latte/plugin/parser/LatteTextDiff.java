@@ -0,0 +1,249 @@
+package cz.hqm.latte.plugin.parser;
+
+import com.intellij.openapi.util.TextRange;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes the regions of a template that differ between two versions of its text.
+ * <p>
+ * The common prefix and suffix are stripped first, which is enough for the typical
+ * single-edit case and costs a single scan without allocations. When the remaining
+ * middle region is large (e.g. several distant edits applied at once), a Myers line diff
+ * is run over it so that unchanged lines in between are not reported as changed.
+ * The line diff gives up after {@link #MAX_EDIT_DISTANCE} line edits and falls back
+ * to the single prefix/suffix range.
+ */
+public final class LatteTextDiff {
+
+    // Middle regions shorter than this are reported as a single range without a line diff
+    private static final int LINE_DIFF_THRESHOLD = 4096;
+
+    // Maximum number of inserted/deleted lines the Myers diff explores before giving up
+    private static final int MAX_EDIT_DISTANCE = 256;
+
+    private LatteTextDiff() {
+    }
+
+    /**
+     * Computes the ranges in the new text that changed compared to the old text.
+     * Pure deletions are reported as empty ranges at the position of the deletion.
+     *
+     * @param oldText The previous text
+     * @param newText The current text
+     * @return Sorted, non-overlapping ranges in the new text; empty if the texts are equal
+     */
+    @NotNull
+    public static List<TextRange> computeChangedRanges(@NotNull CharSequence oldText, @NotNull CharSequence newText) {
+        int oldLength = oldText.length();
+        int newLength = newText.length();
+        int minLength = Math.min(oldLength, newLength);
+
+        int prefix = 0;
+        while (prefix < minLength && oldText.charAt(prefix) == newText.charAt(prefix)) {
+            prefix++;
+        }
+
+        if (prefix == oldLength && prefix == newLength) {
+            return Collections.emptyList();
+        }
+
+        int suffix = 0;
+        int maxSuffix = minLength - prefix;
+        while (suffix < maxSuffix && oldText.charAt(oldLength - 1 - suffix) == newText.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+
+        int oldMiddleEnd = oldLength - suffix;
+        int newMiddleEnd = newLength - suffix;
+
+        if (Math.max(oldMiddleEnd, newMiddleEnd) - prefix > LINE_DIFF_THRESHOLD) {
+            List<TextRange> lineRanges = computeLineRanges(oldText, newText, prefix, oldMiddleEnd, newMiddleEnd);
+            if (lineRanges != null) {
+                return lineRanges;
+            }
+        }
+
+        List<TextRange> result = new ArrayList<>(1);
+        result.add(new TextRange(prefix, newMiddleEnd));
+        return result;
+    }
+
+    /**
+     * Runs a Myers line diff over the middle region, widened to whole lines.
+     *
+     * @return The changed ranges, or null if the edit distance exceeds {@link #MAX_EDIT_DISTANCE}
+     */
+    @Nullable
+    private static List<TextRange> computeLineRanges(@NotNull CharSequence oldText, @NotNull CharSequence newText,
+                                                     int prefix, int oldMiddleEnd, int newMiddleEnd) {
+        // Widen to line boundaries; the prefix and suffix are shared, so both texts widen identically
+        int regionStart = prefix;
+        while (regionStart > 0 && newText.charAt(regionStart - 1) != '\n') {
+            regionStart--;
+        }
+        int trailing = 0;
+        int suffixLength = newText.length() - newMiddleEnd;
+        while (trailing < suffixLength && newText.charAt(newMiddleEnd + trailing) != '\n') {
+            trailing++;
+        }
+        if (trailing < suffixLength) {
+            trailing++; // include the line break itself
+        }
+
+        int[] oldLines = splitLines(oldText, regionStart, oldMiddleEnd + trailing);
+        int[] newLines = splitLines(newText, regionStart, newMiddleEnd + trailing);
+        int[] oldHashes = hashLines(oldText, oldLines);
+        int[] newHashes = hashLines(newText, newLines);
+
+        int n = oldLines.length - 1;
+        int m = newLines.length - 1;
+        int max = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+
+        for (int d = 0; d <= max; d++) {
+            trace.add(v.clone());
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && linesEqual(oldText, oldLines, oldHashes, x, newText, newLines, newHashes, y)) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    return backtrack(trace, offset, n, m, newLines);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Walks the Myers trace backwards and converts the edit script into ranges in the new text.
+     */
+    @NotNull
+    private static List<TextRange> backtrack(@NotNull List<int[]> trace, int offset, int n, int m, int[] newLines) {
+        List<TextRange> ranges = new ArrayList<>();
+        int x = n;
+        int y = m;
+
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int prevK = (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) ? k + 1 : k - 1;
+            int prevX = v[offset + prevK];
+            int prevY = prevX - prevK;
+
+            while (x > prevX && y > prevY) {
+                x--;
+                y--;
+            }
+
+            if (x == prevX) {
+                // Inserted line prevY of the new text
+                ranges.add(new TextRange(newLines[prevY], newLines[prevY + 1]));
+            } else {
+                // Deleted line prevX of the old text, located before line y of the new text
+                ranges.add(new TextRange(newLines[y], newLines[y]));
+            }
+
+            x = prevX;
+            y = prevY;
+        }
+
+        Collections.reverse(ranges);
+        return mergeAdjacent(ranges);
+    }
+
+    /**
+     * Merges ranges that overlap or touch. The input must be sorted by start offset.
+     */
+    @NotNull
+    private static List<TextRange> mergeAdjacent(@NotNull List<TextRange> ranges) {
+        List<TextRange> merged = new ArrayList<>();
+        TextRange current = null;
+        for (TextRange range : ranges) {
+            if (current != null && current.getEndOffset() >= range.getStartOffset()) {
+                current = new TextRange(current.getStartOffset(), Math.max(current.getEndOffset(), range.getEndOffset()));
+            } else {
+                if (current != null) {
+                    merged.add(current);
+                }
+                current = range;
+            }
+        }
+        if (current != null) {
+            merged.add(current);
+        }
+        return merged;
+    }
+
+    /**
+     * Splits the region into lines. Element i is the start offset of line i;
+     * the last element is the end of the region.
+     */
+    private static int[] splitLines(@NotNull CharSequence text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        boolean trailingLine = end > start && text.charAt(end - 1) != '\n';
+        int[] lines = new int[count + (trailingLine ? 1 : 0) + 1];
+
+        int line = 0;
+        lines[line++] = start;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n' && i + 1 < end) {
+                lines[line++] = i + 1;
+            }
+        }
+        lines[lines.length - 1] = end;
+        return lines;
+    }
+
+    private static int[] hashLines(@NotNull CharSequence text, int[] lines) {
+        int[] hashes = new int[lines.length - 1];
+        for (int line = 0; line < hashes.length; line++) {
+            int hash = 0;
+            for (int i = lines[line]; i < lines[line + 1]; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            hashes[line] = hash;
+        }
+        return hashes;
+    }
+
+    private static boolean linesEqual(@NotNull CharSequence oldText, int[] oldLines, int[] oldHashes, int oldLine,
+                                      @NotNull CharSequence newText, int[] newLines, int[] newHashes, int newLine) {
+        if (oldHashes[oldLine] != newHashes[newLine]) {
+            return false;
+        }
+        int oldStart = oldLines[oldLine];
+        int length = oldLines[oldLine + 1] - oldStart;
+        int newStart = newLines[newLine];
+        if (length != newLines[newLine + 1] - newStart) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (oldText.charAt(oldStart + i) != newText.charAt(newStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
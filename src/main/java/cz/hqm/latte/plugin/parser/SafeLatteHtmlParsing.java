@@ -38,6 +38,16 @@ public class SafeLatteHtmlParsing extends LatteHtmlParsing {
         super(builder);
     }
     
+    /**
+     * Creates a new instance of SafeLatteHtmlParsing.
+     *
+     * @param builder The PsiBuilder to use for parsing
+     * @param parsingBlockContents True when parsing the contents of a lazily parsed macro block
+     */
+    public SafeLatteHtmlParsing(PsiBuilder builder, boolean parsingBlockContents) {
+        super(builder, parsingBlockContents);
+    }
+    
     /**
      * Overrides the parseDocument method to add a token count limit.
      * This method will break out of the parsing loop if the token count exceeds MAX_TOKENS_TO_PROCESS
@@ -71,7 +81,7 @@ public class SafeLatteHtmlParsing extends LatteHtmlParsing {
         
         // Log the end of parsing
         long endTime = System.currentTimeMillis();
-        LatteLogger.debug(LOG, "Finished safe parsing in " + (endTime - startTime) + "ms, processed " + tokensProcessed + " tokens");
+        LatteLogger.debug(LOG, () -> "Finished safe parsing in " + (endTime - startTime) + "ms, processed " + tokensProcessed + " tokens");
     }
     
     /**
@@ -84,8 +94,8 @@ public class SafeLatteHtmlParsing extends LatteHtmlParsing {
         int lastPosition = getBuilder().getCurrentOffset();
         int stuckCount = 0;
         
-        // Create a marker for the document
-        PsiBuilder.Marker document = mark();
+        // Create a marker for the document; the contents of a block are parsed directly into the block
+        PsiBuilder.Marker document = isParsingBlockContents() ? null : mark();
         
         // Process tokens until we reach the end or exceed the limits
         while (!eof() && tokensProcessed < MAX_TOKENS_TO_PROCESS) {
@@ -119,7 +129,7 @@ public class SafeLatteHtmlParsing extends LatteHtmlParsing {
             
             // Log the current token every 1000 tokens
             if (tokensProcessed % 1000 == 0) {
-                LatteLogger.debug(LOG, "Processing token " + tokensProcessed + ": " + tokenType);
+                LatteLogger.debug(LOG, () -> "Processing token " + tokensProcessed + ": " + tokenType);
             }
             
             // Process the token based on its type
@@ -156,7 +166,7 @@ public class SafeLatteHtmlParsing extends LatteHtmlParsing {
                 
                 // Log every 1000 tokens
                 if (tokensProcessed % 1000 == 0) {
-                    LatteLogger.debug(LOG, "Processed " + tokensProcessed + " tokens so far");
+                    LatteLogger.debug(LOG, () -> "Processed " + tokensProcessed + " tokens so far");
                 }
             }
         }
@@ -167,7 +177,9 @@ public class SafeLatteHtmlParsing extends LatteHtmlParsing {
         }
         
         // Complete the document marker
-        document.done(XmlElementType.HTML_DOCUMENT);
+        if (document != null) {
+            document.done(XmlElementType.HTML_DOCUMENT);
+        }
     }
     
     @Override
@@ -209,6 +221,9 @@ public class SafeLatteHtmlParsing extends LatteHtmlParsing {
      */
     private void createMinimalDocument() {
         LatteLogger.debug(LOG, "Creating minimal document structure");
+        if (isParsingBlockContents()) {
+            return;
+        }
         
         // Create a marker for the document
         PsiBuilder.Marker document = mark();
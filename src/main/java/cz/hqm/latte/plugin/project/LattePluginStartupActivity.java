@@ -11,6 +11,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import cz.hqm.latte.plugin.lexer.LatteLexerFactory;
 import cz.hqm.latte.plugin.util.LatteLogger;
+import cz.hqm.latte.plugin.completion.LatteCompletionCache;
+import cz.hqm.latte.plugin.version.ComposerMetadataService;
 
 /**
  * Startup activity for the Latte plugin.
@@ -29,6 +31,12 @@ public class LattePluginStartupActivity implements ProjectActivity {
         // Log a message about the plugin startup
         LatteLogger.info(LOG, "Latte Plugin started for project: " + project.getName());
         
+        // Read composer.json and composer.lock in the background before the first completion needs them
+        ComposerMetadataService.getInstance(project);
+        
+        // Build the completion macros of the project's Latte version in the background
+        LatteCompletionCache.getInstance(project).prefetch();
+        
         // Since LatteLexerFactory is an application-level service,
         // it should already be properly registered for disposal by the platform.
         // However, we can add additional cleanup logic here if needed.
@@ -2,8 +2,7 @@ package cz.hqm.latte.plugin.project;
 
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.project.Project;
-import cz.hqm.latte.plugin.version.LatteVersionDetector;
-import cz.hqm.latte.plugin.version.NettePackageDetector;
+import cz.hqm.latte.plugin.version.ComposerMetadataService;
 
 /**
  * Project service that initializes version and package detection when a project is opened.
@@ -22,20 +21,17 @@ public final class LatteProjectService {
     public LatteProjectService(Project project) {
         this.project = project;
         
-        // Initialize detection
-        detectVersionAndPackages();
+        // The metadata service reads the composer files on a pooled thread when it is created
+        ComposerMetadataService.getInstance(project);
     }
     
     /**
-     * Detects the Latte version and Nette packages for the current project.
-     * This can be called manually to refresh the detection when the composer.json file changes.
+     * Detects the Latte version and Nette packages for the current project again.
+     * This can be called manually to refresh the detection when the composer.json file changes;
+     * the composer files are read on a pooled thread.
      */
     public void detectVersionAndPackages() {
-        // Detect Latte version
-        LatteVersionDetector.detectVersion(project);
-        
-        // Detect Nette packages
-        NettePackageDetector.detectAndUpdateSettings(project);
+        ComposerMetadataService.getInstance(project).scheduleRefresh();
     }
     
     /**
@@ -3,8 +3,7 @@ package cz.hqm.latte.plugin.project;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupActivity;
 import org.jetbrains.annotations.NotNull;
-import cz.hqm.latte.plugin.version.LatteVersionDetector;
-import cz.hqm.latte.plugin.version.NettePackageDetector;
+import cz.hqm.latte.plugin.version.ComposerMetadataService;
 
 /**
  * Startup activity that initializes version and package detection when a project is opened.
@@ -19,10 +18,8 @@ public class LatteStartupActivity implements StartupActivity {
      */
     @Override
     public void runActivity(@NotNull Project project) {
-        // Detect Latte version
-        LatteVersionDetector.detectVersion(project);
-        
-        // Detect Nette packages
-        NettePackageDetector.detectAndUpdateSettings(project);
+        // The metadata service reads the composer files on a pooled thread when it is created;
+        // the version and packages are then looked up in its snapshot
+        ComposerMetadataService.getInstance(project);
     }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package cz.hqm.latte.plugin.psi;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Set;
+
+/**
+ * Composite element types for Latte templates.
+ * Paired block macros are parsed into lazily reparseable elements, so an edit inside
+ * one block only reparses that block's subtree instead of the whole file.
+ */
+public interface LatteElementTypes {
+    LatteMacroBlockElementType BLOCK = new LatteMacroBlockElementType("block");
+    LatteMacroBlockElementType DEFINE = new LatteMacroBlockElementType("define");
+    LatteMacroBlockElementType FOREACH = new LatteMacroBlockElementType("foreach");
+    LatteMacroBlockElementType IF = new LatteMacroBlockElementType("if");
+    LatteMacroBlockElementType SNIPPET = new LatteMacroBlockElementType("snippet");
+
+    /**
+     * Names of the macros parsed as reparseable blocks.
+     */
+    Set<String> BLOCK_MACRO_NAMES = Set.of("block", "define", "foreach", "if", "snippet");
+
+    /**
+     * Gets the block element type for the given macro name.
+     *
+     * @param macroName The name of the macro (e.g. "if")
+     * @return The element type, or null if the macro is not parsed as a reparseable block
+     */
+    @Nullable
+    static LatteMacroBlockElementType forMacroName(@NotNull String macroName) {
+        switch (macroName) {
+            case "block":
+                return BLOCK;
+            case "define":
+                return DEFINE;
+            case "foreach":
+                return FOREACH;
+            case "if":
+                return IF;
+            case "snippet":
+                return SNIPPET;
+            default:
+                return null;
+        }
+    }
+}
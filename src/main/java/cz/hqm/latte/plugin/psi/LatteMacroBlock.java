@@ -0,0 +1,30 @@
+package cz.hqm.latte.plugin.psi;
+
+import com.intellij.psi.impl.source.tree.LazyParseablePsiElement;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * PSI element for a paired Latte block macro such as {if}...{/if}.
+ * The contents of the block are parsed lazily on first access.
+ */
+public class LatteMacroBlock extends LazyParseablePsiElement {
+
+    public LatteMacroBlock(@NotNull LatteMacroBlockElementType type, CharSequence buffer) {
+        super(type, buffer);
+    }
+
+    /**
+     * Gets the name of the macro that opens this block.
+     *
+     * @return The macro name (e.g. "if")
+     */
+    @NotNull
+    public String getMacroName() {
+        return ((LatteMacroBlockElementType) getElementType()).getMacroName();
+    }
+
+    @Override
+    public String toString() {
+        return "LatteMacroBlock(" + getMacroName() + ")";
+    }
+}
@@ -0,0 +1,259 @@
+package cz.hqm.latte.plugin.psi;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.Language;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.lexer.DelegateLexer;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.source.DummyHolder;
+import com.intellij.psi.tree.IReparseableElementType;
+import cz.hqm.latte.plugin.lang.LatteLanguage;
+import cz.hqm.latte.plugin.lexer.LatteLexer;
+import cz.hqm.latte.plugin.parser.LatteHtmlParser;
+import cz.hqm.latte.plugin.parser.LatteMacroBlocks;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Element type for a paired Latte block macro such as {if}...{/if}.
+ * The block is collapsed by the parser and its contents are parsed on demand.
+ * When the text of the block changes, the platform reparses only this block
+ * as long as it still forms a self-contained block of the same macro.
+ */
+public class LatteMacroBlockElementType extends IReparseableElementType {
+
+    // Lexer states of a file at the macros in it, see getParentState
+    private static final Key<MacroStates> MACRO_STATES_KEY = Key.create("latte.block.macroStates");
+
+    // Name of the macro this block type represents
+    private final String macroName;
+
+    /**
+     * Creates a new block element type.
+     *
+     * @param macroName The name of the macro (e.g. "if")
+     */
+    public LatteMacroBlockElementType(@NotNull String macroName) {
+        super("LATTE_" + macroName.toUpperCase(Locale.ROOT) + "_BLOCK", LatteLanguage.INSTANCE);
+        this.macroName = macroName;
+    }
+
+    /**
+     * Gets the name of the macro this block type represents.
+     *
+     * @return The macro name
+     */
+    @NotNull
+    public String getMacroName() {
+        return macroName;
+    }
+
+    @Nullable
+    @Override
+    public ASTNode createNode(CharSequence text) {
+        return new LatteMacroBlock(this, text);
+    }
+
+    @Override
+    protected ASTNode doParseContents(@NotNull ASTNode chameleon, @NotNull PsiElement psi) {
+        Project project = psi.getProject();
+        // The block is lexed in the state the file's lexer is in at the block, e.g. inside {syntax double}
+        Lexer lexer = new ParentStateLexer(getParentState(chameleon, psi));
+        PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(
+                project, chameleon, lexer, getLanguage(), chameleon.getChars());
+        // The block itself starts at offset 0 and must be parsed in place rather than collapsed again
+        return new LatteHtmlParser(true).parse(this, builder).getFirstChildNode();
+    }
+
+    /**
+     * Gets the state of the file's lexer at the start of a block.
+     * When a block is reparsed after an edit, the new block is parsed in a holder whose context
+     * is the old block; the text before the block, and so the state, is the same for both.
+     *
+     * @param chameleon The block to parse
+     * @param parent The parent of the block, or the holder of a reparsed block
+     * @return The packed lexer state, or 0 (the initial state) if the block is not in a file
+     */
+    private static int getParentState(@NotNull ASTNode chameleon, @NotNull PsiElement parent) {
+        PsiElement anchor = parent;
+        int offset = chameleon.getStartOffset();
+        if (parent instanceof DummyHolder) {
+            anchor = parent.getContext();
+            if (anchor == null) {
+                return 0;
+            }
+            offset = anchor.getTextRange().getStartOffset();
+        }
+        PsiFile file = anchor.getContainingFile();
+        if (file == null || file instanceof DummyHolder) {
+            return 0;
+        }
+        MacroStates states = file.getUserData(MACRO_STATES_KEY);
+        long stamp = file.getModificationStamp();
+        if (states == null) {
+            states = new MacroStates(file.getNode().getChars(), stamp);
+            file.putUserData(MACRO_STATES_KEY, states);
+        } else if (states.stamp != stamp) {
+            states = states.update(file.getNode().getChars(), stamp);
+            file.putUserData(MACRO_STATES_KEY, states);
+        }
+        return states.getState(offset);
+    }
+
+    @Override
+    public boolean isParsable(@NotNull CharSequence buffer, @NotNull Language fileLanguage, @NotNull Project project) {
+        return LatteMacroBlocks.findBlockEnd(buffer, 0, macroName) == buffer.length();
+    }
+
+    /**
+     * Lexer that starts in the state of the file's lexer at the start of a block.
+     */
+    private static final class ParentStateLexer extends DelegateLexer {
+        private final int parentState;
+
+        private ParentStateLexer(int parentState) {
+            super(new LatteLexer());
+            this.parentState = parentState;
+        }
+
+        @Override
+        public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
+            super.start(buffer, startOffset, endOffset, startOffset == 0 ? parentState : initialState);
+        }
+    }
+
+    /**
+     * States of the file's lexer at the tokens that start a macro, where a block may start.
+     * The file is lexed only as far as the blocks parsed so far start. After an edit, the states
+     * before the last recorded restartable token that precedes the change are kept, and lexing
+     * restarts from that token instead of the start of the file.
+     */
+    private static final class MacroStates {
+        // Minimum distance between the restartable tokens that are recorded
+        private static final int RESTART_SPACING = 1024;
+
+        private final String text;
+        private final long stamp;
+        private final OffsetStates macros;
+        private final OffsetStates restarts;
+        private final LatteLexer lexer = new LatteLexer();
+
+        MacroStates(@NotNull CharSequence text, long stamp) {
+            this(text.toString(), stamp, new OffsetStates(), new OffsetStates(), 0, 0);
+        }
+
+        private MacroStates(@NotNull String text, long stamp, @NotNull OffsetStates macros,
+                            @NotNull OffsetStates restarts, int restartOffset, int restartState) {
+            this.text = text;
+            this.stamp = stamp;
+            this.macros = macros;
+            this.restarts = restarts;
+            if (restarts.count == 0) {
+                // The start of the file is always restartable
+                restarts.add(0, lexer.getStartState());
+            }
+            lexer.start(text, restartOffset, text.length(), restartState);
+        }
+
+        /**
+         * Gets the states of the changed text of the file.
+         *
+         * @param newText The text of the file
+         * @param newStamp The modification stamp of the file
+         * @return States that restart lexing at the last restartable token before the first change
+         */
+        @NotNull
+        synchronized MacroStates update(@NotNull CharSequence newText, long newStamp) {
+            int common = 0;
+            int limit = Math.min(text.length(), newText.length());
+            while (common < limit && text.charAt(common) == newText.charAt(common)) {
+                common++;
+            }
+            // The state at a token depends on the text before it, and the token before it may end
+            // by looking at its first character, so the restart token must start before the change
+            int index = Math.max(0, restarts.indexBefore(common));
+            int restartOffset = restarts.offsets[index];
+            int restartState = restarts.states[index];
+            return new MacroStates(newText.toString(), newStamp, macros.copyBefore(restartOffset),
+                    restarts.copyBefore(restartOffset + 1), restartOffset, restartState);
+        }
+
+        /**
+         * Gets the lexer state at a macro, lexing the file up to it if it has not been lexed that far yet.
+         *
+         * @param offset The offset of the macro's opening brace
+         * @return The packed lexer state, or 0 if no macro starts at the offset
+         */
+        synchronized int getState(int offset) {
+            while (lexer.getTokenType() != null && lexer.getTokenStart() <= offset) {
+                ProgressManager.checkCanceled();
+                int start = lexer.getTokenStart();
+                int state = lexer.getState();
+                if (text.charAt(start) == '{') {
+                    macros.add(start, state);
+                }
+                if (start - restarts.offsets[restarts.count - 1] >= RESTART_SPACING && lexer.isRestartableState(state)) {
+                    restarts.add(start, state);
+                }
+                lexer.advance();
+            }
+            int index = Arrays.binarySearch(macros.offsets, 0, macros.count, offset);
+            return index >= 0 ? macros.states[index] : 0;
+        }
+    }
+
+    /**
+     * Lexer states by token offset, in increasing order of the offsets.
+     */
+    private static final class OffsetStates {
+        private int[] offsets;
+        private int[] states;
+        private int count;
+
+        OffsetStates() {
+            this(new int[16], new int[16], 0);
+        }
+
+        private OffsetStates(int[] offsets, int[] states, int count) {
+            this.offsets = offsets;
+            this.states = states;
+            this.count = count;
+        }
+
+        void add(int offset, int state) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                states = Arrays.copyOf(states, count * 2);
+            }
+            offsets[count] = offset;
+            states[count] = state;
+            count++;
+        }
+
+        /**
+         * Gets the index of the last entry before the given offset, or -1 if there is none.
+         */
+        int indexBefore(int offset) {
+            int index = Arrays.binarySearch(offsets, 0, count, offset);
+            return index >= 0 ? index - 1 : -index - 2;
+        }
+
+        /**
+         * Copies the entries before the given offset.
+         */
+        @NotNull
+        OffsetStates copyBefore(int offset) {
+            int kept = indexBefore(offset) + 1;
+            return new OffsetStates(Arrays.copyOf(offsets, Math.max(16, kept)), Arrays.copyOf(states, Math.max(16, kept)), kept);
+        }
+    }
+}
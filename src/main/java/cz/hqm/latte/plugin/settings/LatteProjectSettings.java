@@ -5,7 +5,9 @@ import com.intellij.openapi.components.Service;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.util.xmlb.XmlSerializerUtil;
+import com.intellij.util.xmlb.annotations.Transient;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import cz.hqm.latte.plugin.custom.CustomAttribute;
@@ -16,17 +18,25 @@ import cz.hqm.latte.plugin.custom.CustomVariable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Project-level persistent settings for the Latte plugin.
  * Stores custom elements (tags, filters, functions, variables) for the project.
+ * Every change of the elements increments the modification count, so that derived caches can
+ * check whether they are up to date by comparing a single number.
  */
 @Service(Service.Level.PROJECT)
 @State(
     name = "cz.hqm.latte.plugin.settings.LatteProjectSettings",
     storages = @Storage("latteCustomElements.xml")
 )
-public final class LatteProjectSettings implements PersistentStateComponent<LatteProjectSettings> {
+public final class LatteProjectSettings implements PersistentStateComponent<LatteProjectSettings>, ModificationTracker {
+    
+    /**
+     * Incremented on every change of the custom elements; not persisted.
+     */
+    private final AtomicLong modificationCount = new AtomicLong();
     
     /**
      * List of custom tags.
@@ -87,6 +97,7 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
      */
     public void setCustomTags(@NotNull List<CustomTag> customTags) {
         this.customTags = customTags;
+        incModificationCount();
     }
     
     /**
@@ -106,6 +117,7 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
      */
     public void setCustomFilters(@NotNull List<CustomFilter> customFilters) {
         this.customFilters = customFilters;
+        incModificationCount();
     }
     
     /**
@@ -125,6 +137,7 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
      */
     public void setCustomFunctions(@NotNull List<CustomFunction> customFunctions) {
         this.customFunctions = customFunctions;
+        incModificationCount();
     }
     
     /**
@@ -144,6 +157,7 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
      */
     public void setCustomVariables(@NotNull List<CustomVariable> customVariables) {
         this.customVariables = customVariables;
+        incModificationCount();
     }
     
     /**
@@ -154,6 +168,7 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
     public void addCustomTag(@NotNull CustomTag tag) {
         if (!customTags.contains(tag)) {
             customTags.add(tag);
+            incModificationCount();
         }
     }
     
@@ -163,7 +178,9 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
      * @param tag The tag to remove
      */
     public void removeCustomTag(@NotNull CustomTag tag) {
-        customTags.remove(tag);
+        if (customTags.remove(tag)) {
+            incModificationCount();
+        }
     }
     
     /**
@@ -174,6 +191,7 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
     public void addCustomFilter(@NotNull CustomFilter filter) {
         if (!customFilters.contains(filter)) {
             customFilters.add(filter);
+            incModificationCount();
         }
     }
     
@@ -183,7 +201,9 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
      * @param filter The filter to remove
      */
     public void removeCustomFilter(@NotNull CustomFilter filter) {
-        customFilters.remove(filter);
+        if (customFilters.remove(filter)) {
+            incModificationCount();
+        }
     }
     
     /**
@@ -194,6 +214,7 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
     public void addCustomFunction(@NotNull CustomFunction function) {
         if (!customFunctions.contains(function)) {
             customFunctions.add(function);
+            incModificationCount();
         }
     }
     
@@ -203,7 +224,9 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
      * @param function The function to remove
      */
     public void removeCustomFunction(@NotNull CustomFunction function) {
-        customFunctions.remove(function);
+        if (customFunctions.remove(function)) {
+            incModificationCount();
+        }
     }
     
     /**
@@ -214,6 +237,7 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
     public void addCustomVariable(@NotNull CustomVariable variable) {
         if (!customVariables.contains(variable)) {
             customVariables.add(variable);
+            incModificationCount();
         }
     }
     
@@ -223,7 +247,9 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
      * @param variable The variable to remove
      */
     public void removeCustomVariable(@NotNull CustomVariable variable) {
-        customVariables.remove(variable);
+        if (customVariables.remove(variable)) {
+            incModificationCount();
+        }
     }
     
     /**
@@ -243,6 +269,7 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
      */
     public void setCustomAttributes(@NotNull List<CustomAttribute> customAttributes) {
         this.customAttributes = customAttributes;
+        incModificationCount();
     }
     
     /**
@@ -253,6 +280,7 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
     public void addCustomAttribute(@NotNull CustomAttribute attribute) {
         if (!customAttributes.contains(attribute)) {
             customAttributes.add(attribute);
+            incModificationCount();
         }
     }
     
@@ -262,7 +290,9 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
      * @param attribute The attribute to remove
      */
     public void removeCustomAttribute(@NotNull CustomAttribute attribute) {
-        customAttributes.remove(attribute);
+        if (customAttributes.remove(attribute)) {
+            incModificationCount();
+        }
     }
     
     @Nullable
@@ -274,5 +304,25 @@ public final class LatteProjectSettings implements PersistentStateComponent<Latt
     @Override
     public void loadState(@NotNull LatteProjectSettings state) {
         XmlSerializerUtil.copyBean(state, this);
+        incModificationCount();
+    }
+    
+    /**
+     * Gets the number of changes to the custom elements so far.
+     * Caches derived from the custom elements store this number and are valid while it does not change.
+     *
+     * @return The modification count
+     */
+    @Override
+    @Transient
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+    
+    /**
+     * Records a change of the custom elements.
+     */
+    private void incModificationCount() {
+        modificationCount.incrementAndGet();
     }
 }
\ No newline at end of file
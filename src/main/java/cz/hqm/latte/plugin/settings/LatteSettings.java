@@ -5,23 +5,33 @@ import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.util.xmlb.XmlSerializerUtil;
+import com.intellij.util.xmlb.annotations.Transient;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import cz.hqm.latte.plugin.completion.NetteDefaultVariablesProvider;
-import cz.hqm.latte.plugin.filters.NetteFilterProvider;
 import cz.hqm.latte.plugin.version.LatteVersion;
 
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Persistent settings for the Latte plugin.
  * Stores user preferences such as the selected Latte version and enabled Nette packages.
+ * Every change of a setting increments the modification count, so that derived caches can
+ * check whether they are up to date by comparing a single number.
  */
 @Service
 @State(
     name = "cz.hqm.latte.plugin.settings.LatteSettings",
     storages = @Storage("LattePluginSettings.xml")
 )
-public final class LatteSettings implements PersistentStateComponent<LatteSettings> {
+public final class LatteSettings implements PersistentStateComponent<LatteSettings>, ModificationTracker {
+    
+    /**
+     * Incremented on every change of a setting; not persisted.
+     */
+    private final AtomicLong modificationCount = new AtomicLong();
     
     /**
      * The selected Latte version.
@@ -153,6 +163,17 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      */
     private boolean overrideDetectedNetteDatabaseVersion = false;
     
+    /**
+     * The default maximum size of the parsed template cache, in megabytes.
+     */
+    public static final int DEFAULT_TEMPLATE_CACHE_SIZE_MB = 64;
+    
+    /**
+     * The maximum estimated size of the parsed template cache of each project, in megabytes.
+     * Default is 64.
+     */
+    private int templateCacheSizeMb = DEFAULT_TEMPLATE_CACHE_SIZE_MB;
+    
     /**
      * Gets the instance of the settings service.
      * In test environment, returns a default instance with default settings.
@@ -184,7 +205,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param selectedVersion The version to set
      */
     public void setSelectedVersion(@Nullable String selectedVersion) {
-        this.selectedVersion = selectedVersion;
+        if (!Objects.equals(this.selectedVersion, selectedVersion)) {
+            this.selectedVersion = selectedVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -202,7 +226,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param overrideDetectedVersion True if the manually selected version should be used, false otherwise
      */
     public void setOverrideDetectedVersion(boolean overrideDetectedVersion) {
-        this.overrideDetectedVersion = overrideDetectedVersion;
+        if (this.overrideDetectedVersion != overrideDetectedVersion) {
+            this.overrideDetectedVersion = overrideDetectedVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -228,7 +255,7 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param version The version to set
      */
     public void setSelectedVersionEnum(LatteVersion version) {
-        this.selectedVersion = version.getDisplayName();
+        setSelectedVersion(version.getDisplayName());
     }
     
     @Nullable
@@ -240,6 +267,26 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
     @Override
     public void loadState(@NotNull LatteSettings state) {
         XmlSerializerUtil.copyBean(state, this);
+        incModificationCount();
+    }
+    
+    /**
+     * Gets the number of changes to the settings so far.
+     * Caches derived from the settings store this number and are valid while it does not change.
+     *
+     * @return The modification count
+     */
+    @Override
+    @Transient
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+    
+    /**
+     * Records a change of the settings.
+     */
+    private void incModificationCount() {
+        modificationCount.incrementAndGet();
     }
     
     /**
@@ -257,10 +304,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param enableNetteApplication True to enable nette/application support, false to disable
      */
     public void setEnableNetteApplication(boolean enableNetteApplication) {
-        this.enableNetteApplication = enableNetteApplication;
-        // Invalidate caches when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
-        NetteFilterProvider.invalidateCache();
+        if (this.enableNetteApplication != enableNetteApplication) {
+            this.enableNetteApplication = enableNetteApplication;
+            incModificationCount();
+        }
     }
     
     /**
@@ -278,10 +325,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param enableNetteForms True to enable nette/forms support, false to disable
      */
     public void setEnableNetteForms(boolean enableNetteForms) {
-        this.enableNetteForms = enableNetteForms;
-        // Invalidate caches when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
-        NetteFilterProvider.invalidateCache();
+        if (this.enableNetteForms != enableNetteForms) {
+            this.enableNetteForms = enableNetteForms;
+            incModificationCount();
+        }
     }
     
     /**
@@ -299,9 +346,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param enableNetteAssets True to enable nette/assets support, false to disable
      */
     public void setEnableNetteAssets(boolean enableNetteAssets) {
-        this.enableNetteAssets = enableNetteAssets;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.enableNetteAssets != enableNetteAssets) {
+            this.enableNetteAssets = enableNetteAssets;
+            incModificationCount();
+        }
     }
     
     /**
@@ -320,9 +368,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param selectedNetteApplicationVersion The version to set
      */
     public void setSelectedNetteApplicationVersion(@Nullable String selectedNetteApplicationVersion) {
-        this.selectedNetteApplicationVersion = selectedNetteApplicationVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (!Objects.equals(this.selectedNetteApplicationVersion, selectedNetteApplicationVersion)) {
+            this.selectedNetteApplicationVersion = selectedNetteApplicationVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -340,9 +389,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param overrideDetectedNetteApplicationVersion True if the manually selected version should be used, false otherwise
      */
     public void setOverrideDetectedNetteApplicationVersion(boolean overrideDetectedNetteApplicationVersion) {
-        this.overrideDetectedNetteApplicationVersion = overrideDetectedNetteApplicationVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.overrideDetectedNetteApplicationVersion != overrideDetectedNetteApplicationVersion) {
+            this.overrideDetectedNetteApplicationVersion = overrideDetectedNetteApplicationVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -361,9 +411,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param selectedNetteFormsVersion The version to set
      */
     public void setSelectedNetteFormsVersion(@Nullable String selectedNetteFormsVersion) {
-        this.selectedNetteFormsVersion = selectedNetteFormsVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (!Objects.equals(this.selectedNetteFormsVersion, selectedNetteFormsVersion)) {
+            this.selectedNetteFormsVersion = selectedNetteFormsVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -381,9 +432,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param overrideDetectedNetteFormsVersion True if the manually selected version should be used, false otherwise
      */
     public void setOverrideDetectedNetteFormsVersion(boolean overrideDetectedNetteFormsVersion) {
-        this.overrideDetectedNetteFormsVersion = overrideDetectedNetteFormsVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.overrideDetectedNetteFormsVersion != overrideDetectedNetteFormsVersion) {
+            this.overrideDetectedNetteFormsVersion = overrideDetectedNetteFormsVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -402,9 +454,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param selectedNetteAssetsVersion The version to set
      */
     public void setSelectedNetteAssetsVersion(@Nullable String selectedNetteAssetsVersion) {
-        this.selectedNetteAssetsVersion = selectedNetteAssetsVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (!Objects.equals(this.selectedNetteAssetsVersion, selectedNetteAssetsVersion)) {
+            this.selectedNetteAssetsVersion = selectedNetteAssetsVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -422,9 +475,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param overrideDetectedNetteAssetsVersion True if the manually selected version should be used, false otherwise
      */
     public void setOverrideDetectedNetteAssetsVersion(boolean overrideDetectedNetteAssetsVersion) {
-        this.overrideDetectedNetteAssetsVersion = overrideDetectedNetteAssetsVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.overrideDetectedNetteAssetsVersion != overrideDetectedNetteAssetsVersion) {
+            this.overrideDetectedNetteAssetsVersion = overrideDetectedNetteAssetsVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -442,9 +496,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param enableNetteDatabase True to enable nette/database support, false to disable
      */
     public void setEnableNetteDatabase(boolean enableNetteDatabase) {
-        this.enableNetteDatabase = enableNetteDatabase;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.enableNetteDatabase != enableNetteDatabase) {
+            this.enableNetteDatabase = enableNetteDatabase;
+            incModificationCount();
+        }
     }
     
     /**
@@ -463,9 +518,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param selectedNetteDatabaseVersion The version to set
      */
     public void setSelectedNetteDatabaseVersion(@Nullable String selectedNetteDatabaseVersion) {
-        this.selectedNetteDatabaseVersion = selectedNetteDatabaseVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (!Objects.equals(this.selectedNetteDatabaseVersion, selectedNetteDatabaseVersion)) {
+            this.selectedNetteDatabaseVersion = selectedNetteDatabaseVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -483,9 +539,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param overrideDetectedNetteDatabaseVersion True if the manually selected version should be used, false otherwise
      */
     public void setOverrideDetectedNetteDatabaseVersion(boolean overrideDetectedNetteDatabaseVersion) {
-        this.overrideDetectedNetteDatabaseVersion = overrideDetectedNetteDatabaseVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.overrideDetectedNetteDatabaseVersion != overrideDetectedNetteDatabaseVersion) {
+            this.overrideDetectedNetteDatabaseVersion = overrideDetectedNetteDatabaseVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -503,9 +560,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param enableNetteSecurity True to enable nette/security support, false to disable
      */
     public void setEnableNetteSecurity(boolean enableNetteSecurity) {
-        this.enableNetteSecurity = enableNetteSecurity;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.enableNetteSecurity != enableNetteSecurity) {
+            this.enableNetteSecurity = enableNetteSecurity;
+            incModificationCount();
+        }
     }
     
     /**
@@ -524,9 +582,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param selectedNetteSecurityVersion The version to set
      */
     public void setSelectedNetteSecurityVersion(@Nullable String selectedNetteSecurityVersion) {
-        this.selectedNetteSecurityVersion = selectedNetteSecurityVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (!Objects.equals(this.selectedNetteSecurityVersion, selectedNetteSecurityVersion)) {
+            this.selectedNetteSecurityVersion = selectedNetteSecurityVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -544,9 +603,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param overrideDetectedNetteSecurityVersion True if the manually selected version should be used, false otherwise
      */
     public void setOverrideDetectedNetteSecurityVersion(boolean overrideDetectedNetteSecurityVersion) {
-        this.overrideDetectedNetteSecurityVersion = overrideDetectedNetteSecurityVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.overrideDetectedNetteSecurityVersion != overrideDetectedNetteSecurityVersion) {
+            this.overrideDetectedNetteSecurityVersion = overrideDetectedNetteSecurityVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -564,9 +624,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param enableNetteMail True to enable nette/mail support, false to disable
      */
     public void setEnableNetteMail(boolean enableNetteMail) {
-        this.enableNetteMail = enableNetteMail;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.enableNetteMail != enableNetteMail) {
+            this.enableNetteMail = enableNetteMail;
+            incModificationCount();
+        }
     }
     
     /**
@@ -585,9 +646,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param selectedNetteMailVersion The version to set
      */
     public void setSelectedNetteMailVersion(@Nullable String selectedNetteMailVersion) {
-        this.selectedNetteMailVersion = selectedNetteMailVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (!Objects.equals(this.selectedNetteMailVersion, selectedNetteMailVersion)) {
+            this.selectedNetteMailVersion = selectedNetteMailVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -605,9 +667,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param overrideDetectedNetteMailVersion True if the manually selected version should be used, false otherwise
      */
     public void setOverrideDetectedNetteMailVersion(boolean overrideDetectedNetteMailVersion) {
-        this.overrideDetectedNetteMailVersion = overrideDetectedNetteMailVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.overrideDetectedNetteMailVersion != overrideDetectedNetteMailVersion) {
+            this.overrideDetectedNetteMailVersion = overrideDetectedNetteMailVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -625,9 +688,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param enableNetteHttp True to enable nette/http support, false to disable
      */
     public void setEnableNetteHttp(boolean enableNetteHttp) {
-        this.enableNetteHttp = enableNetteHttp;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.enableNetteHttp != enableNetteHttp) {
+            this.enableNetteHttp = enableNetteHttp;
+            incModificationCount();
+        }
     }
     
     /**
@@ -646,9 +710,10 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param selectedNetteHttpVersion The version to set
      */
     public void setSelectedNetteHttpVersion(@Nullable String selectedNetteHttpVersion) {
-        this.selectedNetteHttpVersion = selectedNetteHttpVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (!Objects.equals(this.selectedNetteHttpVersion, selectedNetteHttpVersion)) {
+            this.selectedNetteHttpVersion = selectedNetteHttpVersion;
+            incModificationCount();
+        }
     }
     
     /**
@@ -666,8 +731,32 @@ public final class LatteSettings implements PersistentStateComponent<LatteSettin
      * @param overrideDetectedNetteHttpVersion True if the manually selected version should be used, false otherwise
      */
     public void setOverrideDetectedNetteHttpVersion(boolean overrideDetectedNetteHttpVersion) {
-        this.overrideDetectedNetteHttpVersion = overrideDetectedNetteHttpVersion;
-        // Invalidate the variables cache when settings change
-        NetteDefaultVariablesProvider.invalidateCache();
+        if (this.overrideDetectedNetteHttpVersion != overrideDetectedNetteHttpVersion) {
+            this.overrideDetectedNetteHttpVersion = overrideDetectedNetteHttpVersion;
+            incModificationCount();
+        }
+    }
+    
+    /**
+     * Gets the maximum estimated size of the parsed template cache of each project.
+     *
+     * @return The maximum size in megabytes
+     */
+    public int getTemplateCacheSizeMb() {
+        return templateCacheSizeMb;
+    }
+    
+    /**
+     * Sets the maximum estimated size of the parsed template cache of each project.
+     * The new limit is applied the next time a template is cached.
+     *
+     * @param templateCacheSizeMb The maximum size in megabytes, at least 1
+     */
+    public void setTemplateCacheSizeMb(int templateCacheSizeMb) {
+        int sizeMb = Math.max(1, templateCacheSizeMb);
+        if (this.templateCacheSizeMb != sizeMb) {
+            this.templateCacheSizeMb = sizeMb;
+            incModificationCount();
+        }
     }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package cz.hqm.latte.plugin.settings;
 import com.intellij.openapi.options.Configurable;
 import com.intellij.openapi.options.ConfigurationException;
 import com.intellij.openapi.ui.ComboBox;
+import com.intellij.ui.JBIntSpinner;
 import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBPanel;
@@ -55,6 +56,9 @@ public class LatteSettingsConfigurable implements Configurable {
     
     private ComboBox<String> netteHttpVersionComboBox;
     private JBCheckBox overrideDetectedNetteHttpVersionCheckBox;
+    
+    // Performance settings
+    private JBIntSpinner templateCacheSizeSpinner;
 
     @Nls(capitalization = Nls.Capitalization.Title)
     @Override
@@ -102,6 +106,9 @@ public class LatteSettingsConfigurable implements Configurable {
         netteHttpVersionComboBox = new ComboBox<>(new String[]{"2", "3"});
         overrideDetectedNetteHttpVersionCheckBox = new JBCheckBox("Override detected version");
         
+        // Performance settings
+        templateCacheSizeSpinner = new JBIntSpinner(LatteSettings.DEFAULT_TEMPLATE_CACHE_SIZE_MB, 1, 4096);
+        
         // Build the form
         FormBuilder formBuilder = FormBuilder.createFormBuilder()
                 .addLabeledComponent(new JBLabel("Latte Version:"), versionComboBox, 1, false)
@@ -164,7 +171,9 @@ public class LatteSettingsConfigurable implements Configurable {
         httpVersionPanel.add(netteHttpVersionComboBox);
         httpVersionPanel.add(overrideDetectedNetteHttpVersionCheckBox);
         
-        formBuilder.addComponent(httpVersionPanel, 1);
+        formBuilder.addComponent(httpVersionPanel, 1)
+                .addSeparator(10)
+                .addLabeledComponent(new JBLabel("Template cache size (MB):"), templateCacheSizeSpinner, 1, false);
         
         // Add listeners to enable/disable version settings based on package enable/disable
         enableNetteApplicationCheckBox.addActionListener(e -> {
@@ -295,6 +304,9 @@ public class LatteSettingsConfigurable implements Configurable {
         }
         modified |= overrideDetectedNetteHttpVersionCheckBox.isSelected() != settings.isOverrideDetectedNetteHttpVersion();
         
+        // Check if performance settings are modified
+        modified |= templateCacheSizeSpinner.getNumber() != settings.getTemplateCacheSizeMb();
+        
         return modified;
     }
 
@@ -340,6 +352,9 @@ public class LatteSettingsConfigurable implements Configurable {
         settings.setEnableNetteHttp(enableNetteHttpCheckBox.isSelected());
         settings.setSelectedNetteHttpVersion((String) netteHttpVersionComboBox.getSelectedItem());
         settings.setOverrideDetectedNetteHttpVersion(overrideDetectedNetteHttpVersionCheckBox.isSelected());
+        
+        // Apply performance settings
+        settings.setTemplateCacheSizeMb(templateCacheSizeSpinner.getNumber());
     }
 
     @Override
@@ -425,6 +440,9 @@ public class LatteSettingsConfigurable implements Configurable {
         boolean httpEnabled = enableNetteHttpCheckBox.isSelected();
         netteHttpVersionComboBox.setEnabled(httpEnabled);
         overrideDetectedNetteHttpVersionCheckBox.setEnabled(httpEnabled);
+        
+        // Reset performance settings
+        templateCacheSizeSpinner.setNumber(settings.getTemplateCacheSizeMb());
     }
 
     @Nullable
@@ -6,14 +6,12 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiReference;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.search.PsiShortNamesCache;
+import cz.hqm.latte.plugin.index.LatteTemplateTypeIndex;
 import cz.hqm.latte.plugin.version.LatteVersion;
 import cz.hqm.latte.plugin.version.LatteVersionManager;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -22,26 +20,11 @@ import java.util.regex.Pattern;
  */
 public class LatteTypeProvider {
 
-    // Pattern for extracting variable declarations from {var} macro
-    private static final Pattern VAR_PATTERN = Pattern.compile("\\{var\\s+(\\$\\w+)\\s*=\\s*([^}]+)\\}");
-    
-    // Pattern for extracting type declarations from {varType} macro
-    private static final Pattern VAR_TYPE_PATTERN = Pattern.compile("\\{varType\\s+(\\$\\w+)\\s*:\\s*([\\?\\w\\|\\\\]+)\\}");
-    
-    // Pattern for extracting class name from {templateType} macro
-    private static final Pattern TEMPLATE_TYPE_PATTERN = Pattern.compile("\\{templateType\\s+([\\w\\\\]+)\\}");
-    
     // Pattern for extracting variable name from {templatePrint} macro
     private static final Pattern TEMPLATE_PRINT_PATTERN = Pattern.compile("\\{templatePrint\\s+(\\$\\w+)\\}");
     
     // Pattern for extracting variable name from {varPrint} macro
     private static final Pattern VAR_PRINT_PATTERN = Pattern.compile("\\{varPrint\\s+(\\$\\w+)\\}");
-    
-    // Cache of variable types by file
-    private static final Map<String, Map<String, String>> variableTypesCache = new HashMap<>();
-    
-    // Cache of template types by file
-    private static final Map<String, String> templateTypesCache = new HashMap<>();
 
     /**
      * Gets the type of a variable in a file.
@@ -57,18 +40,8 @@ public class LatteTypeProvider {
             return null;
         }
         
-        // Check cache
-        String filePath = file.getVirtualFile().getPath();
-        Map<String, String> fileVariableTypes = variableTypesCache.get(filePath);
-        if (fileVariableTypes != null && fileVariableTypes.containsKey(variableName)) {
-            return fileVariableTypes.get(variableName);
-        }
-        
-        // Parse the file to extract variable types
-        Map<String, String> variableTypes = parseVariableTypes(file);
-        variableTypesCache.put(filePath, variableTypes);
-        
-        return variableTypes.get(variableName);
+        // The types are stored in a persistent index, so they survive IDE restarts
+        return LatteTemplateTypeIndex.getTypes(project, file).getVariableTypes().get(variableName);
     }
     
     /**
@@ -84,19 +57,7 @@ public class LatteTypeProvider {
             return null;
         }
         
-        // Check cache
-        String filePath = file.getVirtualFile().getPath();
-        if (templateTypesCache.containsKey(filePath)) {
-            return templateTypesCache.get(filePath);
-        }
-        
-        // Parse the file to extract template type
-        String templateType = parseTemplateType(file);
-        if (templateType != null) {
-            templateTypesCache.put(filePath, templateType);
-        }
-        
-        return templateType;
+        return LatteTemplateTypeIndex.getTypes(project, file).getTemplateType();
     }
     
     /**
@@ -163,101 +124,6 @@ public class LatteTypeProvider {
         }
     }
     
-    /**
-     * Parses variable types from a file.
-     * 
-     * @param file The file
-     * @return A map of variable names to types
-     */
-    @NotNull
-    private static Map<String, String> parseVariableTypes(PsiFile file) {
-        Map<String, String> variableTypes = new HashMap<>();
-        
-        String fileContent = file.getText();
-        
-        // Extract types from {varType} macros
-        Matcher varTypeMatcher = VAR_TYPE_PATTERN.matcher(fileContent);
-        while (varTypeMatcher.find()) {
-            String variableName = varTypeMatcher.group(1);
-            String variableType = varTypeMatcher.group(2);
-            variableTypes.put(variableName, variableType);
-        }
-        
-        // Extract types from {var} macros (infer from value)
-        Matcher varMatcher = VAR_PATTERN.matcher(fileContent);
-        while (varMatcher.find()) {
-            String variableName = varMatcher.group(1);
-            String variableValue = varMatcher.group(2);
-            
-            // Only add if not already defined by {varType}
-            if (!variableTypes.containsKey(variableName)) {
-                String inferredType = inferTypeFromValue(variableValue);
-                if (inferredType != null) {
-                    variableTypes.put(variableName, inferredType);
-                }
-            }
-        }
-        
-        return variableTypes;
-    }
-    
-    /**
-     * Parses the template type from a file.
-     * 
-     * @param file The file
-     * @return The template type, or null if not found
-     */
-    @Nullable
-    private static String parseTemplateType(PsiFile file) {
-        String fileContent = file.getText();
-        
-        // Extract type from {templateType} macro
-        Matcher templateTypeMatcher = TEMPLATE_TYPE_PATTERN.matcher(fileContent);
-        if (templateTypeMatcher.find()) {
-            return templateTypeMatcher.group(1);
-        }
-        
-        return null;
-    }
-    
-    /**
-     * Infers the type of a value.
-     * 
-     * @param value The value
-     * @return The inferred type, or null if not inferrable
-     */
-    @Nullable
-    private static String inferTypeFromValue(String value) {
-        if (value == null) {
-            return null;
-        }
-        
-        value = value.trim();
-        
-        if (value.startsWith("'") || value.startsWith("\"")) {
-            return "string";
-        } else if (value.equals("true") || value.equals("false")) {
-            return "bool";
-        } else if (value.matches("\\d+")) {
-            return "int";
-        } else if (value.matches("\\d+\\.\\d+")) {
-            return "float";
-        } else if (value.startsWith("[") || value.startsWith("array(")) {
-            return "array";
-        } else if (value.equals("null")) {
-            return "null";
-        } else if (value.startsWith("new ")) {
-            // Extract class name from "new ClassName(...)"
-            Pattern newPattern = Pattern.compile("new\\s+(\\w+(?:\\\\\\w+)*)");
-            Matcher newMatcher = newPattern.matcher(value);
-            if (newMatcher.find()) {
-                return newMatcher.group(1);
-            }
-        }
-        
-        return null;
-    }
-    
     /**
      * Checks if a macro is supported in the current Latte version.
      * 
@@ -303,12 +169,4 @@ public class LatteTypeProvider {
                 return false;
         }
     }
-    
-    /**
-     * Clears the type caches.
-     */
-    public static void clearCaches() {
-        variableTypesCache.clear();
-        templateTypesCache.clear();
-    }
 }
\ No newline at end of file
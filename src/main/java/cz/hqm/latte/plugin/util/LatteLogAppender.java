@@ -0,0 +1,418 @@
+package cz.hqm.latte.plugin.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous file appender used by {@link LatteLogger}.
+ * <p>
+ * Logging threads put records into a bounded, lock-free ring buffer and return immediately; they only
+ * claim a slot and store a reference, so a log call costs nanoseconds and never touches the disk.
+ * A single background thread drains the buffer, formats the records, groups them by log file and
+ * writes each batch with one write to a channel that stays open for the whole session. A log file
+ * that would exceed the maximum size is rotated to numbered backups. When the buffer is full, records
+ * are dropped instead of blocking the caller, and the number of dropped records is written to the log.
+ */
+public final class LatteLogAppender {
+
+    /**
+     * Default number of records the ring buffer can hold.
+     */
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    /**
+     * Default maximum size of a log file before it is rotated, in bytes.
+     */
+    public static final long DEFAULT_MAX_FILE_SIZE = 10L * 1024 * 1024;
+
+    /**
+     * Default number of rotated backups kept for each log file.
+     */
+    public static final int DEFAULT_BACKUP_COUNT = 3;
+
+    // Date format for log entries; DateTimeFormatter is immutable and thread-safe
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    // Maximum number of records formatted before they are written
+    private static final int BATCH_SIZE = 1024;
+
+    // How long the writer sleeps when the buffer is empty
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    // Records by slot, and the sequence of each slot: position + 1 when filled, position + capacity when free
+    private final AtomicReferenceArray<LogRecord> records;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    // Next position claimed by a logging thread
+    private final AtomicLong tail = new AtomicLong();
+
+    // Next position read by the writer thread, and the position up to which records have been written
+    private volatile long head;
+    private volatile long written;
+
+    // Records dropped because the buffer was full, not yet reported in a log file
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong totalDropped = new AtomicLong();
+
+    private final long maxFileSize;
+    private final int backupCount;
+
+    // Open log files; only accessed by the writer thread
+    private final Map<Path, LogFile> files = new HashMap<>();
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Creates an appender with the default capacity, file size limit and number of backups.
+     *
+     * @param name The name of the writer thread
+     */
+    public LatteLogAppender(@NotNull String name) {
+        this(name, DEFAULT_CAPACITY, DEFAULT_MAX_FILE_SIZE, DEFAULT_BACKUP_COUNT);
+    }
+
+    /**
+     * Creates an appender and starts its writer thread.
+     *
+     * @param name The name of the writer thread
+     * @param capacity The number of records the buffer can hold, rounded up to a power of two
+     * @param maxFileSize The maximum size of a log file before it is rotated, in bytes
+     * @param backupCount The number of rotated backups kept for each log file
+     */
+    public LatteLogAppender(@NotNull String name, int capacity, long maxFileSize, int backupCount) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.records = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.maxFileSize = maxFileSize;
+        this.backupCount = Math.max(0, backupCount);
+        this.writer = new Thread(this::run, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a log entry. Never blocks and never performs I/O.
+     *
+     * @param logFile The file to write the entry to
+     * @param level The log level
+     * @param loggerName The name of the logger
+     * @param filePath The path of the file being processed, or an empty string
+     * @param message The message
+     * @param t The exception to log, or null
+     * @return True if the entry was queued, false if it was dropped because the buffer was full
+     */
+    public boolean append(@NotNull Path logFile, @NotNull String level, @NotNull String loggerName,
+                          @NotNull String filePath, @NotNull String message, @Nullable Throwable t) {
+        if (closed) {
+            return false;
+        }
+        LogRecord record = new LogRecord(System.currentTimeMillis(), logFile, level, loggerName, filePath, message, t);
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    records.set(index, record);
+                    // Publishing the sequence makes the record visible to the writer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The writer has not freed this slot yet: the buffer is full
+                dropped.incrementAndGet();
+                totalDropped.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Waits until every entry queued before this call has been written.
+     *
+     * @param timeoutMillis The maximum time to wait
+     * @return True if all entries were written, false if the timeout elapsed
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (written < target) {
+            if (!writer.isAlive() || System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+        }
+        return true;
+    }
+
+    /**
+     * Writes the queued entries, closes the log files and stops the writer thread.
+     *
+     * @param timeoutMillis The maximum time to wait for the queued entries
+     */
+    public void close(long timeoutMillis) {
+        flush(timeoutMillis);
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the number of entries dropped so far because the buffer was full.
+     *
+     * @return The number of dropped entries
+     */
+    public long getDroppedCount() {
+        return totalDropped.get();
+    }
+
+    /**
+     * Main loop of the writer thread.
+     */
+    private void run() {
+        Map<Path, StringBuilder> batch = new LinkedHashMap<>();
+        while (true) {
+            long position = head;
+            int count = drain(batch);
+            if (count > 0) {
+                writeBatch(batch);
+                written = position + count;
+                continue;
+            }
+            if (closed) {
+                break;
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        for (LogFile file : files.values()) {
+            file.close();
+        }
+        files.clear();
+    }
+
+    /**
+     * Takes up to one batch of records from the buffer and formats them by log file.
+     *
+     * @return The number of records taken
+     */
+    private int drain(@NotNull Map<Path, StringBuilder> batch) {
+        int count = 0;
+        Path lastFile = null;
+        while (count < BATCH_SIZE) {
+            long position = head;
+            int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            LogRecord record = records.get(index);
+            records.set(index, null);
+            // Free the slot for the position one round later
+            sequences.set(index, position + mask + 1);
+            head = position + 1;
+            count++;
+
+            format(record, batch.computeIfAbsent(record.logFile, key -> new StringBuilder(4096)));
+            lastFile = record.logFile;
+        }
+        long lost = lastFile != null ? dropped.getAndSet(0) : 0;
+        if (lost > 0) {
+            batch.get(lastFile).append(DATE_FORMAT.format(Instant.now()))
+                    .append(" [WARN] LatteLogger - ").append(lost)
+                    .append(" log entries were dropped because the log buffer was full\n");
+        }
+        return count;
+    }
+
+    /**
+     * Writes the formatted records with one write per log file.
+     */
+    private void writeBatch(@NotNull Map<Path, StringBuilder> batch) {
+        for (Map.Entry<Path, StringBuilder> entry : batch.entrySet()) {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(entry.getValue()));
+            try {
+                LogFile file = files.get(entry.getKey());
+                if (file == null) {
+                    file = LogFile.open(entry.getKey(), true);
+                    files.put(entry.getKey(), file);
+                } else if (file.size > 0 && file.size + bytes.remaining() > maxFileSize) {
+                    file = rotate(file);
+                }
+                file.write(bytes);
+            } catch (IOException e) {
+                // Don't use the logger here to avoid infinite recursion
+                System.err.println("Error writing to log file: " + e.getMessage());
+                LogFile failed = files.remove(entry.getKey());
+                if (failed != null) {
+                    failed.close();
+                }
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Moves a full log file to the first backup, shifting the older backups, and opens a new file.
+     */
+    @NotNull
+    private LogFile rotate(@NotNull LogFile file) throws IOException {
+        file.close();
+        Path path = file.path;
+        if (backupCount == 0) {
+            Files.deleteIfExists(path);
+        } else {
+            Files.deleteIfExists(getBackupPath(path, backupCount));
+            for (int i = backupCount - 1; i >= 1; i--) {
+                Path backup = getBackupPath(path, i);
+                if (Files.exists(backup)) {
+                    Files.move(backup, getBackupPath(path, i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(path, getBackupPath(path, 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        LogFile rotated = LogFile.open(path, false);
+        files.put(path, rotated);
+        return rotated;
+    }
+
+    /**
+     * Gets the path of a rotated backup of a log file.
+     *
+     * @param logFile The log file
+     * @param index The number of the backup, starting at 1 for the most recent one
+     * @return The path of the backup
+     */
+    @NotNull
+    public static Path getBackupPath(@NotNull Path logFile, int index) {
+        return logFile.resolveSibling(logFile.getFileName() + "." + index);
+    }
+
+    private static void format(@NotNull LogRecord record, @NotNull StringBuilder builder) {
+        DATE_FORMAT.formatTo(Instant.ofEpochMilli(record.timestamp), builder);
+        builder.append(" [").append(record.level).append("] ").append(record.loggerName);
+
+        // Include file path in the log message if available
+        if (!record.filePath.isEmpty()) {
+            builder.append(" [File: ").append(record.filePath).append(']');
+        }
+        builder.append(" - ").append(record.message).append('\n');
+
+        // Write the exception if present
+        if (record.throwable != null) {
+            StringWriter stackTrace = new StringWriter();
+            record.throwable.printStackTrace(new PrintWriter(stackTrace));
+            builder.append(stackTrace).append('\n');
+        }
+    }
+
+    /**
+     * A queued log entry. Formatting is left to the writer thread.
+     */
+    private static final class LogRecord {
+        private final long timestamp;
+        private final Path logFile;
+        private final String level;
+        private final String loggerName;
+        private final String filePath;
+        private final String message;
+        private final Throwable throwable;
+
+        LogRecord(long timestamp, @NotNull Path logFile, @NotNull String level, @NotNull String loggerName,
+                  @NotNull String filePath, @NotNull String message, @Nullable Throwable throwable) {
+            this.timestamp = timestamp;
+            this.logFile = logFile;
+            this.level = level;
+            this.loggerName = loggerName;
+            this.filePath = filePath;
+            this.message = message;
+            this.throwable = throwable;
+        }
+    }
+
+    /**
+     * A log file with its open channel and current size.
+     */
+    private static final class LogFile {
+        private final Path path;
+        private final FileChannel channel;
+        private long size;
+
+        private LogFile(@NotNull Path path, @NotNull FileChannel channel, long size) {
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        @NotNull
+        static LogFile open(@NotNull Path path, boolean announce) throws IOException {
+            Path parent = path.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            LogFile file = new LogFile(path, channel, channel.size());
+            if (file.size == 0) {
+                // Add a header if the file is new
+                file.write(StandardCharsets.UTF_8.encode("=== Latte Plugin Log File ===\n"
+                        + "Created: " + DATE_FORMAT.format(Instant.now()) + "\n"
+                        + "----------------------------------------\n"));
+                if (announce) {
+                    System.out.println("Created log file: " + path.toAbsolutePath());
+                }
+            }
+            return file;
+        }
+
+        void write(@NotNull ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                size += channel.write(bytes);
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing log file: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -7,13 +7,11 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Supplier;
 
 /**
  * Utility class for conditional logging in the Latte plugin.
@@ -23,6 +21,13 @@ import java.util.Map;
  * When logging, the path to the file being processed is included in the log message.
  * If the file is within the open project, a relative path is logged.
  * If the file is outside the open project, an absolute path is logged.
+ *
+ * Writing to the files is asynchronous: log calls only queue the entry in a {@link LatteLogAppender},
+ * whose background thread writes it, so logging does not block the calling thread on disk I/O.
+ *
+ * Messages that are expensive to build, e.g. because they contain the text of a PSI element, should be
+ * passed as a {@link Supplier}. The supplier is only called when the message is actually logged,
+ * so disabled debug logging does not build any strings.
  */
 public class LatteLogger {
 
@@ -38,6 +43,12 @@ public class LatteLogger {
      */
     private static final boolean IS_TEST_MODE = Boolean.getBoolean("latte.plugin.test.mode");
 
+    /**
+     * Flag indicating whether debug messages are written even if debug logging of the IntelliJ logger is off.
+     * This is set with the latte.plugin.log.debug system property and is always true in test mode.
+     */
+    private static final boolean IS_DEBUG_LOGGING = IS_TEST_MODE || Boolean.getBoolean("latte.plugin.log.debug");
+
     /**
      * Directory for log files.
      */
@@ -63,15 +74,10 @@ public class LatteLogger {
      */
     private static final String DEBUG_LOG_BASE = "latte_debug";
 
-    /**
-     * Date format for log entries (within the log file).
-     */
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-
     /**
      * Date format for log file names, matching the format used in build.gradle.
      */
-    private static final SimpleDateFormat FILE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
+    private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
 
     /**
      * Session timestamp - either from system property or generated once when the class is loaded.
@@ -80,7 +86,7 @@ public class LatteLogger {
      * all logs from a single test run use the same timestamp.
      */
     private static final String SESSION_TIMESTAMP = System.getProperty("latte.plugin.test.timestamp") != null ?
-            System.getProperty("latte.plugin.test.timestamp") : FILE_DATE_FORMAT.format(new Date());
+            System.getProperty("latte.plugin.test.timestamp") : FILE_DATE_FORMAT.format(LocalDateTime.now());
 
     /**
      * Test directory name prefix.
@@ -90,23 +96,47 @@ public class LatteLogger {
     /**
      * Full path to the debug log file for this session.
      */
-    private static final String DEBUG_LOG_FILE_PATH;
+    private static final Path DEBUG_LOG_FILE_PATH;
 
     /**
      * Full path to the validation log file for this session.
      */
-    private static final String VALIDATION_LOG_FILE_PATH;
+    private static final Path VALIDATION_LOG_FILE_PATH;
 
     /**
      * Base directory for test logs.
      */
     private static final String TEST_LOG_BASE_DIR;
-    
+
+    /**
+     * Maximum size of a log file before it is rotated, in megabytes.
+     */
+    private static final long MAX_LOG_FILE_SIZE_MB = Long.getLong("latte.plugin.log.max.size.mb", 10L);
+
+    /**
+     * Maximum time to wait for queued entries when flushing, in milliseconds.
+     */
+    private static final long FLUSH_TIMEOUT_MS = 5000;
+
+    /**
+     * Appender writing the log files in the background, or null if logging is disabled.
+     */
+    private static final LatteLogAppender APPENDER;
+
+    /**
+     * Shutdown hook closing the appender, or null if logging is disabled.
+     */
+    private static final Thread SHUTDOWN_HOOK;
+
+    /**
+     * Name of the running test, set by the test base class.
+     */
+    private static volatile String currentTest;
+
     /**
-     * Map to store test names and their corresponding directories.
-     * This ensures all logs from the same test go to the same directory.
+     * Log files of the last test that logged, so that the file names are not built for every entry.
      */
-    private static final Map<String, File> TEST_DIRECTORIES = new HashMap<>();
+    private static volatile TestLogFiles testLogFiles;
 
     /**
      * Ensures the log directory exists.
@@ -158,8 +188,8 @@ public class LatteLogger {
 
             // For test mode, we'll create the actual log files in test-specific subdirectories
             // when logging occurs, so we just set these to empty strings for now
-            DEBUG_LOG_FILE_PATH = "";
-            VALIDATION_LOG_FILE_PATH = "";
+            DEBUG_LOG_FILE_PATH = null;
+            VALIDATION_LOG_FILE_PATH = null;
 
             System.out.println("Test mode detected. Logs will be organized in test-specific directories under: " + TEST_LOG_BASE_DIR);
         } else {
@@ -171,18 +201,48 @@ public class LatteLogger {
             String debugFileName = LOG_FILE_PREFIX + "_" + SESSION_TIMESTAMP + "_" + DEBUG_LOG_BASE + ".log";
             String validationFileName = LOG_FILE_PREFIX + "_" + SESSION_TIMESTAMP + "_" + VALIDATION_LOG_BASE + ".log";
 
-            DEBUG_LOG_FILE_PATH = new File(LOG_DIR_PATH, debugFileName).getAbsolutePath();
-            VALIDATION_LOG_FILE_PATH = new File(LOG_DIR_PATH, validationFileName).getAbsolutePath();
+            DEBUG_LOG_FILE_PATH = Paths.get(LOG_DIR_PATH, debugFileName).toAbsolutePath();
+            VALIDATION_LOG_FILE_PATH = Paths.get(LOG_DIR_PATH, validationFileName).toAbsolutePath();
 
             System.out.println("Debug log file for this session: " + DEBUG_LOG_FILE_PATH);
             System.out.println("Validation log file for this session: " + VALIDATION_LOG_FILE_PATH);
         }
+
+        if (IS_DEVELOPMENT_MODE) {
+            APPENDER = new LatteLogAppender("Latte Log Writer", LatteLogAppender.DEFAULT_CAPACITY,
+                    MAX_LOG_FILE_SIZE_MB * 1024 * 1024, LatteLogAppender.DEFAULT_BACKUP_COUNT);
+            // Write the entries still in the queue when the IDE or the test JVM exits
+            SHUTDOWN_HOOK = new Thread(() -> APPENDER.close(FLUSH_TIMEOUT_MS), "Latte Log Shutdown");
+            Runtime.getRuntime().addShutdownHook(SHUTDOWN_HOOK);
+        } else {
+            APPENDER = null;
+            SHUTDOWN_HOOK = null;
+        }
+    }
+
+    /**
+     * Writes the queued entries, stops the writer thread and removes the shutdown hook.
+     * Called when the plugin is unloaded, so that neither the thread nor the hook keeps
+     * the plugin class loader alive. Entries logged afterwards are dropped.
+     */
+    public static void shutdown() {
+        if (APPENDER == null) {
+            return;
+        }
+
+        APPENDER.close(FLUSH_TIMEOUT_MS);
+        try {
+            Runtime.getRuntime().removeShutdownHook(SHUTDOWN_HOOK);
+        } catch (IllegalStateException e) {
+            // The JVM is already shutting down and runs the hook itself
+        }
     }
 
     /**
      * Writes a log entry to the specified log file for the current session.
      * Uses a single log file per editor session instead of creating a new file for each log entry.
-     * In test mode, creates a test-specific subdirectory and places log files there.
+     * In test mode, places the entry in a log file of the running test.
+     * The entry is only queued here; it is written by the background thread of the appender.
      *
      * @param logFileBase The base name of the log file (without extension)
      * @param level The log level (DEBUG, INFO, WARN, ERROR)
@@ -193,121 +253,75 @@ public class LatteLogger {
      */
     private static void logToFile(String logFileBase, String level, String loggerName, String message,
                                  String filePath, Throwable t) {
-        if (!IS_DEVELOPMENT_MODE) {
+        if (APPENDER == null) {
             return;
         }
 
-        try {
-            String logFilePath;
-
-            if (IS_TEST_MODE) {
-                // In test mode, create a class-specific subdirectory and place per-method log files there
-                String testName = getTestName(); // format: fully.qualified.ClassName.methodName
-
-                // Parse class and method
-                String classNameFqn = "unknown";
-                String methodName = "unknownMethod";
-                if (testName != null && !testName.isEmpty() && testName.contains(".")) {
-                    int lastDot = testName.lastIndexOf('.');
-                    classNameFqn = testName.substring(0, lastDot);
-                    methodName = testName.substring(lastDot + 1);
-                }
-
-                // Simple class name (including "Test" suffix if present)
-                String simpleClassName = classNameFqn;
-                int idx = simpleClassName.lastIndexOf('.');
-                if (idx >= 0) simpleClassName = simpleClassName.substring(idx + 1);
-
-                // Sanitize names for filesystem
-                simpleClassName = simpleClassName.replaceAll("[^a-zA-Z0-9_.-]", "_");
-                methodName = methodName.replaceAll("[^a-zA-Z0-9_.-]", "_");
-                if (simpleClassName.isEmpty()) simpleClassName = "UnknownClass";
-                if (methodName.isEmpty()) methodName = "unknownMethod";
-
-                // Ensure we have class directory cached/created
-                File classDir;
-                synchronized (TEST_DIRECTORIES) {
-                    classDir = TEST_DIRECTORIES.get(simpleClassName);
-                    if (classDir == null) {
-                        classDir = new File(TEST_LOG_BASE_DIR, simpleClassName);
-                        if (!classDir.exists()) {
-                            boolean created = classDir.mkdirs();
-                            if (!created) {
-                                System.err.println("Failed to create class-specific directory at: " + classDir.getAbsolutePath());
-                            } else {
-                                System.out.println("Created class-specific directory at: " + classDir.getAbsolutePath());
-                            }
-                        }
-                        TEST_DIRECTORIES.put(simpleClassName, classDir);
-                    }
-                }
-
-                // Create per-method log file name inside the class directory
-                // Pattern: <method>.<type>.log (e.g., testSomething.latte_debug.log or testSomething.validation_errors.log)
-                String fileName = methodName + "." + logFileBase + ".log";
-                logFilePath = new File(classDir, fileName).getAbsolutePath();
-            } else {
-                // Normal mode (not test) - use the original behavior
-                if (logFileBase.equals(DEBUG_LOG_BASE)) {
-                    logFilePath = DEBUG_LOG_FILE_PATH;
-                } else if (logFileBase.equals(VALIDATION_LOG_BASE)) {
-                    logFilePath = VALIDATION_LOG_FILE_PATH;
-                } else {
-                    // Fallback for any other log file base (shouldn't happen)
-                    // Use the same format: latte_plugin_TIMESTAMP_TYPE.log
-                    String fileName = LOG_FILE_PREFIX + "_" + SESSION_TIMESTAMP + "_" + logFileBase + ".log";
-                    logFilePath = new File(LOG_DIR_PATH, fileName).getAbsolutePath();
-                }
-            }
-
-            File file = new File(logFilePath);
-            boolean fileExists = file.exists();
-
-            try (FileWriter fw = new FileWriter(file, true);
-                 PrintWriter pw = new PrintWriter(fw)) {
-
-                // Add a header if the file is new
-                if (!fileExists) {
-                    pw.println("=== Latte Plugin Log File ===");
-                    pw.println("Created: " + DATE_FORMAT.format(new Date()));
-                    pw.println("----------------------------------------");
-                }
+        Path logFile = IS_TEST_MODE ? getTestLogFile(logFileBase) : getSessionLogFile(logFileBase);
+        APPENDER.append(logFile, level, loggerName, filePath != null ? filePath : "", message, t);
+    }
 
-                // Write the log entry
-                pw.print(DATE_FORMAT.format(new Date()));
-                pw.print(" [");
-                pw.print(level);
-                pw.print("] ");
-                pw.print(loggerName);
-
-                // Include file path in the log message if available
-                if (filePath != null && !filePath.isEmpty()) {
-                    pw.print(" [File: ");
-                    pw.print(filePath);
-                    pw.print("]");
-                }
+    /**
+     * Gets the log file of the current session.
+     *
+     * @param logFileBase The base name of the log file (without extension)
+     * @return The path of the log file
+     */
+    private static Path getSessionLogFile(String logFileBase) {
+        if (logFileBase.equals(DEBUG_LOG_BASE)) {
+            return DEBUG_LOG_FILE_PATH;
+        } else if (logFileBase.equals(VALIDATION_LOG_BASE)) {
+            return VALIDATION_LOG_FILE_PATH;
+        }
+        // Fallback for any other log file base (shouldn't happen)
+        // Use the same format: latte_plugin_TIMESTAMP_TYPE.log
+        String fileName = LOG_FILE_PREFIX + "_" + SESSION_TIMESTAMP + "_" + logFileBase + ".log";
+        return Paths.get(LOG_DIR_PATH, fileName).toAbsolutePath();
+    }
 
-                pw.print(" - ");
-                pw.println(message);
+    /**
+     * Gets the log file of the running test, inside a class-specific subdirectory.
+     * Pattern: &lt;Class&gt;/&lt;method&gt;.&lt;type&gt;.log (e.g., testSomething.latte_debug.log or testSomething.validation_errors.log)
+     *
+     * @param logFileBase The base name of the log file (without extension)
+     * @return The path of the log file
+     */
+    private static Path getTestLogFile(String logFileBase) {
+        String testName = currentTest;
+        if (testName == null) {
+            testName = getTestName(); // format: fully.qualified.ClassName.methodName
+        }
 
-                // Write the exception if present
-                if (t != null) {
-                    t.printStackTrace(pw);
-                    pw.println();
-                }
+        TestLogFiles files = testLogFiles;
+        if (files == null || !files.testName.equals(testName)) {
+            files = new TestLogFiles(testName);
+            testLogFiles = files;
+        }
+        if (logFileBase.equals(DEBUG_LOG_BASE)) {
+            return files.debugLog;
+        } else if (logFileBase.equals(VALIDATION_LOG_BASE)) {
+            return files.validationLog;
+        }
+        return files.classDir.resolve(files.methodName + "." + logFileBase + ".log");
+    }
 
-                pw.flush();
+    /**
+     * Sets the name of the running test, so that its entries go to its own log files.
+     * Entries logged from other threads during the test are placed there as well.
+     *
+     * @param testName The name of the test (fully.qualified.ClassName.methodName), or null when the test has finished
+     */
+    public static void setCurrentTest(@Nullable String testName) {
+        currentTest = testName;
+    }
 
-                // Log success message for debugging
-                if (!fileExists) {
-                    System.out.println("Created log file: " + file.getAbsolutePath());
-                }
-            }
-        } catch (IOException e) {
-            // Don't use logger here to avoid infinite recursion
-            System.err.println("Error writing to log file: " + e.getMessage());
-            e.printStackTrace(System.err);
-        }
+    /**
+     * Waits until the queued log entries have been written to the log files.
+     *
+     * @return true if all entries were written, false if logging is disabled or the wait timed out
+     */
+    public static boolean flush() {
+        return APPENDER != null && APPENDER.flush(FLUSH_TIMEOUT_MS);
     }
 
     /**
@@ -344,20 +358,20 @@ public class LatteLogger {
     }
 
     /**
-     * Logs a debug message if in development mode.
+     * Logs a debug message if debug logging is enabled.
      *
      * @param logger The logger to use
      * @param message The message to log
      */
     public static void debug(@NotNull Logger logger, @NotNull String message) {
-        if (IS_DEVELOPMENT_MODE) {
+        if (isDebugEnabled(logger)) {
             logger.debug(message);
             logToFile(DEBUG_LOG_BASE, "DEBUG", logger.getClass().getName(), message, "", null);
         }
     }
 
     /**
-     * Logs a debug message with file information if in development mode.
+     * Logs a debug message with file information if debug logging is enabled.
      *
      * @param logger The logger to use
      * @param message The message to log
@@ -366,7 +380,7 @@ public class LatteLogger {
      */
     public static void debug(@NotNull Logger logger, @NotNull String message,
                             @Nullable VirtualFile file, @Nullable Project project) {
-        if (IS_DEVELOPMENT_MODE) {
+        if (isDebugEnabled(logger)) {
             logger.debug(message);
             logToFile(DEBUG_LOG_BASE, "DEBUG", logger.getClass().getName(), message,
                      formatFilePath(file, project), null);
@@ -374,21 +388,21 @@ public class LatteLogger {
     }
 
     /**
-     * Logs a debug message with an exception if in development mode.
+     * Logs a debug message with an exception if debug logging is enabled.
      *
      * @param logger The logger to use
      * @param message The message to log
      * @param t The exception to log
      */
     public static void debug(@NotNull Logger logger, @NotNull String message, @Nullable Throwable t) {
-        if (IS_DEVELOPMENT_MODE) {
+        if (isDebugEnabled(logger)) {
             logger.debug(message, t);
             logToFile(DEBUG_LOG_BASE, "DEBUG", logger.getClass().getName(), message, "", t);
         }
     }
 
     /**
-     * Logs a debug message with file information and an exception if in development mode.
+     * Logs a debug message with file information and an exception if debug logging is enabled.
      *
      * @param logger The logger to use
      * @param message The message to log
@@ -398,13 +412,55 @@ public class LatteLogger {
      */
     public static void debug(@NotNull Logger logger, @NotNull String message,
                             @Nullable VirtualFile file, @Nullable Project project, @Nullable Throwable t) {
-        if (IS_DEVELOPMENT_MODE) {
+        if (isDebugEnabled(logger)) {
             logger.debug(message, t);
             logToFile(DEBUG_LOG_BASE, "DEBUG", logger.getClass().getName(), message,
                      formatFilePath(file, project), t);
         }
     }
 
+    /**
+     * Logs a debug message built by the given supplier if debug logging is enabled.
+     * The supplier is not called when debug logging is disabled.
+     *
+     * @param logger The logger to use
+     * @param message The supplier of the message to log
+     */
+    public static void debug(@NotNull Logger logger, @NotNull Supplier<String> message) {
+        if (isDebugEnabled(logger)) {
+            debug(logger, message.get());
+        }
+    }
+
+    /**
+     * Logs a debug message built by the given supplier with file information if debug logging is enabled.
+     * Neither the message nor the file path is built when debug logging is disabled.
+     *
+     * @param logger The logger to use
+     * @param message The supplier of the message to log
+     * @param file The file being processed
+     * @param project The project the file belongs to
+     */
+    public static void debug(@NotNull Logger logger, @NotNull Supplier<String> message,
+                            @Nullable VirtualFile file, @Nullable Project project) {
+        if (isDebugEnabled(logger)) {
+            debug(logger, message.get(), file, project);
+        }
+    }
+
+    /**
+     * Logs a debug message built by the given supplier with an exception if debug logging is enabled.
+     *
+     * @param logger The logger to use
+     * @param message The supplier of the message to log
+     * @param t The exception to log
+     */
+    public static void debug(@NotNull Logger logger, @NotNull Supplier<String> message, @Nullable Throwable t) {
+        if (isDebugEnabled(logger)) {
+            debug(logger, message.get(), t);
+        }
+    }
+
     /**
      * Logs an info message if in development mode.
      *
@@ -689,6 +745,53 @@ public class LatteLogger {
         }
     }
 
+    /**
+     * Logs a validation error if in development mode.
+     * The element text is only built when the error is actually logged.
+     *
+     * @param logger The logger to use
+     * @param message The error message
+     * @param elementText The supplier of the text of the element where the error occurred
+     * @param offset The offset of the element where the error occurred
+     */
+    public static void logValidationError(@NotNull Logger logger, @NotNull String message,
+                                         @NotNull Supplier<String> elementText, int offset) {
+        if (IS_DEVELOPMENT_MODE) {
+            logValidationError(logger, message, elementText.get(), offset);
+        }
+    }
+
+    /**
+     * Logs a validation error with file information if in development mode.
+     * The element text and the file path are only built when the error is actually logged.
+     *
+     * @param logger The logger to use
+     * @param message The error message
+     * @param elementText The supplier of the text of the element where the error occurred
+     * @param offset The offset of the element where the error occurred
+     * @param file The file being processed
+     * @param project The project the file belongs to
+     */
+    public static void logValidationError(@NotNull Logger logger, @NotNull String message,
+                                         @NotNull Supplier<String> elementText, int offset,
+                                         @Nullable VirtualFile file, @Nullable Project project) {
+        if (IS_DEVELOPMENT_MODE) {
+            logValidationError(logger, message, elementText.get(), offset, file, project);
+        }
+    }
+
+    /**
+     * Checks if debug messages of the given logger are logged.
+     * Debug messages are logged in development mode when the latte.plugin.log.debug system property is set,
+     * in test mode, or when debug logging is enabled for the logger in IntelliJ.
+     *
+     * @param logger The logger to check
+     * @return true if debug messages are logged, false otherwise
+     */
+    public static boolean isDebugEnabled(@NotNull Logger logger) {
+        return IS_DEVELOPMENT_MODE && (IS_DEBUG_LOGGING || logger.isDebugEnabled());
+    }
+
     /**
      * Checks if logging is enabled.
      *
@@ -732,27 +835,23 @@ public class LatteLogger {
      * @return The name of the current test
      */
     private static String getTestName() {
-        StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-
-        // Look for a method in a test class
-        for (StackTraceElement element : stackTrace) {
-            String className = element.getClassName();
-            String methodName = element.getMethodName();
-
-            // Check if this is likely a test class/method
-            if ((className.contains("Test") || className.endsWith("Tests")) &&
-                !className.contains("$") && // Exclude inner classes
-                !methodName.equals("getTestName") && // Exclude this method
-                !methodName.equals("logToFile") && // Exclude calling method
-                !methodName.startsWith("access$")) { // Exclude synthetic accessor methods
-
-                // Found a potential test method
-                return className + "." + methodName;
-            }
-        }
-
-        // If no test method found, return a default name
-        return "unknown_test";
+        // Walk the frames lazily instead of capturing the whole stack trace
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> {
+                    String className = frame.getClassName();
+                    String methodName = frame.getMethodName();
+
+                    // Check if this is likely a test class/method
+                    return (className.contains("Test") || className.endsWith("Tests")) &&
+                            !className.contains("$") && // Exclude inner classes
+                            !methodName.equals("getTestName") && // Exclude this method
+                            !methodName.equals("getTestLogFile") && // Exclude calling method
+                            !methodName.startsWith("access$"); // Exclude synthetic accessor methods
+                })
+                .map(frame -> frame.getClassName() + "." + frame.getMethodName())
+                .findFirst()
+                // If no test method found, return a default name
+                .orElse("unknown_test"));
     }
 
     /**
@@ -795,4 +894,45 @@ public class LatteLogger {
 
         return sanitized;
     }
-}
\ No newline at end of file
+
+    /**
+     * The log files of one test.
+     */
+    private static final class TestLogFiles {
+        private final String testName;
+        private final String methodName;
+        private final Path classDir;
+        private final Path debugLog;
+        private final Path validationLog;
+
+        TestLogFiles(String testName) {
+            this.testName = testName;
+
+            // Parse class and method
+            String classNameFqn = "unknown";
+            String method = "unknownMethod";
+            if (!testName.isEmpty() && testName.contains(".")) {
+                int lastDot = testName.lastIndexOf('.');
+                classNameFqn = testName.substring(0, lastDot);
+                method = testName.substring(lastDot + 1);
+            }
+
+            // Simple class name (including "Test" suffix if present)
+            String simpleClassName = classNameFqn;
+            int idx = simpleClassName.lastIndexOf('.');
+            if (idx >= 0) simpleClassName = simpleClassName.substring(idx + 1);
+
+            // Sanitize names for filesystem
+            simpleClassName = simpleClassName.replaceAll("[^a-zA-Z0-9_.-]", "_");
+            method = method.replaceAll("[^a-zA-Z0-9_.-]", "_");
+            if (simpleClassName.isEmpty()) simpleClassName = "UnknownClass";
+            if (method.isEmpty()) method = "unknownMethod";
+
+            // The appender creates the class directory together with the first file
+            this.methodName = method;
+            this.classDir = Paths.get(TEST_LOG_BASE_DIR, simpleClassName).toAbsolutePath();
+            this.debugLog = classDir.resolve(method + "." + DEBUG_LOG_BASE + ".log");
+            this.validationLog = classDir.resolve(method + "." + VALIDATION_LOG_BASE + ".log");
+        }
+    }
+}
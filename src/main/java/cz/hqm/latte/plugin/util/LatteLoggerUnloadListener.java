@@ -0,0 +1,22 @@
+package cz.hqm.latte.plugin.util;
+
+import com.intellij.ide.plugins.DynamicPluginListener;
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shuts down the log appender before the plugin is unloaded.
+ * The writer thread and the JVM shutdown hook of the appender would otherwise
+ * keep the plugin class loader alive after the unload.
+ */
+public class LatteLoggerUnloadListener implements DynamicPluginListener {
+
+    private static final String PLUGIN_ID = "cz.hqm.latte.plugin";
+
+    @Override
+    public void beforePluginUnload(@NotNull IdeaPluginDescriptor pluginDescriptor, boolean isUpdate) {
+        if (PLUGIN_ID.equals(pluginDescriptor.getPluginId().getIdString())) {
+            LatteLogger.shutdown();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package cz.hqm.latte.plugin.util;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Switchable trace of internal events of the Latte plugin, grouped by {@link Category}.
+ * <p>
+ * Tracing is disabled by default; a disabled category costs one volatile read per call. Categories are
+ * enabled with the latte.plugin.trace system property (a comma-separated list of category names, or "all")
+ * or with {@link #setEnabled}, e.g. by the internal "Record Latte Trace" action. Enabled events are recorded
+ * as structured entries, an event name with key/value fields, into an in-memory ring that keeps the last
+ * {@link #CAPACITY} events. The ring can be read with {@link #getEvents()}, formatted with {@link #dump()}
+ * or written to the IDE log with {@link #dumpToLog()}, which the internal "Dump Latte Trace to Log" action
+ * does when a problem has to be investigated. With the latte.plugin.trace.echo system property, events
+ * are also printed to the console.
+ * <p>
+ * Field values are converted to text only when the trace is dumped, so they should be immutable values
+ * such as strings, numbers or enums and never PSI elements or other objects that must not be retained.
+ * Callers whose field values box primitives or build strings check {@link #isEnabled} first, so that a
+ * disabled trace allocates nothing.
+ */
+public final class LatteTrace {
+    private static final Logger LOG = Logger.getInstance(LatteTrace.class);
+
+    /**
+     * The areas of the plugin that can be traced separately.
+     */
+    public enum Category {
+        /** Completion contributors and providers. */
+        COMPLETION,
+        /** Lexers. */
+        LEXER,
+        /** Caches of filters, variables and other derived data. */
+        CACHE,
+        /** Detection of enabled Nette packages and their versions. */
+        DETECTION
+    }
+
+    /**
+     * Number of events kept in the ring.
+     */
+    public static final int CAPACITY = 4096;
+
+    // Format of the event timestamps in dumps
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    // Whether events are printed to the console as they are recorded
+    private static final boolean ECHO = Boolean.getBoolean("latte.plugin.trace.echo");
+
+    // Enabled categories, one bit per category ordinal
+    private static volatile int enabledMask = parseCategories(System.getProperty("latte.plugin.trace"));
+
+    // The ring of recorded events and the total number of events recorded so far
+    private static final AtomicReferenceArray<Event> EVENTS = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong RECORDED = new AtomicLong();
+
+    private LatteTrace() {
+    }
+
+    /**
+     * Checks whether events of the given category are recorded.
+     * Callers check this themselves before building field values that allocate, such as boxed
+     * numbers or substrings, and may skip the check when the values already exist.
+     *
+     * @param category The category to check
+     * @return true if the category is enabled
+     */
+    public static boolean isEnabled(@NotNull Category category) {
+        return (enabledMask & (1 << category.ordinal())) != 0;
+    }
+
+    /**
+     * Enables or disables recording of events of the given category.
+     *
+     * @param category The category
+     * @param enabled Whether events of the category should be recorded
+     */
+    public static synchronized void setEnabled(@NotNull Category category, boolean enabled) {
+        int bit = 1 << category.ordinal();
+        enabledMask = enabled ? enabledMask | bit : enabledMask & ~bit;
+    }
+
+    /**
+     * Records an event without fields.
+     *
+     * @param category The category of the event
+     * @param event The name of the event
+     */
+    public static void trace(@NotNull Category category, @NotNull String event) {
+        if (isEnabled(category)) {
+            record(new Event(category, event, null, null, null, null));
+        }
+    }
+
+    /**
+     * Records an event with one field.
+     *
+     * @param category The category of the event
+     * @param event The name of the event
+     * @param key The name of the field
+     * @param value The value of the field
+     */
+    public static void trace(@NotNull Category category, @NotNull String event,
+                             @NotNull String key, @Nullable Object value) {
+        if (isEnabled(category)) {
+            record(new Event(category, event, key, value, null, null));
+        }
+    }
+
+    /**
+     * Records an event with two fields.
+     *
+     * @param category The category of the event
+     * @param event The name of the event
+     * @param key1 The name of the first field
+     * @param value1 The value of the first field
+     * @param key2 The name of the second field
+     * @param value2 The value of the second field
+     */
+    public static void trace(@NotNull Category category, @NotNull String event,
+                             @NotNull String key1, @Nullable Object value1,
+                             @NotNull String key2, @Nullable Object value2) {
+        if (isEnabled(category)) {
+            record(new Event(category, event, key1, value1, key2, value2));
+        }
+    }
+
+    /**
+     * Gets the recorded events that are still in the ring, oldest first.
+     *
+     * @return An unmodifiable list of the events
+     */
+    @NotNull
+    public static List<Event> getEvents() {
+        long end = RECORDED.get();
+        long start = Math.max(0, end - CAPACITY);
+        List<Event> events = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            Event event = EVENTS.get((int) (i % CAPACITY));
+            // Skip slots that a concurrent writer has not filled yet or has already overwritten
+            if (event != null && event.sequence == i) {
+                events.add(event);
+            }
+        }
+        return Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Formats the recorded events that are still in the ring, one line per event, oldest first.
+     *
+     * @return The formatted events
+     */
+    @NotNull
+    public static String dump() {
+        List<Event> events = getEvents();
+        StringBuilder builder = new StringBuilder(events.size() * 80);
+        for (Event event : events) {
+            event.format(builder);
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the recorded events that are still in the ring to the IDE log, see {@link #dump()}.
+     *
+     * @return The number of events written
+     */
+    public static int dumpToLog() {
+        List<Event> events = getEvents();
+        StringBuilder builder = new StringBuilder(events.size() * 80);
+        for (Event event : events) {
+            builder.append('\n');
+            event.format(builder);
+        }
+        LOG.info("Latte trace, " + events.size() + " events:" + builder);
+        return events.size();
+    }
+
+    /**
+     * Drops all recorded events.
+     */
+    public static void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            EVENTS.set(i, null);
+        }
+    }
+
+    private static void record(@NotNull Event event) {
+        long sequence = RECORDED.getAndIncrement();
+        event.sequence = sequence;
+        EVENTS.set((int) (sequence % CAPACITY), event);
+        if (ECHO) {
+            StringBuilder builder = new StringBuilder("[DEBUG_LOG] ");
+            event.format(builder);
+            System.out.println(builder);
+        }
+    }
+
+    private static int parseCategories(@Nullable String property) {
+        if (property == null || property.isEmpty()) {
+            return 0;
+        }
+        int mask = 0;
+        for (String name : property.split(",")) {
+            name = name.trim().toUpperCase(Locale.ROOT);
+            if (name.equals("ALL")) {
+                return (1 << Category.values().length) - 1;
+            }
+            for (Category category : Category.values()) {
+                if (category.name().equals(name)) {
+                    mask |= 1 << category.ordinal();
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * A recorded event: its category, name and up to two fields, with the time and thread it was recorded on.
+     */
+    public static final class Event {
+        private final long timestamp = System.currentTimeMillis();
+        private final String threadName = Thread.currentThread().getName();
+        private final Category category;
+        private final String name;
+        private final String key1;
+        private final Object value1;
+        private final String key2;
+        private final Object value2;
+        private volatile long sequence;
+
+        Event(@NotNull Category category, @NotNull String name,
+              @Nullable String key1, @Nullable Object value1, @Nullable String key2, @Nullable Object value2) {
+            this.category = category;
+            this.name = name;
+            this.key1 = key1;
+            this.value1 = value1;
+            this.key2 = key2;
+            this.value2 = value2;
+        }
+
+        /**
+         * @return The time the event was recorded, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return The name of the thread the event was recorded on
+         */
+        @NotNull
+        public String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * @return The category of the event
+         */
+        @NotNull
+        public Category getCategory() {
+            return category;
+        }
+
+        /**
+         * @return The name of the event
+         */
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the value of a field of the event.
+         *
+         * @param key The name of the field
+         * @return The value, or null if the event has no such field
+         */
+        @Nullable
+        public Object getValue(@NotNull String key) {
+            if (key.equals(key1)) {
+                return value1;
+            }
+            if (key.equals(key2)) {
+                return value2;
+            }
+            return null;
+        }
+
+        void format(@NotNull StringBuilder builder) {
+            TIME_FORMAT.formatTo(Instant.ofEpochMilli(timestamp), builder);
+            builder.append(" [").append(threadName).append("] ").append(category).append(' ').append(name);
+            if (key1 != null) {
+                builder.append(' ').append(key1).append('=').append(value1);
+            }
+            if (key2 != null) {
+                builder.append(' ').append(key2).append('=').append(value2);
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            format(builder);
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package cz.hqm.latte.plugin.util;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Internal action that writes the recorded {@link LatteTrace} events to the IDE log.
+ */
+public class LatteTraceDumpAction extends DumbAwareAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        int count = LatteTrace.dumpToLog();
+        Messages.showInfoMessage(e.getProject(), count + " Latte trace events were written to the IDE log.", "Latte Trace");
+    }
+
+    @NotNull
+    @Override
+    public ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+}
@@ -0,0 +1,36 @@
+package cz.hqm.latte.plugin.util;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.ToggleAction;
+import com.intellij.openapi.project.DumbAware;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Internal action that switches recording of {@link LatteTrace} events of all categories on and off.
+ */
+public class LatteTraceRecordAction extends ToggleAction implements DumbAware {
+
+    @Override
+    public boolean isSelected(@NotNull AnActionEvent e) {
+        for (LatteTrace.Category category : LatteTrace.Category.values()) {
+            if (!LatteTrace.isEnabled(category)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void setSelected(@NotNull AnActionEvent e, boolean state) {
+        for (LatteTrace.Category category : LatteTrace.Category.values()) {
+            LatteTrace.setEnabled(category, state);
+        }
+    }
+
+    @NotNull
+    @Override
+    public ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+}
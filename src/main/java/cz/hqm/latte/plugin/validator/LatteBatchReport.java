@@ -0,0 +1,339 @@
+package cz.hqm.latte.plugin.validator;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.intellij.lang.annotation.HighlightSeverity;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a {@link LatteBatchValidator} run: the problems of each template with their line and
+ * column, and the throughput of the run. Can be written as JSON or as a SARIF 2.1.0 log, which code
+ * scanning tools and CI servers can display.
+ */
+public final class LatteBatchReport {
+
+    /**
+     * Identifier of the validation in SARIF logs, the same as the short name of the inspection.
+     */
+    public static final String RULE_ID = "LatteTemplateValidation";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    private final List<FileResult> results;
+    private final int parallelism;
+    private final long elapsedNanos;
+
+    LatteBatchReport(@NotNull List<FileResult> results, int parallelism, long elapsedNanos) {
+        this.results = Collections.unmodifiableList(results);
+        this.parallelism = parallelism;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return The results of the templates, in the order they were given to the validator
+     */
+    @NotNull
+    public List<FileResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return The number of validated templates
+     */
+    public int getTemplateCount() {
+        return results.size();
+    }
+
+    /**
+     * @return The number of problems in all templates
+     */
+    public int getProblemCount() {
+        int count = 0;
+        for (FileResult result : results) {
+            count += result.findings.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return The maximum number of templates validated at the same time
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return The wall-clock time of the run, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return The number of templates validated per second
+     */
+    public double getTemplatesPerSecond() {
+        return elapsedNanos > 0 ? results.size() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+    }
+
+    /**
+     * Writes the report to a file, as SARIF if the file name ends with ".sarif" and as JSON otherwise.
+     *
+     * @param file The file to write
+     * @throws IOException If the file cannot be written
+     */
+    public void write(@NotNull Path file) throws IOException {
+        String content = file.getFileName().toString().endsWith(".sarif") ? toSarif() : toJson();
+        Path parent = file.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Formats the report as JSON. Only templates with problems are listed.
+     *
+     * @return The JSON report
+     */
+    @NotNull
+    public String toJson() {
+        JsonObject root = new JsonObject();
+        root.addProperty("templates", getTemplateCount());
+        root.addProperty("problems", getProblemCount());
+        root.addProperty("parallelism", parallelism);
+        root.addProperty("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        root.addProperty("templatesPerSecond", Math.round(getTemplatesPerSecond()));
+
+        JsonArray files = new JsonArray();
+        for (FileResult result : results) {
+            if (result.findings.isEmpty()) {
+                continue;
+            }
+            JsonArray problems = new JsonArray();
+            for (Finding finding : result.findings) {
+                JsonObject problem = new JsonObject();
+                problem.addProperty("severity", finding.problem.getSeverity().getName());
+                problem.addProperty("message", finding.problem.getMessage());
+                problem.addProperty("line", finding.startLine);
+                problem.addProperty("column", finding.startColumn);
+                problem.addProperty("endLine", finding.endLine);
+                problem.addProperty("endColumn", finding.endColumn);
+                problems.add(problem);
+            }
+            JsonObject file = new JsonObject();
+            file.addProperty("location", result.location);
+            file.add("problems", problems);
+            files.add(file);
+        }
+        root.add("files", files);
+        return GSON.toJson(root);
+    }
+
+    /**
+     * Formats the report as a SARIF 2.1.0 log with one run.
+     *
+     * @return The SARIF log
+     */
+    @NotNull
+    public String toSarif() {
+        JsonObject rule = new JsonObject();
+        rule.addProperty("id", RULE_ID);
+        rule.add("shortDescription", text("Latte template validation"));
+        JsonObject driver = new JsonObject();
+        driver.addProperty("name", "Latte Plugin");
+        driver.add("rules", array(rule));
+        JsonObject tool = new JsonObject();
+        tool.add("driver", driver);
+
+        JsonArray sarifResults = new JsonArray();
+        for (FileResult result : results) {
+            for (Finding finding : result.findings) {
+                JsonObject region = new JsonObject();
+                region.addProperty("startLine", finding.startLine);
+                region.addProperty("startColumn", finding.startColumn);
+                region.addProperty("endLine", finding.endLine);
+                region.addProperty("endColumn", finding.endColumn);
+                JsonObject artifact = new JsonObject();
+                artifact.addProperty("uri", result.location);
+                JsonObject physicalLocation = new JsonObject();
+                physicalLocation.add("artifactLocation", artifact);
+                physicalLocation.add("region", region);
+                JsonObject location = new JsonObject();
+                location.add("physicalLocation", physicalLocation);
+
+                JsonObject sarifResult = new JsonObject();
+                sarifResult.addProperty("ruleId", RULE_ID);
+                sarifResult.addProperty("level", sarifLevel(finding.problem.getSeverity()));
+                sarifResult.add("message", text(finding.problem.getMessage()));
+                sarifResult.add("locations", array(location));
+                sarifResults.add(sarifResult);
+            }
+        }
+
+        JsonObject properties = new JsonObject();
+        properties.addProperty("templates", getTemplateCount());
+        properties.addProperty("parallelism", parallelism);
+        properties.addProperty("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        properties.addProperty("templatesPerSecond", Math.round(getTemplatesPerSecond()));
+
+        JsonObject run = new JsonObject();
+        run.add("tool", tool);
+        run.add("results", sarifResults);
+        run.add("properties", properties);
+
+        JsonObject log = new JsonObject();
+        log.addProperty("$schema", "https://json.schemastore.org/sarif-2.1.0.json");
+        log.addProperty("version", "2.1.0");
+        log.add("runs", array(run));
+        return GSON.toJson(log);
+    }
+
+    @NotNull
+    private static String sarifLevel(@NotNull HighlightSeverity severity) {
+        if (severity.compareTo(HighlightSeverity.ERROR) >= 0) {
+            return "error";
+        }
+        return severity.compareTo(HighlightSeverity.WARNING) >= 0 ? "warning" : "note";
+    }
+
+    @NotNull
+    private static JsonObject text(@NotNull String text) {
+        JsonObject message = new JsonObject();
+        message.addProperty("text", text);
+        return message;
+    }
+
+    @NotNull
+    private static JsonArray array(@NotNull JsonElement element) {
+        JsonArray array = new JsonArray();
+        array.add(element);
+        return array;
+    }
+
+    /**
+     * The problems of one template.
+     */
+    public static final class FileResult {
+        private final String location;
+        private final List<Finding> findings;
+
+        FileResult(@NotNull String location, @NotNull CharSequence text, @NotNull List<LatteValidationProblem> problems) {
+            this.location = location;
+            if (problems.isEmpty()) {
+                this.findings = Collections.emptyList();
+                return;
+            }
+            int[] lineStarts = findLineStarts(text);
+            List<Finding> findings = new ArrayList<>(problems.size());
+            for (LatteValidationProblem problem : problems) {
+                findings.add(new Finding(problem, lineStarts));
+            }
+            this.findings = Collections.unmodifiableList(findings);
+        }
+
+        /**
+         * @return The URI of the template
+         */
+        @NotNull
+        public String getLocation() {
+            return location;
+        }
+
+        /**
+         * @return The problems of the template, ordered by their start offset
+         */
+        @NotNull
+        public List<Finding> getFindings() {
+            return findings;
+        }
+
+        @NotNull
+        private static int[] findLineStarts(@NotNull CharSequence text) {
+            int[] lineStarts = new int[16];
+            int count = 1;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    if (count == lineStarts.length) {
+                        lineStarts = Arrays.copyOf(lineStarts, count * 2);
+                    }
+                    lineStarts[count++] = i + 1;
+                }
+            }
+            return Arrays.copyOf(lineStarts, count);
+        }
+    }
+
+    /**
+     * A problem with its position as 1-based lines and columns.
+     */
+    public static final class Finding {
+        private final LatteValidationProblem problem;
+        private final int startLine;
+        private final int startColumn;
+        private final int endLine;
+        private final int endColumn;
+
+        Finding(@NotNull LatteValidationProblem problem, @NotNull int[] lineStarts) {
+            this.problem = problem;
+            this.startLine = lineOf(lineStarts, problem.getStartOffset());
+            this.startColumn = problem.getStartOffset() - lineStarts[startLine - 1] + 1;
+            this.endLine = lineOf(lineStarts, problem.getEndOffset());
+            this.endColumn = problem.getEndOffset() - lineStarts[endLine - 1] + 1;
+        }
+
+        private static int lineOf(@NotNull int[] lineStarts, int offset) {
+            int index = Arrays.binarySearch(lineStarts, offset);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        /**
+         * @return The problem
+         */
+        @NotNull
+        public LatteValidationProblem getProblem() {
+            return problem;
+        }
+
+        /**
+         * @return The line the problem starts on, starting at 1
+         */
+        public int getStartLine() {
+            return startLine;
+        }
+
+        /**
+         * @return The column the problem starts at, starting at 1
+         */
+        public int getStartColumn() {
+            return startColumn;
+        }
+
+        /**
+         * @return The line the problem ends on, starting at 1
+         */
+        public int getEndLine() {
+            return endLine;
+        }
+
+        /**
+         * @return The column just after the end of the problem, starting at 1
+         */
+        public int getEndColumn() {
+            return endColumn;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package cz.hqm.latte.plugin.validator;
+
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.project.Project;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Validates many Latte templates in parallel, e.g. all templates of a project before a deploy.
+ * <p>
+ * Each template is read and validated with {@link LatteValidator#validateText} as a separate task on a
+ * fork-join pool with a fixed parallelism, so the validator uses at most that many threads. Templates are
+ * independent of each other and validation is linear in their length, so the throughput grows with the
+ * parallelism up to the number of cores. The results are collected in a {@link LatteBatchReport},
+ * which can be written as JSON or SARIF.
+ */
+public final class LatteBatchValidator {
+
+    /**
+     * Extension of Latte template files.
+     */
+    public static final String TEMPLATE_EXTENSION = ".latte";
+
+    private final int parallelism;
+
+    /**
+     * Creates a validator using one thread per available core.
+     */
+    public LatteBatchValidator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a validator.
+     *
+     * @param parallelism The maximum number of templates validated at the same time
+     */
+    public LatteBatchValidator(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return The maximum number of templates validated at the same time
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Finds all Latte templates in a directory and its subdirectories.
+     *
+     * @param root The directory to search
+     * @return The templates, sorted by path
+     * @throws IOException If the directory cannot be read
+     */
+    @NotNull
+    public static List<Path> findTemplates(@NotNull Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(TEMPLATE_EXTENSION))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Validates template files on disk against one Latte version.
+     *
+     * @param files The template files
+     * @param version The Latte version of the templates
+     * @return The report of the validation
+     */
+    @NotNull
+    public LatteBatchReport validateFiles(@NotNull List<Path> files, @NotNull LatteVersion version) {
+        List<Template> templates = new ArrayList<>(files.size());
+        for (Path file : files) {
+            templates.add(new Template(file.toUri().toString(), () -> readFile(file), version));
+        }
+        return validate(templates);
+    }
+
+    /**
+     * Validates templates in parallel.
+     *
+     * @param templates The templates
+     * @return The report of the validation, with the results in the order of the templates
+     */
+    @NotNull
+    public LatteBatchReport validate(@NotNull List<Template> templates) {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<LatteBatchReport.FileResult>> tasks = new ArrayList<>(templates.size());
+            for (Template template : templates) {
+                tasks.add(pool.submit(() -> validate(template)));
+            }
+            List<LatteBatchReport.FileResult> results = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<LatteBatchReport.FileResult> task : tasks) {
+                results.add(task.join());
+            }
+            return new LatteBatchReport(results, parallelism, System.nanoTime() - start);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @NotNull
+    private static LatteBatchReport.FileResult validate(@NotNull Template template) {
+        CharSequence text;
+        try {
+            text = template.content.get();
+        } catch (UncheckedIOException e) {
+            LatteValidationProblem problem = new LatteValidationProblem(
+                    "Cannot read template: " + e.getCause().getMessage(), HighlightSeverity.ERROR, 0, 0);
+            return new LatteBatchReport.FileResult(template.location, "", Collections.singletonList(problem));
+        }
+        return new LatteBatchReport.FileResult(template.location, text, LatteValidator.validateText(text, template.knownMacroNames));
+    }
+
+    @NotNull
+    private static CharSequence readFile(@NotNull Path file) {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A template to validate. Its content is loaded by the task that validates it.
+     */
+    public static final class Template {
+        private final String location;
+        private final Supplier<CharSequence> content;
+        private final Set<String> knownMacroNames;
+
+        /**
+         * Creates a template outside a project, where no custom tags are known.
+         *
+         * @param location The URI of the template, used in the report
+         * @param content Loads the text of the template; may throw {@link UncheckedIOException}
+         * @param version The Latte version of the template
+         */
+        public Template(@NotNull String location, @NotNull Supplier<CharSequence> content, @NotNull LatteVersion version) {
+            this(location, content, LatteValidator.getKnownMacroNames(version));
+        }
+
+        /**
+         * Creates a template of a project, whose custom tags are known macros.
+         *
+         * @param location The URI of the template, used in the report
+         * @param content Loads the text of the template; may throw {@link UncheckedIOException}
+         * @param version The Latte version of the template
+         * @param project The project of the template
+         */
+        public Template(@NotNull String location, @NotNull Supplier<CharSequence> content,
+                        @NotNull LatteVersion version, @NotNull Project project) {
+            this(location, content, LatteValidator.getKnownMacroNames(project, version));
+        }
+
+        private Template(@NotNull String location, @NotNull Supplier<CharSequence> content, @NotNull Set<String> knownMacroNames) {
+            this.location = location;
+            this.content = content;
+            this.knownMacroNames = knownMacroNames;
+        }
+
+        /**
+         * @return The URI of the template
+         */
+        @NotNull
+        public String getLocation() {
+            return location;
+        }
+    }
+}
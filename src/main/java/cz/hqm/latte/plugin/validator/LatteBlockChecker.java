@@ -0,0 +1,532 @@
+package cz.hqm.latte.plugin.validator;
+
+import com.intellij.lang.annotation.HighlightSeverity;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks the macro tags of a template in a single pass over its text.
+ * <p>
+ * Reports unknown macros, end tags that do not match the innermost open block, blocks that are
+ * never closed, and {else} or {elseif} tags outside of a block that accepts them. Open paired blocks
+ * are kept on a stack together with a count of open blocks per name, so every tag is checked in
+ * constant amortized time and the whole template in time linear in its length.
+ * <p>
+ * The text is scanned directly because macros are not separate tokens in the PSI of a template.
+ * Latte comments and regions with {syntax off} are skipped, and {syntax double} switches to
+ * double-brace tags until its {/syntax}. An element with the n:syntax attribute switches the syntax
+ * the same way until its matching end tag.
+ */
+final class LatteBlockChecker {
+
+    // Paired macros whose blocks are tracked
+    private static final Set<String> PAIRED_MACROS = new HashSet<>(Arrays.asList(
+            "if", "ifset", "ifCurrent", "foreach", "for", "while", "block", "define",
+            "snippet", "snippetArea", "capture", "try", "switch", "ifchanged", "embed", "iterateWhile"
+    ));
+
+    // Blocks that may be left open at the end of the template, e.g. {block content} in a child template
+    private static final Set<String> IMPLICITLY_CLOSED_MACROS = new HashSet<>(Arrays.asList("block"));
+
+    // Blocks that accept an {else} branch, and blocks that accept an {elseif} branch
+    private static final Set<String> ELSE_BLOCKS = new HashSet<>(Arrays.asList(
+            "if", "ifset", "ifCurrent", "foreach", "try", "ifchanged"
+    ));
+    private static final Set<String> ELSEIF_BLOCKS = new HashSet<>(Arrays.asList("if", "ifset"));
+
+    private final CharSequence text;
+    private final int length;
+    private final Set<String> knownMacroNames;
+    private final List<LatteValidationProblem> problems = new ArrayList<>();
+
+    // Open paired blocks, innermost first, and the number of open blocks per macro name
+    private final Deque<OpenBlock> blocks = new ArrayDeque<>();
+    private final Map<String, Integer> openCounts = new HashMap<>();
+
+    // Whether tags are delimited by double braces, and the delimiters to restore at {/syntax}
+    private boolean doubleBraces;
+    private final Deque<Boolean> syntaxStack = new ArrayDeque<>();
+
+    // Elements with an n:syntax attribute whose syntax is in effect, innermost first
+    private final Deque<SyntaxElement> syntaxElements = new ArrayDeque<>();
+
+    private LatteBlockChecker(@NotNull CharSequence text, @NotNull Set<String> knownMacroNames) {
+        this.text = text;
+        this.length = text.length();
+        this.knownMacroNames = knownMacroNames;
+    }
+
+    /**
+     * Checks the macro tags of a template.
+     *
+     * @param text The template text
+     * @param knownMacroNames The macro names known in the Latte version of the template
+     * @return An unmodifiable list of the problems found, ordered by their start offset
+     */
+    @NotNull
+    static List<LatteValidationProblem> check(@NotNull CharSequence text, @NotNull Set<String> knownMacroNames) {
+        LatteBlockChecker checker = new LatteBlockChecker(text, knownMacroNames);
+        checker.scan();
+        checker.finish();
+        checker.problems.sort(Comparator.comparingInt(LatteValidationProblem::getStartOffset));
+        return Collections.unmodifiableList(checker.problems);
+    }
+
+    private void scan() {
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '<') {
+                i = scanElementTag(i);
+                continue;
+            }
+            if (c != '{') {
+                i++;
+                continue;
+            }
+            int delimiter = doubleBraces ? 2 : 1;
+            if (doubleBraces && (i + 1 >= length || text.charAt(i + 1) != '{')) {
+                i++;
+                continue;
+            }
+            int contentStart = i + delimiter;
+            if (contentStart >= length) {
+                return;
+            }
+
+            char first = text.charAt(contentStart);
+            if (first == '*') {
+                // Skip Latte comments, they may contain anything
+                int commentEnd = indexOf(doubleBraces ? "*}}" : "*}", contentStart + 1);
+                if (commentEnd < 0) {
+                    return;
+                }
+                i = commentEnd + delimiter + 1;
+                continue;
+            }
+            // A brace followed by whitespace, a quote or another brace is not a tag
+            if (Character.isWhitespace(first) || first == '\'' || first == '"' || first == '{' || first == '}') {
+                i++;
+                continue;
+            }
+
+            boolean closing = first == '/';
+            int nameStart = closing ? contentStart + 1 : contentStart;
+            int nameEnd = scanName(nameStart);
+            int tagEnd = findTagEnd(nameEnd);
+            if (tagEnd < 0) {
+                report("Unclosed macro", HighlightSeverity.ERROR, i, Math.max(nameEnd, contentStart));
+                return;
+            }
+
+            if (nameEnd > nameStart) {
+                String name = text.subSequence(nameStart, nameEnd).toString();
+                if (!knownMacroNames.contains(name)) {
+                    report("Unknown macro: " + name, HighlightSeverity.WARNING, nameStart, nameEnd);
+                }
+                if (name.equals("syntax")) {
+                    tagEnd = switchSyntax(closing, nameEnd, tagEnd);
+                } else if (closing) {
+                    closeBlock(name, i, tagEnd);
+                } else if (name.equals("else") || name.equals("elseif") || name.equals("elseifset")) {
+                    checkBranch(name, i, tagEnd);
+                } else if (PAIRED_MACROS.contains(name) && !isSelfClosing(tagEnd - delimiter)) {
+                    openBlock(name, i, tagEnd);
+                }
+            } else if (closing && nameEnd == tagEnd - delimiter) {
+                // The anonymous end tag {/} closes the innermost block
+                closeInnermost(i, tagEnd);
+            }
+            // Print tags such as {$var} or {=expression} need no checks
+            i = tagEnd;
+        }
+    }
+
+    /**
+     * Reports the blocks that are still open at the end of the template.
+     */
+    private void finish() {
+        Iterator<OpenBlock> outermostFirst = blocks.descendingIterator();
+        while (outermostFirst.hasNext()) {
+            OpenBlock block = outermostFirst.next();
+            if (!IMPLICITLY_CLOSED_MACROS.contains(block.name)) {
+                reportUnclosed(block);
+            }
+        }
+    }
+
+    private void openBlock(@NotNull String name, int start, int end) {
+        blocks.push(new OpenBlock(name, start, end));
+        openCounts.merge(name, 1, Integer::sum);
+    }
+
+    /**
+     * Closes the innermost open block of the given name. Blocks opened inside it are reported as unclosed.
+     */
+    private void closeBlock(@NotNull String name, int start, int end) {
+        if (!PAIRED_MACROS.contains(name)) {
+            return;
+        }
+        if (openCounts.getOrDefault(name, 0) == 0) {
+            report("Unexpected macro end {/" + name + "}", HighlightSeverity.ERROR, start, end);
+            return;
+        }
+        OpenBlock innermost = blocks.peek();
+        if (!innermost.name.equals(name)) {
+            report("Mismatched macro end {/" + name + "}, expected {/" + innermost.name + "}",
+                    HighlightSeverity.ERROR, start, end);
+        }
+        // Each block is popped once, so unwinding is linear over the whole template
+        while (true) {
+            OpenBlock block = pop();
+            if (block.name.equals(name)) {
+                return;
+            }
+            reportUnclosed(block);
+        }
+    }
+
+    private void closeInnermost(int start, int end) {
+        if (blocks.isEmpty()) {
+            report("Unexpected macro end {/}", HighlightSeverity.ERROR, start, end);
+        } else {
+            pop();
+        }
+    }
+
+    @NotNull
+    private OpenBlock pop() {
+        OpenBlock block = blocks.pop();
+        openCounts.merge(block.name, -1, Integer::sum);
+        return block;
+    }
+
+    /**
+     * Checks that an {else} or {elseif} tag is directly inside a block that accepts it.
+     */
+    private void checkBranch(@NotNull String name, int start, int end) {
+        OpenBlock innermost = blocks.peek();
+        Set<String> accepting = name.equals("else") ? ELSE_BLOCKS : ELSEIF_BLOCKS;
+        if (innermost == null || !accepting.contains(innermost.name)) {
+            report("Tag {" + name + "} must be inside an {if} block", HighlightSeverity.ERROR, start, end);
+        }
+    }
+
+    /**
+     * Handles {syntax ...} and {/syntax}.
+     *
+     * @return The offset to continue scanning at
+     */
+    private int switchSyntax(boolean closing, int nameEnd, int tagEnd) {
+        if (closing) {
+            doubleBraces = !syntaxStack.isEmpty() && syntaxStack.pop();
+            return tagEnd;
+        }
+        int modeStart = nameEnd;
+        while (modeStart < tagEnd && Character.isWhitespace(text.charAt(modeStart))) {
+            modeStart++;
+        }
+        int modeEnd = scanName(modeStart);
+        if (regionEquals(modeStart, modeEnd, "off")) {
+            // Only {/syntax} is recognized until syntax is turned back on
+            int end = indexOf("{/syntax}", tagEnd);
+            return end < 0 ? length : end + "{/syntax}".length();
+        }
+        syntaxStack.push(doubleBraces);
+        doubleBraces = regionEquals(modeStart, modeEnd, "double");
+        return tagEnd;
+    }
+
+    /**
+     * Handles an HTML start or end tag. An element with the n:syntax attribute switches the syntax
+     * until its matching end tag: the contents of n:syntax="off" are skipped, and n:syntax="double"
+     * switches to double-brace tags. Nested elements of the same name are counted to find the end tag.
+     *
+     * @param start The offset of the '<' character
+     * @return The offset to continue scanning at
+     */
+    private int scanElementTag(int start) {
+        boolean closing = start + 1 < length && text.charAt(start + 1) == '/';
+        int nameStart = closing ? start + 2 : start + 1;
+        int nameEnd = scanTagName(nameStart);
+        if (nameEnd == nameStart) {
+            return start + 1;
+        }
+        if (closing) {
+            closeSyntaxElements(nameStart, nameEnd);
+            return nameEnd;
+        }
+        int headerEnd = findHeaderEnd(nameEnd);
+        if (headerEnd < length && text.charAt(headerEnd) == '>' && text.charAt(headerEnd - 1) == '/') {
+            // Self-closing elements have no contents
+            return nameEnd;
+        }
+        for (SyntaxElement element : syntaxElements) {
+            if (regionEquals(nameStart, nameEnd, element.name)) {
+                element.depth++;
+            }
+        }
+        int value = findSyntaxAttributeValue(nameEnd, headerEnd);
+        if (value < 0) {
+            // Tags inside the header, e.g. in attribute values, are checked as usual
+            return nameEnd;
+        }
+        String name = text.subSequence(nameStart, nameEnd).toString();
+        if (regionEquals(value, Math.min(length, value + 3), "off")) {
+            // Continue at the matching end tag, which closes the element like any other end tag
+            return findMatchingEndTag(name, headerEnd);
+        }
+        syntaxElements.push(new SyntaxElement(name, doubleBraces));
+        doubleBraces = regionEquals(value, Math.min(length, value + 6), "double");
+        return nameEnd;
+    }
+
+    /**
+     * Counts an end tag of the elements with an n:syntax attribute of the same name, and restores
+     * the syntax of the elements that it closes.
+     */
+    private void closeSyntaxElements(int nameStart, int nameEnd) {
+        for (SyntaxElement element : syntaxElements) {
+            if (regionEquals(nameStart, nameEnd, element.name)) {
+                element.depth--;
+            }
+        }
+        while (!syntaxElements.isEmpty() && syntaxElements.peek().depth <= 0) {
+            doubleBraces = syntaxElements.pop().previousDoubleBraces;
+        }
+    }
+
+    /**
+     * Finds the end of the header of an HTML start tag, skipping quoted attribute values.
+     *
+     * @param from The offset after the tag name
+     * @return The offset of the closing '>', of a '<' that starts another tag, or the length of the text
+     */
+    private int findHeaderEnd(int from) {
+        char quote = 0;
+        for (int i = from; i < length; i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>' || c == '<') {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Finds the value of the n:syntax attribute in the header of an HTML start tag.
+     *
+     * @return The offset of the value after its opening quote, or -1 if the element has no n:syntax attribute
+     */
+    private int findSyntaxAttributeValue(int from, int headerEnd) {
+        String attribute = "n:syntax=";
+        char quote = 0;
+        for (int i = from; i < headerEnd; i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == 'n' && Character.isWhitespace(text.charAt(i - 1))
+                    && regionEquals(i, Math.min(length, i + attribute.length()), attribute)) {
+                int value = i + attribute.length();
+                if (value < length && (text.charAt(value) == '"' || text.charAt(value) == '\'')) {
+                    value++;
+                }
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the end tag matching an element, counting nested elements of the same name.
+     *
+     * @param name The name of the element
+     * @param from The offset after the header of its start tag
+     * @return The offset of the '<' of the end tag, or the length of the text if there is none
+     */
+    private int findMatchingEndTag(@NotNull String name, int from) {
+        int depth = 1;
+        for (int i = from; i < length; i++) {
+            if (text.charAt(i) != '<') {
+                continue;
+            }
+            boolean closing = i + 1 < length && text.charAt(i + 1) == '/';
+            int nameStart = closing ? i + 2 : i + 1;
+            int nameEnd = scanTagName(nameStart);
+            if (!regionEquals(nameStart, nameEnd, name)) {
+                continue;
+            }
+            if (!closing) {
+                depth++;
+            } else if (--depth == 0) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Scans the name of an HTML tag, which starts with a letter.
+     *
+     * @return The offset after the name, or {@code from} if there is no name
+     */
+    private int scanTagName(int from) {
+        if (from >= length || !Character.isLetter(text.charAt(from))) {
+            return from;
+        }
+        int end = from + 1;
+        while (end < length && isTagNameChar(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Finds the end of a tag, skipping quoted strings and nested braces in its arguments.
+     *
+     * @param from The offset after the macro name
+     * @return The offset just after the closing delimiter, or -1 if the tag is not closed
+     */
+    private int findTagEnd(int from) {
+        char quote = 0;
+        int depth = 0;
+        for (int i = from; i < length; i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth > 0) {
+                    depth--;
+                } else if (!doubleBraces) {
+                    return i + 1;
+                } else if (i + 1 < length && text.charAt(i + 1) == '}') {
+                    return i + 2;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a tag ends with "/", e.g. {block name /}.
+     */
+    private boolean isSelfClosing(int closingDelimiter) {
+        int i = closingDelimiter - 1;
+        while (i >= 0 && Character.isWhitespace(text.charAt(i))) {
+            i--;
+        }
+        return i >= 0 && text.charAt(i) == '/';
+    }
+
+    private int scanName(int from) {
+        if (from >= length || !isNameStart(text.charAt(from))) {
+            return from;
+        }
+        int end = from + 1;
+        while (end < length && (isNameStart(text.charAt(end)) || isAsciiDigit(text.charAt(end)))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isNameStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isTagNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == ':' || c == '_';
+    }
+
+    private boolean regionEquals(int start, int end, @NotNull String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (text.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(@NotNull String needle, int from) {
+        for (int i = from; i + needle.length() <= length; i++) {
+            if (regionEquals(i, i + needle.length(), needle)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void reportUnclosed(@NotNull OpenBlock block) {
+        report("Unclosed macro {" + block.name + "}", HighlightSeverity.ERROR, block.start, block.end);
+    }
+
+    private void report(@NotNull String message, @NotNull HighlightSeverity severity, int start, int end) {
+        problems.add(new LatteValidationProblem(message, severity, start, end));
+    }
+
+    /**
+     * An element with an n:syntax attribute, the number of its open elements of the same name
+     * including itself, and the syntax to restore at its end tag.
+     */
+    private static final class SyntaxElement {
+        private final String name;
+        private final boolean previousDoubleBraces;
+        private int depth = 1;
+
+        SyntaxElement(@NotNull String name, boolean previousDoubleBraces) {
+            this.name = name;
+            this.previousDoubleBraces = previousDoubleBraces;
+        }
+    }
+
+    /**
+     * An open paired block and the range of its start tag.
+     */
+    private static final class OpenBlock {
+        private final String name;
+        private final int start;
+        private final int end;
+
+        OpenBlock(@NotNull String name, int start, int end) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -3,12 +3,16 @@ package cz.hqm.latte.plugin.validator;
 import com.intellij.lang.annotation.AnnotationHolder;
 import com.intellij.lang.annotation.HighlightSeverity;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import cz.hqm.latte.plugin.util.LatteLogger;
 import org.jetbrains.annotations.NotNull;
 // Explicit import for LatteValidator for better code clarity
 // Not strictly necessary as both classes are in the same package
 
+import java.util.List;
+
 /**
  * Captures and logs validation errors displayed in Latte files.
  * Logging only occurs during development and is disabled in distribution builds.
@@ -25,7 +29,7 @@ public class LatteErrorReporter {
     public static void logValidationError(@NotNull String message, @NotNull PsiElement element) {
         // Use the specialized validation error logging method to ensure errors are logged to validation_errors.log
         // Use truncateElementText to format multi-line element text
-        LatteLogger.logValidationError(LOG, message, LatteValidator.truncateElementText(element.getText()), element.getTextOffset());
+        LatteLogger.logValidationError(LOG, message, () -> LatteValidator.truncateElementText(element.getText()), element.getTextOffset());
     }
 
     /**
@@ -42,11 +46,53 @@ public class LatteErrorReporter {
                                         @NotNull AnnotationHolder holder) {
         // Use the specialized validation error logging method to ensure errors are logged to validation_errors.log
         // Use truncateElementText to format multi-line element text
-        LatteLogger.logValidationError(LOG, message, LatteValidator.truncateElementText(element.getText()), element.getTextOffset());
+        LatteLogger.logValidationError(LOG, message, () -> LatteValidator.truncateElementText(element.getText()), element.getTextOffset());
         
         // Create the annotation in the editor
         holder.newAnnotation(severity, message)
               .range(element.getTextRange())
               .create();
     }
-}
\ No newline at end of file
+
+    /**
+     * Logs the validation problems found in a file.
+     * Called once when the problems are found; the cached problems are annotated without logging them again.
+     * 
+     * @param problems The problems
+     * @param file The file the problems were found in
+     */
+    public static void logProblems(@NotNull List<LatteValidationProblem> problems, @NotNull PsiFile file) {
+        if (problems.isEmpty() || !LatteLogger.isLoggingEnabled()) {
+            return;
+        }
+        CharSequence text = file.getNode().getChars();
+        for (LatteValidationProblem problem : problems) {
+            int start = Math.min(problem.getStartOffset(), text.length());
+            int end = Math.max(start, Math.min(problem.getEndOffset(), text.length()));
+            LatteLogger.logValidationError(LOG, problem.getMessage(),
+                    () -> LatteValidator.truncateElementText(text.subSequence(start, end).toString()), start,
+                    file.getVirtualFile(), file.getProject());
+        }
+    }
+
+    /**
+     * Creates the annotation of a validation problem of a file.
+     * 
+     * @param problem The problem
+     * @param file The file the problem was found in
+     * @param holder AnnotationHolder
+     */
+    public static void reportProblem(@NotNull LatteValidationProblem problem,
+                                     @NotNull PsiFile file,
+                                     @NotNull AnnotationHolder holder) {
+        // The problems may have been found in an earlier version of the file
+        int length = file.getTextLength();
+        int start = Math.min(problem.getStartOffset(), length);
+        int end = Math.max(start, Math.min(problem.getEndOffset(), length));
+        
+        // Create the annotation in the editor
+        holder.newAnnotation(problem.getSeverity(), problem.getMessage())
+              .range(new TextRange(start, end))
+              .create();
+    }
+}
@@ -0,0 +1,65 @@
+package cz.hqm.latte.plugin.validator;
+
+import com.intellij.lang.annotation.HighlightSeverity;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A problem found in a Latte template, with the range of the template text it applies to.
+ */
+public final class LatteValidationProblem {
+    private final String message;
+    private final HighlightSeverity severity;
+    private final int startOffset;
+    private final int endOffset;
+
+    /**
+     * Creates a problem.
+     *
+     * @param message The message describing the problem
+     * @param severity The severity of the problem
+     * @param startOffset The start offset of the problem in the template text
+     * @param endOffset The end offset of the problem in the template text
+     */
+    public LatteValidationProblem(@NotNull String message, @NotNull HighlightSeverity severity,
+                                  int startOffset, int endOffset) {
+        this.message = message;
+        this.severity = severity;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * @return The message describing the problem
+     */
+    @NotNull
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The severity of the problem
+     */
+    @NotNull
+    public HighlightSeverity getSeverity() {
+        return severity;
+    }
+
+    /**
+     * @return The start offset of the problem in the template text
+     */
+    public int getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * @return The end offset of the problem in the template text
+     */
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    @Override
+    public String toString() {
+        return severity.getName() + " [" + startOffset + ", " + endOffset + "): " + message;
+    }
+}
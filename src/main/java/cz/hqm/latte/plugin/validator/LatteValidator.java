@@ -1,30 +1,38 @@
 package cz.hqm.latte.plugin.validator;
 
-import com.intellij.lang.annotation.HighlightSeverity;
-import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiElement;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiRecursiveElementVisitor;
-import com.intellij.psi.tree.IElementType;
-import cz.hqm.latte.plugin.lexer.LatteTokenTypes;
-import cz.hqm.latte.plugin.util.LatteLogger;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import cz.hqm.latte.plugin.custom.CustomTagsProvider;
+import cz.hqm.latte.plugin.macros.LatteVersionSpecificMacroProvider;
+import cz.hqm.latte.plugin.macros.NetteMacro;
+import cz.hqm.latte.plugin.macros.NetteMacroProvider;
+import cz.hqm.latte.plugin.settings.LatteProjectSettings;
+import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.version.ComposerMetadataService;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import cz.hqm.latte.plugin.version.LatteVersionManager;
+import cz.hqm.latte.plugin.version.NettePackageDetector;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Validator for Latte files.
  * Detects and reports syntax errors in Latte files.
  */
 public class LatteValidator {
-    private static final Logger LOG = Logger.getInstance(LatteValidator.class);
-    
     /**
      * Maximum number of lines to display in element text logging.
      */
@@ -82,234 +90,122 @@ public class LatteValidator {
             "first", "last", "sep", "include", "extends", "layout", "block", "define",
             "snippet", "snippetArea", "capture", "var", "default", "dump", "debugbreak",
             "l", "r", "syntax", "use", "_", "=", "contentType", "status", "php",
-            "do", "varType", "templateType", "parameters"
+            "do", "varType", "templateType", "parameters", "elseifset", "ifchanged", "embed",
+            "sandbox", "iterateWhile", "breakIf", "continueIf", "exitIf", "cache", "varPrint",
+            "templatePrint"
     ));
 
-    // Valid attribute names
-    private static final Set<String> VALID_ATTRIBUTE_NAMES = new HashSet<>(Arrays.asList(
-            "n:if", "n:ifset", "n:foreach", "n:inner-foreach", "n:class", "n:attr", "n:tag",
-            "n:snippet", "n:block", "n:include", "n:inner-if", "n:inner-ifset", "n:ifcontent",
-            "n:href", "n:name", "n:nonce", "n:syntax"
+    // Nette packages whose macros are known in every template; a macro of a package the module
+    // does not use is still a Latte macro, not a typo
+    private static final Set<String> NETTE_PACKAGES = new HashSet<>(Arrays.asList(
+            NettePackageDetector.NETTE_APPLICATION, NettePackageDetector.NETTE_FORMS,
+            NettePackageDetector.NETTE_ASSETS, NettePackageDetector.NETTE_DATABASE,
+            NettePackageDetector.NETTE_SECURITY, NettePackageDetector.NETTE_MAIL,
+            NettePackageDetector.NETTE_HTTP
     ));
 
-    // Valid attribute prefixes
-    private static final Set<String> VALID_ATTRIBUTE_PREFIXES = new HashSet<>(Arrays.asList(
-            "n:", "n:inner-", "n:tag-", "n:class-", "n:attr-", 
-            // Support for prefixed n:attributes (e.g., n:class:hover)
-            "n:class:", "n:attr:", "n:tag:", "n:data-"
-    ));
+    // Cached problems of a file, see getProblems
+    private static final Key<CachedValue<List<LatteValidationProblem>>> PROBLEMS_KEY = Key.create("latte.validation.problems");
+
+    // Macro names of each Latte version, built-in macros included; the same in every project
+    private static final Map<LatteVersion, Set<String>> VERSION_MACRO_NAMES = new ConcurrentHashMap<>();
+
+    // Macro names known in a project by Latte version, custom tags included, see getKnownMacroNames
+    private static final Key<CachedValue<Map<LatteVersion, Set<String>>>> KNOWN_MACRO_NAMES_KEY = Key.create("latte.validation.knownMacroNames");
 
     /**
-     * Validates a Latte file and reports any errors.
+     * Gets the problems of the macro tags of a Latte file, see {@link #validateText}.
+     * The problems are cached with the file until the file changes, the settings or composer
+     * metadata that determine its Latte version change, or the custom tags of the project change.
+     * Error tokens of the lexer are annotated separately, by {@code LatteErrorAnnotator}.
      *
      * @param file The file to validate
+     * @return The problems found, ordered by their start offset
      */
-    public static void validateFile(@NotNull PsiFile file) {
-        LatteLogger.debug(LOG, "Validating Latte file: " + file.getName());
-        
-        // Log a test validation error to confirm that the logging mechanism is working
-        LatteLogger.logValidationError(LOG, "Starting validation of Latte file", 
-                                     file.getName(), 0,
-                                     file.getVirtualFile(), file.getProject());
-        
-        // Visit all elements in the file and validate them
-        file.accept(new PsiRecursiveElementVisitor() {
-            @Override
-            public void visitElement(@NotNull PsiElement element) {
-                validateElement(element);
-                super.visitElement(element);
-            }
+    @NotNull
+    public static List<LatteValidationProblem> getProblems(@NotNull PsiFile file) {
+        return CachedValuesManager.getCachedValue(file, PROBLEMS_KEY, () -> {
+            // The template is validated against the Latte version of its own composer module
+            Project project = file.getProject();
+            List<LatteValidationProblem> problems = validateText(file.getNode().getChars(),
+                    getKnownMacroNames(project, LatteVersionManager.getVersion(file)));
+            // Logged when the problems are found, not every time they are annotated
+            LatteErrorReporter.logProblems(problems, file);
+            ModificationTracker composerMetadata = ComposerMetadataService.getInstance(project)::getModificationCount;
+            return CachedValueProvider.Result.create(problems, file, LatteSettings.getInstance(), composerMetadata,
+                    LatteProjectSettings.getInstance(project));
         });
     }
 
     /**
-     * Validates a single PsiElement and reports any errors.
-     *
-     * @param element The element to validate
-     */
-    private static void validateElement(@NotNull PsiElement element) {
-        IElementType elementType = element.getNode().getElementType();
-        
-        // Log that we're validating this element
-        LatteLogger.debug(LOG, "Validating element: " + truncateElementText(element.getText()) + " of type: " + elementType);
-        
-        // Check for error token types
-        if (elementType.equals(LatteTokenTypes.LATTE_ERROR_UNCLOSED_MACRO)) {
-            reportError("Unclosed macro", HighlightSeverity.ERROR, element);
-        } else if (elementType.equals(LatteTokenTypes.LATTE_ERROR_INVALID_MACRO_NAME)) {
-            reportError("Invalid macro name", HighlightSeverity.ERROR, element);
-        } else if (elementType.equals(LatteTokenTypes.LATTE_ERROR_MISMATCHED_MACRO_END)) {
-            reportError("Mismatched macro end", HighlightSeverity.ERROR, element);
-        } else if (elementType.equals(LatteTokenTypes.LATTE_ERROR_UNEXPECTED_MACRO_END)) {
-            reportError("Unexpected macro end", HighlightSeverity.ERROR, element);
-        } else if (elementType.equals(LatteTokenTypes.LATTE_ERROR_INVALID_ATTRIBUTE_SYNTAX)) {
-            reportError("Invalid attribute syntax", HighlightSeverity.ERROR, element);
-        } else if (elementType.equals(LatteTokenTypes.LATTE_ERROR_UNCLOSED_ATTRIBUTE_QUOTES)) {
-            reportError("Unclosed attribute quotes", HighlightSeverity.ERROR, element);
-        } else if (elementType.equals(LatteTokenTypes.LATTE_ERROR_INVALID_FILTER_SYNTAX)) {
-            reportError("Invalid filter syntax", HighlightSeverity.ERROR, element);
-        } else if (elementType.equals(LatteTokenTypes.LATTE_ERROR_UNKNOWN_FILTER)) {
-            reportError("Unknown filter", HighlightSeverity.WARNING, element);
-        } else if (elementType.equals(LatteTokenTypes.LATTE_ERROR_UNEXPECTED_CHARACTER)) {
-            reportError("Unexpected character", HighlightSeverity.ERROR, element);
-        }
-        
-        // Additional validation for specific element types
-        if (elementType.equals(LatteTokenTypes.LATTE_MACRO_NAME)) {
-            validateMacroName(element);
-        } else if (elementType.equals(LatteTokenTypes.LATTE_ATTRIBUTE_NAME)) {
-            validateAttributeName(element);
-        } else if (elementType.equals(LatteTokenTypes.LATTE_FILTER_NAME)) {
-            validateFilterName(element);
-        }
-    }
-
-    /**
-     * Validates a macro name and reports any errors.
+     * Validates the macro tags of a template outside a project, where no custom tags are known.
      *
-     * @param element The element containing the macro name
-     */
-    private static void validateMacroName(@NotNull PsiElement element) {
-        String macroName = element.getText();
-        
-        // Check if it's a valid macro name
-        if (!BUILT_IN_MACRO_NAMES.contains(macroName)) {
-            reportError("Unknown macro: " + macroName, HighlightSeverity.WARNING, element);
-        }
-        
-        // Add validation for {else} and {elseif} tags
-        if ("else".equals(macroName) || "elseif".equals(macroName)) {
-            boolean isInsideIfBlock = checkIfInsideIfBlock(element);
-            if (!isInsideIfBlock) {
-                // Report error for standalone {else} or {elseif} tag
-                reportError("Tag {" + macroName + "} must be inside an {if} block", HighlightSeverity.ERROR, element);
-            }
-        }
-    }
-    
-    /**
-     * Checks if the given element is inside an {if} block.
-     * 
-     * @param element The element to check
-     * @return true if the element is inside an {if} block, false otherwise
+     * @param text The template text
+     * @param version The Latte version of the template
+     * @return The problems found, ordered by their start offset
+     * @see #validateText(CharSequence, Set)
      */
-    private static boolean checkIfInsideIfBlock(@NotNull PsiElement element) {
-        // Get the parent element
-        PsiElement parent = element.getParent();
-        
-        // Track the nesting level of if blocks
-        int ifLevel = 0;
-        
-        // Iterate through previous siblings to find an {if} tag
-        PsiElement prevSibling = element.getPrevSibling();
-        while (prevSibling != null) {
-            // Check if this is a macro name element
-            if (prevSibling.getNode().getElementType().equals(LatteTokenTypes.LATTE_MACRO_NAME)) {
-                String macroName = prevSibling.getText();
-                
-                // Check for if/else tags
-                if ("if".equals(macroName)) {
-                    ifLevel++;
-                } else if ("/if".equals(macroName)) {
-                    ifLevel--;
-                }
-            }
-            
-            // If we found an open if block, return true
-            if (ifLevel > 0) {
-                return true;
-            }
-            
-            // Move to the previous sibling
-            prevSibling = prevSibling.getPrevSibling();
-        }
-        
-        // If we didn't find an open if block, check parent elements
-        while (parent != null) {
-            // Check if this parent contains an {if} tag before our element
-            PsiElement[] children = parent.getChildren();
-            boolean foundOurElement = false;
-            ifLevel = 0;
-            
-            for (PsiElement child : children) {
-                // Once we reach our element, stop checking
-                if (child == element) {
-                    foundOurElement = true;
-                    break;
-                }
-                
-                // Check if this is a macro name element
-                if (child.getNode().getElementType().equals(LatteTokenTypes.LATTE_MACRO_NAME)) {
-                    String macroName = child.getText();
-                    
-                    // Check for if/else tags
-                    if ("if".equals(macroName)) {
-                        ifLevel++;
-                    } else if ("/if".equals(macroName)) {
-                        ifLevel--;
-                    }
-                }
-            }
-            
-            // If we found an open if block, return true
-            if (ifLevel > 0) {
-                return true;
-            }
-            
-            // Move up to the parent
-            parent = parent.getParent();
-        }
-        
-        // If we didn't find an open if block, return false
-        return false;
+    @NotNull
+    public static List<LatteValidationProblem> validateText(@NotNull CharSequence text, @NotNull LatteVersion version) {
+        return validateText(text, getKnownMacroNames(version));
     }
 
     /**
-     * Validates an attribute name and reports any errors.
+     * Validates the macro tags of a template in a single pass over its text: unknown macros,
+     * mismatched and unexpected end tags, unclosed blocks and misplaced {else} and {elseif} tags.
      *
-     * @param element The element containing the attribute name
+     * @param text The template text
+     * @param knownMacroNames The macro names known in the template, see {@link #getKnownMacroNames}
+     * @return The problems found, ordered by their start offset
      */
-    private static void validateAttributeName(@NotNull PsiElement element) {
-        String attributeName = element.getText();
-        
-        // Check if it's a valid attribute name
-        if (!VALID_ATTRIBUTE_NAMES.contains(attributeName) && 
-                !VALID_ATTRIBUTE_PREFIXES.stream().anyMatch(prefix -> attributeName.startsWith(prefix))) {
-            reportError("Unknown attribute: " + attributeName, HighlightSeverity.WARNING, element);
-        }
+    @NotNull
+    public static List<LatteValidationProblem> validateText(@NotNull CharSequence text, @NotNull Set<String> knownMacroNames) {
+        return LatteBlockChecker.check(text, knownMacroNames);
     }
 
     /**
-     * Validates a filter name and reports any errors.
+     * Gets the macro names known in templates of the given Latte version in a project: the built-in
+     * macros, the macros specific to the version and the custom tags of the project. The names are
+     * cached with the project until its custom tags change.
      *
-     * @param element The element containing the filter name
+     * @param project The project
+     * @param version The Latte version
+     * @return The known macro names
      */
-    private static void validateFilterName(@NotNull PsiElement element) {
-        String filterName = element.getText();
-        
-        // For now, we don't have a list of valid filter names
-        // This could be enhanced to check against a list of known filters
+    @NotNull
+    public static Set<String> getKnownMacroNames(@NotNull Project project, @NotNull LatteVersion version) {
+        Map<LatteVersion, Set<String>> byVersion = CachedValuesManager.getManager(project).getCachedValue(project,
+                KNOWN_MACRO_NAMES_KEY,
+                () -> CachedValueProvider.Result.create(new ConcurrentHashMap<>(), LatteProjectSettings.getInstance(project)),
+                false);
+        return byVersion.computeIfAbsent(version, key -> {
+            Set<String> names = new HashSet<>(getKnownMacroNames(key));
+            names.addAll(CustomTagsProvider.getAllTagNames(project));
+            return Collections.unmodifiableSet(names);
+        });
     }
 
     /**
-     * Reports an error for the given element.
+     * Gets the macro names known in the given Latte version in every project: the built-in macros,
+     * the macros of the Nette packages and the macros specific to the version.
      *
-     * @param message The error message
-     * @param severity The severity of the error
-     * @param element The element with the error
+     * @param version The Latte version
+     * @return The macro names of the version
      */
-    private static void reportError(@NotNull String message, @NotNull HighlightSeverity severity, @NotNull PsiElement element) {
-        // Log the error
-        LatteLogger.debug(LOG, "Reporting error: " + message + " for element: " + truncateElementText(element.getText()));
-        
-        // Log the validation error
-        LatteErrorReporter.logValidationError(message, element);
-        
-        // Get the virtual file and project for more detailed logging
-        VirtualFile file = element.getContainingFile().getVirtualFile();
-        Project project = element.getProject();
-        
-        // Log with file and project information
-        LatteLogger.logValidationError(LOG, message, truncateElementText(element.getText()), element.getTextOffset(), file, project);
+    @NotNull
+    public static Set<String> getKnownMacroNames(@NotNull LatteVersion version) {
+        return VERSION_MACRO_NAMES.computeIfAbsent(version, key -> {
+            Set<String> names = new HashSet<>(BUILT_IN_MACRO_NAMES);
+            for (NetteMacro macro : NetteMacroProvider.getAllMacros(NETTE_PACKAGES)) {
+                // End tags such as "/ifRow" are listed too; names are checked without the slash
+                if (!macro.getName().startsWith("/")) {
+                    names.add(macro.getName());
+                }
+            }
+            for (NetteMacro macro : LatteVersionSpecificMacroProvider.getAllMacros(key)) {
+                names.add(macro.getName());
+            }
+            return Collections.unmodifiableSet(names);
+        });
     }
-}
\ No newline at end of file
+}
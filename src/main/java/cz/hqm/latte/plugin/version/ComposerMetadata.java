@@ -0,0 +1,126 @@
+package cz.hqm.latte.plugin.version;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable snapshot of the packages of a Composer project: the version constraints from the
+ * require and require-dev sections of composer.json and the installed versions from composer.lock.
+ * Snapshots are published by {@link ComposerMetadataService} and can be read from any thread.
+ */
+public final class ComposerMetadata {
+
+    public static final ComposerMetadata EMPTY = new ComposerMetadata(false,
+            Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+    // Pattern to match versions and constraints like "^2.4", "~3.0", "3.*" or "v3.1.2"
+    private static final Pattern VERSION_PATTERN = Pattern.compile("^[~^v]?(\\d+)\\.");
+
+    private final boolean composerFileFound;
+    private final Map<String, String> require;
+    private final Map<String, String> requireDev;
+    private final Map<String, String> lockedVersions;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param composerFileFound Whether a composer.json file was found
+     * @param require The constraints from the require section by package name
+     * @param requireDev The constraints from the require-dev section by package name
+     * @param lockedVersions The installed versions from composer.lock by package name
+     */
+    public ComposerMetadata(boolean composerFileFound,
+                            @NotNull Map<String, String> require,
+                            @NotNull Map<String, String> requireDev,
+                            @NotNull Map<String, String> lockedVersions) {
+        this.composerFileFound = composerFileFound;
+        this.require = Collections.unmodifiableMap(new HashMap<>(require));
+        this.requireDev = Collections.unmodifiableMap(new HashMap<>(requireDev));
+        this.lockedVersions = Collections.unmodifiableMap(new HashMap<>(lockedVersions));
+    }
+
+    /**
+     * Checks whether the snapshot was read from a composer.json file.
+     *
+     * @return True if a composer.json file was found
+     */
+    public boolean isComposerFileFound() {
+        return composerFileFound;
+    }
+
+    /**
+     * Checks whether a package is required or installed.
+     *
+     * @param packageName The package name, e.g. "nette/forms"
+     * @return True if the package is in composer.json or composer.lock
+     */
+    public boolean hasPackage(@NotNull String packageName) {
+        return require.containsKey(packageName) || requireDev.containsKey(packageName) || lockedVersions.containsKey(packageName);
+    }
+
+    /**
+     * Gets the version constraint of a package, from the require section first and then from require-dev.
+     *
+     * @param packageName The package name
+     * @return The constraint, or null if the package is not required
+     */
+    @Nullable
+    public String getConstraint(@NotNull String packageName) {
+        String constraint = require.get(packageName);
+        return constraint != null ? constraint : requireDev.get(packageName);
+    }
+
+    /**
+     * Gets the installed version of a package from composer.lock.
+     *
+     * @param packageName The package name
+     * @return The installed version, or null if the package is not locked
+     */
+    @Nullable
+    public String getLockedVersion(@NotNull String packageName) {
+        return lockedVersions.get(packageName);
+    }
+
+    /**
+     * Gets the major version of a package. The installed version is preferred over the constraint.
+     *
+     * @param packageName The package name
+     * @return The major version, or -1 if the package is unknown or its version cannot be parsed
+     */
+    public int getMajorVersion(@NotNull String packageName) {
+        int locked = parseMajorVersion(lockedVersions.get(packageName));
+        return locked >= 0 ? locked : parseMajorVersion(getConstraint(packageName));
+    }
+
+    /**
+     * Parses the major version of a version or constraint.
+     *
+     * @param version The version (e.g. "v3.1.2") or constraint (e.g. "^2.4", "~3.0", "3.*")
+     * @return The major version, or -1 if it cannot be parsed
+     */
+    public static int parseMajorVersion(@Nullable String version) {
+        if (version == null) {
+            return -1;
+        }
+        Matcher matcher = VERSION_PATTERN.matcher(version.trim());
+        if (matcher.find()) {
+            try {
+                return Integer.parseInt(matcher.group(1));
+            } catch (NumberFormatException e) {
+                // Ignore and report an unknown version
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "ComposerMetadata{require=" + require + ", requireDev=" + requireDev + ", locked=" + lockedVersions + "}";
+    }
+}
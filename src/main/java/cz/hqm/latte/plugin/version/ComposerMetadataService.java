@@ -0,0 +1,434 @@
+package cz.hqm.latte.plugin.version;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import cz.hqm.latte.plugin.util.LatteLogger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Project service that reads composer.json and composer.lock of the project once and publishes
+ * the result as an immutable {@link ComposerMetadata} snapshot. Both files are read with a
+ * streaming JSON reader on a pooled thread, and read again only when the file system reports a
+ * change to one of them, so version checks during completion never touch the disk.
+ * <p>
+ * In a monorepo every application has its own composer.json. {@link #getMetadata(VirtualFile)}
+ * resolves the snapshot of the nearest composer.json above a template; each module is read once
+ * and the module of each directory is memoized until a composer file or a directory changes.
+ * Modules are looked up and read on the refresh thread as well; until a module has been read,
+ * its templates get the project snapshot.
+ */
+@Service(Service.Level.PROJECT)
+public final class ComposerMetadataService implements Disposable {
+    private static final Logger LOG = Logger.getInstance(ComposerMetadataService.class);
+
+    public static final String COMPOSER_JSON = "composer.json";
+    public static final String COMPOSER_LOCK = "composer.lock";
+
+    // Directory of installed packages; their composer files do not describe the application
+    private static final String VENDOR_DIRECTORY = "vendor";
+
+    // The project this service is associated with
+    private final Project project;
+
+    // The current snapshot; replaced as a whole on every refresh
+    private volatile ComposerMetadata metadata = ComposerMetadata.EMPTY;
+
+    // Incremented every time a new snapshot is published
+    private final AtomicLong modificationCount = new AtomicLong();
+
+    // Snapshots of the modules below the project directory by the directory holding their composer.json
+    private final Map<VirtualFile, ComposerMetadata> moduleCache = new ConcurrentHashMap<>();
+
+    // Module directory by the directory of a template; empty for templates of the project module
+    private final Map<VirtualFile, Optional<VirtualFile>> directoryModules = new ConcurrentHashMap<>();
+
+    // Template directories whose module is being looked up on the refresh thread
+    private final Set<VirtualFile> pendingDirectories = ConcurrentHashMap.newKeySet();
+
+    // Reads the composer files one at a time, off the threads that ask for the snapshots
+    private final ExecutorService refreshExecutor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Latte Composer Metadata", 1);
+
+    /**
+     * Constructor that subscribes to file system changes and schedules the first read.
+     *
+     * @param project The project this service is associated with
+     */
+    public ComposerMetadataService(Project project) {
+        this.project = project;
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                boolean composerChanged = false;
+                boolean layoutChanged = false;
+                for (VFileEvent event : events) {
+                    if (isComposerFile(event.getPath())) {
+                        composerChanged = true;
+                    } else if (!(event instanceof VFileContentChangeEvent) && isDirectoryEvent(event)) {
+                        layoutChanged = true;
+                    }
+                }
+                if (composerChanged) {
+                    modificationCount.incrementAndGet();
+                    moduleCache.clear();
+                    directoryModules.clear();
+                    scheduleRefresh();
+                } else if (layoutChanged) {
+                    directoryModules.clear();
+                }
+            }
+        });
+        scheduleRefresh();
+    }
+
+    /**
+     * Gets the instance of this service for the given project.
+     *
+     * @param project The project to get the service for
+     * @return The service instance
+     */
+    public static ComposerMetadataService getInstance(@NotNull Project project) {
+        return project.getService(ComposerMetadataService.class);
+    }
+
+    /**
+     * Gets the current snapshot. Never reads from disk.
+     *
+     * @return The packages of the project; empty until the first read has finished
+     */
+    @NotNull
+    public ComposerMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Gets the snapshot of the module a file belongs to: the nearest directory above the file that
+     * holds a composer.json file. Composer files inside vendor directories are skipped, because
+     * templates of installed packages are rendered by the application that installed them.
+     * Never reads from disk: the first lookup in a directory schedules the module to be read on the
+     * refresh thread and returns the project snapshot; in unit tests the module is read synchronously.
+     *
+     * @param file The template, or null for the project snapshot
+     * @return The packages of the module; the project snapshot if no module is found or it is not read yet
+     */
+    @NotNull
+    public ComposerMetadata getMetadata(@Nullable VirtualFile file) {
+        VirtualFile directory = file == null ? null : file.isDirectory() ? file : file.getParent();
+        if (directory == null) {
+            return metadata;
+        }
+        Optional<VirtualFile> moduleRoot = directoryModules.get(directory);
+        if (moduleRoot == null) {
+            if (ApplicationManager.getApplication().isUnitTestMode()) {
+                loadModule(directory);
+            } else if (!refreshExecutor.isShutdown() && pendingDirectories.add(directory)) {
+                refreshExecutor.execute(() -> {
+                    try {
+                        loadModule(directory);
+                    } finally {
+                        pendingDirectories.remove(directory);
+                    }
+                });
+            }
+            moduleRoot = directoryModules.get(directory);
+        }
+        if (moduleRoot == null || moduleRoot.isEmpty()) {
+            return metadata;
+        }
+        ComposerMetadata module = moduleCache.get(moduleRoot.get());
+        return module != null ? module : metadata;
+    }
+
+    /**
+     * Finds the module of a template directory and reads its composer files, unless they have been read.
+     * Publishes the result by incrementing the modification count, so values derived from the
+     * project snapshot in the meantime are computed again.
+     *
+     * @param directory The directory of a template
+     */
+    private void loadModule(@NotNull VirtualFile directory) {
+        if (project.isDisposed()) {
+            return;
+        }
+        // A snapshot read while its files change is dropped; the next lookup reads it again
+        long count = modificationCount.get();
+        VirtualFile root = ReadAction.compute(() -> directory.isValid() ? findModuleRoot(directory, getProjectDirectory()) : null);
+        ComposerMetadata module = null;
+        if (root != null && !moduleCache.containsKey(root)) {
+            // Only the files are resolved in a read action; they are parsed outside of it
+            VirtualFile[] files = ReadAction.compute(() -> root.isValid()
+                    ? new VirtualFile[] { root.findChild(COMPOSER_JSON), root.findChild(COMPOSER_LOCK) }
+                    : new VirtualFile[2]);
+            module = read(files[0], files[1]);
+        }
+        if (modificationCount.get() != count) {
+            return;
+        }
+        if (module != null) {
+            moduleCache.put(root, module);
+        }
+        directoryModules.put(directory, Optional.ofNullable(root));
+        if (module != null) {
+            modificationCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of changes to the composer files seen so far, for callers that cache values
+     * derived from the snapshots.
+     *
+     * @return The modification count
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
+    /**
+     * Reads the composer files again on a pooled thread.
+     * In unit tests the files are read synchronously so that tests see the result immediately.
+     */
+    public void scheduleRefresh() {
+        if (ApplicationManager.getApplication().isUnitTestMode()) {
+            refresh();
+        } else {
+            refreshInBackground();
+        }
+    }
+
+    /**
+     * Reads the composer files again on the refresh thread, also in unit tests.
+     *
+     * @return A future that completes once the new snapshot has been published
+     */
+    @NotNull
+    public Future<?> refreshInBackground() {
+        if (refreshExecutor.isShutdown()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return refreshExecutor.submit(this::refresh);
+    }
+
+    /**
+     * Reads the composer files and publishes a new snapshot.
+     */
+    public void refresh() {
+        if (project.isDisposed()) {
+            return;
+        }
+        VirtualFile[] files = ReadAction.compute(() -> {
+            VirtualFile baseDir = getProjectDirectory();
+            return baseDir == null ? new VirtualFile[2]
+                    : new VirtualFile[] { baseDir.findChild(COMPOSER_JSON), baseDir.findChild(COMPOSER_LOCK) };
+        });
+        metadata = read(files[0], files[1]);
+        modificationCount.incrementAndGet();
+    }
+
+    @Override
+    public void dispose() {
+        // Reads still queued would only publish snapshots of a closed project
+        refreshExecutor.shutdownNow();
+        metadata = ComposerMetadata.EMPTY;
+        moduleCache.clear();
+        directoryModules.clear();
+    }
+
+    @Nullable
+    private VirtualFile getProjectDirectory() {
+        return ProjectUtil.guessProjectDir(project);
+    }
+
+    /**
+     * Finds the nearest directory below the project directory holding a composer.json file,
+     * ignoring directories inside vendor.
+     *
+     * @param directory The directory of a template
+     * @param projectDirectory The project directory, whose composer files the project snapshot holds
+     * @return The module directory, or null for templates of the project module and outside the project
+     */
+    @Nullable
+    private static VirtualFile findModuleRoot(@NotNull VirtualFile directory, @Nullable VirtualFile projectDirectory) {
+        if (projectDirectory == null || !VfsUtilCore.isAncestor(projectDirectory, directory, false)) {
+            return null;
+        }
+        VirtualFile moduleRoot = null;
+        for (VirtualFile current = directory; !current.equals(projectDirectory); current = current.getParent()) {
+            if (VENDOR_DIRECTORY.equals(current.getName())) {
+                // Everything found so far belongs to an installed package
+                moduleRoot = null;
+            } else if (moduleRoot == null && current.findChild(COMPOSER_JSON) != null) {
+                moduleRoot = current;
+            }
+        }
+        return moduleRoot;
+    }
+
+    private static boolean isDirectoryEvent(@NotNull VFileEvent event) {
+        if (event instanceof VFileCreateEvent) {
+            return ((VFileCreateEvent) event).isDirectory();
+        }
+        VirtualFile file = event.getFile();
+        return file != null && file.isDirectory();
+    }
+
+    /**
+     * Reads a composer.json file and the composer.lock file next to it.
+     * Reads from disk, so it is called outside of read actions.
+     *
+     * @param composerJson The composer.json file, or null if there is none
+     * @param composerLock The composer.lock file, or null if there is none
+     * @return The snapshot of the packages
+     */
+    @NotNull
+    public static ComposerMetadata read(@Nullable VirtualFile composerJson, @Nullable VirtualFile composerLock) {
+        if (composerJson == null || !composerJson.isValid()) {
+            return ComposerMetadata.EMPTY;
+        }
+
+        Map<String, String> require = new HashMap<>();
+        Map<String, String> requireDev = new HashMap<>();
+        Map<String, String> locked = new HashMap<>();
+        try (JsonReader reader = openReader(composerJson)) {
+            readComposerJson(reader, require, requireDev);
+        } catch (IOException | RuntimeException e) {
+            LatteLogger.warn(LOG, "Error parsing " + composerJson.getPath() + ": " + e.getMessage());
+        }
+        if (composerLock != null && composerLock.isValid()) {
+            try (JsonReader reader = openReader(composerLock)) {
+                readComposerLock(reader, locked);
+            } catch (IOException | RuntimeException e) {
+                LatteLogger.warn(LOG, "Error parsing " + composerLock.getPath() + ": " + e.getMessage());
+            }
+        }
+        return new ComposerMetadata(true, require, requireDev, locked);
+    }
+
+    /**
+     * Checks whether a path points to a composer.json or composer.lock file.
+     *
+     * @param path The path
+     * @return True for composer files
+     */
+    public static boolean isComposerFile(@NotNull String path) {
+        return path.endsWith("/" + COMPOSER_JSON) || path.endsWith("/" + COMPOSER_LOCK)
+                || path.equals(COMPOSER_JSON) || path.equals(COMPOSER_LOCK);
+    }
+
+    @NotNull
+    private static JsonReader openReader(@NotNull VirtualFile file) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        return reader;
+    }
+
+    /**
+     * Reads the require and require-dev sections, skipping everything else without building a tree.
+     */
+    private static void readComposerJson(@NotNull JsonReader reader, @NotNull Map<String, String> require,
+                                         @NotNull Map<String, String> requireDev) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("require".equals(name)) {
+                readConstraints(reader, require);
+            } else if ("require-dev".equals(name)) {
+                readConstraints(reader, requireDev);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readConstraints(@NotNull JsonReader reader, @NotNull Map<String, String> constraints) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String packageName = reader.nextName();
+            if (reader.peek() == JsonToken.STRING) {
+                constraints.put(packageName, reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads the name and version of each entry in the packages and packages-dev sections.
+     * Lock files of large projects are several megabytes, so all other values are skipped.
+     */
+    private static void readComposerLock(@NotNull JsonReader reader, @NotNull Map<String, String> locked) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (("packages".equals(name) || "packages-dev".equals(name)) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readLockedPackage(reader, locked);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readLockedPackage(@NotNull JsonReader reader, @NotNull Map<String, String> locked) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        String packageName = null;
+        String version = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("name".equals(name) && reader.peek() == JsonToken.STRING) {
+                packageName = reader.nextString();
+            } else if ("version".equals(name) && reader.peek() == JsonToken.STRING) {
+                version = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (packageName != null && version != null) {
+            locked.put(packageName, version);
+        }
+    }
+}
@@ -1,8 +1,18 @@
 package cz.hqm.latte.plugin.version;
 
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.openapi.vfs.VirtualFile;
+import cz.hqm.latte.plugin.settings.LatteSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 /**
  * Manages the Latte version used by the plugin.
- * This simplified implementation uses a static configuration approach.
+ * The current version is the fallback for templates whose module does not require Latte;
+ * {@link #getVersion(PsiElement)} resolves the version of a single template from the
+ * nearest composer.json, so modules using different Latte versions can live side by side.
  */
 public class LatteVersionManager {
 
@@ -29,15 +39,65 @@ public class LatteVersionManager {
         }
     }
 
+    /**
+     * Gets the Latte version of the template the given element belongs to.
+     * The version required by the nearest composer.json is used, or the manually selected version
+     * when the settings override the detected one. Templates whose module does not require Latte
+     * use the current version.
+     *
+     * @param context An element of the template, or null
+     * @return The version of the template
+     */
+    @NotNull
+    public static LatteVersion getVersion(@Nullable PsiElement context) {
+        if (context == null || !context.isValid()) {
+            return currentVersion;
+        }
+        PsiFile file = context.getContainingFile();
+        VirtualFile virtualFile = file != null ? file.getOriginalFile().getVirtualFile() : null;
+        return getVersion(context.getProject(), virtualFile);
+    }
+
+    /**
+     * Gets the Latte version of the given template file.
+     *
+     * @param project The project, or null
+     * @param file The template file, or null
+     * @return The version of the template
+     * @see #getVersion(PsiElement)
+     */
+    @NotNull
+    public static LatteVersion getVersion(@Nullable Project project, @Nullable VirtualFile file) {
+        if (project == null || file == null) {
+            return currentVersion;
+        }
+        LatteVersion detected = LatteVersionDetector.findVersion(project, file);
+        if (detected == null) {
+            return currentVersion;
+        }
+        LatteSettings settings = LatteSettings.getInstance();
+        return settings.isOverrideDetectedVersion() ? settings.getSelectedVersionEnum() : detected;
+    }
+
     /**
      * Checks if the current version is Latte 2.x.
      *
      * @return True if the current version is 2.x, false otherwise
      */
     public static boolean isVersion2x() {
-        return currentVersion == LatteVersion.VERSION_2X || 
-               currentVersion == LatteVersion.VERSION_2_4 || 
-               currentVersion == LatteVersion.VERSION_2_5;
+        return isVersion2x(currentVersion);
+    }
+
+    /**
+     * Checks if a version is Latte 2.x.
+     *
+     * @param version The version to check
+     * @return True if the version is 2.x, false otherwise
+     */
+    public static boolean isVersion2x(LatteVersion version) {
+        return version == LatteVersion.VERSION_2X || 
+               version == LatteVersion.VERSION_2_4 || 
+               version == LatteVersion.VERSION_2_5;
     }
     
     /**
@@ -64,9 +124,19 @@ public class LatteVersionManager {
      * @return True if the current version is 3.0+, false otherwise
      */
     public static boolean isVersion3x() {
-        return currentVersion == LatteVersion.VERSION_3X || 
-               currentVersion == LatteVersion.VERSION_3_0 || 
-               currentVersion == LatteVersion.VERSION_3_1;
+        return isVersion3x(currentVersion);
+    }
+
+    /**
+     * Checks if a version is Latte 3.0+.
+     *
+     * @param version The version to check
+     * @return True if the version is 3.0+, false otherwise
+     */
+    public static boolean isVersion3x(LatteVersion version) {
+        return version == LatteVersion.VERSION_3X || 
+               version == LatteVersion.VERSION_3_0 || 
+               version == LatteVersion.VERSION_3_1;
     }
     
     /**
@@ -93,8 +163,18 @@ public class LatteVersionManager {
      * @return True if the current version is 4.0+, false otherwise
      */
     public static boolean isVersion4x() {
-        return currentVersion == LatteVersion.VERSION_4X || 
-               currentVersion == LatteVersion.VERSION_4_0;
+        return isVersion4x(currentVersion);
+    }
+
+    /**
+     * Checks if a version is Latte 4.0+.
+     *
+     * @param version The version to check
+     * @return True if the version is 4.0+, false otherwise
+     */
+    public static boolean isVersion4x(LatteVersion version) {
+        return version == LatteVersion.VERSION_4X || 
+               version == LatteVersion.VERSION_4_0;
     }
     
     /**
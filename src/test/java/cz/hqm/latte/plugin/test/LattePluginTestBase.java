@@ -266,6 +266,8 @@ public abstract class LattePluginTestBase extends BasePlatformTestCase {
         // Track current test for timing/abort logging
         String fqn = getClass().getName() + "." + __methodName;
         CURRENT_TEST_FQN = fqn;
+        // Route plugin log entries of this test to its own log files
+        cz.hqm.latte.plugin.util.LatteLogger.setCurrentTest(fqn);
         CURRENT_TEST_START_NS = System.nanoTime();
         CURRENT_TEST_FINISHED = false;
         String startMsg = String.format("[TEST_TIME] START %s at %s\n",
@@ -383,6 +385,9 @@ public abstract class LattePluginTestBase extends BasePlatformTestCase {
                 try { __fos.write(footer.getBytes()); __fos.flush(); } catch (IOException ignored) {}
             }
         } finally {
+            // Write the queued plugin log entries before the next test starts
+            cz.hqm.latte.plugin.util.LatteLogger.flush();
+            cz.hqm.latte.plugin.util.LatteLogger.setCurrentTest(null);
             if (__origOut != null) System.setOut(__origOut);
             if (__origErr != null) System.setErr(__origErr);
             try { if (__teeOut != null) __teeOut.flush(); } catch (Exception ignored) {}
@@ -2,16 +2,23 @@ package cz.hqm.latte.plugin.test.cache;
 
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import org.junit.After;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
 import org.junit.Test;
 import cz.hqm.latte.plugin.cache.LatteCacheManager;
 import cz.hqm.latte.plugin.psi.LatteFile;
+import cz.hqm.latte.plugin.settings.LatteSettings;
 import cz.hqm.latte.plugin.test.LattePluginTestBase;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import javax.swing.SwingUtilities;
 
@@ -153,4 +160,83 @@ public class LatteCacheManagerTest extends LattePluginTestBase {
         cachedModifiedTemplate = cacheManager.getCachedTemplate(modifiedFile);
         assertNotNull("Modified cache entry was invalidated unexpectedly", cachedModifiedTemplate);
     }
+
+    /**
+     * Tests that the least recently used templates are evicted once the estimated size exceeds the limit.
+     */
+    @Test
+    public void testWeightBoundedLruEviction() throws Exception {
+        LatteSettings settings = LatteSettings.getInstance();
+        int originalSize = settings.getTemplateCacheSizeMb();
+        settings.setTemplateCacheSizeMb(1);
+        try {
+            // Each template is estimated at roughly 400 KB, so only two fit into 1 MB
+            String content = "{block content}" + "x".repeat(10000) + "{/block}";
+            VirtualFile first = myFixture.getTempDirFixture().createFile("first.latte", content);
+            VirtualFile second = myFixture.getTempDirFixture().createFile("second.latte", content);
+            VirtualFile third = myFixture.getTempDirFixture().createFile("third.latte", content);
+            LatteCacheManager.CacheStatistics before = cacheManager.getStatistics();
+            
+            cacheManager.cacheTemplate(first, (LatteFile) myFixture.getPsiManager().findFile(first));
+            cacheManager.cacheTemplate(second, (LatteFile) myFixture.getPsiManager().findFile(second));
+            
+            // Touch the first template so that the second one becomes the least recently used
+            assertNotNull(cacheManager.getCachedTemplate(first));
+            cacheManager.cacheTemplate(third, (LatteFile) myFixture.getPsiManager().findFile(third));
+            
+            assertNotNull("Recently used template should stay cached", cacheManager.getCachedTemplate(first));
+            assertNull("Least recently used template should be evicted", cacheManager.getCachedTemplate(second));
+            assertNotNull("Newest template should be cached", cacheManager.getCachedTemplate(third));
+            
+            LatteCacheManager.CacheStatistics statistics = cacheManager.getStatistics();
+            System.out.println("[DEBUG_LOG] Cache statistics: " + statistics);
+            assertEquals(2, statistics.getEntryCount());
+            assertEquals(1, statistics.getEvictionCount() - before.getEvictionCount());
+            assertEquals(3, statistics.getHitCount() - before.getHitCount());
+            assertEquals(1, statistics.getMissCount() - before.getMissCount());
+            assertTrue(statistics.getWeightBytes() <= statistics.getMaxWeightBytes());
+        } finally {
+            settings.setTemplateCacheSizeMb(originalSize);
+        }
+    }
+
+    /**
+     * Tests that editing a cached template in the editor invalidates it through PSI change events.
+     */
+    @Test
+    public void testPsiChangeInvalidatesTemplate() {
+        LatteFile latteFile = (LatteFile) myFixture.getPsiManager().findFile(testFile);
+        cacheManager.cacheTemplate(testFile, latteFile);
+        assertNotNull(cacheManager.getCachedTemplate(testFile));
+
+        Document document = FileDocumentManager.getInstance().getDocument(testFile);
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            document.insertString(0, "{var $edited = true}\n");
+            PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+        });
+
+        assertEquals("The edited template should be removed from the cache", 0, cacheManager.getStatistics().getEntryCount());
+    }
+
+    /**
+     * Tests that a batch with many changed templates clears the whole cache in one pass.
+     */
+    @Test
+    public void testLargeBatchClearsCache() throws Exception {
+        LatteFile latteFile = (LatteFile) myFixture.getPsiManager().findFile(testFile);
+        cacheManager.cacheTemplate(testFile, latteFile);
+
+        List<VirtualFile> changed = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            changed.add(myFixture.getTempDirFixture().createFile("batch" + i + ".latte", "{block content}" + i + "{/block}"));
+        }
+        cacheManager.invalidateFiles(changed.subList(0, 10));
+        assertNotNull("A small batch should keep unrelated templates", cacheManager.getCachedTemplate(testFile));
+
+        long start = System.nanoTime();
+        cacheManager.invalidateFiles(changed);
+        System.out.println("[DEBUG_LOG] Invalidated a batch of " + changed.size() + " templates in " + (System.nanoTime() - start) / 1000 + " us");
+
+        assertNull("A large batch should clear the whole cache", cacheManager.getCachedTemplate(testFile));
+    }
 }
@@ -1,8 +1,9 @@
 package cz.hqm.latte.plugin.test.completion;
 
 import com.intellij.codeInsight.completion.CompletionType;
-import cz.hqm.latte.plugin.completion.LatteCompletionContributor;
+import cz.hqm.latte.plugin.completion.LatteCompletionCache;
 import cz.hqm.latte.plugin.completion.NetteDefaultVariablesProvider;
+import cz.hqm.latte.plugin.completion.NetteVariablesCache;
 import cz.hqm.latte.plugin.filters.NetteFilterProvider;
 import cz.hqm.latte.plugin.settings.LatteSettings;
 import cz.hqm.latte.plugin.test.LattePluginTestBase;
@@ -21,7 +22,7 @@ import java.util.concurrent.atomic.AtomicReference;
  * This test class verifies that the caching mechanisms implemented in the Latte plugin
  * are working correctly. It focuses on three main caching areas:
  * 
- * 1. Macro caching in LatteCompletionContributor
+ * 1. Macro caching in LatteCompletionCache
  * 2. Variable caching in NetteDefaultVariablesProvider
  * 3. Filter caching in NetteFilterProvider
  * 
@@ -67,33 +68,10 @@ public class LatteCachingInEditorTest extends LattePluginTestBase {
         return field.get(null);
     }
     
-    /**
-     * Clears the cache in LatteCompletionContributor by setting the cached fields to null.
-     * 
-     * @throws Exception If the fields cannot be accessed
-     */
-    private void clearLatteCompletionCache() throws Exception {
-        Field cachedVersionField = LatteCompletionContributor.class.getDeclaredField("cachedVersion");
-        Field cachedMacrosField = LatteCompletionContributor.class.getDeclaredField("cachedMacros");
-        Field cachedSettingsField = LatteCompletionContributor.class.getDeclaredField("cachedSettings");
-        
-        cachedVersionField.setAccessible(true);
-        cachedMacrosField.setAccessible(true);
-        cachedSettingsField.setAccessible(true);
-        
-        AtomicReference<?> cachedVersion = (AtomicReference<?>) cachedVersionField.get(null);
-        AtomicReference<?> cachedMacros = (AtomicReference<?>) cachedMacrosField.get(null);
-        AtomicReference<?> cachedSettings = (AtomicReference<?>) cachedSettingsField.get(null);
-        
-        cachedVersion.set(null);
-        cachedMacros.set(null);
-        cachedSettings.set(null);
-    }
-    
     /**
      * Tests that macros are cached and not recreated on each completion request.
      * 
-     * This test verifies the caching mechanism in LatteCompletionContributor by:
+     * This test verifies the caching mechanism in LatteCompletionCache by:
      * 1. Clearing the cache to ensure a clean state
      * 2. Creating a Latte file with a macro and positioning the cursor inside it
      * 3. Triggering completion to initialize the cache
@@ -104,44 +82,30 @@ public class LatteCachingInEditorTest extends LattePluginTestBase {
      * This test is important because it ensures that macros are not reloaded on each
      * completion request, which would impact performance, especially for projects with
      * many macros or when the user frequently uses code completion.
-     * 
-     * @throws Exception If reflection fails
      */
     @Test
-    public void testMacroCachingInEditor() throws Exception {
+    public void testMacroCachingInEditor() {
         // Clear the cache before starting
-        clearLatteCompletionCache();
+        LatteCompletionCache cache = LatteCompletionCache.getInstance(getProject());
+        cache.invalidate();
         
         // Create a Latte file with a macro
         createLatteFile("{<caret>}");
-        
-        // Get the cache state before completion
-        AtomicReference<?> cachedMacrosBefore = (AtomicReference<?>) getPrivateStaticField(
-                LatteCompletionContributor.class, "cachedMacros");
+        LatteVersion version = LatteVersionManager.getVersion(myFixture.getFile());
         
         // First completion request should initialize the cache
         myFixture.complete(CompletionType.BASIC);
         
-        // Get the cache state after first completion
-        AtomicReference<?> cachedMacrosAfterFirst = (AtomicReference<?>) getPrivateStaticField(
-                LatteCompletionContributor.class, "cachedMacros");
-        
         // Verify that the cache was initialized
-        assertNotNull("Cache should be initialized after first completion", cachedMacrosAfterFirst.get());
-        
-        // Store the cached macros for comparison
-        Object cachedMacrosValue = cachedMacrosAfterFirst.get();
+        List<?> cachedMacros = cache.getMacros(version);
+        assertNotNull("Cache should be initialized after first completion", cachedMacros);
         
         // Second completion request should use the cache
         myFixture.complete(CompletionType.BASIC);
         
-        // Get the cache state after second completion
-        AtomicReference<?> cachedMacrosAfterSecond = (AtomicReference<?>) getPrivateStaticField(
-                LatteCompletionContributor.class, "cachedMacros");
-        
         // Verify that the cache was not recreated (same instance)
         assertSame("Cache should not be recreated on second completion", 
-                cachedMacrosValue, cachedMacrosAfterSecond.get());
+                cachedMacros, cache.getMacros(version));
         
         // Verify that we have completions
         assertTrue("Should have completion items", myFixture.getLookupElements().length > 0);
@@ -161,11 +125,9 @@ public class LatteCachingInEditorTest extends LattePluginTestBase {
      * This test is important because it ensures that variables are not reloaded on each
      * completion request, which would impact performance, especially for projects with
      * many variables or when the user frequently uses code completion for variables.
-     * 
-     * @throws Exception If reflection fails
      */
     @Test
-    public void testVariableCachingInEditor() throws Exception {
+    public void testVariableCachingInEditor() {
         // Clear any existing variable cache
         NetteDefaultVariablesProvider.invalidateCache();
         
@@ -178,33 +140,22 @@ public class LatteCachingInEditorTest extends LattePluginTestBase {
         // Get the project from the fixture
         com.intellij.openapi.project.Project project = myFixture.getProject();
         
-        // Check if variables are cached for this project
-        Field variablesCacheField = NetteDefaultVariablesProvider.class.getDeclaredField("variablesCache");
-        variablesCacheField.setAccessible(true);
-        
-        @SuppressWarnings("unchecked")
-        java.util.Map<com.intellij.openapi.project.Project, List<?>> variablesCache = 
-                (java.util.Map<com.intellij.openapi.project.Project, List<?>>) variablesCacheField.get(null);
+        // Variables are cached in a project service by the versions of the enabled packages
+        NetteVariablesCache variablesCache = NetteVariablesCache.getInstance(project);
         
         // Verify that variables are cached for this project
-        assertTrue("Variables should be cached for the project", variablesCache.containsKey(project));
-        assertNotNull("Cached variables should not be null", variablesCache.get(project));
-        assertFalse("Cached variables should not be empty", variablesCache.get(project).isEmpty());
-        
-        // Store the cached variables for comparison
-        List<?> cachedVariables = variablesCache.get(project);
+        assertEquals("Variables should be cached for one set of package versions", 1, variablesCache.size());
+        java.util.Map<String, Integer> versions = NetteDefaultVariablesProvider.getPackageVersions(project, null);
+        List<?> cachedVariables = variablesCache.get(versions);
+        assertNotNull("Variables should be cached for the project", cachedVariables);
+        assertFalse("Cached variables should not be empty", cachedVariables.isEmpty());
         
         // Second completion request should use the cache
         myFixture.complete(CompletionType.BASIC);
         
-        // Get the updated cache
-        @SuppressWarnings("unchecked")
-        java.util.Map<com.intellij.openapi.project.Project, List<?>> updatedVariablesCache = 
-                (java.util.Map<com.intellij.openapi.project.Project, List<?>>) variablesCacheField.get(null);
-        
         // Verify that the cache was not recreated (same instance)
         assertSame("Variables cache should not be recreated on second completion", 
-                cachedVariables, updatedVariablesCache.get(project));
+                cachedVariables, variablesCache.get(versions));
         
         // Note: We don't verify completion items here because they might not be returned in the test environment,
         // but we've verified that the cache is working correctly.
@@ -0,0 +1,119 @@
+package cz.hqm.latte.plugin.test.completion;
+
+import com.intellij.codeInsight.lookup.LookupElement;
+import cz.hqm.latte.plugin.completion.LatteCompletionCache;
+import cz.hqm.latte.plugin.completion.NetteDefaultVariablesProvider;
+import cz.hqm.latte.plugin.custom.CustomTag;
+import cz.hqm.latte.plugin.settings.LatteProjectSettings;
+import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the project-level cache of completion elements.
+ */
+public class LatteCompletionCacheTest extends LattePluginTestBase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        LatteCompletionCache.getInstance(getProject()).invalidate();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            LatteProjectSettings.getInstance(getProject()).setCustomTags(new ArrayList<>());
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that the macros of different versions are kept side by side.
+     */
+    @Test
+    public void testMacrosPerVersion() {
+        LatteCompletionCache cache = LatteCompletionCache.getInstance(getProject());
+
+        List<LookupElement> latte2 = cache.getMacros(LatteVersion.VERSION_2X);
+        List<LookupElement> latte3 = cache.getMacros(LatteVersion.VERSION_3X);
+
+        assertNotNull(latte2);
+        assertNotNull(latte3);
+        assertTrue(getLookupStrings(latte2).contains("syntax"));
+        assertTrue(getLookupStrings(latte3).contains("varType"));
+        assertSame("Switching versions should not rebuild the macros", latte2, cache.getMacros(LatteVersion.VERSION_2X));
+        assertSame(latte3, cache.getMacros(LatteVersion.VERSION_3X));
+    }
+
+    /**
+     * Tests that the macros are rebuilt when the enabled packages change.
+     */
+    @Test
+    public void testMacrosFollowEnabledPackages() {
+        LatteCompletionCache cache = LatteCompletionCache.getInstance(getProject());
+        LatteSettings settings = LatteSettings.getInstance();
+        boolean assetsEnabled = settings.isEnableNetteAssets();
+        try {
+            settings.setEnableNetteAssets(true);
+            assertTrue(getLookupStrings(cache.getMacros(LatteVersion.VERSION_3X)).contains("asset"));
+
+            settings.setEnableNetteAssets(false);
+            assertFalse(getLookupStrings(cache.getMacros(LatteVersion.VERSION_3X)).contains("asset"));
+        } finally {
+            settings.setEnableNetteAssets(assetsEnabled);
+        }
+    }
+
+    /**
+     * Tests that custom tags are not offered as macros and that editing them drops the cached macros.
+     */
+    @Test
+    public void testProjectSettingsRebuildMacros() {
+        LatteCompletionCache cache = LatteCompletionCache.getInstance(getProject());
+        List<LookupElement> before = cache.getMacros(LatteVersion.VERSION_3X);
+
+        LatteProjectSettings.getInstance(getProject()).addCustomTag(new CustomTag("myWidget", "Renders a widget"));
+
+        List<LookupElement> after = cache.getMacros(LatteVersion.VERSION_3X);
+        assertNotSame("Macros should be rebuilt for the changed project settings", before, after);
+        assertFalse(getLookupStrings(after).contains("myWidget"));
+    }
+
+    /**
+     * Tests that the variables are rebuilt when the settings change or the provider caches are invalidated.
+     */
+    @Test
+    public void testVariablesFollowInvalidation() {
+        LatteCompletionCache cache = LatteCompletionCache.getInstance(getProject());
+        LatteSettings settings = LatteSettings.getInstance();
+        boolean httpEnabled = settings.isEnableNetteHttp();
+        try {
+            List<LookupElement> first = cache.getVariables(null);
+            assertNotNull(first);
+            assertSame("Unchanged variables should be cached", first, cache.getVariables(null));
+
+            NetteDefaultVariablesProvider.invalidateCache();
+            List<LookupElement> second = cache.getVariables(null);
+            assertNotSame("Invalidating the provider should rebuild the variables", first, second);
+
+            settings.setEnableNetteHttp(!httpEnabled);
+            assertNotSame("Changing the settings should rebuild the variables", second, cache.getVariables(null));
+        } finally {
+            settings.setEnableNetteHttp(httpEnabled);
+        }
+    }
+
+    private static List<String> getLookupStrings(List<LookupElement> elements) {
+        List<String> strings = new ArrayList<>();
+        for (LookupElement element : elements) {
+            strings.add(element.getLookupString());
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,86 @@
+package cz.hqm.latte.plugin.test.completion;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.xmlb.XmlSerializerUtil;
+import cz.hqm.latte.plugin.completion.LatteCompletionCache;
+import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import cz.hqm.latte.plugin.version.ComposerMetadataService;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests that completion only offers the Nette packages used by the template's composer module.
+ */
+public class NetteModulePackagesCompletionTest extends LattePluginTestBase {
+
+    private LatteSettings savedSettings;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The tests switch packages on, so restore the settings afterwards
+        savedSettings = XmlSerializerUtil.createCopy(LatteSettings.getInstance());
+        LatteSettings.getInstance().setEnableNetteApplication(true);
+        LatteSettings.getInstance().setEnableNetteForms(true);
+
+        myFixture.addFileToProject("apps/shop/composer.json",
+                "{\"require\": {\"latte/latte\": \"^3.0\", \"nette/application\": \"^3.1\", \"nette/forms\": \"^3.1\"}}");
+        myFixture.addFileToProject("apps/api/composer.json",
+                "{\"require\": {\"latte/latte\": \"^3.0\", \"nette/application\": \"^3.1\"}}");
+        ComposerMetadataService.getInstance(getProject()).refresh();
+        LatteCompletionCache.getInstance(getProject()).invalidate();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            if (savedSettings != null) {
+                LatteSettings.getInstance().loadState(savedSettings);
+            }
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that a template in a module without nette/forms is not offered form macros.
+     */
+    @Test
+    public void testModuleWithoutFormsHasNoFormMacros() {
+        List<String> shop = completeAt("apps/shop/templates/default.latte", "{}", 1);
+        List<String> api = completeAt("apps/api/templates/default.latte", "{}", 1);
+
+        assertNotNull(shop);
+        assertTrue("The shop module requires nette/forms", shop.contains("form"));
+        assertNotNull(api);
+        assertTrue("Both modules require nette/application", api.contains("link"));
+        assertFalse(api.contains("form"));
+        assertFalse(api.contains("input"));
+        assertFalse(api.contains("label"));
+    }
+
+    /**
+     * Tests that a template in a module without nette/forms is not offered form names.
+     */
+    @Test
+    public void testModuleWithoutFormsHasNoFormNames() {
+        List<String> api = completeAt("apps/api/templates/edit.latte", "{form }", 6);
+
+        if (api != null) {
+            assertFalse(api.contains("contactForm"));
+            assertFalse(api.contains("loginForm"));
+        }
+        assertFalse("No form name should be inserted",
+                myFixture.getEditor().getDocument().getText().contains("Form"));
+    }
+
+    private List<String> completeAt(String path, String text, int offset) {
+        VirtualFile file = myFixture.addFileToProject(path, text).getVirtualFile();
+        myFixture.configureFromExistingVirtualFile(file);
+        myFixture.getEditor().getCaretModel().moveToOffset(offset);
+        myFixture.completeBasic();
+        return myFixture.getLookupElementStrings();
+    }
+}
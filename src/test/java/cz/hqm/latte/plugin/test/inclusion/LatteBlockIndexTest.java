@@ -0,0 +1,116 @@
+package cz.hqm.latte.plugin.test.inclusion;
+
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.search.GlobalSearchScope;
+import cz.hqm.latte.plugin.index.LatteBlockDefinition;
+import cz.hqm.latte.plugin.index.LatteBlockIndex;
+import cz.hqm.latte.plugin.inclusion.LatteBlockTypeProvider;
+import cz.hqm.latte.plugin.inclusion.LatteTemplateInclusionHandler;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the index of {define} and {block} declarations.
+ */
+public class LatteBlockIndexTest extends LattePluginTestBase {
+
+    private static final String COMPONENTS =
+            "{define card, title: string, count: int}\n" +
+            "<div class=\"card\">{$title}</div>\n" +
+            "{/define}\n" +
+            "{block footer}Footer{/block}\n";
+
+    /**
+     * Tests that declarations are indexed with their offsets and parameter types.
+     */
+    @Test
+    public void testIndexStoresDeclarations() {
+        myFixture.addFileToProject("components.latte", COMPONENTS);
+
+        List<Pair<VirtualFile, LatteBlockDefinition>> cards =
+                LatteBlockIndex.findDefinitions(getProject(), "card", GlobalSearchScope.projectScope(getProject()));
+        assertEquals("There should be one card declaration", 1, cards.size());
+
+        LatteBlockDefinition card = cards.get(0).getSecond();
+        assertEquals("components.latte", cards.get(0).getFirst().getName());
+        assertEquals(LatteBlockDefinition.Kind.DEFINE, card.getKind());
+        assertEquals(0, card.getOffset());
+        assertEquals("string", card.getParameterTypes().get("title"));
+        assertEquals("int", card.getParameterTypes().get("count"));
+
+        List<Pair<VirtualFile, LatteBlockDefinition>> footers =
+                LatteBlockIndex.findDefinitions(getProject(), "footer", GlobalSearchScope.projectScope(getProject()));
+        assertEquals(1, footers.size());
+        assertEquals(LatteBlockDefinition.Kind.BLOCK, footers.get(0).getSecond().getKind());
+        assertEquals(COMPONENTS.indexOf("{block footer}"), footers.get(0).getSecond().getOffset());
+
+        assertTrue(LatteBlockIndex.getAllBlockNames(getProject()).contains("card"));
+    }
+
+    /**
+     * Tests that {include #block} resolves to a {define} in another template.
+     */
+    @Test
+    public void testIncludeBlockFromOtherTemplate() {
+        myFixture.addFileToProject("components.latte", COMPONENTS);
+        createLatteFile("{include #card, title: 'Hello', count: 1}");
+
+        PsiElement target = LatteTemplateInclusionHandler.findIncludeTargetBlock(
+                getProject(), myFixture.getFile(), "{include #card, title: 'Hello', count: 1}");
+
+        assertNotNull("The define in the other template should be found", target);
+        assertEquals("components.latte", target.getContainingFile().getName());
+        assertEquals(0, target.getTextRange().getStartOffset());
+
+        Map<String, String> types = LatteBlockTypeProvider.getBlockTypeInfo(getProject(), myFixture.getFile(), "card");
+        assertNotNull("Parameter types should be found through the index", types);
+        assertEquals("string", types.get("title"));
+        assertEquals("int", types.get("count"));
+    }
+
+    /**
+     * Tests that blocks of the current file take precedence over blocks of other templates.
+     */
+    @Test
+    public void testLocalBlockTakesPrecedence() {
+        myFixture.addFileToProject("components.latte", COMPONENTS);
+        createLatteFile("{define card}Local{/define}\n{include #card}");
+
+        PsiElement target = LatteTemplateInclusionHandler.findIncludeTargetBlock(
+                getProject(), myFixture.getFile(), "{include #card}");
+
+        assertNotNull(target);
+        assertSame(myFixture.getFile(), target.getContainingFile());
+    }
+
+    /**
+     * Tests completion of block names from other templates in {include #...} tags.
+     */
+    @Test
+    public void testIncludeBlockCompletion() {
+        myFixture.addFileToProject("components.latte", COMPONENTS);
+        myFixture.configureByText("page.latte", "{include #ca<caret>}");
+
+        LookupElement[] elements = myFixture.completeBasic();
+        if (elements == null) {
+            // The only candidate was inserted directly
+            assertTrue(myFixture.getFile().getText().contains("{include #card}"));
+            return;
+        }
+
+        boolean found = false;
+        for (LookupElement element : elements) {
+            if ("card".equals(element.getLookupString())) {
+                found = true;
+                break;
+            }
+        }
+        assertTrue("Block 'card' should be offered", found);
+    }
+}
@@ -0,0 +1,161 @@
+package cz.hqm.latte.plugin.test.inclusion;
+
+import com.intellij.navigation.GotoRelatedItem;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import cz.hqm.latte.plugin.cache.LatteCacheManager;
+import cz.hqm.latte.plugin.inclusion.LatteTemplateRelatedProvider;
+import cz.hqm.latte.plugin.index.LatteTemplateGraphIndex;
+import cz.hqm.latte.plugin.index.LatteTemplateReference;
+import cz.hqm.latte.plugin.psi.LatteFile;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for the template inclusion graph index.
+ */
+public class LatteTemplateGraphIndexTest extends LattePluginTestBase {
+
+    private VirtualFile layout;
+    private VirtualFile page;
+    private VirtualFile detail;
+    private VirtualFile unrelated;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        layout = myFixture.addFileToProject("templates/@layout.latte",
+                "<html>{include 'partials/header.latte'}{include content}</html>").getVirtualFile();
+        myFixture.addFileToProject("templates/partials/header.latte", "<header>Header</header>");
+        page = myFixture.addFileToProject("templates/page.latte",
+                "{layout '@layout.latte'}\n{block content}Page{/block}").getVirtualFile();
+        detail = myFixture.addFileToProject("templates/detail.latte",
+                "{extends 'page.latte'}\n{block content}Detail{/block}").getVirtualFile();
+        unrelated = myFixture.addFileToProject("templates/other.latte",
+                "{include 'partials/footer.latte'}").getVirtualFile();
+    }
+
+    /**
+     * Tests the forward edges of the graph.
+     */
+    @Test
+    public void testForwardReferences() {
+        List<LatteTemplateReference> references = LatteTemplateGraphIndex.getReferences(getProject(), layout);
+
+        assertEquals("Only quoted paths are references", 1, references.size());
+        assertEquals("include", references.get(0).getTagName());
+        assertEquals("partials/header.latte", references.get(0).getPath());
+        assertEquals("header.latte", LatteTemplateGraphIndex.resolve(getProject(), layout, references.get(0)).getName());
+    }
+
+    /**
+     * Tests direct and transitive reverse dependencies.
+     */
+    @Test
+    public void testDependents() {
+        Set<VirtualFile> direct = LatteTemplateGraphIndex.findDirectDependents(getProject(), layout);
+        assertEquals(1, direct.size());
+        assertTrue(direct.contains(page));
+
+        Set<VirtualFile> all = LatteTemplateGraphIndex.findAllDependents(getProject(), layout);
+        assertEquals(2, all.size());
+        assertTrue(all.contains(page));
+        assertTrue("Templates extending a dependent depend on the layout too", all.contains(detail));
+        assertFalse(all.contains(unrelated));
+    }
+
+    /**
+     * Tests that changing a layout invalidates only the cached templates that depend on it.
+     */
+    @Test
+    public void testInvalidateWithDependents() {
+        LatteCacheManager cacheManager = LatteCacheManager.getInstance(getProject());
+        cacheManager.clearCache();
+        for (VirtualFile file : new VirtualFile[] { layout, page, detail, unrelated }) {
+            cacheManager.cacheTemplate(file, (LatteFile) getPsiManager().findFile(file));
+        }
+
+        cacheManager.invalidateWithDependents(layout);
+
+        assertNull(cacheManager.getCachedTemplate(layout));
+        assertNull(cacheManager.getCachedTemplate(page));
+        assertNull(cacheManager.getCachedTemplate(detail));
+        assertNotNull("Unrelated templates should stay cached", cacheManager.getCachedTemplate(unrelated));
+        cacheManager.clearCache();
+    }
+
+    /**
+     * Tests that saving a layout to disk invalidates the cached templates that depend on it without an explicit call.
+     */
+    @Test
+    public void testFileSystemChangeInvalidatesDependents() throws Exception {
+        LatteCacheManager cacheManager = LatteCacheManager.getInstance(getProject());
+        cacheManager.clearCache();
+        for (VirtualFile file : new VirtualFile[] { layout, page, detail, unrelated }) {
+            cacheManager.cacheTemplate(file, (LatteFile) getPsiManager().findFile(file));
+        }
+
+        WriteAction.run(() -> VfsUtil.saveText(layout, "<html>{include content}</html>"));
+
+        assertNull(cacheManager.getCachedTemplate(layout));
+        assertNull("Templates using the layout should be invalidated by the change event", cacheManager.getCachedTemplate(page));
+        assertNull(cacheManager.getCachedTemplate(detail));
+        assertNotNull("Unrelated templates should stay cached", cacheManager.getCachedTemplate(unrelated));
+        cacheManager.clearCache();
+    }
+
+    /**
+     * Tests that deleting a layout invalidates the cached templates that depend on it.
+     */
+    @Test
+    public void testDeletionInvalidatesDependents() throws Exception {
+        LatteCacheManager cacheManager = LatteCacheManager.getInstance(getProject());
+        cacheManager.clearCache();
+        for (VirtualFile file : new VirtualFile[] { page, detail, unrelated }) {
+            cacheManager.cacheTemplate(file, (LatteFile) getPsiManager().findFile(file));
+        }
+
+        WriteAction.run(() -> layout.delete(this));
+
+        assertNull("Templates using the deleted layout should be invalidated", cacheManager.getCachedTemplate(page));
+        assertNull(cacheManager.getCachedTemplate(detail));
+        assertNotNull("Unrelated templates should stay cached", cacheManager.getCachedTemplate(unrelated));
+        cacheManager.clearCache();
+    }
+
+    /**
+     * Tests that renaming a template drops the entry cached under its old path.
+     */
+    @Test
+    public void testRenameInvalidatesOldPath() throws Exception {
+        LatteCacheManager cacheManager = LatteCacheManager.getInstance(getProject());
+        cacheManager.clearCache();
+        cacheManager.cacheTemplate(unrelated, (LatteFile) getPsiManager().findFile(unrelated));
+        assertEquals(1, cacheManager.getStatistics().getEntryCount());
+
+        WriteAction.run(() -> unrelated.rename(this, "renamed.latte"));
+
+        assertEquals("The entry under the old path should be removed", 0, cacheManager.getStatistics().getEntryCount());
+    }
+
+    /**
+     * Tests the related templates offered for navigation.
+     */
+    @Test
+    public void testRelatedTemplates() {
+        PsiFile pageFile = getPsiManager().findFile(page);
+        List<String> related = new ArrayList<>();
+        for (GotoRelatedItem item : new LatteTemplateRelatedProvider().getItems(pageFile)) {
+            related.add(item.getGroup() + ": " + ((PsiFile) item.getElement()).getName());
+        }
+
+        assertTrue(related.contains("Included by: detail.latte"));
+        assertTrue(related.contains("Includes: @layout.latte"));
+    }
+}
@@ -0,0 +1,190 @@
+package cz.hqm.latte.plugin.test.lexer;
+
+import com.intellij.lexer.HtmlLexer;
+import com.intellij.lexer.Lexer;
+import cz.hqm.latte.plugin.lexer.LatteLexer;
+import cz.hqm.latte.plugin.lexer.LatteMacroLexer;
+import cz.hqm.latte.plugin.lexer.LatteSyntaxMode;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests that the Latte lexers encode everything they need in their state,
+ * so that lexing can be restarted at any token boundary.
+ */
+public class LatteLexerRestartTest extends LattePluginTestBase {
+
+    private static final String CONTENT =
+            "<div class=\"wrapper\">\n" +
+            "    {if $condition}\n" +
+            "        <p title='x'>{$value|upper}</p>\n" +
+            "    {/if}\n" +
+            "    <div n:syntax=\"double\">\n" +
+            "        {{foreach $items as $item}}\n" +
+            "            <span>{{$item}}</span>\n" +
+            "        {{/foreach}}\n" +
+            "        <section n:syntax=off>{not a macro}</section>\n" +
+            "    </div>\n" +
+            "</div>\n";
+
+    /**
+     * Tests that restarting the lexer at every token with the recorded state
+     * produces the same tokens and states as the full lex.
+     */
+    @Test
+    public void testRestartFromEveryTokenMatchesFullLex() {
+        List<String> fullLex = lex(new LatteLexer(), 0, 0);
+        List<int[]> boundaries = tokenBoundaries(new LatteLexer());
+
+        for (int i = 0; i < boundaries.size(); i++) {
+            int offset = boundaries.get(i)[0];
+            int state = boundaries.get(i)[1];
+            List<String> restarted = lex(new LatteLexer(), offset, state);
+            assertEquals("Relexing from offset " + offset + " should match the full lex",
+                    fullLex.subList(i, fullLex.size()), restarted);
+        }
+    }
+
+    /**
+     * Tests that the syntax mode is part of the state, so a restart inside
+     * an n:syntax element continues in that mode.
+     */
+    @Test
+    public void testSyntaxModeIsRestoredFromState() {
+        LatteLexer lexer = new LatteLexer();
+        lexer.start(CONTENT);
+        while (lexer.getTokenType() != null && !"{{foreach".contentEquals(lexer.getTokenSequence())) {
+            lexer.advance();
+        }
+        assertEquals(LatteSyntaxMode.DOUBLE, lexer.getSyntaxMode());
+        int state = lexer.getState();
+
+        LatteLexer restarted = new LatteLexer();
+        restarted.start(CONTENT, lexer.getTokenStart(), CONTENT.length(), state);
+        assertEquals("Syntax mode should be restored from the state", LatteSyntaxMode.DOUBLE, restarted.getSyntaxMode());
+
+        restarted.start(CONTENT, 0, CONTENT.length(), 0);
+        assertEquals("The initial state should reset the syntax mode", LatteSyntaxMode.DEFAULT, restarted.getSyntaxMode());
+    }
+
+    /**
+     * Tests that every state of the HTML lexer fits in the bits the Latte lexer reserves for it.
+     */
+    @Test
+    public void testHtmlStatesFitInMask() {
+        String html =
+                "<?xml version=\"1.0\"?>\n" +
+                "<!DOCTYPE html>\n" +
+                "<html lang=en>\n" +
+                "<head>\n" +
+                "    <meta http-equiv=\"Content-Type\" content='text/html'>\n" +
+                "    <style type=\"text/css\">p > a { color: red; }</style>\n" +
+                "    <script type=\"text/javascript\">if (a < b && c) { document.write('<b>'); }</script>\n" +
+                "</head>\n" +
+                "<body onload=\"init()\" style=\"margin: 0\">\n" +
+                "    <!-- comment <p> -->\n" +
+                "    <![CDATA[ <raw> ]]>\n" +
+                "    <p title='x' data-a=\"{$value}\" disabled>&amp; &#160; text</p>\n" +
+                "    <input value=unquoted />\n" +
+                "    <textarea><b>not a tag</b></textarea>\n" +
+                "    <div n:syntax=\"double\">{{$item}}</div>\n" +
+                "    <unclosed attr=\"\n" +
+                "</body>\n" +
+                "</html>\n";
+
+        HtmlLexer lexer = new HtmlLexer();
+        lexer.start(html);
+        while (lexer.getTokenType() != null) {
+            assertEquals("HTML state at offset " + lexer.getTokenStart() + " should fit in the mask",
+                    0, lexer.getState() & ~LatteLexer.HTML_STATE_MASK);
+            lexer.advance();
+        }
+    }
+
+    /**
+     * Tests that the states inside syntax modes nested deeper than the state records
+     * are not restartable, while the states of shallower nesting are.
+     */
+    @Test
+    public void testDeepSyntaxNestingIsNotRestartable() {
+        String content =
+                "<div n:syntax=\"double\">\n" +
+                "<div n:syntax=\"off\">\n" +
+                "<div n:syntax=\"double\">\n" +
+                "<p>three</p>\n" +
+                "<div n:syntax=\"off\">\n" +
+                "<p>four</p>\n" +
+                "</div></div></div></div>\n";
+
+        LatteLexer lexer = new LatteLexer();
+        lexer.start(content);
+        assertTrue(lexer.isRestartableState(lexer.getStartState()));
+        boolean seenThree = false;
+        boolean seenFour = false;
+        while (lexer.getTokenType() != null) {
+            if ("three".contentEquals(lexer.getTokenSequence())) {
+                seenThree = true;
+                assertTrue("A stack three modes deep is recorded exactly", isRestartableLatteState(lexer));
+            }
+            if ("four".contentEquals(lexer.getTokenSequence())) {
+                seenFour = true;
+                assertFalse("A stack four modes deep cannot be restored", isRestartableLatteState(lexer));
+            }
+            lexer.advance();
+        }
+        assertTrue(seenThree);
+        assertTrue(seenFour);
+    }
+
+    /**
+     * Tests that the standalone macro lexer carries its syntax mode in the state.
+     */
+    @Test
+    public void testMacroLexerStateCarriesSyntaxMode() {
+        String text = "{if $a}";
+        LatteMacroLexer lexer = new LatteMacroLexer();
+        lexer.setSyntaxMode(LatteSyntaxMode.DOUBLE);
+        int state = lexer.getState();
+
+        LatteMacroLexer restarted = new LatteMacroLexer();
+        restarted.start(text, 0, text.length(), state);
+        assertEquals(LatteSyntaxMode.DOUBLE, restarted.getSyntaxMode());
+        assertEquals(state, restarted.getState());
+    }
+
+    /**
+     * Checks whether the Latte part of the lexer's current state is restartable, whatever the HTML state.
+     */
+    private static boolean isRestartableLatteState(LatteLexer lexer) {
+        return lexer.isRestartableState(lexer.getState() & ~LatteLexer.HTML_STATE_MASK);
+    }
+
+    /**
+     * Lexes the content from the offset and describes each token by its type, range and state.
+     */
+    private static List<String> lex(Lexer lexer, int startOffset, int initialState) {
+        List<String> tokens = new ArrayList<>();
+        lexer.start(CONTENT, startOffset, CONTENT.length(), initialState);
+        while (lexer.getTokenType() != null) {
+            tokens.add(lexer.getTokenType() + "[" + lexer.getTokenStart() + "," + lexer.getTokenEnd() + "]@" + lexer.getState());
+            lexer.advance();
+        }
+        return tokens;
+    }
+
+    /**
+     * Records the start offset and state of each token of a full lex.
+     */
+    private static List<int[]> tokenBoundaries(Lexer lexer) {
+        List<int[]> boundaries = new ArrayList<>();
+        lexer.start(CONTENT);
+        while (lexer.getTokenType() != null) {
+            boundaries.add(new int[] { lexer.getTokenStart(), lexer.getState() });
+            lexer.advance();
+        }
+        return boundaries;
+    }
+}
@@ -0,0 +1,87 @@
+package cz.hqm.latte.plugin.test.lexer;
+
+import cz.hqm.latte.plugin.lexer.LatteNameTable;
+import cz.hqm.latte.plugin.lexer.LatteNameTables;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests for the trie based name tables used by the macro lexer.
+ */
+public class LatteNameTableTest extends LattePluginTestBase {
+
+    /**
+     * Tests exact matching of names, including names that are prefixes of other names.
+     */
+    @Test
+    public void testContainsMatchesWholeNamesOnly() {
+        LatteNameTable table = LatteNameTable.of(Arrays.asList("if", "ifset", "ifCurrent", "include", "_", "if"));
+
+        assertEquals("Duplicates should be counted once", 5, table.size());
+        assertTrue(table.contains("if"));
+        assertTrue(table.contains("ifset"));
+        assertTrue(table.contains("ifCurrent"));
+        assertTrue(table.contains("_"));
+        assertFalse("Prefixes of names are not names", table.contains("ifs"));
+        assertFalse("Names are case sensitive", table.contains("ifcurrent"));
+        assertFalse(table.contains("includes"));
+        assertFalse(table.contains(""));
+    }
+
+    /**
+     * Tests matching a region of a larger buffer.
+     */
+    @Test
+    public void testContainsRegionOfBuffer() {
+        LatteNameTable table = LatteNameTable.of(Arrays.asList("upper", "lower"));
+        String buffer = "{$name|upper|lowercase}";
+
+        assertTrue(table.contains(buffer, 7, 12));
+        assertFalse(table.contains(buffer, 13, 22));
+        assertTrue(table.contains(buffer, 13, 18));
+    }
+
+    /**
+     * Tests that an empty table contains nothing.
+     */
+    @Test
+    public void testEmptyTable() {
+        LatteNameTable table = LatteNameTable.of(Collections.emptyList());
+
+        assertEquals(0, table.size());
+        assertFalse(table.contains("if"));
+        assertFalse(table.contains(""));
+    }
+
+    /**
+     * Tests that the name tables are reused while the settings do not change.
+     */
+    @Test
+    public void testTablesAreReusedForUnchangedSettings() {
+        LatteNameTables first = LatteNameTables.getInstance();
+        LatteNameTables second = LatteNameTables.getInstance();
+
+        assertSame("Tables should be cached for unchanged settings", first, second);
+        assertTrue(first.getMacroNames().contains("foreach"));
+        assertTrue(first.getFilterNames().contains("upper"));
+    }
+
+    /**
+     * Tests that the tables of different Latte versions contain the names of their version.
+     */
+    @Test
+    public void testTablesDependOnVersion() {
+        LatteNameTables latte2 = LatteNameTables.getInstance(LatteVersion.VERSION_2X);
+        LatteNameTables latte3 = LatteNameTables.getInstance(LatteVersion.VERSION_3X);
+
+        assertNotSame(latte2, latte3);
+        assertTrue("{try} exists since Latte 3", latte3.getMacroNames().contains("try"));
+        assertFalse(latte2.getMacroNames().contains("try"));
+        assertTrue("|dataStream is a Latte 2 filter", latte2.getFilterNames().contains("dataStream"));
+        assertFalse(latte3.getFilterNames().contains("dataStream"));
+    }
+}
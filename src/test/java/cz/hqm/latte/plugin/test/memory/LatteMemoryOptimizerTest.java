@@ -1,6 +1,12 @@
 package cz.hqm.latte.plugin.test.memory;
 
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -226,4 +232,122 @@ public class LatteMemoryOptimizerTest extends LattePluginTestBase {
         // Verify that the segments are different
         assertFalse("Segments should be different for different content", originalSegments.getFullContent().equals(modifiedSegments.getFullContent()));
     }
+
+    /**
+     * Tests that Latin-1 templates are stored with one byte per character and that
+     * offsets on segment boundaries map to the right segment.
+     */
+    @Test
+    public void testCompactStorageAndSegmentLookup() throws Exception {
+        StringBuilder contentBuilder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            contentBuilder.append("{if $item").append(i).append("}<li>Item ").append(i).append("</li>{/if}\n");
+        }
+        String content = contentBuilder.toString();
+        VirtualFile testFile = createTestFile("test_compact_storage.latte", content);
+
+        LatteMemoryOptimizer.TemplateSegments segments = memoryOptimizer.getSegmentedContent(testFile, content);
+        System.out.println("[DEBUG_LOG] " + content.length() + " characters in " + segments.getSegmentCount()
+                + " segments, " + segments.getStoredBytes() + " bytes stored");
+
+        assertTrue("ASCII templates should be stored as Latin-1", segments.isLatin1());
+        assertEquals("One byte per character", content.length(), segments.getStoredBytes());
+        assertEquals(content, segments.getFullContent());
+
+        // Every offset, including the first offset of each segment, maps to its own character
+        for (int offset = 0; offset < content.length(); offset++) {
+            String segment = segments.getSegmentForOffset(offset);
+            assertEquals(content.charAt(offset), segment.charAt(segments.getOffsetWithinSegment(offset)));
+        }
+    }
+
+    /**
+     * Tests that validity checks detect a change in any segment and that non-Latin-1 text is kept intact.
+     */
+    @Test
+    public void testValidityCheckDetectsChanges() throws Exception {
+        StringBuilder contentBuilder = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            contentBuilder.append("<p>{_'Příliš žluťoučký kůň'} ").append(i).append("</p>\n");
+        }
+        String content = contentBuilder.toString();
+        VirtualFile testFile = createTestFile("test_validity_check.latte", content);
+
+        LatteMemoryOptimizer.TemplateSegments segments = memoryOptimizer.getSegmentedContent(testFile, content);
+        assertFalse("Czech text needs two bytes per character", segments.isLatin1());
+        assertEquals(content, segments.getFullContent());
+        assertTrue(segments.isValidFor(content));
+        assertTrue("Validity is checked by content, not by identity", segments.isValidFor(new StringBuilder(content)));
+
+        StringBuilder modified = new StringBuilder(content);
+        modified.setCharAt(content.length() / 2, 'X');
+        assertFalse("A change in a middle segment should be detected", segments.isValidFor(modified));
+        assertSame("Unchanged content should reuse the cached segments", segments, memoryOptimizer.getSegmentedContent(testFile, content));
+    }
+
+    /**
+     * Tests that an edit only rebuilds the segments it overlaps and reuses the others.
+     */
+    @Test
+    public void testEditReusesUntouchedSegments() throws Exception {
+        StringBuilder contentBuilder = new StringBuilder();
+        for (int i = 0; i < 8000; i++) {
+            contentBuilder.append("{block item").append(i).append("}<p>Item</p>{/block}\n");
+        }
+        String content = contentBuilder.toString();
+        VirtualFile testFile = createTestFile("test_incremental_segments.latte", content);
+        LatteMemoryOptimizer.TemplateSegments original = memoryOptimizer.getSegmentedContent(testFile, content);
+
+        int offset = content.length() / 2;
+        String edited = content.substring(0, offset) + "{$inserted}" + content.substring(offset);
+        LatteMemoryOptimizer.TemplateSegments updated = memoryOptimizer.getSegmentedContent(testFile, edited);
+
+        System.out.println("[DEBUG_LOG] " + updated.countSharedSegments(original) + " of " + updated.getSegmentCount() + " segments reused");
+        assertEquals(edited, updated.getFullContent());
+        assertTrue("Only the edited segment and its neighbour may be rebuilt",
+                updated.countSharedSegments(original) >= original.getSegmentCount() - 2);
+
+        String truncated = edited.substring(0, 100);
+        LatteMemoryOptimizer.TemplateSegments shortened = memoryOptimizer.getSegmentedContent(testFile, truncated);
+        assertEquals(truncated, shortened.getFullContent());
+        assertEquals(1, shortened.getSegmentCount());
+        assertEquals("", memoryOptimizer.getSegmentedContent(testFile, "").getFullContent());
+    }
+
+    /**
+     * Tests that segments updated from document events stay correct when an event was missed,
+     * even if the missed edit did not change the length of the template.
+     */
+    @Test
+    public void testMissedDocumentEventIsDetected() throws Exception {
+        StringBuilder contentBuilder = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            contentBuilder.append("{if $item").append(i).append("}<li>Item</li>{/if}\n");
+        }
+        VirtualFile testFile = createTestFile("test_missed_event.latte", "");
+        Document document = EditorFactory.getInstance().createDocument(contentBuilder.toString());
+
+        boolean[] listening = { true };
+        LatteMemoryOptimizer.TemplateSegments[] current = new LatteMemoryOptimizer.TemplateSegments[1];
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(@NotNull DocumentEvent event) {
+                if (listening[0]) {
+                    current[0] = memoryOptimizer.getSegmentedContent(testFile, event);
+                }
+            }
+        });
+
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(0, "{$first}"));
+        assertEquals(document.getText(), current[0].getFullContent());
+
+        // A same-length edit the optimizer never hears about
+        listening[0] = false;
+        int missed = document.getTextLength() / 2;
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.replaceString(missed, missed + 4, "XXXX"));
+        listening[0] = true;
+
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(0, "{$last}"));
+        assertEquals("Segments should include the missed edit", document.getText(), current[0].getFullContent());
+    }
 }
@@ -0,0 +1,90 @@
+package cz.hqm.latte.plugin.test.memory;
+
+import com.intellij.ide.impl.OpenProjectTask;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ex.ProjectManagerEx;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.LeakHunter;
+import com.intellij.testFramework.PlatformTestUtil;
+import cz.hqm.latte.plugin.completion.LatteCompletionCache;
+import cz.hqm.latte.plugin.completion.NetteDefaultVariablesProvider;
+import cz.hqm.latte.plugin.custom.CustomFiltersProvider;
+import cz.hqm.latte.plugin.navigation.NettePresenterMappingManager;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests that the caches of the plugin do not keep closed projects in memory.
+ * Projects are created, their caches filled and then closed, several times in a row;
+ * afterwards none of the closed projects may be reachable from the heap.
+ */
+public class LatteProjectCacheLeakTest extends LattePluginTestBase {
+
+    // Number of projects opened and closed by the test
+    private static final int CYCLES = 5;
+
+    /**
+     * Tests that closed projects are released together with their caches.
+     */
+    @Test
+    public void testClosedProjectsAreNotRetained() throws Exception {
+        List<WeakReference<Project>> closedProjects = new ArrayList<>();
+
+        for (int i = 0; i < CYCLES; i++) {
+            Path directory = Files.createTempDirectory("latte-leak");
+            try {
+                Files.write(directory.resolve("composer.json"),
+                        "{\"require\": {\"latte/latte\": \"^3.0\", \"nette/application\": \"^3.1\"}}".getBytes(StandardCharsets.UTF_8));
+                Project project = ProjectManagerEx.getInstanceEx().newProject(directory, OpenProjectTask.build());
+                assertNotNull("The project should be created", project);
+                try {
+                    fillCaches(project, i);
+                } finally {
+                    PlatformTestUtil.forceCloseProjectWithoutSaving(project);
+                }
+                closedProjects.add(new WeakReference<>(project));
+            } finally {
+                FileUtil.delete(directory.toFile());
+            }
+        }
+
+        // The caches of the projects that stay open keep working
+        try {
+            fillCaches(getProject(), CYCLES);
+        } finally {
+            CustomFiltersProvider.removeFilter(getProject(), "leakFilter" + CYCLES);
+        }
+
+        System.out.println("[DEBUG_LOG] Checking " + closedProjects.size() + " closed projects for leaks");
+        LeakHunter.checkLeak(LeakHunter.allRoots(), Project.class, project -> isClosed(closedProjects, project));
+    }
+
+    /**
+     * Fills every cache of the plugin that holds data of the given project.
+     */
+    private static void fillCaches(Project project, int cycle) {
+        assertFalse(NetteDefaultVariablesProvider.getAllVariables(project).isEmpty());
+        CustomFiltersProvider.addFilter(project, "leakFilter" + cycle, "Filter of cycle " + cycle);
+        assertTrue(CustomFiltersProvider.filterExists(project, "leakFilter" + cycle));
+        assertFalse(NettePresenterMappingManager.getPresenterMapping(project).isEmpty());
+        assertNotNull(LatteCompletionCache.getInstance(project).getMacros(LatteVersion.VERSION_3X));
+        assertNotNull(LatteCompletionCache.getInstance(project).getVariables(null));
+    }
+
+    private static boolean isClosed(List<WeakReference<Project>> closedProjects, Project project) {
+        for (WeakReference<Project> reference : closedProjects) {
+            if (reference.get() == project) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+package cz.hqm.latte.plugin.test.navigation;
+
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.FileBasedIndex;
+import cz.hqm.latte.plugin.index.LattePresenterMethod;
+import cz.hqm.latte.plugin.index.LattePresenterMethodIndex;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the index of presenter and control methods.
+ */
+public class LattePresenterMethodIndexTest extends LattePluginTestBase {
+
+    private static final String PRESENTER =
+            "<?php\n" +
+            "class ProductPresenter extends \\Nette\\Application\\UI\\Presenter {\n" +
+            "    public function actionDetail(int $id): void {\n" +
+            "        if ($id) { $this->template->id = $id; }\n" +
+            "    }\n" +
+            "    public function renderDefault() {}\n" +
+            "    public function handleDelete($id) {}\n" +
+            "    protected function createComponentProductList() {\n" +
+            "        $control = new Helper();\n" +
+            "        return new \\App\\Controls\\ProductListControl($control);\n" +
+            "    }\n" +
+            "    protected function createComponentSearchForm(): ?\\Nette\\Application\\UI\\Form {\n" +
+            "        return new \\Nette\\Application\\UI\\Form();\n" +
+            "    }\n" +
+            "    protected function createComponent($name) {\n" +
+            "        return null;\n" +
+            "    }\n" +
+            "    private function formatPrice($price) {}\n" +
+            "}\n";
+
+    /**
+     * Tests that the methods of a presenter are indexed with their kinds and return types.
+     */
+    @Test
+    public void testIndexStoresMethods() {
+        PsiFile presenter = myFixture.addFileToProject("ProductPresenter.php", PRESENTER);
+
+        List<LattePresenterMethod> methods = LattePresenterMethodIndex.getMethodsInFile(getProject(), presenter);
+        List<String> names = new ArrayList<>();
+        for (LattePresenterMethod method : methods) {
+            names.add(method.getName());
+        }
+        System.out.println("[DEBUG_LOG] Indexed methods: " + methods);
+
+        assertEquals("Only methods following the Nette conventions are indexed",
+                List.of("actionDetail", "renderDefault", "handleDelete", "createComponentProductList", "createComponentSearchForm"),
+                names);
+        assertEquals(LattePresenterMethod.Kind.ACTION, methods.get(0).getKind());
+        assertEquals("void", methods.get(0).getReturnType());
+        assertEquals(PRESENTER.indexOf("function actionDetail"), methods.get(0).getOffset());
+        assertEquals("", methods.get(1).getReturnType());
+        assertEquals("\\App\\Controls\\ProductListControl", methods.get(3).getReturnType());
+        assertEquals("\\Nette\\Application\\UI\\Form", methods.get(4).getReturnType());
+        assertEquals("searchForm", methods.get(4).getTargetName());
+    }
+
+    /**
+     * Tests case-insensitive method lookup and component factory listing.
+     */
+    @Test
+    public void testFindMethod() {
+        PsiFile presenter = myFixture.addFileToProject("ProductPresenter.php", PRESENTER);
+
+        LattePresenterMethod method = LattePresenterMethodIndex.findMethod(getProject(), presenter, "ACTIONDETAIL");
+        assertNotNull("Method names should be matched case-insensitively", method);
+        assertEquals("actionDetail", method.getName());
+        assertNull(LattePresenterMethodIndex.findMethod(getProject(), presenter, "actionEdit"));
+
+        List<LattePresenterMethod> factories = LattePresenterMethodIndex.getComponentFactories(getProject(), presenter);
+        assertEquals(2, factories.size());
+        assertEquals("productList", factories.get(0).getTargetName());
+    }
+
+    /**
+     * Tests that only presenters and controls are indexed.
+     */
+    @Test
+    public void testOnlyPresentersAndControlsAreIndexed() {
+        myFixture.addFileToProject("ProductPresenter.php", PRESENTER);
+        myFixture.addFileToProject("ProductListControl.php", "<?php\nclass ProductListControl {\n    public function render() {}\n    public function handleSort($by) {}\n}\n");
+        myFixture.addFileToProject("Helper.php", "<?php\nclass Helper {\n    public function handleSort($by) {}\n}\n");
+
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(getProject());
+        assertEquals(1, FileBasedIndex.getInstance().getContainingFiles(LattePresenterMethodIndex.NAME, "handlesort", scope).size());
+        assertEquals(1, FileBasedIndex.getInstance().getContainingFiles(LattePresenterMethodIndex.NAME, "actiondetail", scope).size());
+        assertTrue("The bare render() method has no suffix and is not indexed",
+                FileBasedIndex.getInstance().getContainingFiles(LattePresenterMethodIndex.NAME, "render", scope).isEmpty());
+    }
+}
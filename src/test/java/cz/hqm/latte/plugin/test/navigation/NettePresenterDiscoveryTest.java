@@ -0,0 +1,98 @@
+package cz.hqm.latte.plugin.test.navigation;
+
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.vfs.VirtualFile;
+import cz.hqm.latte.plugin.navigation.NettePresenterDiscovery;
+import cz.hqm.latte.plugin.navigation.NettePresenterMappingManager;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for the presenter discovery service.
+ */
+public class NettePresenterDiscoveryTest extends LattePluginTestBase {
+
+    /**
+     * Tests that presenters are found by suffix anywhere in the project.
+     */
+    @Test
+    public void testDiscoversPresentersBySuffix() {
+        myFixture.addFileToProject("app/Presenters/ProductPresenter.php", "<?php class ProductPresenter {}");
+        myFixture.addFileToProject("app/Admin/Presenters/UserPresenter.php", "<?php class UserPresenter {}");
+        myFixture.addFileToProject("app/Controls/MenuControl.php", "<?php class MenuControl {}");
+        myFixture.addFileToProject("app/Presenter.php", "<?php class Presenter {}");
+
+        List<String> names = getPresenterNames();
+
+        assertTrue(names.contains("ProductPresenter.php"));
+        assertTrue(names.contains("UserPresenter.php"));
+        assertFalse("Controls are not presenters", names.contains("MenuControl.php"));
+        assertTrue("A bare Presenter.php still ends with the suffix", names.contains("Presenter.php"));
+    }
+
+    /**
+     * Tests that the cached result is dropped when presenters are added or renamed.
+     */
+    @Test
+    public void testInvalidatedByFileSystemChanges() throws Exception {
+        myFixture.addFileToProject("app/ProductPresenter.php", "<?php class ProductPresenter {}");
+        NettePresenterDiscovery discovery = NettePresenterDiscovery.getInstance(getProject());
+        List<VirtualFile> before = discovery.getPresenterFiles();
+        assertSame("The result should be cached", before, discovery.getPresenterFiles());
+
+        VirtualFile added = myFixture.addFileToProject("app/OrderPresenter.php", "<?php class OrderPresenter {}").getVirtualFile();
+        assertTrue("Creating a presenter should invalidate the cache", getPresenterNames().contains("OrderPresenter.php"));
+
+        WriteAction.run(() -> added.rename(this, "OrderHelper.php"));
+        assertFalse("Renaming a presenter should invalidate the cache", getPresenterNames().contains("OrderPresenter.php"));
+    }
+
+    /**
+     * Tests that presenter suffixes are taken from the mapping masks.
+     */
+    @Test
+    public void testSuffixesFromMapping() {
+        Set<String> suffixes = NettePresenterDiscovery.getPresenterFileSuffixes(Arrays.asList(
+                new NettePresenterMappingManager.PresenterMapping("*", Arrays.asList("", "*Module", "*Presenter")),
+                new NettePresenterMappingManager.PresenterMapping("Admin", List.of("App\\Admin\\*Module\\*Page"))));
+
+        assertEquals(List.of("Presenter.php", "Page.php"), new ArrayList<>(suffixes));
+    }
+
+    /**
+     * Tests that lookups stay constant-time with many presenters in the project.
+     */
+    @Test
+    public void testManyPresenters() {
+        for (int i = 0; i < 600; i++) {
+            myFixture.addFileToProject("app/Module" + (i % 20) + "/Item" + i + "Presenter.php", "<?php class Item" + i + "Presenter {}");
+        }
+        NettePresenterDiscovery discovery = NettePresenterDiscovery.getInstance(getProject());
+
+        long start = System.nanoTime();
+        List<VirtualFile> files = discovery.getPresenterFiles();
+        long discoveryTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            assertSame(files, discovery.getPresenterFiles());
+        }
+        long cachedTime = (System.nanoTime() - start) / 1000;
+
+        System.out.println("[DEBUG_LOG] Discovered " + files.size() + " presenters in " + discoveryTime / 1000 + " us, cached lookup " + cachedTime + " ns");
+        assertEquals(600, files.size());
+    }
+
+    private List<String> getPresenterNames() {
+        List<String> names = new ArrayList<>();
+        for (VirtualFile file : NettePresenterDiscovery.getInstance(getProject()).getPresenterFiles()) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+}
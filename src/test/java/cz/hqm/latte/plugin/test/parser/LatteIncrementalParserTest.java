@@ -79,10 +79,10 @@ public class LatteIncrementalParserTest extends LattePluginTestBase {
         // Verify that the changed part is identified
         assertEquals("Should have one changed range", 1, changedRanges.size());
         
-        // The entire file is considered changed in the current implementation
-        // This is a simple approach that could be improved with a more sophisticated diff algorithm
-        assertEquals("Changed range should cover the entire file", 0, changedRanges.get(0).getStartOffset());
-        assertEquals("Changed range should cover the entire file", modifiedContent.length(), changedRanges.get(0).getEndOffset());
+        // The edit lies inside the block, so the range is expanded to the enclosing {block} macro
+        int editStart = modifiedContent.indexOf("modified");
+        assertTrue("Changed range should start before the edit", changedRanges.get(0).getStartOffset() <= editStart);
+        assertTrue("Changed range should end after the edit", changedRanges.get(0).getEndOffset() >= editStart + "modified ".length());
     }
 
     /**
@@ -106,9 +106,10 @@ public class LatteIncrementalParserTest extends LattePluginTestBase {
         // Verify that the changed part is identified and expanded to include complete Latte constructs
         assertEquals("Should have one changed range", 1, changedRanges.size());
         
-        // The entire file is considered changed in the current implementation
-        assertEquals("Changed range should cover the entire file", 0, changedRanges.get(0).getStartOffset());
-        assertEquals("Changed range should cover the entire file", modifiedContent.length(), changedRanges.get(0).getEndOffset());
+        // The range starts at the inserted {if} macro, not at the beginning of the file
+        assertEquals("Changed range should start at the inserted macro", modifiedContent.indexOf("{if true}"), changedRanges.get(0).getStartOffset());
+        assertTrue("Changed range should include the inserted {/if}",
+                changedRanges.get(0).getEndOffset() >= modifiedContent.indexOf("{/if}") + "{/if}".length());
     }
 
     /**
@@ -132,9 +133,81 @@ public class LatteIncrementalParserTest extends LattePluginTestBase {
         // Verify that the changed parts are identified
         assertEquals("Should have one changed range", 1, changedRanges.size());
         
-        // The entire file is considered changed in the current implementation
-        assertEquals("Changed range should cover the entire file", 0, changedRanges.get(0).getStartOffset());
-        assertEquals("Changed range should cover the entire file", modifiedContent.length(), changedRanges.get(0).getEndOffset());
+        // Both edits are close together, so they are reported as one range starting at the first edit
+        assertEquals("Changed range should start at the first edit", modifiedContent.indexOf("{if true}"), changedRanges.get(0).getStartOffset());
+        assertEquals("Changed range should extend to the appended block", modifiedContent.length(), changedRanges.get(0).getEndOffset());
+    }
+    
+    /**
+     * Tests that unchanged content produces no changed ranges.
+     */
+    @Test
+    public void testUnchangedContent() throws Exception {
+        
+        String content = "{block content}\nHello, world!\n{/block}";
+        
+        VirtualFile testFile = createTestFile("test_unchanged_content.latte", content);
+        
+        incrementalParser.parseChangedParts(testFile, content);
+        List<TextRange> changedRanges = incrementalParser.parseChangedParts(testFile, content);
+        
+        assertTrue("Unchanged content should not produce changed ranges", changedRanges.isEmpty());
+    }
+    
+    /**
+     * Tests that a small edit in a large template only reparses the surrounding blocks.
+     */
+    @Test
+    public void testEditInLargeFileIsLocal() throws Exception {
+        
+        String originalContent = generateBlocks(200);
+        String modifiedContent = originalContent.replace("Line 5 of block 100\n", "Line 5 of block 100 edited\n");
+        
+        VirtualFile testFile = createTestFile("test_edit_large_file.latte", originalContent);
+        
+        incrementalParser.parseChangedParts(testFile, originalContent);
+        List<TextRange> changedRanges = incrementalParser.parseChangedParts(testFile, modifiedContent);
+        
+        assertEquals("Should have one changed range", 1, changedRanges.size());
+        
+        // The range starts at the enclosing block and ends with the next complete block
+        int blockStart = modifiedContent.indexOf("{block content100}");
+        int nextBlockEnd = modifiedContent.indexOf("{/block}", modifiedContent.indexOf("{block content101}")) + "{/block}".length();
+        assertEquals("Changed range should start at the enclosing block", blockStart, changedRanges.get(0).getStartOffset());
+        assertEquals("Changed range should end after the next complete block", nextBlockEnd, changedRanges.get(0).getEndOffset());
+    }
+    
+    /**
+     * Tests that distant edits applied at once are reported as separate ranges.
+     */
+    @Test
+    public void testDistantChangesProduceSeparateRanges() throws Exception {
+        
+        String originalContent = generateBlocks(200);
+        String modifiedContent = originalContent
+                .replace("Line 5 of block 3\n", "Line 5 of block three\n")
+                .replace("Line 5 of block 190\n", "Line 5 of block one hundred ninety\n");
+        
+        VirtualFile testFile = createTestFile("test_distant_changes.latte", originalContent);
+        
+        incrementalParser.parseChangedParts(testFile, originalContent);
+        List<TextRange> changedRanges = incrementalParser.parseChangedParts(testFile, modifiedContent);
+        
+        assertEquals("Should have two changed ranges", 2, changedRanges.size());
+        assertEquals("First range should start at block 3", modifiedContent.indexOf("{block content3}"), changedRanges.get(0).getStartOffset());
+        assertEquals("Second range should start at block 190", modifiedContent.indexOf("{block content190}"), changedRanges.get(1).getStartOffset());
+    }
+    
+    private String generateBlocks(int blocks) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < blocks; i++) {
+            builder.append("{block content").append(i).append("}\n");
+            for (int j = 0; j < 10; j++) {
+                builder.append("Line ").append(j).append(" of block ").append(i).append("\n");
+            }
+            builder.append("{/block}\n");
+        }
+        return builder.toString();
     }
 
     /**
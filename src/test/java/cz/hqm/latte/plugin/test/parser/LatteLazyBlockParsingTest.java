@@ -0,0 +1,210 @@
+package cz.hqm.latte.plugin.test.parser;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.xml.XmlDocument;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import cz.hqm.latte.plugin.lang.LatteLanguage;
+import cz.hqm.latte.plugin.parser.LatteMacroBlocks;
+import cz.hqm.latte.plugin.psi.LatteElementTypes;
+import cz.hqm.latte.plugin.psi.LatteMacroBlock;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests that paired block macros are parsed into lazily reparseable elements.
+ */
+public class LatteLazyBlockParsingTest extends BasePlatformTestCase {
+
+    /**
+     * Tests that self-contained blocks, including nested ones, become block elements.
+     */
+    @Test
+    public void testPairedBlocksAreReparseable() {
+        PsiFile file = myFixture.configureByText("lazy_blocks.latte",
+                "<div>\n" +
+                "{block content}\n" +
+                "    <p>{if $a}yes{/if}</p>\n" +
+                "{/block}\n" +
+                "</div>\n" +
+                "{foreach $items as $item}\n" +
+                "    <span>{$item}</span>\n" +
+                "{/foreach}\n");
+
+        List<String> names = new ArrayList<>();
+        for (LatteMacroBlock block : PsiTreeUtil.findChildrenOfType(file, LatteMacroBlock.class)) {
+            names.add(block.getMacroName());
+        }
+
+        assertTrue("Should contain the {block} element", names.contains("block"));
+        assertTrue("Should contain the nested {if} element", names.contains("if"));
+        assertTrue("Should contain the {foreach} element", names.contains("foreach"));
+    }
+
+    /**
+     * Tests that a block whose HTML crosses its boundaries is parsed as before.
+     */
+    @Test
+    public void testUnbalancedMarkupIsNotCollapsed() {
+        PsiFile file = myFixture.configureByText("lazy_blocks_unbalanced.latte",
+                "{if $a}<div>{/if}\n</div>\n");
+
+        assertEmpty(PsiTreeUtil.findChildrenOfType(file, LatteMacroBlock.class));
+    }
+
+    /**
+     * Tests which texts may be reparsed as a block on their own.
+     */
+    @Test
+    public void testIsParsable() {
+        assertTrue(LatteElementTypes.IF.isParsable("{if $a}<b>x</b>{/if}", LatteLanguage.INSTANCE, getProject()));
+        assertTrue(LatteElementTypes.IF.isParsable("{if $a}{if $b}x{/if}{/if}", LatteLanguage.INSTANCE, getProject()));
+        assertFalse(LatteElementTypes.IF.isParsable("{if $a}<b>x{/if}", LatteLanguage.INSTANCE, getProject()));
+        assertFalse(LatteElementTypes.IF.isParsable("{if $a}x{/if} tail", LatteLanguage.INSTANCE, getProject()));
+        assertFalse(LatteElementTypes.IF.isParsable("{if $a}x", LatteLanguage.INSTANCE, getProject()));
+        assertFalse(LatteElementTypes.BLOCK.isParsable("{if $a}x{/if}", LatteLanguage.INSTANCE, getProject()));
+    }
+
+    /**
+     * Tests that an edit inside one block leaves the other blocks untouched.
+     */
+    @Test
+    public void testEditInsideBlockKeepsOtherBlocks() {
+        PsiFile file = myFixture.configureByText("lazy_blocks_edit.latte",
+                "{block first}\n<p>First</p>\n{/block}\n" +
+                "{block second}\n<p>Second</p>\n{/block}\n");
+
+        List<LatteMacroBlock> blocks = new ArrayList<>(PsiTreeUtil.findChildrenOfType(file, LatteMacroBlock.class));
+        assertEquals("Should have two blocks", 2, blocks.size());
+        LatteMacroBlock second = blocks.get(1);
+
+        Document document = PsiDocumentManager.getInstance(getProject()).getDocument(file);
+        assertNotNull(document);
+        int offset = document.getText().indexOf("First") + "First".length();
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(offset, " edited"));
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+
+        List<LatteMacroBlock> reparsed = new ArrayList<>(PsiTreeUtil.findChildrenOfType(file, LatteMacroBlock.class));
+        assertEquals("Should still have two blocks", 2, reparsed.size());
+        assertTrue("Edited block should contain the edit", reparsed.get(0).getText().contains("First edited"));
+        assertTrue("Untouched block should stay valid", second.isValid());
+        assertEquals("{block second}\n<p>Second</p>\n{/block}", second.getText());
+    }
+
+    /**
+     * Tests that the ends of nested and sibling blocks are found in one pass.
+     */
+    @Test
+    public void testFindBlockEnds() {
+        String text = "{if $a}{foreach $b as $c}<i>{$c}</i>{/foreach} {/if}\n<b>{block x}</b>{/block}\n{snippet y}z{/snippet}";
+        Map<Integer, Integer> ends = LatteMacroBlocks.findBlockEnds(text, LatteElementTypes.BLOCK_MACRO_NAMES);
+
+        assertEquals(Integer.valueOf(text.indexOf("\n")), ends.get(0));
+        assertEquals(Integer.valueOf(text.indexOf(" {/if}")), ends.get(text.indexOf("{foreach")));
+        assertNull("Block crossing an element boundary is not self-contained", ends.get(text.indexOf("{block")));
+        assertEquals(Integer.valueOf(text.length()), ends.get(text.indexOf("{snippet")));
+    }
+
+    /**
+     * Tests that tags in a {syntax off} region do not start or end blocks.
+     */
+    @Test
+    public void testSyntaxOffRegionHasNoBlocks() {
+        String text = "{syntax off}{if $a}x{/if}{/syntax}\n{if $b}{syntax off}{/if}{/syntax}{/if}";
+        Map<Integer, Integer> ends = LatteMacroBlocks.findBlockEnds(text, LatteElementTypes.BLOCK_MACRO_NAMES);
+
+        assertNull("The {if} inside {syntax off} is not a block", ends.get(text.indexOf("{if $a}")));
+        assertEquals("The {/if} inside {syntax off} does not end the block",
+                Integer.valueOf(text.length()), ends.get(text.indexOf("{if $b}")));
+
+        PsiFile file = myFixture.configureByText("lazy_blocks_syntax_off.latte",
+                "<div>\n{syntax off}\n{if $a}<p>x</p>{/if}\n{/syntax}\n</div>\n");
+        assertEmpty(PsiTreeUtil.findChildrenOfType(file, LatteMacroBlock.class));
+    }
+
+    /**
+     * Tests that block contents are children of the block rather than of a nested HTML document.
+     */
+    @Test
+    public void testBlockContentsHaveNoDocument() {
+        PsiFile file = myFixture.configureByText("lazy_blocks_shape.latte",
+                "<div>{if $a}<p>yes</p>{/if}</div>\n");
+
+        LatteMacroBlock block = PsiTreeUtil.findChildOfType(file, LatteMacroBlock.class);
+        assertNotNull(block);
+        assertNull("Block should not contain a nested document", PsiTreeUtil.findChildOfType(block, XmlDocument.class));
+        assertEquals("{if $a}<p>yes</p>{/if}", block.getText());
+    }
+
+    /**
+     * Tests that reparsing an edited block gives the same tree as parsing the edited file from scratch,
+     * also for blocks lexed in a syntax mode set outside of them.
+     */
+    @Test
+    public void testIncrementalReparseMatchesFullParse() {
+        PsiFile file = myFixture.configureByText("lazy_blocks_reparse.latte",
+                "{syntax double}\n" +
+                "<div>\n{if $a}\n<p>{{$name}}</p>\n{/if}\n</div>\n" +
+                "{/syntax}\n" +
+                "{block content}\n<ul>{foreach $items as $item}<li>{$item}</li>{/foreach}</ul>\n{/block}\n");
+
+        List<LatteMacroBlock> blocks = new ArrayList<>(PsiTreeUtil.findChildrenOfType(file, LatteMacroBlock.class));
+        LatteMacroBlock untouched = blocks.get(0);
+        assertEquals("if", untouched.getMacroName());
+
+        Document document = PsiDocumentManager.getInstance(getProject()).getDocument(file);
+        assertNotNull(document);
+        int offset = document.getText().indexOf("<li") + "<li".length();
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(offset, " class=\"item\""));
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+
+        assertTrue("Block outside the edit should not be reparsed", untouched.isValid());
+        PsiFile fresh = PsiFileFactory.getInstance(getProject())
+                .createFileFromText("lazy_blocks_reparse.latte", LatteLanguage.INSTANCE, document.getText());
+        assertEquals(DebugUtil.psiToString(fresh, true), DebugUtil.psiToString(file, true));
+
+        // An edit inside the block in the {syntax double} region
+        int nameOffset = document.getText().indexOf("{{$name}}") + "{{$name".length();
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(nameOffset, "|upper"));
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+
+        fresh = PsiFileFactory.getInstance(getProject())
+                .createFileFromText("lazy_blocks_reparse.latte", LatteLanguage.INSTANCE, document.getText());
+        assertEquals(DebugUtil.psiToString(fresh, true), DebugUtil.psiToString(file, true));
+    }
+
+    /**
+     * Tests that a block far into a file is reparsed in the state of the file's lexer after an edit
+     * before it, where lexing restarts from a restartable token rather than the start of the file.
+     */
+    @Test
+    public void testReparseAfterEditBeforeBlock() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("<p class=\"row\">Row ").append(i).append("</p>\n");
+        }
+        text.append("{syntax double}\n<div>\n{if $a}\n<p>{{$name}}</p>\n{/if}\n</div>\n{/syntax}\n");
+        PsiFile file = myFixture.configureByText("lazy_blocks_restart.latte", text.toString());
+
+        Document document = PsiDocumentManager.getInstance(getProject()).getDocument(file);
+        assertNotNull(document);
+        int rowOffset = document.getText().indexOf("Row 150");
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(rowOffset, "Edited "));
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+        int nameOffset = document.getText().indexOf("{{$name}}") + "{{$name".length();
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(nameOffset, "|upper"));
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+
+        PsiFile fresh = PsiFileFactory.getInstance(getProject())
+                .createFileFromText("lazy_blocks_restart.latte", LatteLanguage.INSTANCE, document.getText());
+        assertEquals(DebugUtil.psiToString(fresh, true), DebugUtil.psiToString(file, true));
+    }
+}
@@ -0,0 +1,104 @@
+package cz.hqm.latte.plugin.test.performance;
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import cz.hqm.latte.plugin.validator.LatteBatchReport;
+import cz.hqm.latte.plugin.validator.LatteBatchValidator;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks the parallel validation of many templates in {@link LatteBatchValidator}.
+ * The benchmark checks that every thread count finds the same problems.
+ */
+public class LatteBatchValidatorBenchmarkTest extends BasePlatformTestCase {
+
+    private static final int TEMPLATE_COUNT = 2_000;
+    private static final int CONDITIONALS_PER_TEMPLATE = 50;
+    private static final int MEASURED_ITERATIONS = 3;
+
+    // System property that turns on the assertion of the speedup, e.g. -Dlatte.benchmark.assertSpeedup=true
+    private static final String ASSERT_SPEEDUP_PROPERTY = "latte.benchmark.assertSpeedup";
+
+    /**
+     * Reports the throughput in templates per second on 1, 2, 4 ... threads, up to the number of cores.
+     * The claim that validation scales with the threads is only checked manually, by reading the
+     * reported speedups on an idle machine: the speedup over one thread is asserted only when the
+     * latte.benchmark.assertSpeedup property is set.
+     */
+    @Test
+    public void testThroughputScalesWithThreads() {
+        List<LatteBatchValidator.Template> templates = createTemplates();
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        LatteBatchReport sequential = null;
+        double speedup = 1;
+        for (int threads : getThreadCounts(cores)) {
+            LatteBatchReport report = measure(new LatteBatchValidator(threads), templates);
+            if (sequential == null) {
+                sequential = report;
+                // Every tenth template has an unexpected end tag
+                assertEquals(TEMPLATE_COUNT / 10, sequential.getProblemCount());
+            }
+            assertEquals(sequential.getProblemCount(), report.getProblemCount());
+            speedup = report.getTemplatesPerSecond() / sequential.getTemplatesPerSecond();
+            System.out.println("[DEBUG_LOG] " + TEMPLATE_COUNT + " templates on " + threads + " of " + cores + " cores: "
+                    + Math.round(report.getTemplatesPerSecond()) + " templates/s, speedup " + String.format("%.2f", speedup));
+        }
+        // Wall-clock speedups depend on the load of the machine, so they are only asserted when benchmarking
+        if (cores > 1 && Boolean.getBoolean(ASSERT_SPEEDUP_PROPERTY)) {
+            assertTrue("Validation should be faster on all cores", speedup > 1.3);
+        }
+    }
+
+    /**
+     * Gets the thread counts to measure: the powers of two below the number of cores, and the number of cores.
+     */
+    @NotNull
+    private static List<Integer> getThreadCounts(int cores) {
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(cores);
+        return counts;
+    }
+
+    /**
+     * Runs the validator a few times and returns the fastest run.
+     */
+    @NotNull
+    private static LatteBatchReport measure(@NotNull LatteBatchValidator validator,
+                                            @NotNull List<LatteBatchValidator.Template> templates) {
+        LatteBatchReport best = validator.validate(templates);
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            LatteBatchReport report = validator.validate(templates);
+            if (report.getElapsedNanos() < best.getElapsedNanos()) {
+                best = report;
+            }
+        }
+        return best;
+    }
+
+    @NotNull
+    private static List<LatteBatchValidator.Template> createTemplates() {
+        List<LatteBatchValidator.Template> templates = new ArrayList<>(TEMPLATE_COUNT);
+        for (int t = 0; t < TEMPLATE_COUNT; t++) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < CONDITIONALS_PER_TEMPLATE; i++) {
+                builder.append("{if $items[").append(i).append("]}\n")
+                        .append("{foreach $items as $item}<li>{$item->name|upper}</li>{/foreach}\n")
+                        .append("{else}\n<li>-</li>\n{/if}\n");
+            }
+            if (t % 10 == 0) {
+                builder.append("{/block}\n");
+            }
+            String text = builder.toString();
+            templates.add(new LatteBatchValidator.Template("memory:///template" + t + ".latte", () -> text, LatteVersion.VERSION_3X));
+        }
+        return templates;
+    }
+}
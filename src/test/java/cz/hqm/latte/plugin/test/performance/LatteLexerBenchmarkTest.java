@@ -0,0 +1,249 @@
+package cz.hqm.latte.plugin.test.performance;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import cz.hqm.latte.plugin.filters.NetteFilterProvider;
+import cz.hqm.latte.plugin.lexer.LatteLexer;
+import cz.hqm.latte.plugin.lexer.LatteMacroLexer;
+import cz.hqm.latte.plugin.lexer.LatteNameTable;
+import cz.hqm.latte.plugin.lexer.LatteNameTables;
+import cz.hqm.latte.plugin.lexer.LatteTokenTypes;
+import cz.hqm.latte.plugin.macros.NetteMacroProvider;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntSupplier;
+
+/**
+ * Throughput benchmarks for the Latte lexers.
+ * Each benchmark checks that the optimized path produces the same results as the reference path.
+ */
+public class LatteLexerBenchmarkTest extends BasePlatformTestCase {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 20;
+
+    private static final List<String> MACRO_CONTENTS = Arrays.asList(
+            "if $condition}", "/if}", "foreach $items as $item}", "/foreach}", "block content}",
+            "$name|upper|truncate:20}", "include 'footer.latte'}", "unknownMacro $x}", "var $a = 1}",
+            "$price|number:2|noescape}", "snippet items}", "/snippet}", "$text|lower|unknownFilter}"
+    );
+
+    /**
+     * Compares name recognition through the name tables with the previous approach,
+     * which merged the name sets and created a substring for every macro and filter token.
+     */
+    @Test
+    public void testMacroNameRecognitionThroughput() {
+        LatteNameTables tables = LatteNameTables.getInstance();
+        List<String> names = collectNameTokens();
+
+        // Both approaches must agree on every name
+        for (String name : names) {
+            assertEquals("Name tables and sets should agree on '" + name + "'",
+                    referenceMacroNames().contains(name) || NetteFilterProvider.getValidFilterNames().contains(name),
+                    tables.getMacroNames().contains(name) || tables.getFilterNames().contains(name));
+        }
+
+        long referenceNanos = measure(() -> {
+            int found = 0;
+            for (String name : names) {
+                if (referenceMacroNames().contains(name) || NetteFilterProvider.getValidFilterNames().contains(name)) {
+                    found++;
+                }
+            }
+            return found;
+        });
+
+        long tableNanos = measure(() -> {
+            int found = 0;
+            LatteNameTable macroNames = LatteNameTables.getInstance().getMacroNames();
+            LatteNameTable filterNames = LatteNameTables.getInstance().getFilterNames();
+            for (String name : names) {
+                if (macroNames.contains(name, 0, name.length()) || filterNames.contains(name, 0, name.length())) {
+                    found++;
+                }
+            }
+            return found;
+        });
+
+        System.out.println("[DEBUG_LOG] Name recognition over " + names.size() + " names: sets "
+                + (referenceNanos / 1000) + " µs, name tables " + (tableNanos / 1000) + " µs");
+        assertTrue("Name table lookup should not be slower than building the name sets", tableNanos <= referenceNanos);
+    }
+
+    /**
+     * Measures the macro lexer throughput in tokens per second.
+     */
+    @Test
+    public void testMacroLexerThroughput() {
+        LatteMacroLexer lexer = new LatteMacroLexer();
+        int[] tokens = new int[1];
+
+        long nanos = measure(() -> {
+            int count = 0;
+            for (int i = 0; i < 200; i++) {
+                for (String content : MACRO_CONTENTS) {
+                    lexer.start(content, 0, content.length(), 0);
+                    while (lexer.getTokenType() != null) {
+                        count++;
+                        lexer.advance();
+                    }
+                }
+            }
+            tokens[0] = count;
+            return count;
+        });
+
+        long tokensPerSecond = nanos > 0 ? tokens[0] * 1_000_000_000L / nanos : tokens[0];
+        System.out.println("[DEBUG_LOG] Macro lexer: " + tokens[0] + " tokens in " + (nanos / 1000)
+                + " µs (" + tokensPerSecond + " tokens/s)");
+        assertTrue("Lexer should produce tokens", tokens[0] > 0);
+    }
+
+    /**
+     * Measures the template lexer throughput in tokens per second on a generated template of about 2 MB
+     * and checks that the tokens and syntax modes match a lexer that runs the syntax patterns on every token.
+     */
+    @Test
+    public void testTemplateLexerThroughput() {
+        String template = generateTemplate(2 * 1024 * 1024);
+
+        List<String> expected = describeTokens(new ReferenceLatteLexer(), template);
+        List<String> actual = describeTokens(new LatteLexer(), template);
+        assertEquals("Lexer output should not change", expected, actual);
+
+        long referenceNanos = measureOnce(() -> countTokens(new ReferenceLatteLexer(), template));
+        long nanos = measureOnce(() -> countTokens(new LatteLexer(), template));
+
+        int tokenCount = actual.size();
+        System.out.println("[DEBUG_LOG] Template lexer on " + template.length() + " chars: " + tokenCount + " tokens, "
+                + (tokenCount * 1_000_000_000L / Math.max(1, referenceNanos)) + " tokens/s with patterns on every token, "
+                + (tokenCount * 1_000_000_000L / Math.max(1, nanos)) + " tokens/s with the prefilter");
+    }
+
+    /**
+     * Generates a template of at least the given length with occasional syntax mode switches.
+     */
+    private static String generateTemplate(int minLength) {
+        StringBuilder builder = new StringBuilder(minLength + 256);
+        int i = 0;
+        while (builder.length() < minLength) {
+            builder.append("<div class=\"item\" id=\"item").append(i).append("\">\n")
+                    .append("    {if $items[").append(i).append("]}\n")
+                    .append("        <p>Plain text of item ").append(i).append(" with a few words</p>\n")
+                    .append("    {/if}\n");
+            if (i % 50 == 0) {
+                builder.append("    <span n:syntax=\"double\">{{$value}}</span>\n")
+                        .append("    {syntax off} {not a macro} {/syntax}\n");
+            }
+            builder.append("</div>\n");
+            i++;
+        }
+        return builder.toString();
+    }
+
+    private static List<String> describeTokens(LatteLexer lexer, String text) {
+        List<String> tokens = new ArrayList<>();
+        lexer.start(text);
+        while (lexer.getTokenType() != null) {
+            tokens.add(lexer.getTokenType() + "[" + lexer.getTokenStart() + "," + lexer.getTokenEnd() + "]@" + lexer.getState()
+                    + ":" + lexer.getSyntaxMode());
+            lexer.advance();
+        }
+        return tokens;
+    }
+
+    private static int countTokens(Lexer lexer, String text) {
+        int count = 0;
+        lexer.start(text);
+        while (lexer.getTokenType() != null) {
+            count++;
+            lexer.advance();
+        }
+        return count;
+    }
+
+    /**
+     * Runs the body once to warm up and returns the time of a second run; lexing 2 MB is too slow for many iterations.
+     */
+    private static long measureOnce(IntSupplier body) {
+        int sink = body.getAsInt();
+        long start = System.nanoTime();
+        sink += body.getAsInt();
+        long nanos = System.nanoTime() - start;
+        assertTrue(sink >= 0);
+        return nanos;
+    }
+
+    /**
+     * Lexer that runs the syntax patterns on the text of every token, as the template lexer did before the prefilter.
+     */
+    private static class ReferenceLatteLexer extends LatteLexer {
+        @Override
+        protected boolean mayMatchSyntaxPatterns(CharSequence text) {
+            return true;
+        }
+    }
+
+    /**
+     * Collects the macro and filter names the macro lexer recognizes in the benchmark contents.
+     */
+    private static List<String> collectNameTokens() {
+        List<String> names = new ArrayList<>();
+        LatteMacroLexer lexer = new LatteMacroLexer();
+        for (int i = 0; i < 100; i++) {
+            for (String content : MACRO_CONTENTS) {
+                lexer.start(content, 0, content.length(), 0);
+                while (lexer.getTokenType() != null) {
+                    if (lexer.getTokenType() == LatteTokenTypes.LATTE_MACRO_NAME
+                            || lexer.getTokenType() == LatteTokenTypes.LATTE_ERROR_INVALID_MACRO_NAME
+                            || lexer.getTokenType() == LatteTokenTypes.LATTE_FILTER_NAME
+                            || lexer.getTokenType() == LatteTokenTypes.LATTE_ERROR_UNKNOWN_FILTER) {
+                        names.add(lexer.getTokenText().startsWith("/") ? lexer.getTokenText().substring(1) : lexer.getTokenText());
+                    }
+                    lexer.advance();
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Builds the macro name set the way the lexer did before the name tables.
+     */
+    private static Set<String> referenceMacroNames() {
+        Set<String> names = new HashSet<>(Arrays.asList(
+                "if", "else", "elseif", "ifset", "ifCurrent", "foreach", "for", "while",
+                "first", "last", "sep", "include", "extends", "layout", "block", "define",
+                "snippet", "snippetArea", "capture", "var", "default", "dump", "debugbreak",
+                "l", "r", "syntax", "use", "_", "=", "contentType", "status", "php",
+                "do", "varType", "templateType", "parameters"
+        ));
+        names.addAll(NetteMacroProvider.getValidMacroNames());
+        return names;
+    }
+
+    /**
+     * Runs the benchmark body after a warm-up and returns the median time of the measured iterations.
+     */
+    private static long measure(IntSupplier body) {
+        int sink = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += body.getAsInt();
+        }
+        long[] times = new long[MEASURED_ITERATIONS];
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            sink += body.getAsInt();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        assertTrue(sink >= 0);
+        return times[MEASURED_ITERATIONS / 2];
+    }
+}
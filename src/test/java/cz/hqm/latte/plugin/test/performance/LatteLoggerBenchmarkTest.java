@@ -0,0 +1,139 @@
+package cz.hqm.latte.plugin.test.performance;
+
+import com.intellij.openapi.util.io.FileUtil;
+import cz.hqm.latte.plugin.util.LatteLogAppender;
+import org.junit.Test;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmarks the asynchronous {@link LatteLogAppender} behind the plugin logger.
+ * Each benchmark checks that every queued entry ends up in the log file.
+ */
+public class LatteLoggerBenchmarkTest {
+
+    private static final int ENTRY_COUNT = 100_000;
+    private static final int SYNC_ENTRY_COUNT = 2_000;
+
+    /**
+     * Compares queueing log entries with writing each entry synchronously by opening the file,
+     * appending the line and closing it again, which is how the logger used to write.
+     */
+    @Test
+    public void testAppendCostOnCallingThread() throws IOException {
+        Path directory = Files.createTempDirectory("latte-log-benchmark");
+        try {
+            String[] messages = new String[ENTRY_COUNT];
+            for (int i = 0; i < ENTRY_COUNT; i++) {
+                messages[i] = "Benchmark message " + i;
+            }
+
+            Path syncLog = directory.resolve("sync.log");
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            long syncStart = System.nanoTime();
+            for (int i = 0; i < SYNC_ENTRY_COUNT; i++) {
+                try (PrintWriter writer = new PrintWriter(new FileWriter(syncLog.toFile(), true))) {
+                    writer.println(dateFormat.format(new Date()) + " [DEBUG] Benchmark - " + messages[i]);
+                }
+            }
+            long syncNanos = (System.nanoTime() - syncStart) / SYNC_ENTRY_COUNT;
+
+            // The buffer holds all entries, so none are dropped while the writer catches up
+            LatteLogAppender appender = new LatteLogAppender("Latte Log Benchmark", ENTRY_COUNT,
+                    LatteLogAppender.DEFAULT_MAX_FILE_SIZE * 100, 0);
+            Path asyncLog = directory.resolve("async.log");
+            try {
+                long asyncStart = System.nanoTime();
+                for (int i = 0; i < ENTRY_COUNT; i++) {
+                    appender.append(asyncLog, "DEBUG", "Benchmark", "", messages[i], null);
+                }
+                long asyncNanos = (System.nanoTime() - asyncStart) / ENTRY_COUNT;
+
+                long flushStart = System.nanoTime();
+                assertTrue("The writer should catch up", appender.flush(30_000));
+                long flushMillis = (System.nanoTime() - flushStart) / 1_000_000;
+
+                System.out.println("[DEBUG_LOG] Synchronous write " + syncNanos + " ns per entry, asynchronous append "
+                        + asyncNanos + " ns per entry, queue of " + ENTRY_COUNT + " entries drained in " + flushMillis + " ms");
+                assertEquals(0, appender.getDroppedCount());
+                assertTrue("Queueing an entry should be much cheaper than writing it", asyncNanos * 10 < syncNanos);
+            } finally {
+                appender.close(5_000);
+            }
+
+            List<String> lines = Files.readAllLines(asyncLog, StandardCharsets.UTF_8);
+            // Three header lines followed by one line per entry, in order
+            assertEquals(ENTRY_COUNT + 3, lines.size());
+            assertTrue(lines.get(3).endsWith("[DEBUG] Benchmark - Benchmark message 0"));
+            assertTrue(lines.get(lines.size() - 1).endsWith("Benchmark message " + (ENTRY_COUNT - 1)));
+        } finally {
+            FileUtil.delete(directory.toFile());
+        }
+    }
+
+    /**
+     * Tests that entries from several threads are all written and that full files are rotated.
+     */
+    @Test
+    public void testConcurrentAppendWithRotation() throws Exception {
+        Path directory = Files.createTempDirectory("latte-log-rotation");
+        int threadCount = 4;
+        int perThread = 5_000;
+        long maxFileSize = 256 * 1024;
+        LatteLogAppender appender = new LatteLogAppender("Latte Log Rotation", threadCount * perThread, maxFileSize, 50);
+        Path log = directory.resolve("rotation.log");
+        try {
+            Thread[] threads = new Thread[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                int thread = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        appender.append(log, "INFO", "Thread" + thread, "", "entry " + i, null);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(appender.flush(30_000));
+            assertEquals(0, appender.getDroppedCount());
+        } finally {
+            appender.close(5_000);
+        }
+
+        try {
+            int entries = 0;
+            int files = 0;
+            for (int i = 0; i <= 50; i++) {
+                Path file = i == 0 ? log : LatteLogAppender.getBackupPath(log, i);
+                if (!Files.exists(file)) {
+                    continue;
+                }
+                files++;
+                assertTrue("Rotated files should not exceed the maximum size", Files.size(file) <= maxFileSize);
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (line.contains("[INFO] Thread")) {
+                        entries++;
+                    }
+                }
+            }
+            System.out.println("[DEBUG_LOG] " + entries + " entries written to " + files + " files");
+            assertTrue("The log should have been rotated", files > 1);
+            assertEquals(threadCount * perThread, entries);
+        } finally {
+            FileUtil.delete(directory.toFile());
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.Before;
 import org.junit.After;
 import org.junit.Test;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.testFramework.fixtures.TempDirTestFixture;
 import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
@@ -15,6 +16,7 @@ import cz.hqm.latte.plugin.parser.LatteIncrementalParser;
 import cz.hqm.latte.plugin.psi.LatteFile;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Performance benchmark tests for the Latte plugin.
@@ -348,6 +350,55 @@ public class LattePerformanceBenchmarkTest extends BasePlatformTestCase {
         }
     }
 
+    /**
+     * Benchmarks reparsing after a single-character edit for growing file sizes.
+     * The reparsed range must stay the same size regardless of the file size,
+     * and the time per edit is reported for each size.
+     */
+    @Test
+    public void testIncrementalReparseScalesWithEditSize() throws Exception {
+        assertNotNull("Test fixture should be initialized", myFixture);
+        assertNotNull("Temp dir fixture should be initialized", tempDirFixture);
+
+        final int[] blockCounts = {100, 1000, 8000};
+        final int iterations = 50;
+        int firstRangeLength = -1;
+
+        System.out.println("[DEBUG_LOG] Incremental Reparse Scaling Test:");
+        for (int blocks : blockCounts) {
+            String content = generateTestContent(blocks, 10);
+            int editOffset = content.indexOf("Line 5 of block " + (blocks / 2) + "\n") + "Line 5".length();
+            String editedContent = content.substring(0, editOffset) + "x" + content.substring(editOffset);
+
+            VirtualFile testFile = createTestFile("test_reparse_scaling_" + blocks + ".latte", content);
+            incrementalParser.parseChangedParts(testFile, content);
+
+            // Warm-up
+            for (int i = 0; i < 10; i++) {
+                incrementalParser.parseChangedParts(testFile, editedContent);
+                incrementalParser.parseChangedParts(testFile, content);
+            }
+
+            int rangeLength = 0;
+            long startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                List<TextRange> ranges = incrementalParser.parseChangedParts(testFile, editedContent);
+                rangeLength = ranges.get(0).getLength();
+                incrementalParser.parseChangedParts(testFile, content);
+            }
+            long microsPerEdit = (System.nanoTime() - startTime) / (2L * iterations) / 1_000;
+
+            System.out.println("[DEBUG_LOG] " + content.length() + " chars (" + blocks + " blocks): "
+                    + microsPerEdit + " us per edit, reparsed range " + rangeLength + " chars");
+
+            if (firstRangeLength < 0) {
+                firstRangeLength = rangeLength;
+            }
+            assertTrue("Reparsed range should not grow with the file size (" + rangeLength + " vs " + firstRangeLength + ")",
+                    rangeLength <= firstRangeLength + 16);
+        }
+    }
+
     /**
      * Tests the performance of memory optimization.
      * Measures the memory usage with and without memory optimization.
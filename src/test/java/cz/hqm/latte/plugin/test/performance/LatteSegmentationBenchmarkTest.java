@@ -0,0 +1,125 @@
+package cz.hqm.latte.plugin.test.performance;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import cz.hqm.latte.plugin.file.LatteFileType;
+import cz.hqm.latte.plugin.memory.LatteMemoryOptimizer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Benchmarks incremental re-segmentation of large templates in {@link LatteMemoryOptimizer}.
+ * Each benchmark checks that the incremental segmentation matches the edited text.
+ */
+public class LatteSegmentationBenchmarkTest extends BasePlatformTestCase {
+
+    private static final int TEMPLATE_SIZE = 1024 * 1024;
+    private static final int EDIT_COUNT = 200;
+
+    // Edits whose timings are not measured, while the JIT warms up
+    private static final int WARMUP_EDITS = 20;
+
+    /**
+     * Compares segmenting a 1 MB template from scratch after every random edit with updating
+     * only the segments that overlap the edit, using the offsets from the document events.
+     * The fastest edit of each kind is compared, so a slow measurement under load does not fail the test.
+     */
+    @Test
+    public void testRandomEditsOnLargeTemplate() {
+        LatteMemoryOptimizer optimizer = LatteMemoryOptimizer.getInstance(getProject());
+        LightVirtualFile file = new LightVirtualFile("segmentation_benchmark.latte", LatteFileType.INSTANCE, "");
+        Document document = EditorFactory.getInstance().createDocument(createTemplate());
+
+        optimizer.clearAllSegmentCache();
+        LatteMemoryOptimizer.TemplateSegments initial = optimizer.getSegmentedContent(file, document.getImmutableCharSequence());
+        System.out.println("[DEBUG_LOG] Segmented " + document.getTextLength() + " characters into "
+                + initial.getSegmentCount() + " segments, " + initial.getStoredBytes() + " bytes stored");
+
+        long[] incrementalNanos = new long[1];
+        long[] bestIncrementalNanos = { Long.MAX_VALUE };
+        int[] edits = new int[1];
+        long[] sharedSegments = new long[1];
+        LatteMemoryOptimizer.TemplateSegments[] current = { initial };
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(@NotNull DocumentEvent event) {
+                long start = System.nanoTime();
+                LatteMemoryOptimizer.TemplateSegments updated = optimizer.getSegmentedContent(file, event);
+                long nanos = System.nanoTime() - start;
+                incrementalNanos[0] += nanos;
+                if (++edits[0] > WARMUP_EDITS) {
+                    bestIncrementalNanos[0] = Math.min(bestIncrementalNanos[0], nanos);
+                }
+                sharedSegments[0] += updated.countSharedSegments(current[0]);
+                current[0] = updated;
+            }
+        });
+
+        LightVirtualFile fullFile = new LightVirtualFile("segmentation_full.latte", LatteFileType.INSTANCE, "");
+        Random random = new Random(42);
+        long fullNanos = 0;
+        long bestFullNanos = Long.MAX_VALUE;
+        for (int i = 0; i < EDIT_COUNT; i++) {
+            applyRandomEdit(document, random, i);
+
+            optimizer.clearSegmentCache(fullFile);
+            long start = System.nanoTime();
+            LatteMemoryOptimizer.TemplateSegments full = optimizer.getSegmentedContent(fullFile, document.getImmutableCharSequence());
+            long nanos = System.nanoTime() - start;
+            fullNanos += nanos;
+            if (i >= WARMUP_EDITS) {
+                bestFullNanos = Math.min(bestFullNanos, nanos);
+            }
+            assertEquals(full.getLength(), current[0].getLength());
+        }
+
+        String text = document.getText();
+        assertEquals("Incremental segments should match the edited text", text, current[0].getFullContent());
+        assertTrue(current[0].isValidFor(text));
+        assertSame("The cached segments should be up to date", current[0], optimizer.getSegmentedContent(file, text));
+
+        long averageShared = sharedSegments[0] / EDIT_COUNT;
+        System.out.println("[DEBUG_LOG] " + EDIT_COUNT + " random edits: full segmentation " + fullNanos / EDIT_COUNT / 1000
+                + " µs per edit, incremental " + incrementalNanos[0] / EDIT_COUNT / 1000 + " µs per edit, "
+                + averageShared + " of " + current[0].getSegmentCount() + " segments reused on average, best "
+                + bestFullNanos / 1000 + " µs and " + bestIncrementalNanos[0] / 1000 + " µs");
+        assertTrue("Most segments should be reused after a small edit", averageShared >= current[0].getSegmentCount() - 4);
+        // An edit rebuilds about one segment of a hundred, so twice as fast still leaves a wide margin
+        assertTrue("Incremental segmentation should be faster than segmenting from scratch",
+                bestIncrementalNanos[0] * 2 < bestFullNanos);
+        optimizer.clearAllSegmentCache();
+    }
+
+    @NotNull
+    private static String createTemplate() {
+        StringBuilder builder = new StringBuilder(TEMPLATE_SIZE + 100);
+        for (int i = 0; builder.length() < TEMPLATE_SIZE; i++) {
+            builder.append("{foreach $items").append(i).append(" as $item}<li class=\"item\">{$item->name|upper}</li>{/foreach}\n");
+        }
+        return builder.toString();
+    }
+
+    private void applyRandomEdit(@NotNull Document document, @NotNull Random random, int index) {
+        int offset = random.nextInt(document.getTextLength());
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            switch (random.nextInt(3)) {
+                case 0:
+                    document.insertString(offset, "{$edit" + index + "}");
+                    break;
+                case 1:
+                    document.deleteString(offset, Math.min(document.getTextLength(), offset + 1 + random.nextInt(40)));
+                    break;
+                default:
+                    document.replaceString(offset, Math.min(document.getTextLength(), offset + random.nextInt(20)), "<b>\n</b>");
+                    break;
+            }
+        });
+    }
+}
@@ -0,0 +1,82 @@
+package cz.hqm.latte.plugin.test.performance;
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import cz.hqm.latte.plugin.validator.LatteValidationProblem;
+import cz.hqm.latte.plugin.validator.LatteValidator;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Benchmarks the single-pass validation of macro tags in {@link LatteValidator}.
+ * The benchmark checks that every misplaced tag in the generated template is reported.
+ */
+public class LatteValidatorBenchmarkTest extends BasePlatformTestCase {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 20;
+
+    // Every generated conditional takes five lines
+    private static final int CONDITIONALS = 10_000;
+    private static final int LINES_PER_CONDITIONAL = 5;
+
+    // Every hundredth conditional lacks its {if}, leaving a misplaced {else} and an unexpected {/if}
+    private static final int BROKEN_EVERY = 100;
+
+    /**
+     * Validates a generated 50,000 line template with 10,000 conditionals and compares
+     * the time per character with a template ten times smaller.
+     */
+    @Test
+    public void testValidateLargeTemplate() {
+        String large = createTemplate(CONDITIONALS);
+        String small = createTemplate(CONDITIONALS / 10);
+        assertEquals(CONDITIONALS * LINES_PER_CONDITIONAL, large.split("\n").length);
+
+        List<LatteValidationProblem> problems = LatteValidator.validateText(large, LatteVersion.VERSION_3X);
+        int broken = CONDITIONALS / BROKEN_EVERY;
+        assertEquals(2 * broken, problems.size());
+        assertEquals(broken, problems.stream().filter(p -> p.getMessage().equals("Tag {else} must be inside an {if} block")).count());
+        assertEquals(broken, problems.stream().filter(p -> p.getMessage().equals("Unexpected macro end {/if}")).count());
+
+        long smallNanos = measure(small);
+        long largeNanos = measure(large);
+        System.out.println("[DEBUG_LOG] Validated " + CONDITIONALS * LINES_PER_CONDITIONAL + " lines (" + large.length()
+                + " characters) in " + largeNanos / 1000 + " µs, " + CONDITIONALS / 10 * LINES_PER_CONDITIONAL + " lines in "
+                + smallNanos / 1000 + " µs, " + problems.size() + " problems");
+        assertTrue("Validation time should grow linearly with the template size", largeNanos < smallNanos * 10 * 3);
+    }
+
+    /**
+     * Measures the fastest of several validations of the template, after a warmup.
+     */
+    private static long measure(@NotNull String template) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            LatteValidator.validateText(template, LatteVersion.VERSION_3X);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            LatteValidator.validateText(template, LatteVersion.VERSION_3X);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    @NotNull
+    private static String createTemplate(int conditionals) {
+        StringBuilder builder = new StringBuilder(conditionals * 80);
+        for (int i = 0; i < conditionals; i++) {
+            builder.append(i % BROKEN_EVERY == BROKEN_EVERY - 1 ? "<li>\n" : "{if $items[" + i + "]}\n");
+            if (i % 2 == 0) {
+                builder.append("{foreach $items as $item}<li>{$item->name|upper}</li>{/foreach}\n");
+            } else {
+                builder.append("<li>{$items[").append(i).append("]|upper}</li>\n");
+            }
+            builder.append("{else}\n<li>-</li>\n{/if}\n");
+        }
+        return builder.toString();
+    }
+}
@@ -224,4 +224,26 @@ public class LatteProjectSettingsTest extends LattePluginTestBase {
         variables = settings.getCustomVariables();
         assertEquals("Should have 0 variables", 0, variables.size());
     }
+    
+    /**
+     * Tests that the modification count changes whenever the custom elements change.
+     */
+    @Test
+    public void testModificationCount() {
+        long initial = settings.getModificationCount();
+        
+        // Add a tag
+        CustomTag tag = new CustomTag("testTag", "testDescription");
+        settings.addCustomTag(tag);
+        long afterAdd = settings.getModificationCount();
+        assertTrue("Adding a tag should increase the modification count", afterAdd > initial);
+        
+        // Adding the same tag again does not change anything
+        settings.addCustomTag(tag);
+        assertEquals("Adding a present tag should not count as a change", afterAdd, settings.getModificationCount());
+        
+        // Remove the tag
+        settings.removeCustomTag(tag);
+        assertTrue("Removing a tag should increase the modification count", settings.getModificationCount() > afterAdd);
+    }
 }
@@ -250,4 +250,27 @@ public class LatteSettingsTest extends LattePluginTestBase {
         // These are always added for testing purposes as seen in NetteDefaultVariablesProvider
         assertEquals("All packages disabled should result in 4 essential mail variables", 4, allDisabledCount);
     }
+    
+    /**
+     * Tests that the modification count changes only when a setting actually changes.
+     */
+    @Test
+    public void testModificationCount() {
+        long initial = settings.getModificationCount();
+        
+        // Setting the current value is not a change
+        settings.setEnableNetteForms(settings.isEnableNetteForms());
+        settings.setSelectedVersion(settings.getSelectedVersion());
+        assertEquals("Setting the same values should not count as a change", initial, settings.getModificationCount());
+        
+        // Toggling a package is a change
+        boolean formsEnabled = settings.isEnableNetteForms();
+        settings.setEnableNetteForms(!formsEnabled);
+        long afterToggle = settings.getModificationCount();
+        assertTrue("Toggling a package should increase the modification count", afterToggle > initial);
+        
+        // Toggling it back is another change, the count never goes back
+        settings.setEnableNetteForms(formsEnabled);
+        assertTrue("The modification count should increase monotonically", settings.getModificationCount() > afterToggle);
+    }
 }
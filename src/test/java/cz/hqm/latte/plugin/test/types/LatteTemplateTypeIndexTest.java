@@ -0,0 +1,69 @@
+package cz.hqm.latte.plugin.test.types;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.indexing.FileBasedIndex;
+import cz.hqm.latte.plugin.index.LatteTemplateTypeIndex;
+import cz.hqm.latte.plugin.index.LatteTemplateTypes;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import cz.hqm.latte.plugin.types.LatteTypeProvider;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Tests for the index of the types declared in templates.
+ */
+public class LatteTemplateTypeIndexTest extends LattePluginTestBase {
+
+    /**
+     * Tests that the declared types are stored in the index.
+     */
+    @Test
+    public void testIndexStoresTypes() {
+        PsiFile file = myFixture.addFileToProject("templates/product.latte",
+                "{templateType \\App\\Templates\\ProductTemplate}\n" +
+                "{varType $product: \\App\\Model\\Product}\n" +
+                "{var $product = 123}\n" +
+                "{var $count = 5}\n" +
+                "{var $service = new App\\Service\\Cart()}\n");
+
+        Map<Integer, LatteTemplateTypes> data = FileBasedIndex.getInstance().getFileData(
+                LatteTemplateTypeIndex.NAME, file.getVirtualFile(), getProject());
+        assertEquals("A template has a single entry", 1, data.size());
+
+        LatteTemplateTypes types = data.values().iterator().next();
+        System.out.println("[DEBUG_LOG] Indexed types: " + types);
+        assertEquals("\\App\\Templates\\ProductTemplate", types.getTemplateType());
+        assertEquals("{varType} wins over an inferred type", "\\App\\Model\\Product", types.getVariableTypes().get("$product"));
+        assertEquals("int", types.getVariableTypes().get("$count"));
+        assertEquals("App\\Service\\Cart", types.getVariableTypes().get("$service"));
+    }
+
+    /**
+     * Tests that edits are picked up, which the former per-path cache did not do.
+     */
+    @Test
+    public void testEditsUpdateTypes() {
+        PsiFile file = myFixture.addFileToProject("templates/list.latte", "{varType $items: array}\n");
+        assertEquals("array", LatteTypeProvider.getVariableType(getProject(), file, "$items"));
+
+        Document document = PsiDocumentManager.getInstance(getProject()).getDocument(file);
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            document.setText("{varType $items: \\App\\Collection}\n");
+            PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+        });
+
+        assertEquals("\\App\\Collection", LatteTypeProvider.getVariableType(getProject(), file, "$items"));
+    }
+
+    /**
+     * Tests that templates without declarations share the empty value.
+     */
+    @Test
+    public void testScanWithoutDeclarations() {
+        assertSame(LatteTemplateTypes.EMPTY, LatteTemplateTypeIndex.scanTypes("<p>{$name}</p>"));
+    }
+}
@@ -34,9 +34,6 @@ public class LatteTypeProviderTest extends LattePluginTestBase {
         // Restore the original version
         LatteVersionManager.setCurrentVersion(originalVersion);
         
-        // Clear the type caches
-        LatteTypeProvider.clearCaches();
-        
         super.tearDown();
     }
 
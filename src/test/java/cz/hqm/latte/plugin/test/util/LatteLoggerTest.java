@@ -4,6 +4,10 @@ import com.intellij.openapi.diagnostic.Logger;
 import cz.hqm.latte.plugin.util.LatteLogger;
 import org.junit.Test;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
 /**
  * Test for the LatteLogger class.
  * This test is used to verify that the logging functionality works correctly,
@@ -55,4 +59,30 @@ public class LatteLoggerTest {
     public void testValidationErrorLogging() {
         LatteLogger.logValidationError(LOG, "This is a test validation error from LatteLoggerTest", "test element", 0);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that messages passed as suppliers are only built when they are logged.
+     */
+    @Test
+    public void testLazyDebugLogging() {
+        AtomicInteger calls = new AtomicInteger();
+        LatteLogger.debug(LOG, () -> {
+            calls.incrementAndGet();
+            return "This is a lazy debug message from LatteLoggerTest";
+        });
+        assertEquals(LatteLogger.isDebugEnabled(LOG) ? 1 : 0, calls.get());
+    }
+
+    /**
+     * Test that the element text of a validation error is only built when the error is logged.
+     */
+    @Test
+    public void testLazyValidationErrorLogging() {
+        AtomicInteger calls = new AtomicInteger();
+        LatteLogger.logValidationError(LOG, "This is a lazy validation error from LatteLoggerTest", () -> {
+            calls.incrementAndGet();
+            return "test element";
+        }, 0);
+        assertEquals(LatteLogger.isLoggingEnabled() ? 1 : 0, calls.get());
+    }
+}
@@ -0,0 +1,90 @@
+package cz.hqm.latte.plugin.test.util;
+
+import cz.hqm.latte.plugin.util.LatteTrace;
+import cz.hqm.latte.plugin.util.LatteTrace.Category;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the switchable trace of internal events.
+ */
+public class LatteTraceTest {
+
+    private boolean completionEnabled;
+    private boolean cacheEnabled;
+
+    @Before
+    public void setUp() {
+        completionEnabled = LatteTrace.isEnabled(Category.COMPLETION);
+        cacheEnabled = LatteTrace.isEnabled(Category.CACHE);
+        LatteTrace.clear();
+    }
+
+    @After
+    public void tearDown() {
+        LatteTrace.setEnabled(Category.COMPLETION, completionEnabled);
+        LatteTrace.setEnabled(Category.CACHE, cacheEnabled);
+        LatteTrace.clear();
+    }
+
+    /**
+     * Tests that only events of enabled categories are recorded, with their fields.
+     */
+    @Test
+    public void testRecordsEnabledCategoriesOnly() {
+        LatteTrace.setEnabled(Category.COMPLETION, true);
+        LatteTrace.setEnabled(Category.CACHE, false);
+
+        LatteTrace.trace(Category.CACHE, "filters.built", "count", 12);
+        LatteTrace.trace(Category.COMPLETION, "macros.added", "count", 42, "afterClosedTag", false);
+
+        List<LatteTrace.Event> events = LatteTrace.getEvents();
+        assertEquals(1, events.size());
+        LatteTrace.Event event = events.get(0);
+        assertEquals(Category.COMPLETION, event.getCategory());
+        assertEquals("macros.added", event.getName());
+        assertEquals(42, event.getValue("count"));
+        assertEquals(false, event.getValue("afterClosedTag"));
+
+        String dump = LatteTrace.dump();
+        System.out.println("[DEBUG_LOG] Trace dump: " + dump.trim());
+        assertTrue(dump.contains("COMPLETION macros.added count=42 afterClosedTag=false"));
+        assertFalse(dump.contains("filters.built"));
+    }
+
+    /**
+     * Tests that dumping to the log writes every recorded event.
+     */
+    @Test
+    public void testDumpToLogWritesRecordedEvents() {
+        LatteTrace.setEnabled(Category.CACHE, true);
+        LatteTrace.trace(Category.CACHE, "filters.built", "count", 12);
+        LatteTrace.trace(Category.CACHE, "filters.invalidate");
+
+        assertEquals(2, LatteTrace.dumpToLog());
+    }
+
+    /**
+     * Tests that the ring keeps only the most recent events, oldest first.
+     */
+    @Test
+    public void testRingKeepsLatestEvents() {
+        LatteTrace.setEnabled(Category.COMPLETION, true);
+        int total = LatteTrace.CAPACITY + 100;
+        for (int i = 0; i < total; i++) {
+            LatteTrace.trace(Category.COMPLETION, "event", "index", i);
+        }
+
+        List<LatteTrace.Event> events = LatteTrace.getEvents();
+        assertEquals(LatteTrace.CAPACITY, events.size());
+        assertEquals(100, events.get(0).getValue("index"));
+        assertEquals(total - 1, events.get(events.size() - 1).getValue("index"));
+    }
+}
@@ -0,0 +1,95 @@
+package cz.hqm.latte.plugin.test.validator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import cz.hqm.latte.plugin.validator.LatteBatchReport;
+import cz.hqm.latte.plugin.validator.LatteBatchValidator;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Tests for the batch validation of template directories and its JSON and SARIF reports.
+ */
+public class LatteBatchValidatorTest extends BasePlatformTestCase {
+
+    /**
+     * Tests that all templates of a directory are validated and their problems located by line and column.
+     */
+    @Test
+    public void testValidateDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("latte-batch");
+        try {
+            write(directory.resolve("broken.latte"), "<ul>\n{foreach $items as $item}\n  <li>{$item}</li>\n{/if}\n</ul>\n");
+            write(directory.resolve("templates/valid.latte"), "{if $a}<p>a</p>{else}<p>b</p>{/if}\n");
+            write(directory.resolve("notes.txt"), "{else}");
+
+            List<Path> templates = LatteBatchValidator.findTemplates(directory);
+            assertEquals(2, templates.size());
+
+            LatteBatchReport report = new LatteBatchValidator(2).validateFiles(templates, LatteVersion.VERSION_3X);
+            assertEquals(2, report.getTemplateCount());
+            assertEquals(2, report.getProblemCount());
+            assertTrue(report.getResults().get(1).getFindings().isEmpty());
+
+            List<LatteBatchReport.Finding> findings = report.getResults().get(0).getFindings();
+            assertEquals("Unclosed macro {foreach}", findings.get(0).getProblem().getMessage());
+            assertEquals(2, findings.get(0).getStartLine());
+            assertEquals("Unexpected macro end {/if}", findings.get(1).getProblem().getMessage());
+            assertEquals(4, findings.get(1).getStartLine());
+            assertEquals(1, findings.get(1).getStartColumn());
+            assertEquals(6, findings.get(1).getEndColumn());
+
+            JsonObject json = JsonParser.parseString(report.toJson()).getAsJsonObject();
+            assertEquals(2, json.get("templates").getAsInt());
+            assertEquals(1, json.getAsJsonArray("files").size());
+        } finally {
+            FileUtil.delete(directory.toFile());
+        }
+    }
+
+    /**
+     * Tests that the report is written as SARIF when the file name ends with ".sarif".
+     */
+    @Test
+    public void testWriteSarifReport() throws IOException {
+        Path directory = Files.createTempDirectory("latte-sarif");
+        try {
+            write(directory.resolve("standalone.latte"), "<p>{else}</p>\n");
+            LatteBatchReport report = new LatteBatchValidator(1)
+                    .validateFiles(LatteBatchValidator.findTemplates(directory), LatteVersion.VERSION_3X);
+
+            Path sarifFile = directory.resolve("reports/latte.sarif");
+            report.write(sarifFile);
+            String sarif = new String(Files.readAllBytes(sarifFile), StandardCharsets.UTF_8);
+            System.out.println("[DEBUG_LOG] SARIF report: " + sarif);
+
+            JsonObject log = JsonParser.parseString(sarif).getAsJsonObject();
+            assertEquals("2.1.0", log.get("version").getAsString());
+            JsonArray results = log.getAsJsonArray("runs").get(0).getAsJsonObject().getAsJsonArray("results");
+            assertEquals(1, results.size());
+            JsonObject result = results.get(0).getAsJsonObject();
+            assertEquals(LatteBatchReport.RULE_ID, result.get("ruleId").getAsString());
+            assertEquals("error", result.get("level").getAsString());
+            JsonObject region = result.getAsJsonArray("locations").get(0).getAsJsonObject()
+                    .getAsJsonObject("physicalLocation").getAsJsonObject("region");
+            assertEquals(1, region.get("startLine").getAsInt());
+            assertEquals(4, region.get("startColumn").getAsInt());
+        } finally {
+            FileUtil.delete(directory.toFile());
+        }
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,122 @@
+package cz.hqm.latte.plugin.test.validator;
+
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import cz.hqm.latte.plugin.validator.LatteValidationProblem;
+import cz.hqm.latte.plugin.validator.LatteValidator;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the single-pass validation of macro tags: unknown macros, mismatched and
+ * unexpected end tags, unclosed blocks and misplaced {else} tags.
+ */
+public class LatteBlockValidationTest extends BasePlatformTestCase {
+
+    /**
+     * Tests that well-formed blocks produce no problems.
+     */
+    @Test
+    public void testWellFormedBlocks() {
+        assertNoProblems("{if $a}x{elseif $b}y{else}z{/if}");
+        assertNoProblems("{foreach $items as $item}{$item}{else}empty{/foreach}");
+        assertNoProblems("{define row}{if $a}{/}{/define}");
+        assertNoProblems("{block content}<p>{include header}</p>");
+        assertNoProblems("{var $s = '}'}{if $a}{/if}{* {else} *}");
+    }
+
+    /**
+     * Tests that {else} outside of a block that accepts it is reported.
+     */
+    @Test
+    public void testMisplacedElse() {
+        assertProblems("{else}", "Tag {else} must be inside an {if} block");
+        assertProblems("{if $a}{block b}{elseif $c}{/block}{/if}", "Tag {elseif} must be inside an {if} block");
+        assertProblems("{if $a}{/if}{else}", "Tag {else} must be inside an {if} block");
+    }
+
+    /**
+     * Tests that end tags that do not match the innermost block and blocks that are never closed are reported.
+     */
+    @Test
+    public void testMismatchedAndUnclosedBlocks() {
+        assertProblems("{if $a}{foreach $x as $y}{/if}",
+                "Unclosed macro {foreach}", "Mismatched macro end {/if}, expected {/foreach}");
+        assertProblems("{/foreach}", "Unexpected macro end {/foreach}");
+        assertProblems("{snippet list}", "Unclosed macro {snippet}");
+        assertProblems("{/}", "Unexpected macro end {/}");
+    }
+
+    /**
+     * Tests that only macro names are checked, not closing tags or macro arguments.
+     */
+    @Test
+    public void testUnknownMacros() {
+        List<LatteValidationProblem> problems = validate("{include header}{if $a}{/if}{unknownTag $x}");
+        assertEquals(1, problems.size());
+        assertEquals("Unknown macro: unknownTag", problems.get(0).getMessage());
+        assertEquals(HighlightSeverity.WARNING, problems.get(0).getSeverity());
+        assertEquals(29, problems.get(0).getStartOffset());
+        assertEquals(39, problems.get(0).getEndOffset());
+    }
+
+    /**
+     * Tests that the tags of the Nette packages and the less common core tags are known.
+     */
+    @Test
+    public void testKnownNetteAndCoreMacros() {
+        assertNoProblems("<a href=\"{link Home:}\">Home</a>{control menu}");
+        assertNoProblems("{ifset $a}a{elseifset $b}b{/ifset}");
+        assertNoProblems("{foreach $rows as $row}{ifchanged $row->group}{$row->group}{/ifchanged}"
+                + "{breakIf $row->last}{continueIf $row->hidden}{/foreach}");
+        assertNoProblems("{embed 'card.latte'}{block title}Title{/block}{/embed}{sandbox 'user.latte'}{exitIf $done}");
+        assertNoProblems("{foreach $items as $item}{iterateWhile}{$item}{/iterateWhile $item->group}{/foreach}");
+    }
+
+    /**
+     * Tests that regions with Latte syntax turned off are skipped and double-brace syntax is followed.
+     */
+    @Test
+    public void testSyntaxModes() {
+        assertNoProblems("{syntax off}{else}{/syntax}");
+        assertNoProblems("<script n:syntax=\"off\">if (a) {return}</script>");
+        assertNoProblems("{syntax double}{{if $a}}{else}{{/if}}{{/syntax}}");
+        assertProblems("{syntax double}{if $a}{{/syntax}}{else}", "Tag {else} must be inside an {if} block");
+    }
+
+    /**
+     * Tests that the syntax of an element with the n:syntax attribute is in effect until its matching end tag.
+     */
+    @Test
+    public void testSyntaxElements() {
+        assertNoProblems("<script n:syntax=\"double\">var a = {foo: 1};</script>");
+        assertNoProblems("<script n:syntax=\"double\">{{if $a}}var a = {foo: 1};{{/if}}</script>");
+        assertProblems("<script n:syntax=\"double\">{{foo}}</script>", "Unknown macro: foo");
+        assertProblems("<div n:syntax=\"double\"><div></div>{x}</div>{y}", "Unknown macro: y");
+        assertNoProblems("<div n:syntax=\"off\"><div></div>{x}</div>");
+        assertProblems("<div n:syntax=\"off\"><div>{x}</div></div>{y}", "Unknown macro: y");
+        assertNoProblems("<div n:class=\"$a->b\" n:syntax=\"off\">{x}</div>");
+    }
+
+    private void assertNoProblems(@NotNull String text) {
+        assertProblems(text);
+    }
+
+    private void assertProblems(@NotNull String text, @NotNull String... messages) {
+        List<String> actual = new ArrayList<>();
+        for (LatteValidationProblem problem : validate(text)) {
+            actual.add(problem.getMessage());
+        }
+        System.out.println("[DEBUG_LOG] " + text + " -> " + actual);
+        assertEquals(List.of(messages), actual);
+    }
+
+    @NotNull
+    private static List<LatteValidationProblem> validate(@NotNull String text) {
+        return LatteValidator.validateText(text, LatteVersion.VERSION_3X);
+    }
+}
@@ -0,0 +1,82 @@
+package cz.hqm.latte.plugin.test.validator;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.CommonProblemDescriptor;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.ex.GlobalInspectionToolWrapper;
+import com.intellij.codeInspection.ex.InspectionToolWrapper;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiManager;
+import com.intellij.testFramework.InspectionTestUtil;
+import com.intellij.testFramework.InspectionsKt;
+import com.intellij.testFramework.fixtures.impl.GlobalInspectionContextForTests;
+import cz.hqm.latte.plugin.inspection.LatteTemplateValidationInspection;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tests the batch inspection that validates all templates of a scope, as run by inspect-code.
+ */
+public class LatteTemplateValidationInspectionTest extends LattePluginTestBase {
+
+    /**
+     * Runs the inspection on a small project and checks the problems reported for each template.
+     */
+    @Test
+    public void testInspectionReportsProblemsOfEachTemplate() {
+        VirtualFile directory = myFixture.copyDirectoryToProject("inspection/templateValidation", "templates");
+        Map<String, List<String>> messages = runInspection(directory);
+
+        assertFalse("A valid template should have no problems", messages.containsKey("valid.latte"));
+        assertEquals(Collections.singletonList("Unexpected macro end {/foreach}"), messages.get("unexpected_end.latte"));
+        assertEquals(Collections.singletonList("Tag {else} must be inside an {if} block"), messages.get("standalone_else.latte"));
+    }
+
+    /**
+     * Tests that the inspection validates the contents of open editors rather than the saved files.
+     */
+    @Test
+    public void testInspectionValidatesUnsavedChanges() {
+        VirtualFile directory = myFixture.copyDirectoryToProject("inspection/templateValidation", "templates");
+        VirtualFile valid = directory.findChild("valid.latte");
+        assertNotNull(valid);
+        Document document = FileDocumentManager.getInstance().getDocument(valid);
+        assertNotNull(document);
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(0, "{else}"));
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+
+        Map<String, List<String>> messages = runInspection(directory);
+
+        assertEquals(Collections.singletonList("Tag {else} must be inside an {if} block"), messages.get("valid.latte"));
+    }
+
+    private Map<String, List<String>> runInspection(VirtualFile directory) {
+        PsiDirectory psiDirectory = PsiManager.getInstance(getProject()).findDirectory(directory);
+        assertNotNull(psiDirectory);
+
+        GlobalInspectionToolWrapper wrapper = new GlobalInspectionToolWrapper(new LatteTemplateValidationInspection());
+        AnalysisScope scope = new AnalysisScope(psiDirectory);
+        GlobalInspectionContextForTests context = InspectionsKt.createGlobalContextForTool(scope, getProject(),
+                Collections.<InspectionToolWrapper<?, ?>>singletonList(wrapper));
+        InspectionTestUtil.runTool(wrapper, scope, context);
+
+        Map<String, List<String>> messages = new TreeMap<>();
+        for (CommonProblemDescriptor descriptor : context.getPresentation(wrapper).getProblemDescriptors()) {
+            String fileName = ((ProblemDescriptor) descriptor).getPsiElement().getContainingFile().getName();
+            messages.computeIfAbsent(fileName, key -> new ArrayList<>()).add(descriptor.getDescriptionTemplate());
+        }
+        System.out.println("[DEBUG_LOG] Inspection problems: " + messages);
+        return messages;
+    }
+}
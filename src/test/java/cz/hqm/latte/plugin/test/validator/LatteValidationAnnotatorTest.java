@@ -0,0 +1,140 @@
+package cz.hqm.latte.plugin.test.validator;
+
+import com.intellij.codeInsight.daemon.impl.HighlightInfo;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import cz.hqm.latte.plugin.custom.CustomTagsProvider;
+import cz.hqm.latte.plugin.validator.LatteValidationProblem;
+import cz.hqm.latte.plugin.validator.LatteValidator;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests for the cached validation of Latte files and its annotations.
+ */
+public class LatteValidationAnnotatorTest extends BasePlatformTestCase {
+
+    /**
+     * Tests that the problems of a file are cached until the file changes.
+     */
+    @Test
+    public void testProblemsAreCachedUntilFileChanges() {
+        PsiFile file = myFixture.configureByText("cached.latte", "{if $a}<p>a</p>{else}<p>b</p>{/if}\n");
+
+        List<LatteValidationProblem> problems = LatteValidator.getProblems(file);
+        assertTrue(problems.isEmpty());
+        assertSame("Unchanged files should not be validated again", problems, LatteValidator.getProblems(file));
+
+        Document document = myFixture.getEditor().getDocument();
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            document.insertString(document.getTextLength(), "{else}\n");
+            PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+        });
+
+        List<LatteValidationProblem> changed = LatteValidator.getProblems(file);
+        System.out.println("[DEBUG_LOG] Problems after the change: " + changed);
+        assertEquals(1, changed.size());
+        assertEquals("Tag {else} must be inside an {if} block", changed.get(0).getMessage());
+    }
+
+    /**
+     * Tests that custom tags of the project are known macros, and that registering one validates the file again.
+     */
+    @Test
+    public void testCustomTagsAreKnownMacros() {
+        PsiFile file = myFixture.configureByText("custom.latte", "{menuItem 'home'}\n");
+
+        List<LatteValidationProblem> problems = LatteValidator.getProblems(file);
+        assertEquals(1, problems.size());
+        assertEquals("Unknown macro: menuItem", problems.get(0).getMessage());
+
+        CustomTagsProvider.addTag(getProject(), "menuItem", "Renders a menu item");
+        try {
+            assertTrue("Registered custom tags should be known macros", LatteValidator.getProblems(file).isEmpty());
+        } finally {
+            CustomTagsProvider.removeTag(getProject(), "menuItem");
+        }
+    }
+
+    /**
+     * Tests that the problems are shown as annotations in the editor.
+     */
+    @Test
+    public void testProblemsAreAnnotated() {
+        myFixture.configureByText("annotated.latte", "<ul>{foreach $items as $item}<li>{$item}</li>{/if}</ul>\n");
+
+        List<HighlightInfo> highlights = myFixture.doHighlighting();
+        boolean mismatched = false;
+        for (HighlightInfo highlight : highlights) {
+            System.out.println("[DEBUG_LOG] Highlight: " + highlight.getDescription());
+            if ("Unexpected macro end {/if}".equals(highlight.getDescription())) {
+                mismatched = true;
+                assertEquals("{/if}", highlight.getText());
+            }
+        }
+        assertTrue("The unexpected end tag should be annotated", mismatched);
+    }
+
+    /**
+     * Tests that a realistic Nette template is annotated without warnings.
+     */
+    @Test
+    public void testNetteTemplateHasNoWarnings() {
+        PsiFile file = myFixture.configureByText("list.latte",
+                "{layout '@layout.latte'}\n" +
+                "{block title}Products{/block}\n" +
+                "\n" +
+                "{block content}\n" +
+                "<h1 n:block=\"heading\">{$title|upper}</h1>\n" +
+                "\n" +
+                "{snippet flashes}\n" +
+                "<div n:foreach=\"$flashes as $flash\" n:class=\"flash, $flash->type\">{$flash->message}</div>\n" +
+                "{/snippet}\n" +
+                "\n" +
+                "<nav>\n" +
+                "    <a n:href=\"Homepage:default\">Home</a>\n" +
+                "    <a href=\"{link Product:list, page => 2}\">Next</a>\n" +
+                "    {ifCurrent Product:*}<span>Products</span>{/ifCurrent}\n" +
+                "</nav>\n" +
+                "\n" +
+                "{control menu}\n" +
+                "\n" +
+                "{if $user->isLoggedIn()}\n" +
+                "    <p>{_'Welcome'}, {$user->identity->name}</p>\n" +
+                "{elseif $showLogin}\n" +
+                "    {form loginForm}\n" +
+                "        {label username /}{input username}\n" +
+                "        {input send}\n" +
+                "    {/form}\n" +
+                "{else}\n" +
+                "    <a n:href=\"Sign:in\">Sign in</a>\n" +
+                "{/if}\n" +
+                "\n" +
+                "{foreach $products as $product}\n" +
+                "    {first}<ul>{/first}\n" +
+                "    <li>{$product->name}{sep}, {/sep}</li>\n" +
+                "    {last}</ul>{/last}\n" +
+                "{else}\n" +
+                "    <p>No products.</p>\n" +
+                "{/foreach}\n" +
+                "\n" +
+                "{var $total = count($products)}\n" +
+                "{default $page = 1}\n" +
+                "{capture $footer}Total: {$total}{/capture}\n" +
+                "{include 'parts/pager.latte', page: $page}\n" +
+                "{* Comments may contain anything, e.g. {else} *}\n" +
+                "{/block}\n");
+
+        assertEquals(List.of(), LatteValidator.getProblems(file));
+        for (HighlightInfo highlight : myFixture.doHighlighting()) {
+            System.out.println("[DEBUG_LOG] Highlight: " + highlight.getDescription());
+            String description = highlight.getDescription();
+            assertFalse("Unexpected annotation: " + description,
+                    description != null && description.startsWith("Unknown macro"));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package cz.hqm.latte.plugin.test.version;
+
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.xmlb.XmlSerializerUtil;
+import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import cz.hqm.latte.plugin.version.ComposerMetadata;
+import cz.hqm.latte.plugin.version.ComposerMetadataService;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import cz.hqm.latte.plugin.version.LatteVersionDetector;
+import cz.hqm.latte.plugin.version.NettePackageDetector;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the shared composer metadata service.
+ */
+public class ComposerMetadataServiceTest extends LattePluginTestBase {
+
+    private static final String COMPOSER_JSON =
+            "{\n" +
+            "  \"name\": \"acme/shop\",\n" +
+            "  \"autoload\": {\"psr-4\": {\"App\\\\\": \"app/\"}},\n" +
+            "  \"require\": {\"php\": \">=8.1\", \"latte/latte\": \"^3.0\", \"nette/forms\": \"^3.1\"},\n" +
+            "  \"require-dev\": {\"nette/tester\": \"^2.5\", \"nette/application\": \"~2.4\"}\n" +
+            "}\n";
+
+    private static final String COMPOSER_LOCK =
+            "{\n" +
+            "  \"content-hash\": \"abc\",\n" +
+            "  \"packages\": [\n" +
+            "    {\"name\": \"latte/latte\", \"version\": \"v3.0.12\", \"require\": {\"php\": \">=8.0\"}, \"authors\": [{\"name\": \"David\"}]},\n" +
+            "    {\"name\": \"nette/forms\", \"version\": \"v3.2.0\"}\n" +
+            "  ],\n" +
+            "  \"packages-dev\": [{\"name\": \"nette/tester\", \"version\": \"v2.5.1\"}]\n" +
+            "}\n";
+
+    private LatteSettings savedSettings;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The tests change the application-level settings, so restore them afterwards
+        savedSettings = XmlSerializerUtil.createCopy(LatteSettings.getInstance());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            if (savedSettings != null) {
+                LatteSettings.getInstance().loadState(savedSettings);
+            }
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that both files are read and that installed versions win over constraints.
+     */
+    @Test
+    public void testReadsComposerJsonAndLock() {
+        VirtualFile json = myFixture.addFileToProject("composer.json", COMPOSER_JSON).getVirtualFile();
+        VirtualFile lock = myFixture.addFileToProject("composer.lock", COMPOSER_LOCK).getVirtualFile();
+
+        ComposerMetadata metadata = ComposerMetadataService.read(json, lock);
+        System.out.println("[DEBUG_LOG] Composer metadata: " + metadata);
+
+        assertTrue(metadata.isComposerFileFound());
+        assertEquals("^3.0", metadata.getConstraint("latte/latte"));
+        assertEquals("~2.4", metadata.getConstraint("nette/application"));
+        assertEquals("v3.0.12", metadata.getLockedVersion("latte/latte"));
+        assertNull("Nested package names must not be mistaken for packages", metadata.getLockedVersion("David"));
+        assertEquals(3, metadata.getMajorVersion("nette/forms"));
+        assertEquals(2, metadata.getMajorVersion("nette/application"));
+        assertEquals(-1, metadata.getMajorVersion("nette/database"));
+        assertTrue(metadata.hasPackage("nette/tester"));
+        assertFalse(metadata.hasPackage("nette/mail"));
+    }
+
+    /**
+     * Tests that the snapshot follows file system changes to composer.json.
+     */
+    @Test
+    public void testRefreshesOnComposerChanges() throws Exception {
+        ComposerMetadataService service = ComposerMetadataService.getInstance(getProject());
+        LatteSettings.getInstance().setEnableNetteForms(false);
+        VirtualFile json = myFixture.addFileToProject("composer.json", COMPOSER_JSON).getVirtualFile();
+
+        assertEquals(LatteVersion.VERSION_3X, LatteVersionDetector.detectVersion(getProject()));
+        assertEquals(2, NettePackageDetector.getPackageVersion(getProject(), NettePackageDetector.NETTE_APPLICATION));
+        assertTrue(NettePackageDetector.isPackagePresent(getProject(), NettePackageDetector.NETTE_FORMS));
+        assertFalse("Detected packages are kept per project, not written to the application settings",
+                LatteSettings.getInstance().isEnableNetteForms());
+
+        long count = service.getModificationCount();
+        WriteAction.run(() -> VfsUtil.saveText(json, "{\"require\": {\"latte/latte\": \"^2.11\"}}"));
+
+        assertTrue("Changing composer.json should publish a new snapshot", service.getModificationCount() > count);
+        assertEquals(LatteVersion.VERSION_2X, LatteVersionDetector.detectVersion(getProject()));
+        assertFalse(NettePackageDetector.isPackagePresent(getProject(), NettePackageDetector.NETTE_FORMS));
+        assertEquals("Absent packages fall back to the default version",
+                3, NettePackageDetector.getPackageVersion(getProject(), NettePackageDetector.NETTE_DATABASE));
+
+        count = service.getModificationCount();
+        myFixture.addFileToProject("templates/default.latte", "{$title}");
+        assertEquals("Other files should not trigger a refresh", count, service.getModificationCount());
+    }
+
+    /**
+     * Tests that a refresh on the refresh thread publishes a new snapshot.
+     */
+    @Test
+    public void testRefreshInBackground() throws Exception {
+        ComposerMetadataService service = ComposerMetadataService.getInstance(getProject());
+        myFixture.addFileToProject("composer.json", "{\"require\": {\"latte/latte\": \"^2.11\"}}");
+        myFixture.addFileToProject("composer.lock", COMPOSER_LOCK);
+
+        long count = service.getModificationCount();
+        service.refreshInBackground().get(10, TimeUnit.SECONDS);
+
+        assertTrue("The background refresh should publish a new snapshot", service.getModificationCount() > count);
+        assertEquals("v3.0.12", service.getMetadata().getLockedVersion("latte/latte"));
+        assertEquals("The installed version wins over the constraint",
+                LatteVersion.VERSION_3X, LatteVersionDetector.detectVersion(getProject()));
+    }
+
+    /**
+     * Tests that malformed files do not break detection.
+     */
+    @Test
+    public void testMalformedComposerJson() {
+        VirtualFile json = myFixture.addFileToProject("composer.json", "{\"require\": {\"latte/latte\": ").getVirtualFile();
+
+        ComposerMetadata metadata = ComposerMetadataService.read(json, null);
+
+        assertTrue(metadata.isComposerFileFound());
+        assertEquals(LatteVersion.getDefault(), LatteVersionDetector.detectVersion(metadata));
+        assertSame(ComposerMetadata.EMPTY, ComposerMetadataService.read(null, null));
+    }
+}
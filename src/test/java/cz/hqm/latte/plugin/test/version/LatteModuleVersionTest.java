@@ -0,0 +1,180 @@
+package cz.hqm.latte.plugin.test.version;
+
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.xmlb.XmlSerializerUtil;
+import cz.hqm.latte.plugin.completion.LatteCompletionCache;
+import cz.hqm.latte.plugin.settings.LatteSettings;
+import cz.hqm.latte.plugin.test.LattePluginTestBase;
+import cz.hqm.latte.plugin.version.ComposerMetadataService;
+import cz.hqm.latte.plugin.version.LatteVersion;
+import cz.hqm.latte.plugin.version.LatteVersionDetector;
+import cz.hqm.latte.plugin.version.LatteVersionManager;
+import cz.hqm.latte.plugin.version.NettePackageDetector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for resolving the Latte version and packages of templates in a monorepo
+ * with several composer modules.
+ */
+public class LatteModuleVersionTest extends LattePluginTestBase {
+
+    private LatteSettings savedSettings;
+    private LatteVersion savedVersion;
+    private VirtualFile legacyComposerJson;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The tests change the version settings, so restore them afterwards
+        savedSettings = XmlSerializerUtil.createCopy(LatteSettings.getInstance());
+        savedVersion = LatteVersionManager.getCurrentVersion();
+        LatteSettings.getInstance().setOverrideDetectedVersion(false);
+
+        myFixture.addFileToProject("composer.json",
+                "{\"require\": {\"latte/latte\": \"^3.0\", \"nette/database\": \"^3.1\"}}");
+        legacyComposerJson = myFixture.addFileToProject("apps/legacy/composer.json",
+                "{\"require\": {\"latte/latte\": \"^2.11\", \"nette/database\": \"~2.4\"}}").getVirtualFile();
+        myFixture.addFileToProject("apps/next/composer.json",
+                "{\"require\": {\"latte/latte\": \"^4.0\"}}");
+        myFixture.addFileToProject("vendor/acme/widgets/composer.json",
+                "{\"require\": {\"latte/latte\": \"^2.5\"}}");
+        ComposerMetadataService.getInstance(getProject()).refresh();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            if (savedSettings != null) {
+                LatteSettings.getInstance().loadState(savedSettings);
+            }
+            if (savedVersion != null) {
+                LatteVersionManager.setCurrentVersion(savedVersion);
+            }
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that each template uses the version required by its nearest composer.json.
+     */
+    @Test
+    public void testVersionPerModule() {
+        VirtualFile root = myFixture.addFileToProject("app/templates/default.latte", "{block content}{/block}").getVirtualFile();
+        VirtualFile legacy = myFixture.addFileToProject("apps/legacy/templates/default.latte", "{block content}{/block}").getVirtualFile();
+        VirtualFile next = myFixture.addFileToProject("apps/next/src/Ui/templates/default.latte", "{block content}{/block}").getVirtualFile();
+
+        assertEquals(LatteVersion.VERSION_3X, LatteVersionDetector.findVersion(getProject(), root));
+        assertEquals(LatteVersion.VERSION_2X, LatteVersionDetector.findVersion(getProject(), legacy));
+        assertEquals(LatteVersion.VERSION_4X, LatteVersionDetector.findVersion(getProject(), next));
+
+        assertEquals(3, NettePackageDetector.getPackageVersion(getProject(), root, NettePackageDetector.NETTE_DATABASE));
+        assertEquals(2, NettePackageDetector.getPackageVersion(getProject(), legacy, NettePackageDetector.NETTE_DATABASE));
+        assertFalse("The next module does not require nette/database",
+                NettePackageDetector.isPackagePresent(getProject(), next, NettePackageDetector.NETTE_DATABASE));
+    }
+
+    /**
+     * Tests that the version of a template does not depend on the global current version.
+     */
+    @Test
+    public void testVersionOfTemplateIgnoresCurrentVersion() {
+        PsiFile legacy = myFixture.addFileToProject("apps/legacy/templates/list.latte", "{foreach $items as $item}{/foreach}");
+
+        LatteVersionManager.setCurrentVersion(LatteVersion.VERSION_4X);
+        assertEquals(LatteVersion.VERSION_2X, LatteVersionManager.getVersion(legacy));
+        assertEquals("Files outside any template fall back to the current version",
+                LatteVersion.VERSION_4X, LatteVersionManager.getVersion(null));
+    }
+
+    /**
+     * Tests that composer files of installed packages are not treated as modules.
+     */
+    @Test
+    public void testVendorPackagesUseProjectVersion() {
+        VirtualFile template = myFixture.addFileToProject("vendor/acme/widgets/templates/widget.latte", "{block widget}{/block}").getVirtualFile();
+
+        assertEquals(LatteVersion.VERSION_3X, LatteVersionDetector.findVersion(getProject(), template));
+    }
+
+    /**
+     * Tests that the memoized module metadata is dropped when a module's composer.json changes.
+     */
+    @Test
+    public void testModuleComposerChange() throws Exception {
+        VirtualFile legacy = myFixture.addFileToProject("apps/legacy/templates/default.latte", "{block content}{/block}").getVirtualFile();
+        assertEquals(LatteVersion.VERSION_2X, LatteVersionDetector.findVersion(getProject(), legacy));
+
+        WriteAction.run(() -> VfsUtil.saveText(legacyComposerJson, "{\"require\": {\"latte/latte\": \"^3.0\"}}"));
+
+        assertEquals(LatteVersion.VERSION_3X, LatteVersionDetector.findVersion(getProject(), legacy));
+    }
+
+    /**
+     * Tests that a module created after the first lookup is found.
+     */
+    @Test
+    public void testNewModule() {
+        VirtualFile template = myFixture.addFileToProject("apps/blog/templates/post.latte", "{block content}{/block}").getVirtualFile();
+        assertEquals(LatteVersion.VERSION_3X, LatteVersionDetector.findVersion(getProject(), template));
+
+        myFixture.addFileToProject("apps/blog/composer.json", "{\"require\": {\"latte/latte\": \"^2.10\"}}");
+
+        System.out.println("[DEBUG_LOG] Version of the new module: " + LatteVersionDetector.findVersion(getProject(), template));
+        assertEquals(LatteVersion.VERSION_2X, LatteVersionDetector.findVersion(getProject(), template));
+    }
+
+    /**
+     * Tests that completion in two modules offers the packages each of them uses.
+     */
+    @Test
+    public void testPackagesPerModule() {
+        LatteSettings settings = LatteSettings.getInstance();
+        settings.setEnableNetteForms(true);
+        settings.setEnableNetteDatabase(true);
+        myFixture.addFileToProject("apps/shop/composer.json",
+                "{\"require\": {\"latte/latte\": \"^3.0\", \"nette/forms\": \"^3.1\"}}");
+        ComposerMetadataService.getInstance(getProject()).refresh();
+        VirtualFile legacy = myFixture.addFileToProject("apps/legacy/templates/default.latte", "{block content}{/block}").getVirtualFile();
+        VirtualFile shop = myFixture.addFileToProject("apps/shop/templates/default.latte", "{block content}{/block}").getVirtualFile();
+
+        Set<String> legacyPackages = NettePackageDetector.getEnabledPackages(getProject(), legacy);
+        Set<String> shopPackages = NettePackageDetector.getEnabledPackages(getProject(), shop);
+        assertTrue(legacyPackages.contains(NettePackageDetector.NETTE_DATABASE));
+        assertFalse(legacyPackages.contains(NettePackageDetector.NETTE_FORMS));
+        assertTrue(shopPackages.contains(NettePackageDetector.NETTE_FORMS));
+        assertFalse(shopPackages.contains(NettePackageDetector.NETTE_DATABASE));
+
+        LatteCompletionCache cache = LatteCompletionCache.getInstance(getProject());
+        List<String> legacyMacros = getLookupStrings(cache.getMacros(LatteVersion.VERSION_2X, legacy));
+        List<String> shopMacros = getLookupStrings(cache.getMacros(LatteVersion.VERSION_3X, shop));
+        assertTrue(legacyMacros.contains("ifRow"));
+        assertFalse(legacyMacros.contains("input"));
+        assertTrue(shopMacros.contains("input"));
+        assertFalse(shopMacros.contains("ifRow"));
+
+        List<String> legacyVariables = getLookupStrings(cache.getVariables(legacy));
+        List<String> shopVariables = getLookupStrings(cache.getVariables(shop));
+        assertTrue(legacyVariables.contains("database"));
+        assertFalse(legacyVariables.contains("form"));
+        assertTrue(shopVariables.contains("form"));
+        assertFalse(shopVariables.contains("database"));
+    }
+
+    private static List<String> getLookupStrings(List<LookupElement> elements) {
+        assertNotNull(elements);
+        List<String> strings = new ArrayList<>();
+        for (LookupElement element : elements) {
+            strings.add(element.getLookupString());
+        }
+        return strings;
+    }
+}